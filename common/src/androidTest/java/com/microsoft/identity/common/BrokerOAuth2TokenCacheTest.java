@@ -31,17 +31,20 @@ import com.microsoft.identity.common.adal.internal.AndroidSecretKeyEnabledHelper
 import com.microsoft.identity.common.adal.internal.cache.StorageHelper;
 import com.microsoft.identity.common.exception.ClientException;
 import com.microsoft.identity.common.internal.cache.AccountDeletionRecord;
+import com.microsoft.identity.common.internal.cache.BrokerAccountIndexEntry;
 import com.microsoft.identity.common.internal.cache.BrokerApplicationMetadata;
 import com.microsoft.identity.common.internal.cache.BrokerOAuth2TokenCache;
 import com.microsoft.identity.common.internal.cache.CacheKeyValueDelegate;
 import com.microsoft.identity.common.internal.cache.IAccountCredentialAdapter;
 import com.microsoft.identity.common.internal.cache.IAccountCredentialCache;
+import com.microsoft.identity.common.internal.cache.IBrokerAccountIndex;
 import com.microsoft.identity.common.internal.cache.IBrokerApplicationMetadataCache;
 import com.microsoft.identity.common.internal.cache.ICacheRecord;
 import com.microsoft.identity.common.internal.cache.ISharedPreferencesFileManager;
 import com.microsoft.identity.common.internal.cache.MicrosoftFamilyOAuth2TokenCache;
 import com.microsoft.identity.common.internal.cache.MsalOAuth2TokenCache;
 import com.microsoft.identity.common.internal.cache.SharedPreferencesAccountCredentialCache;
+import com.microsoft.identity.common.internal.cache.SharedPreferencesBrokerAccountIndex;
 import com.microsoft.identity.common.internal.cache.SharedPreferencesBrokerApplicationMetadataCache;
 import com.microsoft.identity.common.internal.cache.SharedPreferencesFileManager;
 import com.microsoft.identity.common.internal.dto.AccountRecord;
@@ -117,6 +120,7 @@ public class BrokerOAuth2TokenCacheTest extends AndroidSecretKeyEnabledHelper {
     private List<MsalOAuth2TokenCacheTest.AccountCredentialTestBundle> mOtherCacheTestBundles;
 
     private IBrokerApplicationMetadataCache mApplicationMetadataCache;
+    private IBrokerAccountIndex mAccountIndex;
     private int[] testAppUids;
 
     @Before
@@ -131,6 +135,7 @@ public class BrokerOAuth2TokenCacheTest extends AndroidSecretKeyEnabledHelper {
         final Context context = androidx.test.platform.app.InstrumentationRegistry.getInstrumentation().getTargetContext();
 
         mApplicationMetadataCache = new SharedPreferencesBrokerApplicationMetadataCache(context);
+        mAccountIndex = new SharedPreferencesBrokerAccountIndex(context);
 
         // Test Configs for caches...
         initFociCache(context);
@@ -224,6 +229,7 @@ public class BrokerOAuth2TokenCacheTest extends AndroidSecretKeyEnabledHelper {
         }
 
         mApplicationMetadataCache.clear();
+        mAccountIndex.clear();
     }
 
     private void initOtherCaches(final Context context) {
@@ -536,6 +542,37 @@ public class BrokerOAuth2TokenCacheTest extends AndroidSecretKeyEnabledHelper {
         assertEquals(mDefaultFociTestBundle.mGeneratedIdToken, ids.get(0));
     }
 
+    @Test
+    public void testAccountIndexTracksSavesAndRemovals() throws ClientException {
+        configureMocksForAppUid();
+
+        mBrokerOAuth2TokenCache.save(
+                mockStrategy,
+                mockRequest,
+                mockResponse
+        );
+
+        // 1 entry for the AccountRecord, 1 for the tokens of CLIENT_ID
+        final List<BrokerAccountIndexEntry> entries = mAccountIndex.getEntries(HOME_ACCOUNT_ID, ENVIRONMENT);
+        assertEquals(2, entries.size());
+
+        for (final BrokerAccountIndexEntry entry : entries) {
+            assertFalse(entry.isFoci());
+            assertEquals(TEST_APP_UID, entry.getUid());
+        }
+
+        final List<AccountRecord> accounts = mBrokerOAuth2TokenCache.getAccounts();
+        assertEquals(1, accounts.size());
+
+        final AccountDeletionRecord deletionRecord = mBrokerOAuth2TokenCache.removeAccountFromDevice(
+                accounts.get(0)
+        );
+
+        assertEquals(1, deletionRecord.size());
+        assertTrue(mAccountIndex.getEntries(HOME_ACCOUNT_ID, ENVIRONMENT).isEmpty());
+        assertTrue(mBrokerOAuth2TokenCache.getAccounts().isEmpty());
+    }
+
     @Test
     public void testCacheMiss() {
         final ICacheRecord cacheRecord = mBrokerOAuth2TokenCache.load(
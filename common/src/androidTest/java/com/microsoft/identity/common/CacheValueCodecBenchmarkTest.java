@@ -0,0 +1,109 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.microsoft.identity.common.internal.cache.CacheKeyValueDelegate;
+import com.microsoft.identity.common.internal.cache.ICacheKeyValueDelegate;
+import com.microsoft.identity.common.internal.dto.AccessTokenRecord;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+import static com.microsoft.identity.common.CacheRecordTestUtil.newIssuedAccessToken;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the cost of (de)serializing an access token as JSON via Gson and with the binary codec,
+ * on a device. Not part of the regular run; remove the {@link Ignore} to run it, and read the
+ * results from logcat.
+ */
+@Ignore("Benchmark; run manually.")
+@RunWith(AndroidJUnit4.class)
+public class CacheValueCodecBenchmarkTest {
+
+    private static final String TAG = CacheValueCodecBenchmarkTest.class.getSimpleName();
+
+    private static final String HOME_ACCOUNT_ID = "29f3807a-4fb0-42f2-a44a-236aa0cb3f97.0287f963-2d72-4363-9e3a-5705c5b0f031";
+    private static final String CLIENT_ID = "0287f963-2d72-4363-9e3a-5705c5b0f031";
+    private static final String TARGET = "user.read user.write https://graph.windows.net";
+    private static final String REALM = "3c62ac97-29eb-4aed-a3c8-add0298508d";
+
+    private static final int WARM_UP_ITERATIONS = 2000;
+    private static final int MEASURED_ITERATIONS = 20000;
+    private static final double NANOS_PER_MICRO = 1000d;
+
+    @Test
+    public void compareJsonAndBinary() {
+        final AccessTokenRecord accessToken = newIssuedAccessToken(HOME_ACCOUNT_ID, CLIENT_ID, REALM, TARGET);
+
+        report("json", new CacheKeyValueDelegate(), accessToken);
+        report("binary", new CacheKeyValueDelegate(true), accessToken);
+    }
+
+    private static void report(final String label,
+                               final ICacheKeyValueDelegate delegate,
+                               final AccessTokenRecord record) {
+        final String cacheValue = delegate.generateCacheValue(record);
+        assertEquals(record, delegate.fromCacheValue(cacheValue, AccessTokenRecord.class));
+
+        run(delegate, record, cacheValue, WARM_UP_ITERATIONS);
+
+        final long encodeStart = System.nanoTime();
+        for (int ii = 0; ii < MEASURED_ITERATIONS; ii++) {
+            delegate.generateCacheValue(record);
+        }
+        final long encodeNanos = System.nanoTime() - encodeStart;
+
+        final long decodeStart = System.nanoTime();
+        for (int ii = 0; ii < MEASURED_ITERATIONS; ii++) {
+            delegate.fromCacheValue(cacheValue, AccessTokenRecord.class);
+        }
+        final long decodeNanos = System.nanoTime() - decodeStart;
+
+        Log.i(TAG, String.format(
+                Locale.US,
+                "%-6s size=%4d chars  encode=%6.2f us/op  decode=%6.2f us/op",
+                label,
+                cacheValue.length(),
+                encodeNanos / NANOS_PER_MICRO / MEASURED_ITERATIONS,
+                decodeNanos / NANOS_PER_MICRO / MEASURED_ITERATIONS
+        ));
+    }
+
+    private static void run(final ICacheKeyValueDelegate delegate,
+                            final AccessTokenRecord record,
+                            final String cacheValue,
+                            final int iterations) {
+        for (int ii = 0; ii < iterations; ii++) {
+            delegate.generateCacheValue(record);
+            delegate.fromCacheValue(cacheValue, AccessTokenRecord.class);
+        }
+    }
+}
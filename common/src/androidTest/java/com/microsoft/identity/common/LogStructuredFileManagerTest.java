@@ -0,0 +1,177 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common;
+
+import android.content.Context;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.microsoft.identity.common.internal.cache.LogStructuredFileManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class LogStructuredFileManagerTest {
+
+    private static final String TEST_FILE_NAME = "com.microsoft.test.logstructured";
+
+    private Context mContext;
+    private File mLogFile;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mLogFile = new File(mContext.getFilesDir(), TEST_FILE_NAME + LogStructuredFileManager.LOG_FILE_SUFFIX);
+        deleteFiles();
+    }
+
+    @After
+    public void tearDown() {
+        deleteFiles();
+        mContext = null;
+    }
+
+    @Test
+    public void testEntriesSurviveReopen() {
+        final LogStructuredFileManager first = LogStructuredFileManager.open(mContext, TEST_FILE_NAME, null);
+        first.putString("a", "1");
+        first.putString("b", "2");
+        first.putString("a", "3");
+        first.remove("b");
+        first.close();
+
+        final LogStructuredFileManager second = LogStructuredFileManager.open(mContext, TEST_FILE_NAME, null);
+        assertEquals("3", second.getString("a"));
+        assertNull(second.getString("b"));
+        assertEquals(1, second.getAll().size());
+        second.close();
+    }
+
+    @Test
+    public void testTornRecordIsDiscarded() throws IOException {
+        final LogStructuredFileManager first = LogStructuredFileManager.open(mContext, TEST_FILE_NAME, null);
+        first.putString("a", "1");
+        final long intactLength = mLogFile.length();
+        first.putString("b", "2");
+        first.close();
+
+        // Simulate a crash midway through the second record
+        final RandomAccessFile log = new RandomAccessFile(mLogFile, "rw");
+        try {
+            log.setLength(mLogFile.length() - 1);
+        } finally {
+            log.close();
+        }
+
+        final LogStructuredFileManager second = LogStructuredFileManager.open(mContext, TEST_FILE_NAME, null);
+        assertEquals("1", second.getString("a"));
+        assertFalse(second.contains("b"));
+        assertEquals(intactLength, mLogFile.length());
+
+        // The log remains appendable after recovery
+        second.putString("c", "3");
+        second.close();
+
+        final LogStructuredFileManager third = LogStructuredFileManager.open(mContext, TEST_FILE_NAME, null);
+        assertEquals("3", third.getString("c"));
+        third.close();
+    }
+
+    @Test
+    public void testCorruptRecordIsDiscarded() throws IOException {
+        final LogStructuredFileManager first = LogStructuredFileManager.open(mContext, TEST_FILE_NAME, null);
+        first.putString("a", "1");
+        final long intactLength = mLogFile.length();
+        first.putString("b", "2");
+        first.close();
+
+        // Flip the last byte of the second record's checksum
+        final RandomAccessFile log = new RandomAccessFile(mLogFile, "rw");
+        try {
+            log.seek(log.length() - 1);
+            final int lastByte = log.read();
+            log.seek(log.length() - 1);
+            log.write(~lastByte);
+        } finally {
+            log.close();
+        }
+
+        final LogStructuredFileManager second = LogStructuredFileManager.open(mContext, TEST_FILE_NAME, null);
+        assertEquals("1", second.getString("a"));
+        assertNull(second.getString("b"));
+        assertEquals(intactLength, mLogFile.length());
+        second.close();
+    }
+
+    @Test
+    public void testMigratesFromSharedPreferences() {
+        mContext.getSharedPreferences(TEST_FILE_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putString("a", "1")
+                .putString("b", "2")
+                .commit();
+
+        final LogStructuredFileManager fileManager = LogStructuredFileManager.open(mContext, TEST_FILE_NAME, null);
+        assertEquals("1", fileManager.getString("a"));
+        assertEquals("2", fileManager.getString("b"));
+        assertTrue(mContext.getSharedPreferences(TEST_FILE_NAME, Context.MODE_PRIVATE).getAll().isEmpty());
+        fileManager.close();
+    }
+
+    @Test
+    public void testOneInstancePerLog() {
+        final LogStructuredFileManager first = LogStructuredFileManager.open(mContext, TEST_FILE_NAME, null);
+        final LogStructuredFileManager second = LogStructuredFileManager.open(mContext, TEST_FILE_NAME, null);
+        assertSame(first, second);
+
+        // The log stays open until every open() has been matched
+        first.close();
+        assertSame(first, LogStructuredFileManager.open(mContext, TEST_FILE_NAME, null));
+        first.close();
+        second.close();
+
+        final LogStructuredFileManager third = LogStructuredFileManager.open(mContext, TEST_FILE_NAME, null);
+        assertNotSame(first, third);
+        third.close();
+    }
+
+    private void deleteFiles() {
+        mContext.getSharedPreferences(TEST_FILE_NAME, Context.MODE_PRIVATE).edit().clear().commit();
+        mLogFile.delete();
+    }
+}
@@ -0,0 +1,260 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common;
+
+import android.content.Context;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.microsoft.identity.common.adal.internal.AndroidSecretKeyEnabledHelper;
+import com.microsoft.identity.common.adal.internal.cache.StorageHelper;
+import com.microsoft.identity.common.internal.cache.CacheKeyValueDelegate;
+import com.microsoft.identity.common.internal.cache.CredentialQuery;
+import com.microsoft.identity.common.internal.cache.SQLiteAccountCredentialCache;
+import com.microsoft.identity.common.internal.cache.SharedPreferencesAccountCredentialCache;
+import com.microsoft.identity.common.internal.cache.SharedPreferencesFileManager;
+import com.microsoft.identity.common.internal.dto.AccessTokenRecord;
+import com.microsoft.identity.common.internal.dto.AccountRecord;
+import com.microsoft.identity.common.internal.dto.Credential;
+import com.microsoft.identity.common.internal.dto.CredentialType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static com.microsoft.identity.common.CacheRecordTestUtil.newAccessToken;
+import static com.microsoft.identity.common.CacheRecordTestUtil.newAccount;
+import static com.microsoft.identity.common.CacheRecordTestUtil.newIdToken;
+import static com.microsoft.identity.common.CacheRecordTestUtil.newRefreshToken;
+import static com.microsoft.identity.common.SharedPreferencesAccountCredentialCacheTest.CLIENT_ID;
+import static com.microsoft.identity.common.SharedPreferencesAccountCredentialCacheTest.ENVIRONMENT;
+import static com.microsoft.identity.common.SharedPreferencesAccountCredentialCacheTest.HOME_ACCOUNT_ID;
+import static com.microsoft.identity.common.SharedPreferencesAccountCredentialCacheTest.REALM;
+import static com.microsoft.identity.common.SharedPreferencesAccountCredentialCacheTest.REALM2;
+import static com.microsoft.identity.common.SharedPreferencesAccountCredentialCacheTest.TARGET;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class SQLiteAccountCredentialCacheTest extends AndroidSecretKeyEnabledHelper {
+
+    private static final String TEST_DATABASE_NAME = "com.microsoft.identity.test.account_credential_cache.db";
+    private static final String TEST_SHARED_PREFERENCES_NAME = "com.microsoft.identity.test.account_credential_cache";
+
+    private Context mContext;
+    private CacheKeyValueDelegate mDelegate;
+    private SQLiteAccountCredentialCache mCache;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mContext = InstrumentationRegistry.getTargetContext();
+        mDelegate = new CacheKeyValueDelegate();
+        mCache = new SQLiteAccountCredentialCache(
+                mContext,
+                TEST_DATABASE_NAME,
+                mDelegate,
+                new StorageHelper(mContext)
+        );
+    }
+
+    @After
+    public void tearDown() {
+        mCache.clearAll();
+        mContext.deleteDatabase(TEST_DATABASE_NAME);
+    }
+
+    @Test
+    public void saveAndGetAccount() {
+        final AccountRecord account = newAccount(HOME_ACCOUNT_ID, REALM);
+        mCache.saveAccount(account);
+
+        assertEquals(account, mCache.getAccount(mDelegate.generateCacheKey(account)));
+        assertEquals(1, mCache.getAccountsFilteredBy(HOME_ACCOUNT_ID.toUpperCase(), ENVIRONMENT, REALM).size());
+        assertTrue(mCache.getAccountsFilteredBy(HOME_ACCOUNT_ID, ENVIRONMENT, REALM2).isEmpty());
+    }
+
+    @Test
+    public void saveAndGetCredential() {
+        final AccessTokenRecord accessToken = newAccessToken(HOME_ACCOUNT_ID, CLIENT_ID, REALM, TARGET);
+        mCache.saveCredential(accessToken);
+
+        assertEquals(accessToken, mCache.getCredential(mDelegate.generateCacheKey(accessToken)));
+    }
+
+    @Test
+    public void getCredentialsFilteredByTarget() {
+        mCache.saveCredential(newAccessToken(HOME_ACCOUNT_ID, CLIENT_ID, REALM, "user.read user.write"));
+        mCache.saveCredential(newAccessToken(HOME_ACCOUNT_ID, CLIENT_ID, REALM2, "mail.read"));
+        mCache.saveCredential(newRefreshToken(HOME_ACCOUNT_ID, CLIENT_ID, TARGET));
+        mCache.saveCredential(newIdToken(HOME_ACCOUNT_ID, CLIENT_ID, REALM));
+
+        // Subset of the first AT's scopes; default scopes are ignored
+        final List<Credential> ats = mCache.getCredentialsFilteredBy(
+                HOME_ACCOUNT_ID,
+                ENVIRONMENT,
+                CredentialType.AccessToken,
+                CLIENT_ID,
+                null,
+                "USER.READ openid",
+                null
+        );
+        assertEquals(1, ats.size());
+        assertEquals(REALM, ((AccessTokenRecord) ats.get(0)).getRealm());
+
+        // Target does not constrain IdTokens; the RT holds user.read too
+        final List<Credential> all = mCache.getCredentialsFilteredBy(
+                HOME_ACCOUNT_ID,
+                ENVIRONMENT,
+                null,
+                CLIENT_ID,
+                null,
+                "user.read",
+                null
+        );
+        assertEquals(3, all.size());
+    }
+
+    @Test
+    public void getCredentialsFilteredByRealm() {
+        mCache.saveCredential(newAccessToken(HOME_ACCOUNT_ID, CLIENT_ID, REALM, TARGET));
+        mCache.saveCredential(newAccessToken(HOME_ACCOUNT_ID, CLIENT_ID, REALM2, "mail.read"));
+        mCache.saveCredential(newRefreshToken(HOME_ACCOUNT_ID, CLIENT_ID, TARGET));
+
+        // RTs carry no realm, and are not constrained by it
+        final List<Credential> credentials = mCache.getCredentialsFilteredBy(
+                HOME_ACCOUNT_ID,
+                ENVIRONMENT,
+                null,
+                CLIENT_ID,
+                REALM,
+                null,
+                null
+        );
+        assertEquals(2, credentials.size());
+    }
+
+    @Test
+    public void getCredentialsForQueriesMatchesSingleQueries() {
+        mCache.saveCredential(newAccessToken(HOME_ACCOUNT_ID, CLIENT_ID, REALM, TARGET));
+        mCache.saveCredential(newAccessToken(HOME_ACCOUNT_ID, CLIENT_ID, REALM2, "mail.read"));
+        mCache.saveCredential(newRefreshToken(HOME_ACCOUNT_ID, CLIENT_ID, TARGET));
+        mCache.saveCredential(newIdToken(HOME_ACCOUNT_ID, CLIENT_ID, REALM));
+
+        final List<CredentialQuery> queries = new ArrayList<>();
+        queries.add(new CredentialQuery(HOME_ACCOUNT_ID, ENVIRONMENT, CredentialType.AccessToken, CLIENT_ID, REALM, "user.read", null));
+        queries.add(new CredentialQuery(HOME_ACCOUNT_ID, ENVIRONMENT, CredentialType.RefreshToken, CLIENT_ID, null, null, null));
+        queries.add(new CredentialQuery(HOME_ACCOUNT_ID, ENVIRONMENT, CredentialType.IdToken, CLIENT_ID, REALM, null, null));
+        queries.add(new CredentialQuery("other", ENVIRONMENT, null, null, null, null, null));
+
+        final List<List<Credential>> buckets = mCache.getCredentialsForQueries(queries);
+        assertEquals(queries.size(), buckets.size());
+
+        for (int ii = 0; ii < queries.size(); ii++) {
+            final CredentialQuery query = queries.get(ii);
+            final List<Credential> expected = mCache.getCredentialsFilteredBy(
+                    query.getHomeAccountId(),
+                    query.getEnvironment(),
+                    query.getCredentialType(),
+                    query.getClientId(),
+                    query.getRealm(),
+                    query.getTarget(),
+                    query.getAuthScheme()
+            );
+            // Rows may come back in another order
+            assertEquals(expected.size(), buckets.get(ii).size());
+            assertEquals(new HashSet<>(expected), new HashSet<>(buckets.get(ii)));
+        }
+
+        assertEquals(1, buckets.get(0).size());
+        assertTrue(buckets.get(3).isEmpty());
+    }
+
+    @Test
+    public void removeCredential() {
+        final AccessTokenRecord accessToken = newAccessToken(HOME_ACCOUNT_ID, CLIENT_ID, REALM, TARGET);
+        mCache.saveCredential(accessToken);
+
+        assertTrue(mCache.removeCredential(accessToken));
+        assertFalse(mCache.removeCredential(accessToken));
+        assertNull(mCache.getCredential(mDelegate.generateCacheKey(accessToken)));
+        assertTrue(mCache.getCredentialsFilteredBy(null, null, null, null, null, "user.read", null).isEmpty());
+    }
+
+    @Test
+    public void batchedWritesAreVisibleBeforeCommit() {
+        mCache.beginBatch();
+        try {
+            mCache.saveAccount(newAccount(HOME_ACCOUNT_ID, REALM));
+            mCache.saveCredential(newRefreshToken(HOME_ACCOUNT_ID, CLIENT_ID, TARGET));
+            assertEquals(1, mCache.getCredentials().size());
+        } finally {
+            mCache.commitBatch();
+        }
+
+        assertEquals(1, mCache.getAccounts().size());
+        assertEquals(1, mCache.getCredentials().size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void commitWithoutBeginThrows() {
+        mCache.commitBatch();
+    }
+
+    @Test
+    public void migrateFromSharedPreferences() {
+        final SharedPreferencesAccountCredentialCache source = new SharedPreferencesAccountCredentialCache(
+                mDelegate,
+                new SharedPreferencesFileManager(
+                        mContext,
+                        TEST_SHARED_PREFERENCES_NAME,
+                        new StorageHelper(mContext)
+                )
+        );
+
+        try {
+            source.saveAccount(newAccount(HOME_ACCOUNT_ID, REALM));
+            source.saveCredential(newAccessToken(HOME_ACCOUNT_ID, CLIENT_ID, REALM, TARGET));
+            source.saveCredential(newRefreshToken(HOME_ACCOUNT_ID, CLIENT_ID, TARGET));
+            source.saveCredential(newIdToken(HOME_ACCOUNT_ID, CLIENT_ID, REALM));
+
+            assertEquals(4, mCache.migrateFrom(source));
+            assertEquals(source.getAccounts(), mCache.getAccounts());
+            assertEquals(
+                    source.getCredentialsFilteredBy(HOME_ACCOUNT_ID, ENVIRONMENT, CredentialType.AccessToken, CLIENT_ID, REALM, TARGET, null),
+                    mCache.getCredentialsFilteredBy(HOME_ACCOUNT_ID, ENVIRONMENT, CredentialType.AccessToken, CLIENT_ID, REALM, TARGET, null)
+            );
+            assertEquals(3, mCache.getCredentials().size());
+        } finally {
+            source.clearAll();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common;
+
+import android.content.Context;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.microsoft.identity.common.internal.cache.HomeAccountIdKeyFilter;
+import com.microsoft.identity.common.internal.cache.SharedPreferencesFileManager;
+import com.microsoft.identity.common.internal.cache.ShardedSharedPreferencesFileManager;
+import com.microsoft.identity.common.internal.util.Predicate;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class ShardedSharedPreferencesFileManagerTest {
+
+    private static final String TEST_FILE_NAME = "com.microsoft.test.sharded";
+
+    private static final int ACCOUNT_COUNT = 20;
+
+    private static final int MAX_SHARD_COUNT = 8;
+
+    private static final Predicate<String> ALL_KEYS = new Predicate<String>() {
+        @Override
+        public boolean test(final String key) {
+            return true;
+        }
+    };
+
+    private Context mContext;
+    private List<String> mKeys;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mKeys = new ArrayList<>();
+
+        for (int ii = 0; ii < ACCOUNT_COUNT; ii++) {
+            final String homeAccountId = UUID.randomUUID() + "." + UUID.randomUUID();
+            mKeys.add(homeAccountId + "-login.microsoftonline.com-common");
+            mKeys.add(homeAccountId + "-login.microsoftonline.com-refreshtoken-client-id--");
+        }
+
+        clearFiles();
+    }
+
+    @After
+    public void tearDown() {
+        clearFiles();
+        mContext = null;
+    }
+
+    @Test
+    public void testAccountQueryReadsOneShard() {
+        final ShardedSharedPreferencesFileManager fileManager =
+                new ShardedSharedPreferencesFileManager(mContext, TEST_FILE_NAME, null);
+
+        for (final String key : mKeys) {
+            fileManager.putString(key, key);
+        }
+
+        assertEquals(mKeys.size(), fileManager.getAll().size());
+
+        final String homeAccountId = mKeys.get(0).substring(0, mKeys.get(0).indexOf("-login"));
+        final Map<String, String> accountEntries = fileManager.getAll(
+                new HomeAccountIdKeyFilter(homeAccountId, ALL_KEYS)
+        );
+
+        // Both of the account's entries, but not the entries of every other account
+        assertTrue(accountEntries.containsKey(mKeys.get(0)));
+        assertTrue(accountEntries.containsKey(mKeys.get(1)));
+        assertTrue(accountEntries.size() < mKeys.size());
+    }
+
+    @Test
+    public void testMigratesUnshardedFile() {
+        final SharedPreferencesFileManager unshardedFile =
+                new SharedPreferencesFileManager(mContext, TEST_FILE_NAME, null);
+
+        for (final String key : mKeys) {
+            unshardedFile.putString(key, key);
+        }
+
+        final ShardedSharedPreferencesFileManager fileManager =
+                new ShardedSharedPreferencesFileManager(mContext, TEST_FILE_NAME, null);
+
+        for (final String key : mKeys) {
+            assertEquals(key, fileManager.getString(key));
+        }
+
+        assertEquals(mKeys.size(), fileManager.getAll().size());
+
+        // Only the shard count remains in the unsharded file
+        assertEquals(1, unshardedFile.getAll().size());
+    }
+
+    @Test
+    public void testSpreadsAccountsSharingAnObjectIdPrefix() {
+        final ShardedSharedPreferencesFileManager fileManager =
+                new ShardedSharedPreferencesFileManager(mContext, TEST_FILE_NAME, null);
+
+        // Consumer (MSA) object ids all start with 00000000-0000-0000-
+        for (int ii = 0; ii < ACCOUNT_COUNT; ii++) {
+            final String objectId = "00000000-0000-0000-" + UUID.randomUUID().toString().substring(19);
+            fileManager.putString(objectId + ".9188040d-6c67-4c5b-b112-36a304b66dad-login.live.com-", "value");
+        }
+
+        int usedShardCount = 0;
+
+        for (int ii = 0; ii < ShardedSharedPreferencesFileManager.DEFAULT_SHARD_COUNT; ii++) {
+            if (!getShard(ii).getAll().isEmpty()) {
+                usedShardCount++;
+            }
+        }
+
+        assertTrue(usedShardCount > 1);
+    }
+
+    @Test
+    public void testReshards() {
+        final ShardedSharedPreferencesFileManager fourShards =
+                new ShardedSharedPreferencesFileManager(mContext, TEST_FILE_NAME, null, 4);
+
+        for (final String key : mKeys) {
+            fourShards.putString(key, key);
+        }
+
+        final ShardedSharedPreferencesFileManager sevenShards =
+                new ShardedSharedPreferencesFileManager(mContext, TEST_FILE_NAME, null, 7);
+
+        for (final String key : mKeys) {
+            assertEquals(key, sevenShards.getString(key));
+        }
+
+        assertEquals(mKeys.size(), sevenShards.getAll().size());
+
+        final ShardedSharedPreferencesFileManager twoShards =
+                new ShardedSharedPreferencesFileManager(mContext, TEST_FILE_NAME, null, 2);
+
+        assertEquals(mKeys.size(), twoShards.getAll().size());
+
+        // Shards beyond the shard count are emptied
+        for (int ii = 2; ii < 7; ii++) {
+            assertTrue(getShard(ii).getAll().isEmpty());
+        }
+    }
+
+    private SharedPreferencesFileManager getShard(final int index) {
+        return new SharedPreferencesFileManager(
+                mContext,
+                TEST_FILE_NAME + ShardedSharedPreferencesFileManager.SHARD_FILE_SUFFIX + index,
+                null
+        );
+    }
+
+    private void clearFiles() {
+        new SharedPreferencesFileManager(mContext, TEST_FILE_NAME, null).clear();
+
+        for (int ii = 0; ii < MAX_SHARD_COUNT; ii++) {
+            getShard(ii).clear();
+        }
+    }
+}
@@ -22,9 +22,13 @@
 // THE SOFTWARE.
 package com.microsoft.identity.common;
 
+import android.content.Context;
+import android.content.SharedPreferences;
+
 import androidx.test.InstrumentationRegistry;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 
+import com.google.gson.Gson;
 import com.microsoft.identity.common.internal.cache.BrokerApplicationMetadata;
 import com.microsoft.identity.common.internal.cache.IBrokerApplicationMetadataCache;
 import com.microsoft.identity.common.internal.cache.SharedPreferencesBrokerApplicationMetadataCache;
@@ -39,13 +43,19 @@ import java.util.List;
 import java.util.Random;
 import java.util.UUID;
 
+import static junit.framework.TestCase.assertFalse;
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 @RunWith(AndroidJUnit4.class)
 public class SharedPreferencesBrokerApplicationMetadataCacheTest {
 
+    private static final String DEFAULT_APP_METADATA_CACHE_NAME = "com.microsoft.identity.app-meta-cache";
+
+    private static final String KEY_CACHE_LIST = "app-meta-cache";
+
     private IBrokerApplicationMetadataCache mMetadataCache;
 
     @Before
@@ -185,6 +195,108 @@ public class SharedPreferencesBrokerApplicationMetadataCacheTest {
         );
     }
 
+    @Test
+    public void testLookupsFollowInsertAndRemove() {
+        final BrokerApplicationMetadata fociMetadata = generateRandomMetadata();
+        final BrokerApplicationMetadata nonFociMetadata = generateRandomMetadata();
+        nonFociMetadata.setFoci(null);
+
+        mMetadataCache.insert(fociMetadata);
+        mMetadataCache.insert(nonFociMetadata);
+
+        assertEquals(
+                fociMetadata,
+                mMetadataCache.getMetadata(
+                        fociMetadata.getClientId(),
+                        fociMetadata.getEnvironment(),
+                        fociMetadata.getUid()
+                )
+        );
+        assertEquals(2, mMetadataCache.getAllClientIds().size());
+        assertTrue(mMetadataCache.getAllFociClientIds().contains(fociMetadata.getClientId()));
+        assertTrue(mMetadataCache.getAllNonFociClientIds().contains(nonFociMetadata.getClientId()));
+
+        mMetadataCache.remove(fociMetadata);
+
+        assertNull(
+                mMetadataCache.getMetadata(
+                        fociMetadata.getClientId(),
+                        fociMetadata.getEnvironment(),
+                        fociMetadata.getUid()
+                )
+        );
+        assertEquals(1, mMetadataCache.getAllClientIds().size());
+        assertTrue(mMetadataCache.getAllFociClientIds().isEmpty());
+        assertTrue(mMetadataCache.getAllFociApplicationMetadata().isEmpty());
+    }
+
+    @Test
+    public void testInsertIsVisibleToOtherInstances() {
+        final BrokerApplicationMetadata randomMetadata = generateRandomMetadata();
+
+        final SharedPreferencesBrokerApplicationMetadataCache otherCache =
+                new SharedPreferencesBrokerApplicationMetadataCache(
+                        InstrumentationRegistry.getContext()
+                );
+
+        otherCache.insert(randomMetadata);
+        otherCache.flush();
+
+        assertEquals(
+                1,
+                mMetadataCache.getAll().size()
+        );
+
+        assertEquals(
+                1,
+                getSharedPreferences().getAll().size()
+        );
+    }
+
+    @Test
+    public void testMigratesSingleListEntry() {
+        final int expected = 10;
+        final List<BrokerApplicationMetadata> metadataList = new ArrayList<>();
+
+        for (int ii = 0; ii < expected; ii++) {
+            metadataList.add(generateRandomMetadata());
+        }
+
+        // Persist the metadata as a single JSON list, as SharedPreferencesSimpleCacheImpl did
+        final SharedPreferences sharedPreferences = getSharedPreferences();
+        sharedPreferences
+                .edit()
+                .putString(KEY_CACHE_LIST, new Gson().toJson(metadataList))
+                .commit();
+
+        final List<BrokerApplicationMetadata> cacheContents = mMetadataCache.getAll();
+
+        assertEquals(
+                expected,
+                cacheContents.size()
+        );
+
+        assertTrue(
+                cacheContents.containsAll(metadataList)
+        );
+
+        assertFalse(
+                sharedPreferences.contains(KEY_CACHE_LIST)
+        );
+
+        assertEquals(
+                expected,
+                sharedPreferences.getAll().size()
+        );
+    }
+
+    private static SharedPreferences getSharedPreferences() {
+        return InstrumentationRegistry.getContext().getSharedPreferences(
+                DEFAULT_APP_METADATA_CACHE_NAME,
+                Context.MODE_PRIVATE
+        );
+    }
+
     private static BrokerApplicationMetadata generateRandomMetadata() {
         final BrokerApplicationMetadata randomMetadata = new BrokerApplicationMetadata();
 
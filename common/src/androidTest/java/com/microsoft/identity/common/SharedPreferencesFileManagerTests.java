@@ -22,12 +22,19 @@
 // THE SOFTWARE.
 package com.microsoft.identity.common;
 
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Base64;
+
 import androidx.test.InstrumentationRegistry;
 
 import com.microsoft.identity.common.adal.internal.AndroidSecretKeyEnabledHelper;
 import com.microsoft.identity.common.adal.internal.cache.StorageHelper;
+import com.microsoft.identity.common.internal.cache.CachedSharedPreferencesFileManager;
 import com.microsoft.identity.common.internal.cache.ISharedPreferencesFileManager;
+import com.microsoft.identity.common.internal.cache.LogStructuredFileManager;
 import com.microsoft.identity.common.internal.cache.SharedPreferencesFileManager;
+import com.microsoft.identity.common.internal.util.Predicate;
 
 import org.junit.After;
 import org.junit.Before;
@@ -36,9 +43,11 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
 import java.util.Arrays;
+import java.util.Map;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 
 @RunWith(Parameterized.class)
@@ -61,6 +70,18 @@ public class SharedPreferencesFileManagerTests extends AndroidSecretKeyEnabledHe
                         InstrumentationRegistry.getTargetContext(),
                         sTEST_SHARED_PREFS_NAME,
                         new StorageHelper(InstrumentationRegistry.getTargetContext())
+                ),
+                new CachedSharedPreferencesFileManager(
+                        new SharedPreferencesFileManager(
+                                InstrumentationRegistry.getTargetContext(),
+                                sTEST_SHARED_PREFS_NAME,
+                                new StorageHelper(InstrumentationRegistry.getTargetContext())
+                        )
+                ),
+                LogStructuredFileManager.open(
+                        InstrumentationRegistry.getTargetContext(),
+                        sTEST_SHARED_PREFS_NAME,
+                        new StorageHelper(InstrumentationRegistry.getTargetContext())
                 )
         });
     }
@@ -113,6 +134,86 @@ public class SharedPreferencesFileManagerTests extends AndroidSecretKeyEnabledHe
         assertEquals(expectedSize, mSharedPreferencesFileManager.getAll().size());
     }
 
+    @Test
+    public void testGetAllWithKeyFilter() {
+        String[] testKeys = {"account-1", "credential-2", "account-3"};
+        String[] testValues = {"a", "b", "c"};
+
+        for (int ii = 0; ii < testKeys.length; ii++) {
+            mSharedPreferencesFileManager.putString(testKeys[ii], testValues[ii]);
+        }
+
+        final Map<String, String> accounts = mSharedPreferencesFileManager.getAll(new Predicate<String>() {
+            @Override
+            public boolean test(final String key) {
+                return key.startsWith("account-");
+            }
+        });
+
+        final int expectedSize = 2;
+        assertEquals(expectedSize, accounts.size());
+        assertEquals("a", accounts.get("account-1"));
+        assertEquals("c", accounts.get("account-3"));
+    }
+
+    @Test
+    public void testGetAllLarge() {
+        final int entryCount = 1000;
+
+        mSharedPreferencesFileManager.beginBatch();
+        for (int ii = 0; ii < entryCount; ii++) {
+            mSharedPreferencesFileManager.putString("key-" + ii, "value-" + ii);
+        }
+        mSharedPreferencesFileManager.commitBatch();
+
+        final Map<String, String> entries = mSharedPreferencesFileManager.getAll();
+        assertEquals(entryCount, entries.size());
+
+        for (int ii = 0; ii < entryCount; ii++) {
+            assertEquals("value-" + ii, entries.get("key-" + ii));
+        }
+    }
+
+    @Test
+    public void testGetAllLargeRemovesUndecryptableValues() {
+        final int entryCount = 200;
+        final Context context = InstrumentationRegistry.getTargetContext();
+        final ISharedPreferencesFileManager encryptedFileManager = new SharedPreferencesFileManager(
+                context,
+                sTEST_SHARED_PREFS_NAME,
+                new StorageHelper(context)
+        );
+
+        for (int ii = 0; ii < entryCount; ii++) {
+            encryptedFileManager.putString("key-" + ii, "value-" + ii);
+        }
+
+        // Tamper with every tenth value, so that it fails its integrity check
+        final SharedPreferences sharedPreferences =
+                context.getSharedPreferences(sTEST_SHARED_PREFS_NAME, Context.MODE_PRIVATE);
+        final SharedPreferences.Editor editor = sharedPreferences.edit();
+        for (int ii = 0; ii < entryCount; ii += 10) {
+            final String encrypted = sharedPreferences.getString("key-" + ii, null);
+            final byte[] bytes = Base64.decode(encrypted.substring(3), Base64.DEFAULT);
+            final int randomlyChosenByte = 15;
+            bytes[randomlyChosenByte]++;
+            editor.putString("key-" + ii, encrypted.substring(0, 3) + Base64.encodeToString(bytes, Base64.NO_WRAP));
+        }
+        editor.commit();
+
+        final Map<String, String> entries = encryptedFileManager.getAll();
+        assertEquals(entryCount - entryCount / 10, entries.size());
+
+        for (int ii = 0; ii < entryCount; ii++) {
+            if (ii % 10 == 0) {
+                assertFalse(entries.containsKey("key-" + ii));
+                assertFalse(encryptedFileManager.contains("key-" + ii));
+            } else {
+                assertEquals("value-" + ii, entries.get("key-" + ii));
+            }
+        }
+    }
+
     @Test
     public void testContainsTrue() {
         mSharedPreferencesFileManager.putString(sTEST_KEY, sTEST_VALUE);
@@ -149,4 +250,69 @@ public class SharedPreferencesFileManagerTests extends AndroidSecretKeyEnabledHe
         // Verify that it is now empty
         assertEquals(0, mSharedPreferencesFileManager.getAll().size());
     }
+
+    @Test
+    public void testBatchedWritesAreVisibleBeforeCommit() {
+        mSharedPreferencesFileManager.putString("existing", "value");
+
+        mSharedPreferencesFileManager.beginBatch();
+        mSharedPreferencesFileManager.putString(sTEST_KEY, sTEST_VALUE);
+        mSharedPreferencesFileManager.remove("existing");
+
+        assertEquals(sTEST_VALUE, mSharedPreferencesFileManager.getString(sTEST_KEY));
+        assertNull(mSharedPreferencesFileManager.getString("existing"));
+        assertEquals(1, mSharedPreferencesFileManager.getAll().size());
+
+        mSharedPreferencesFileManager.commitBatch();
+
+        assertEquals(sTEST_VALUE, mSharedPreferencesFileManager.getString(sTEST_KEY));
+        assertFalse(mSharedPreferencesFileManager.contains("existing"));
+        assertEquals(1, mSharedPreferencesFileManager.getAll().size());
+    }
+
+    @Test
+    public void testNestedBatchesCommitOnOutermost() {
+        mSharedPreferencesFileManager.beginBatch();
+        mSharedPreferencesFileManager.beginBatch();
+        mSharedPreferencesFileManager.putString(sTEST_KEY, sTEST_VALUE);
+        mSharedPreferencesFileManager.commitBatch();
+        mSharedPreferencesFileManager.clear();
+        mSharedPreferencesFileManager.putString("1", "a");
+        mSharedPreferencesFileManager.commitBatch();
+
+        assertFalse(mSharedPreferencesFileManager.contains(sTEST_KEY));
+        assertEquals("a", mSharedPreferencesFileManager.getString("1"));
+        assertEquals(1, mSharedPreferencesFileManager.getAll().size());
+    }
+
+    @Test
+    public void testBatchIsConfinedToItsThread() throws InterruptedException {
+        mSharedPreferencesFileManager.beginBatch();
+        mSharedPreferencesFileManager.putString(sTEST_KEY, sTEST_VALUE);
+
+        final String[] observedValue = new String[1];
+        final Thread otherThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                observedValue[0] = mSharedPreferencesFileManager.getString(sTEST_KEY);
+                mSharedPreferencesFileManager.putString("other", "value");
+            }
+        });
+        otherThread.start();
+        otherThread.join();
+
+        // The other thread neither sees the batch nor has its write held by it
+        assertNull(observedValue[0]);
+        assertEquals("value", mSharedPreferencesFileManager.getString("other"));
+
+        mSharedPreferencesFileManager.commitBatch();
+
+        assertEquals(sTEST_VALUE, mSharedPreferencesFileManager.getString(sTEST_KEY));
+        assertEquals(2, mSharedPreferencesFileManager.getAll().size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCommitWithoutBeginThrows() {
+        mSharedPreferencesFileManager.commitBatch();
+    }
 }
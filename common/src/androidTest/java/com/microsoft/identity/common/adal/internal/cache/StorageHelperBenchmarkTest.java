@@ -0,0 +1,130 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common.adal.internal.cache;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.microsoft.identity.common.adal.internal.AndroidSecretKeyEnabledHelper;
+import com.microsoft.identity.common.adal.internal.AuthenticationSettings;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Locale;
+
+import static androidx.test.InstrumentationRegistry.getInstrumentation;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures the cost of encrypting and decrypting one cache entry with encode version E1
+ * (AES/CBC + HMAC-SHA256) and with E2 (AES/GCM). Ignored by default; results go to logcat.
+ */
+@Ignore("Benchmark; run manually.")
+@RunWith(AndroidJUnit4.class)
+public class StorageHelperBenchmarkTest extends AndroidSecretKeyEnabledHelper {
+
+    private static final String TAG = StorageHelperBenchmarkTest.class.getSimpleName();
+
+    private static final int WARM_UP_ITERATIONS = 200;
+    private static final int MEASURED_ITERATIONS = 2000;
+    private static final double NANOS_PER_MICRO = 1000d;
+
+    /**
+     * Roughly the size of a serialized access token cache entry.
+     */
+    private static final int CLEAR_TEXT_LENGTH = 2048;
+
+    private StorageHelper mStorageHelper;
+    private String mClearText;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        final Context context = getInstrumentation().getTargetContext();
+        mStorageHelper = new StorageHelper(context);
+
+        final StringBuilder builder = new StringBuilder(CLEAR_TEXT_LENGTH);
+        while (builder.length() < CLEAR_TEXT_LENGTH) {
+            builder.append("{\"secret\":\"eyJ0eXAiOiJKV1QiLCJhbGciOiJSUzI1NiJ9\"}");
+        }
+        mClearText = builder.substring(0, CLEAR_TEXT_LENGTH);
+    }
+
+    @After
+    public void tearDown() {
+        AuthenticationSettings.INSTANCE.setUseGcmEncryption(false);
+    }
+
+    @Test
+    public void compareCbcHmacAndGcm() throws GeneralSecurityException, IOException {
+        AuthenticationSettings.INSTANCE.setUseGcmEncryption(false);
+        report("E1");
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            AuthenticationSettings.INSTANCE.setUseGcmEncryption(true);
+            report("E2");
+        }
+    }
+
+    private void report(final String label) throws GeneralSecurityException, IOException {
+        final String encrypted = mStorageHelper.encrypt(mClearText);
+        assertEquals(label, encrypted.substring(1, 3));
+        assertEquals(mClearText, mStorageHelper.decrypt(encrypted));
+
+        for (int ii = 0; ii < WARM_UP_ITERATIONS; ii++) {
+            mStorageHelper.decrypt(mStorageHelper.encrypt(mClearText));
+        }
+
+        final long encryptStart = System.nanoTime();
+        for (int ii = 0; ii < MEASURED_ITERATIONS; ii++) {
+            mStorageHelper.encrypt(mClearText);
+        }
+        final long encryptNanos = System.nanoTime() - encryptStart;
+
+        final long decryptStart = System.nanoTime();
+        for (int ii = 0; ii < MEASURED_ITERATIONS; ii++) {
+            mStorageHelper.decrypt(encrypted);
+        }
+        final long decryptNanos = System.nanoTime() - decryptStart;
+
+        Log.i(TAG, String.format(
+                Locale.US,
+                "%s size=%5d chars  encrypt=%7.2f us/op  decrypt=%7.2f us/op",
+                label,
+                encrypted.length(),
+                encryptNanos / NANOS_PER_MICRO / MEASURED_ITERATIONS,
+                decryptNanos / NANOS_PER_MICRO / MEASURED_ITERATIONS
+        ));
+    }
+}
@@ -47,6 +47,9 @@ import java.security.GeneralSecurityException;
 import java.security.KeyStore;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -60,6 +63,7 @@ import static androidx.test.InstrumentationRegistry.getInstrumentation;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(AndroidJUnit4.class)
@@ -81,6 +85,7 @@ public class StorageHelperTests extends AndroidSecretKeyEnabledHelper {
         storageHelper.resetKeyPairFromAndroidKeyStore();
 
         AuthenticationSettings.INSTANCE.clearSecretKeysForTestCases();
+        AuthenticationSettings.INSTANCE.setUseGcmEncryption(false);
     }
 
     @Test
@@ -210,6 +215,83 @@ public class StorageHelperTests extends AndroidSecretKeyEnabledHelper {
         });
     }
 
+    @Test
+    public void testEncryptDecryptConcurrently() throws Exception {
+        final Context context = getInstrumentation().getTargetContext();
+        final StorageHelper storageHelper = new StorageHelper(context);
+        final int threadCount = 8;
+        final int iterations = 50;
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        final Thread[] threads = new Thread[threadCount];
+
+        for (int i = 0; i < threadCount; i++) {
+            final String clearText = "SomeValue-" + i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < iterations; j++) {
+                            // Ciphers are reused per thread; interleave a failed decryption
+                            final String encrypted = storageHelper.encrypt(clearText + j);
+                            try {
+                                storageHelper.decrypt(encrypted.substring(0, encrypted.length() - 4) + "AAAA");
+                                failures.add(new AssertionError("Tampered blob was decrypted"));
+                            } catch (final GeneralSecurityException expected) {
+                                // Expected
+                            }
+                            assertEquals(clearText + j, storageHelper.decrypt(encrypted));
+                        }
+                    } catch (final Throwable t) {
+                        failures.add(t);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(failures.toString(), failures.isEmpty());
+    }
+
+    @Test
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    public void testEncryptDecryptGcm() throws GeneralSecurityException, IOException {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+            Log.v(TAG, "AES/GCM is not supported on this API level.");
+            return;
+        }
+
+        final Context context = getInstrumentation().getTargetContext();
+        final StorageHelper storageHelper = new StorageHelper(context);
+        final String clearText = "SomeValue1234";
+        final String cbcEncrypted = storageHelper.encrypt(clearText);
+        assertTrue("E1 is written by default", cbcEncrypted.startsWith("cE1"));
+
+        AuthenticationSettings.INSTANCE.setUseGcmEncryption(true);
+        final String gcmEncrypted = storageHelper.encrypt(clearText);
+        assertTrue("E2 is written once enabled", gcmEncrypted.startsWith("cE2"));
+        assertEquals(storageHelper.getEncryptionType(cbcEncrypted), storageHelper.getEncryptionType(gcmEncrypted));
+        assertEquals(clearText, storageHelper.decrypt(gcmEncrypted));
+        assertEquals(clearText, storageHelper.decrypt(cbcEncrypted));
+
+        AuthenticationSettings.INSTANCE.setUseGcmEncryption(false);
+        assertEquals(clearText, storageHelper.decrypt(gcmEncrypted));
+
+        final byte[] bytes = Base64.decode(gcmEncrypted.substring(3), Base64.DEFAULT);
+        final int randomlyChosenByte = 20;
+        bytes[randomlyChosenByte]++;
+        final String modified = "cE2" + new String(Base64.encode(bytes, Base64.NO_WRAP), "UTF-8");
+        assertThrowsException(GeneralSecurityException.class, null, new ThrowableRunnable() {
+            @Override
+            public void run() throws Exception {
+                storageHelper.decrypt(modified);
+            }
+        });
+    }
+
     /**
      * Make sure that version sets correctly. It needs to be tested at different
      * emulator(18 and before 18).
@@ -300,6 +382,34 @@ public class StorageHelperTests extends AndroidSecretKeyEnabledHelper {
         assertTrue("Key info is same", key.toString().equals(key2.toString()));
     }
 
+    @TargetApi(MIN_SDK_VERSION)
+    @Test
+    public void testKeyStoreEncryptedKeySharedAcrossInstances() throws IOException, GeneralSecurityException {
+        if (Build.VERSION.SDK_INT < MIN_SDK_VERSION) {
+            return;
+        }
+
+        final Context context = getInstrumentation().getTargetContext();
+        final StorageHelper storageHelper = new StorageHelper(context);
+        final StorageHelper otherStorageHelper = new StorageHelper(context);
+
+        final SecretKey key = storageHelper.loadSecretKeyForEncryption();
+        assertNotNull(key);
+        assertTrue("Key is shared", key == otherStorageHelper.loadSecretKeyForEncryption());
+
+        // Text encrypted by one instance can be decrypted by the other
+        final String encrypted = storageHelper.encrypt("SomeValue1234");
+        assertEquals("SomeValue1234", otherStorageHelper.decrypt(encrypted));
+
+        // Once the key file is deleted, every instance generates and uses the new key
+        storageHelper.deleteKeyFile();
+        assertNull("HMAC key is dropped", StorageKeyManager.getInstance().getHMacKey(key));
+        final SecretKey newKey = otherStorageHelper.loadSecretKeyForEncryption();
+        assertFalse("Key is regenerated", Arrays.equals(key.getEncoded(), newKey.getEncoded()));
+        assertTrue("New key is shared", newKey == storageHelper.loadSecretKeyForEncryption());
+        assertEquals("SomeValue1234", otherStorageHelper.decrypt(storageHelper.encrypt("SomeValue1234")));
+    }
+
     private void setMockBrokerSecretKeys() throws NoSuchAlgorithmException, UnsupportedEncodingException, InvalidKeySpecException {
         final Map<String, byte[]> secretKeys = new HashMap<String, byte[]>(2);
         final SecretKeyFactory keyFactory = SecretKeyFactory.getInstance("PBEWithSHA256And256BitAES-CBC-BC");
@@ -62,6 +62,8 @@ public enum AuthenticationSettings {
 
     private boolean mEnableHardwareAcceleration = true;
 
+    private volatile boolean mUseGcmEncryption = false;
+
     /**
      * SharedPreference package name to load this file from different context.
      */
@@ -391,5 +393,28 @@ public enum AuthenticationSettings {
     public boolean getDisableWebViewHardwareAcceleration() {
         return mEnableHardwareAcceleration;
     }
-}
 
+    /**
+     * Method to enable/disable writing of AES/GCM (encode version E2) encrypted cache entries by
+     * {@link com.microsoft.identity.common.adal.internal.cache.StorageHelper}. Entries in either
+     * format can always be read. Disabled by default, as entries written in the new format cannot
+     * be read by earlier library versions. Has no effect below API 19.
+     *
+     * @param useGcmEncryption true to write new entries with AES/GCM, false to keep writing
+     *                         AES/CBC + HMAC-SHA256 (encode version E1).
+     * @see #getUseGcmEncryption()
+     */
+    public void setUseGcmEncryption(final boolean useGcmEncryption) {
+        mUseGcmEncryption = useGcmEncryption;
+    }
+
+    /**
+     * Method to check whether new cache entries are encrypted with AES/GCM.
+     *
+     * @return true if AES/GCM encryption is enabled, false otherwise.
+     * @see #setUseGcmEncryption(boolean)
+     */
+    public boolean getUseGcmEncryption() {
+        return mUseGcmEncryption;
+    }
+}
@@ -73,6 +73,7 @@ import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
 import javax.crypto.Mac;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import javax.security.auth.x500.X500Principal;
@@ -122,6 +123,11 @@ public class StorageHelper implements IStorageHelper {
 
     private static final String HMAC_ALGORITHM = "HmacSHA256";
 
+    /**
+     * Authenticated encryption, used by {@link #ENCODE_VERSION_GCM} blobs.
+     */
+    private static final String GCM_CIPHER_ALGORITHM = "AES/GCM/NoPadding";
+
     private static final String CURRENT_ACTIVE_BROKER = "current_active_broker";
 
     private static final int KEY_SIZE = 256;
@@ -150,13 +156,43 @@ public class StorageHelper implements IStorageHelper {
 
     /**
      * To keep track of encoding version and related flags.
+     * <p>
+     * E1 blobs are {@code keyVersion-encryptedData-iv-macDigest}, encrypted with
+     * {@link #CIPHER_ALGORITHM} and signed with {@link #HMAC_ALGORITHM}.
      */
     private static final String ENCODE_VERSION = "E1";
 
+    /**
+     * E2 blobs are {@code keyVersion-iv-encryptedData-tag}, encrypted and authenticated in a single
+     * pass with {@link #GCM_CIPHER_ALGORITHM}. The keyVersion is authenticated as associated data.
+     * Written only if enabled via {@link AuthenticationSettings#setUseGcmEncryption(boolean)}.
+     */
+    private static final String ENCODE_VERSION_GCM = "E2";
+
+    /**
+     * IV length recommended for GCM (96 bits).
+     */
+    public static final int GCM_IV_LENGTH = 12;
+
+    /**
+     * GCM authentication tag length, in bits.
+     */
+    private static final int GCM_TAG_LENGTH_BITS = 128;
+
+    private static final int GCM_TAG_LENGTH = GCM_TAG_LENGTH_BITS / Byte.SIZE;
+
     private static final int KEY_FILE_SIZE = 1024;
 
     private static final String ANDROID_KEY_STORE = "AndroidKeyStore";
 
+    /**
+     * Per-thread {@link Cipher} and {@link Mac} instances. Both are re-initialized before each
+     * use, so they may be reused across calls (but not across threads).
+     */
+    private static final ThreadLocal<Cipher> sCiphers = new ThreadLocal<>();
+    private static final ThreadLocal<Cipher> sGcmCiphers = new ThreadLocal<>();
+    private static final ThreadLocal<Mac> sMacs = new ThreadLocal<>();
+
     /**
      * Type of Secret key to be used.
      */
@@ -187,7 +223,11 @@ public class StorageHelper implements IStorageHelper {
     private String mBlobVersion;
     private SecretKey mEncryptionKey = null;
     private SecretKey mEncryptionHMACKey = null;
-    private SecretKey mCachedKeyStoreEncryptedKey = null;
+
+    /**
+     * The {@link StorageKeyManager} generation at which {@link #mEncryptionKey} was loaded.
+     */
+    private int mEncryptionKeyGeneration;
 
     /**
      * Constructor for {@link StorageHelper}.
@@ -233,28 +273,36 @@ public class StorageHelper implements IStorageHelper {
         Logger.verbose(TAG + methodName, "Starting encryption");
 
         // load key for encryption if not loaded
-        mEncryptionKey = loadSecretKeyForEncryption();
-        mEncryptionHMACKey = getHMacKey(mEncryptionKey);
+        final int keyGeneration = StorageKeyManager.getInstance().getGeneration();
+        final SecretKey encryptionKey = loadSecretKeyForEncryption();
+        final SecretKey encryptionHMACKey = getHMacKey(encryptionKey);
+        mEncryptionKey = encryptionKey;
+        mEncryptionHMACKey = encryptionHMACKey;
+        mEncryptionKeyGeneration = keyGeneration;
 
         Logger.verbose(TAG + methodName, "Encrypt version:" + mBlobVersion);
         final byte[] blobVersion = mBlobVersion.getBytes(AuthenticationConstants.ENCODING_UTF8);
         final byte[] bytes = clearText.getBytes(AuthenticationConstants.ENCODING_UTF8);
 
+        if (shouldEncryptWithGcm()) {
+            return encryptWithGcm(encryptionKey, blobVersion, bytes);
+        }
+
         // IV: Initialization vector that is needed to start CBC
         final byte[] iv = new byte[DATA_KEY_LENGTH];
         mRandom.nextBytes(iv);
         final IvParameterSpec ivSpec = new IvParameterSpec(iv);
 
         // Set to encrypt mode
-        final Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM);
-        final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
-        cipher.init(Cipher.ENCRYPT_MODE, mEncryptionKey, ivSpec);
+        final Cipher cipher = getCipher();
+        final Mac mac = getMac();
+        cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, ivSpec);
 
         final byte[] encrypted = cipher.doFinal(bytes);
 
         // Mac output to sign encryptedData+IV. Keyversion is not included
         // in the digest. It defines what to use for Mac Key.
-        mac.init(mEncryptionHMACKey);
+        mac.init(encryptionHMACKey);
         mac.update(blobVersion);
         mac.update(encrypted);
         mac.update(iv);
@@ -276,7 +324,54 @@ public class StorageHelper implements IStorageHelper {
                 Base64.NO_WRAP), AuthenticationConstants.ENCODING_UTF8);
         Logger.verbose(TAG + methodName, "Finished encryption");
 
-        return getEncodeVersionLengthPrefix() + ENCODE_VERSION + encryptedText;
+        return getEncodeVersionLengthPrefix(ENCODE_VERSION) + ENCODE_VERSION + encryptedText;
+    }
+
+    /**
+     * Tests if new blobs should be written as {@link #ENCODE_VERSION_GCM}. GCMParameterSpec
+     * requires API 19; older devices keep writing {@link #ENCODE_VERSION}.
+     */
+    private static boolean shouldEncryptWithGcm() {
+        return AuthenticationSettings.INSTANCE.getUseGcmEncryption()
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private String encryptWithGcm(@NonNull final SecretKey encryptionKey,
+                                  @NonNull final byte[] blobVersion,
+                                  @NonNull final byte[] bytes)
+            throws GeneralSecurityException, IOException {
+        final String methodName = ":encryptWithGcm";
+
+        final byte[] iv = new byte[GCM_IV_LENGTH];
+        mRandom.nextBytes(iv);
+
+        final Cipher cipher = getGcmCipher();
+        cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new GCMParameterSpec(GCM_TAG_LENGTH_BITS, iv));
+        cipher.updateAAD(blobVersion);
+
+        // Init array to store blobVersion, iv, encrypted data + tag
+        final byte[] blobVerAndIVAndEncryptedData =
+                new byte[blobVersion.length + iv.length + cipher.getOutputSize(bytes.length)];
+        System.arraycopy(blobVersion, 0, blobVerAndIVAndEncryptedData, 0, blobVersion.length);
+        System.arraycopy(iv, 0, blobVerAndIVAndEncryptedData, blobVersion.length, iv.length);
+        final int encryptedLength = cipher.doFinal(
+                bytes,
+                0,
+                bytes.length,
+                blobVerAndIVAndEncryptedData,
+                blobVersion.length + iv.length
+        );
+
+        if (blobVersion.length + iv.length + encryptedLength != blobVerAndIVAndEncryptedData.length) {
+            throw new IOException("Unexpected output length for encryption.");
+        }
+
+        final String encryptedText = new String(Base64.encode(blobVerAndIVAndEncryptedData,
+                Base64.NO_WRAP), AuthenticationConstants.ENCODING_UTF8);
+        Logger.verbose(TAG + methodName, "Finished encryption");
+
+        return getEncodeVersionLengthPrefix(ENCODE_VERSION_GCM) + ENCODE_VERSION_GCM + encryptedText;
     }
 
     @Override
@@ -311,6 +406,7 @@ public class StorageHelper implements IStorageHelper {
         final List<KeyType> keysForDecryptionType = getKeysForDecryptionType(encryptedBlob, packageName);
 
         final byte[] bytes = getByteArrayFromEncryptedBlob(encryptedBlob);
+        final boolean isGcmBlob = ENCODE_VERSION_GCM.equals(getEncodeVersion(encryptedBlob));
         for (final KeyType keyType : keysForDecryptionType) {
             try {
                 final SecretKey secretKey = loadSecretKey(keyType);
@@ -318,7 +414,9 @@ public class StorageHelper implements IStorageHelper {
                     continue;
                 }
 
-                String result = decryptWithSecretKey(bytes, secretKey);
+                String result = isGcmBlob
+                        ? decryptWithGcm(bytes, secretKey)
+                        : decryptWithSecretKey(bytes, secretKey);
                 Logger.verbose(TAG + methodName, "Finished decryption with keyType:" + keyType.name());
                 return result;
             } catch (GeneralSecurityException | IOException e) {
@@ -458,8 +556,8 @@ public class StorageHelper implements IStorageHelper {
         // Calculate digest again and compare to the appended value
         // incoming message: version+encryptedData+IV+Digest
         // Digest of EncryptedData+IV excluding key Version and digest
-        final Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM);
-        final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+        final Cipher cipher = getCipher();
+        final Mac mac = getMac();
         mac.init(hmacKey);
         mac.update(bytes, 0, macIndex);
         final byte[] macDigest = mac.doFinal();
@@ -490,6 +588,44 @@ public class StorageHelper implements IStorageHelper {
         return decrypted;
     }
 
+    @NonNull
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private String decryptWithGcm(@NonNull final byte[] bytes,
+                                  @NonNull final SecretKey secretKey)
+            throws GeneralSecurityException, IOException {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+            throw new GeneralSecurityException("AES/GCM blobs require API 19.");
+        }
+
+        // byte input array: keyVersion-iv-encryptedData-tag
+        final int encryptedIndex = KEY_VERSION_BLOB_LENGTH + GCM_IV_LENGTH;
+        final int encryptedLength = bytes.length - encryptedIndex;
+
+        if (encryptedLength < GCM_TAG_LENGTH) {
+            throw new IOException("Invalid byte array input for decryption.");
+        }
+
+        // The tag is verified (over the keyVersion, too) before any plaintext is returned
+        final Cipher cipher = getGcmCipher();
+        cipher.init(
+                Cipher.DECRYPT_MODE,
+                secretKey,
+                new GCMParameterSpec(GCM_TAG_LENGTH_BITS, bytes, KEY_VERSION_BLOB_LENGTH, GCM_IV_LENGTH)
+        );
+        cipher.updateAAD(bytes, 0, KEY_VERSION_BLOB_LENGTH);
+
+        return new String(
+                cipher.doFinal(bytes, encryptedIndex, encryptedLength),
+                AuthenticationConstants.ENCODING_UTF8
+        );
+    }
+
+    @NonNull
+    private static String getEncodeVersion(@NonNull final String encryptedBlob) {
+        final int encodeVersionLength = encryptedBlob.charAt(0) - 'a';
+        return encryptedBlob.substring(1, 1 + encodeVersionLength);
+    }
+
     private void validateEncodeVersion(String encryptedBlob, int encodeVersionLength) {
         if (encodeVersionLength <= 0) {
             throw new IllegalArgumentException(
@@ -500,11 +636,14 @@ public class StorageHelper implements IStorageHelper {
             );
         }
 
-        if (!encryptedBlob.substring(1, 1 + encodeVersionLength).equals(ENCODE_VERSION)) {
+        final String encodeVersion = encryptedBlob.substring(1, 1 + encodeVersionLength);
+
+        if (!encodeVersion.equals(ENCODE_VERSION) && !encodeVersion.equals(ENCODE_VERSION_GCM)) {
             throw new IllegalArgumentException(
                     String.format(
-                            "Unsupported encode version received. Encode version supported is: '%s'",
-                            ENCODE_VERSION
+                            "Unsupported encode version received. Encode versions supported are: '%s', '%s'",
+                            ENCODE_VERSION,
+                            ENCODE_VERSION_GCM
                     )
             );
         }
@@ -517,7 +656,9 @@ public class StorageHelper implements IStorageHelper {
 
         // Loading key only once for performance. If API is upgraded, it will
         // restart the device anyway. It will load the correct key for new API.
-        if (mEncryptionKey != null && mEncryptionHMACKey != null) {
+        // Keys are reloaded if they have been invalidated since.
+        if (mEncryptionKey != null && mEncryptionHMACKey != null
+                && mEncryptionKeyGeneration == StorageKeyManager.getInstance().getGeneration()) {
             return mEncryptionKey;
         }
 
@@ -585,13 +726,13 @@ public class StorageHelper implements IStorageHelper {
 
         switch (keyType) {
             case LEGACY_AUTHENTICATOR_APP_KEY:
-                return getSecretKey(AuthenticationSettings.INSTANCE.getBrokerSecretKeys().get(AZURE_AUTHENTICATOR_APP_PACKAGE_NAME));
+                return getSecretKey(keyType, AuthenticationSettings.INSTANCE.getBrokerSecretKeys().get(AZURE_AUTHENTICATOR_APP_PACKAGE_NAME));
 
             case LEGACY_COMPANY_PORTAL_KEY:
-                return getSecretKey(AuthenticationSettings.INSTANCE.getBrokerSecretKeys().get(COMPANY_PORTAL_APP_PACKAGE_NAME));
+                return getSecretKey(keyType, AuthenticationSettings.INSTANCE.getBrokerSecretKeys().get(COMPANY_PORTAL_APP_PACKAGE_NAME));
 
             case ADAL_USER_DEFINED_KEY:
-                return getSecretKey(AuthenticationSettings.INSTANCE.getSecretKeyData());
+                return getSecretKey(keyType, AuthenticationSettings.INSTANCE.getSecretKeyData());
 
             case KEYSTORE_ENCRYPTED_KEY:
                 return loadKeyStoreEncryptedKey();
@@ -618,15 +759,16 @@ public class StorageHelper implements IStorageHelper {
      */
     public synchronized SecretKey generateKeyStoreEncryptedKey() throws GeneralSecurityException, IOException {
         final String methodName = ":generateKeyStoreEncryptedKey";
-        mCachedKeyStoreEncryptedKey = generateSecretKey();
-        saveKeyStoreEncryptedKey(mCachedKeyStoreEncryptedKey);
+        final SecretKey key = generateSecretKey();
+        saveKeyStoreEncryptedKey(key);
+        StorageKeyManager.getInstance().putKeyStoreEncryptedKey(getPackageName(), key);
 
         logEvent(methodName,
                 AuthenticationConstants.TelemetryEvents.KEY_CREATED,
                 false,
                 "New key is generated.");
 
-        return mCachedKeyStoreEncryptedKey;
+        return key;
     }
 
     /**
@@ -640,24 +782,35 @@ public class StorageHelper implements IStorageHelper {
     private synchronized SecretKey loadKeyStoreEncryptedKey()
             throws GeneralSecurityException, IOException {
         final String methodName = ":loadKeyStoreEncryptedKey";
-        if (mCachedKeyStoreEncryptedKey != null) {
-            return mCachedKeyStoreEncryptedKey;
-        }
+        final StorageKeyManager keyManager = StorageKeyManager.getInstance();
+        final String packageName = getPackageName();
 
-        try {
-            mCachedKeyStoreEncryptedKey = getUnwrappedSecretKey();
-        } catch (final GeneralSecurityException | IOException e) {
-            // Reset KeyPair info so that new request will generate correct KeyPairs.
-            // All tokens with previous SecretKey are not possible to decrypt.
-            Logger.error(TAG + methodName, ErrorStrings.ANDROIDKEYSTORE_FAILED, e);
-            mKeyPair = null;
-            mCachedKeyStoreEncryptedKey = null;
-            deleteKeyFile();
-            resetKeyPairFromAndroidKeyStore();
-            throw e;
-        }
+        // Held while loading, so that other instances wait for this key rather than unwrap it too
+        synchronized (keyManager) {
+            final SecretKey cachedKey = keyManager.getKeyStoreEncryptedKey(packageName);
+            if (cachedKey != null) {
+                return cachedKey;
+            }
 
-        return mCachedKeyStoreEncryptedKey;
+            final SecretKey key;
+            try {
+                key = getUnwrappedSecretKey();
+            } catch (final GeneralSecurityException | IOException e) {
+                // Reset KeyPair info so that new request will generate correct KeyPairs.
+                // All tokens with previous SecretKey are not possible to decrypt.
+                Logger.error(TAG + methodName, ErrorStrings.ANDROIDKEYSTORE_FAILED, e);
+                mKeyPair = null;
+                deleteKeyFile();
+                resetKeyPairFromAndroidKeyStore();
+                throw e;
+            }
+
+            if (key != null) {
+                keyManager.putKeyStoreEncryptedKey(packageName, key);
+            }
+
+            return key;
+        }
     }
 
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
@@ -770,26 +923,87 @@ public class StorageHelper implements IStorageHelper {
         return new SecretKeySpec(rawBytes, KEYSPEC_ALGORITHM);
     }
 
+    private static SecretKey getSecretKey(@NonNull final KeyType keyType, final byte[] rawBytes) {
+        if (rawBytes == null) {
+            throw new IllegalArgumentException("rawBytes");
+        }
+
+        return StorageKeyManager.getInstance().getRawKey(keyType, rawBytes, KEYSPEC_ALGORITHM);
+    }
+
     /**
-     * Derive HMAC key from given key.
+     * Derive HMAC key from given key. Derived keys are memoized by the {@link StorageKeyManager},
+     * so the digest is computed once per key until keys are invalidated.
      *
      * @param key SecretKey from which HMAC key has to be derived
      * @return SecretKey
      * @throws NoSuchAlgorithmException
      */
-    private SecretKey getHMacKey(final SecretKey key) throws NoSuchAlgorithmException {
+    private static SecretKey getHMacKey(final SecretKey key) throws NoSuchAlgorithmException {
+        final StorageKeyManager keyManager = StorageKeyManager.getInstance();
+        final int keyGeneration = keyManager.getGeneration();
+        final SecretKey cachedHMacKey = keyManager.getHMacKey(key);
+        if (cachedHMacKey != null) {
+            return cachedHMacKey;
+        }
+
         // Some keys may not produce byte[] with getEncoded
         final byte[] encodedKey = key.getEncoded();
         if (encodedKey != null) {
             final MessageDigest digester = MessageDigest.getInstance(HMAC_KEY_HASH_ALGORITHM);
-            return new SecretKeySpec(digester.digest(encodedKey), KEYSPEC_ALGORITHM);
+            final SecretKey hmacKey = new SecretKeySpec(digester.digest(encodedKey), KEYSPEC_ALGORITHM);
+
+            keyManager.putHMacKey(key, hmacKey, keyGeneration);
+            return hmacKey;
         }
 
         return key;
     }
 
-    private char getEncodeVersionLengthPrefix() {
-        return (char) ('a' + ENCODE_VERSION.length());
+    /**
+     * Gets this thread's {@link Cipher} for {@link #CIPHER_ALGORITHM}, creating it if needed.
+     * Callers must init it before use.
+     */
+    private static Cipher getCipher() throws GeneralSecurityException {
+        Cipher cipher = sCiphers.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(CIPHER_ALGORITHM);
+            sCiphers.set(cipher);
+        }
+
+        return cipher;
+    }
+
+    /**
+     * Gets this thread's {@link Cipher} for {@link #GCM_CIPHER_ALGORITHM}, creating it if needed.
+     * Callers must init it before use.
+     */
+    private static Cipher getGcmCipher() throws GeneralSecurityException {
+        Cipher cipher = sGcmCiphers.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(GCM_CIPHER_ALGORITHM);
+            sGcmCiphers.set(cipher);
+        }
+
+        return cipher;
+    }
+
+    /**
+     * Gets this thread's {@link Mac} for {@link #HMAC_ALGORITHM}, creating it if needed.
+     * Callers must init it before use.
+     */
+    private static Mac getMac() throws GeneralSecurityException {
+        Mac mac = sMacs.get();
+        if (mac == null) {
+            mac = Mac.getInstance(HMAC_ALGORITHM);
+            sMacs.set(mac);
+        }
+
+        return mac;
+    }
+
+    private static char getEncodeVersionLengthPrefix(@NonNull final String encodeVersion) {
+        return (char) ('a' + encodeVersion.length());
     }
 
     private void assertHMac(final byte[] digest, final int start, final int end, final byte[] calculated)
@@ -860,6 +1074,8 @@ public class StorageHelper implements IStorageHelper {
                 Logger.verbose(TAG + methodName, "Delete KeyFile failed");
             }
         }
+
+        StorageKeyManager.getInstance().invalidate(getPackageName());
     }
 
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
@@ -868,6 +1084,9 @@ public class StorageHelper implements IStorageHelper {
         final KeyStore keyStore = KeyStore.getInstance(ANDROID_KEY_STORE);
         keyStore.load(null);
         keyStore.deleteEntry(KEY_STORE_CERT_ALIAS);
+
+        // Keys wrapped with the deleted key pair can no longer be loaded
+        StorageKeyManager.getInstance().invalidateAll();
     }
 
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
@@ -0,0 +1,214 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common.adal.internal.cache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.microsoft.identity.common.internal.logging.Logger;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Process-wide holder of the {@link SecretKey}s used by {@link StorageHelper}.
+ * <p>
+ * Loading the keystore-encrypted key means reading the key file and unwrapping it through
+ * AndroidKeyStore, which is slow; every {@link StorageHelper} in the process shares the keys held
+ * here, so this happens once per key file rather than once per instance. Keys are dropped when
+ * the key file is deleted or the AndroidKeyStore key pair is reset, along with the HMAC keys
+ * derived from them, and each invalidation advances a generation number, which instances use to
+ * discard keys they hold themselves.
+ * <p>
+ * Callers which load a key and then publish it should hold this object's lock across both steps,
+ * so that concurrent callers wait for the key rather than loading it again.
+ */
+final class StorageKeyManager {
+
+    private static final String TAG = StorageKeyManager.class.getSimpleName();
+
+    private static final StorageKeyManager INSTANCE = new StorageKeyManager();
+
+    /**
+     * The maximum number of derived HMAC keys to retain. Only a handful of keys are ever in use.
+     */
+    private static final int MAX_HMAC_KEYS = 8;
+
+    /**
+     * Keystore-encrypted keys, by the package name under whose directory the key file lives.
+     */
+    private final Map<String, SecretKey> mKeyStoreEncryptedKeys = new HashMap<>();
+
+    /**
+     * Keys built from raw bytes supplied via AuthenticationSettings, with a copy of those bytes.
+     */
+    private final Map<StorageHelper.KeyType, SecretKey> mRawKeys = new EnumMap<>(StorageHelper.KeyType.class);
+    private final Map<StorageHelper.KeyType, byte[]> mRawKeyBytes = new EnumMap<>(StorageHelper.KeyType.class);
+
+    /**
+     * HMAC keys, by the key from which they were derived. Read without locking, since every
+     * encryption and decryption looks one up.
+     */
+    private final Map<SecretKey, SecretKey> mHMacKeys = new ConcurrentHashMap<>();
+
+    private volatile int mGeneration;
+
+    private StorageKeyManager() {
+    }
+
+    /**
+     * Gets the process-wide instance.
+     *
+     * @return The StorageKeyManager.
+     */
+    @NonNull
+    static StorageKeyManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the generation number, which advances on every invalidation.
+     *
+     * @return The current generation.
+     */
+    int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Gets the keystore-encrypted key loaded for the supplied package, if any.
+     *
+     * @param packageName The package name under whose directory the key file lives.
+     * @return The key, or null if it has not been loaded (or was invalidated).
+     */
+    @Nullable
+    synchronized SecretKey getKeyStoreEncryptedKey(@NonNull final String packageName) {
+        return mKeyStoreEncryptedKeys.get(packageName);
+    }
+
+    /**
+     * Publishes the keystore-encrypted key for the supplied package.
+     *
+     * @param packageName The package name under whose directory the key file lives.
+     * @param key         The unwrapped key.
+     */
+    synchronized void putKeyStoreEncryptedKey(@NonNull final String packageName,
+                                              @NonNull final SecretKey key) {
+        mKeyStoreEncryptedKeys.put(packageName, key);
+    }
+
+    /**
+     * Gets the key built from the supplied raw bytes, building and retaining it if the bytes
+     * differ from those last seen for the supplied type.
+     *
+     * @param keyType          The type of key.
+     * @param rawBytes         The raw key bytes.
+     * @param keySpecAlgorithm The algorithm of the key.
+     * @return The key.
+     */
+    @NonNull
+    synchronized SecretKey getRawKey(@NonNull final StorageHelper.KeyType keyType,
+                                     @NonNull final byte[] rawBytes,
+                                     @NonNull final String keySpecAlgorithm) {
+        final SecretKey cachedKey = mRawKeys.get(keyType);
+
+        if (cachedKey != null && Arrays.equals(mRawKeyBytes.get(keyType), rawBytes)) {
+            return cachedKey;
+        }
+
+        final SecretKey key = new SecretKeySpec(rawBytes, keySpecAlgorithm);
+        mRawKeys.put(keyType, key);
+        mRawKeyBytes.put(keyType, rawBytes.clone());
+
+        return key;
+    }
+
+    /**
+     * Gets the HMAC key derived from the supplied key, if it has been retained.
+     *
+     * @param key The key from which the HMAC key was derived.
+     * @return The HMAC key, or null if it has not been derived (or was invalidated).
+     */
+    @Nullable
+    SecretKey getHMacKey(@NonNull final SecretKey key) {
+        return mHMacKeys.get(key);
+    }
+
+    /**
+     * Retains the HMAC key derived from the supplied key, unless keys have been invalidated since
+     * the supplied generation.
+     *
+     * @param key        The key from which the HMAC key was derived.
+     * @param hmacKey    The derived HMAC key.
+     * @param generation The generation read before the key was derived.
+     */
+    synchronized void putHMacKey(@NonNull final SecretKey key,
+                                 @NonNull final SecretKey hmacKey,
+                                 final int generation) {
+        if (generation != mGeneration) {
+            return;
+        }
+
+        if (mHMacKeys.size() >= MAX_HMAC_KEYS) {
+            // Keys are only replaced on reset; start over rather than track recency
+            mHMacKeys.clear();
+        }
+
+        mHMacKeys.put(key, hmacKey);
+    }
+
+    /**
+     * Drops the keystore-encrypted key for the supplied package, e.g. after its key file has been
+     * deleted.
+     *
+     * @param packageName The package name under whose directory the key file lives.
+     */
+    synchronized void invalidate(@NonNull final String packageName) {
+        Logger.verbose(TAG + ":invalidate", "Dropping keystore-encrypted key.");
+        final SecretKey key = mKeyStoreEncryptedKeys.remove(packageName);
+
+        if (key != null) {
+            mHMacKeys.remove(key);
+        }
+
+        mGeneration++;
+    }
+
+    /**
+     * Drops every key, e.g. after the AndroidKeyStore key pair has been reset.
+     */
+    synchronized void invalidateAll() {
+        Logger.verbose(TAG + ":invalidateAll", "Dropping all keys.");
+        mKeyStoreEncryptedKeys.clear();
+        mRawKeys.clear();
+        mRawKeyBytes.clear();
+        mHMacKeys.clear();
+        mGeneration++;
+    }
+}
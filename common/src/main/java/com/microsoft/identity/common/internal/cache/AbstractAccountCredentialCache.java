@@ -27,18 +27,19 @@ import androidx.annotation.Nullable;
 
 import com.microsoft.identity.common.adal.internal.util.StringExtensions;
 import com.microsoft.identity.common.internal.dto.AccessTokenRecord;
+import com.microsoft.identity.common.internal.dto.AccountCredentialBase;
 import com.microsoft.identity.common.internal.dto.AccountRecord;
 import com.microsoft.identity.common.internal.dto.Credential;
 import com.microsoft.identity.common.internal.dto.CredentialType;
 import com.microsoft.identity.common.internal.dto.IdTokenRecord;
 import com.microsoft.identity.common.internal.dto.RefreshTokenRecord;
+import com.microsoft.identity.common.internal.dto.ScopeSet;
 import com.microsoft.identity.common.internal.logging.Logger;
+import com.microsoft.identity.common.internal.util.Predicate;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.Locale;
-import java.util.Set;
 
 import static com.microsoft.identity.common.internal.controllers.BaseController.DEFAULT_SCOPES;
 
@@ -94,21 +95,7 @@ public abstract class AbstractAccountCredentialCache implements IAccountCredenti
         final List<AccountRecord> matchingAccounts = new ArrayList<>();
 
         for (final AccountRecord account : allAccounts) {
-            boolean matches = true;
-
-            if (mustMatchOnHomeAccountId) {
-                matches = homeAccountId.equalsIgnoreCase(account.getHomeAccountId());
-            }
-
-            if (mustMatchOnEnvironment) {
-                matches = matches && environment.equalsIgnoreCase(account.getEnvironment());
-            }
-
-            if (mustMatchOnRealm) {
-                matches = matches && realm.equalsIgnoreCase(account.getRealm());
-            }
-
-            if (matches) {
+            if (accountMatches(account, homeAccountId, environment, realm)) {
                 matchingAccounts.add(account);
             }
         }
@@ -156,58 +143,221 @@ public abstract class AbstractAccountCredentialCache implements IAccountCredenti
 
         final List<Credential> matchingCredentials = new ArrayList<>();
 
-        for (final Credential credential : allCredentials) {
-            boolean matches = true;
+        // Normalize the sought target once, rather than once per candidate
+        final ScopeSet soughtScopes = mustMatchOnTarget ? compileTarget(target, true) : null;
 
-            if (mustMatchOnHomeAccountId) {
-                matches = homeAccountId.equalsIgnoreCase(credential.getHomeAccountId());
+        for (final Credential credential : allCredentials) {
+            if (credentialMatches(
+                    credential,
+                    homeAccountId,
+                    environment,
+                    credentialType,
+                    clientId,
+                    realm,
+                    soughtScopes,
+                    authScheme)) {
+                matchingCredentials.add(credential);
             }
+        }
 
-            if (mustMatchOnEnvironment) {
-                matches = matches && environment.equalsIgnoreCase(credential.getEnvironment());
-            }
+        return matchingCredentials;
+    }
 
-            if (mustMatchOnCredentialType) {
-                matches = matches && credentialType.name().equalsIgnoreCase(credential.getCredentialType());
-            }
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation loads every Credential once and partitions them. Subclasses with direct
+     * access to storage keys should override it to rule out entries by key first.
+     */
+    @Override
+    @NonNull
+    public List<List<Credential>> getCredentialsForQueries(@NonNull final List<CredentialQuery> queries) {
+        return partitionCredentials(queries, getCredentials());
+    }
 
-            if (mustMatchOnClientId) {
-                matches = matches && clientId.equalsIgnoreCase(credential.getClientId());
-            }
+    /**
+     * Partitions the supplied Credentials into one bucket per query, as applied by
+     * {@link #getCredentialsFilteredByInternal}.
+     *
+     * @param queries        The criteria of each bucket.
+     * @param allCredentials The Credentials to partition.
+     * @return One List of matching Credentials per query, in the order of the queries.
+     */
+    @NonNull
+    protected List<List<Credential>> partitionCredentials(@NonNull final List<CredentialQuery> queries,
+                                                          @NonNull final List<Credential> allCredentials) {
+        final List<List<Credential>> buckets = new ArrayList<>(queries.size());
 
-            if (mustMatchOnRealm && credential instanceof AccessTokenRecord) {
-                final AccessTokenRecord accessToken = (AccessTokenRecord) credential;
-                matches = matches && realm.equalsIgnoreCase(accessToken.getRealm());
+        // Normalize each sought target once, rather than once per candidate
+        final ScopeSet[] soughtScopes = new ScopeSet[queries.size()];
+
+        for (int ii = 0; ii < queries.size(); ii++) {
+            final String target = queries.get(ii).getTarget();
+            soughtScopes[ii] = StringExtensions.isNullOrBlank(target) ? null : compileTarget(target, true);
+            buckets.add(new ArrayList<Credential>());
+        }
+
+        for (final Credential credential : allCredentials) {
+            for (int ii = 0; ii < queries.size(); ii++) {
+                final CredentialQuery query = queries.get(ii);
+
+                if (credentialMatches(
+                        credential,
+                        query.getHomeAccountId(),
+                        query.getEnvironment(),
+                        query.getCredentialType(),
+                        query.getClientId(),
+                        query.getRealm(),
+                        soughtScopes[ii],
+                        query.getAuthScheme())) {
+                    buckets.get(ii).add(credential);
+                }
             }
+        }
+
+        return buckets;
+    }
 
-            if (mustMatchOnRealm && credential instanceof IdTokenRecord) {
-                final IdTokenRecord idToken = (IdTokenRecord) credential;
-                matches = matches && realm.equalsIgnoreCase(idToken.getRealm());
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation loads every Account and Credential and removes those which match inside
+     * a single batch. Subclasses with direct access to storage keys should override it.
+     */
+    @Override
+    @NonNull
+    public List<AccountCredentialBase> removeAll(@NonNull final Predicate<AccountCredentialBase> predicate) {
+        final List<AccountCredentialBase> removed = new ArrayList<>();
+
+        beginBatch();
+
+        try {
+            for (final Credential credential : getCredentials()) {
+                if (predicate.test(credential) && removeCredential(credential)) {
+                    removed.add(credential);
+                }
             }
 
-            if (mustMatchOnTarget) {
-                if (credential instanceof AccessTokenRecord) {
-                    final AccessTokenRecord accessToken = (AccessTokenRecord) credential;
-                    matches = matches && targetsIntersect(target, accessToken.getTarget(), true);
-                } else if (credential instanceof RefreshTokenRecord) {
-                    final RefreshTokenRecord refreshToken = (RefreshTokenRecord) credential;
-                    matches = matches && targetsIntersect(target, refreshToken.getTarget(), true);
-                } else {
-                    Logger.verbose(TAG, "Query specified target-match, but no target to match.");
+            for (final AccountRecord account : getAccounts()) {
+                if (predicate.test(account) && removeAccount(account)) {
+                    removed.add(account);
                 }
             }
+        } finally {
+            commitBatch();
+        }
+
+        Logger.info(TAG, "Removed [" + removed.size() + "] matching entries.");
+
+        return removed;
+    }
+
+    /**
+     * Tests the supplied Account against the supplied criteria, as applied by
+     * {@link #getAccountsFilteredByInternal(String, String, String, List)}. Null or blank
+     * criteria match any value.
+     *
+     * @param account       The Account to test.
+     * @param homeAccountId The home_account_id to match.
+     * @param environment   The environment to match.
+     * @param realm         The realm to match.
+     * @return True if the Account matches, false otherwise.
+     */
+    static boolean accountMatches(@NonNull final AccountRecord account,
+                                  @Nullable final String homeAccountId,
+                                  @Nullable final String environment,
+                                  @Nullable final String realm) {
+        boolean matches = true;
+
+        if (!StringExtensions.isNullOrBlank(homeAccountId)) {
+            matches = homeAccountId.equalsIgnoreCase(account.getHomeAccountId());
+        }
+
+        if (!StringExtensions.isNullOrBlank(environment)) {
+            matches = matches && environment.equalsIgnoreCase(account.getEnvironment());
+        }
+
+        if (!StringExtensions.isNullOrBlank(realm)) {
+            matches = matches && realm.equalsIgnoreCase(account.getRealm());
+        }
+
+        return matches;
+    }
+
+    /**
+     * Tests the supplied Credential against the supplied criteria, as applied by
+     * {@link #getCredentialsFilteredByInternal}. Null or blank criteria match any value.
+     *
+     * @param credential     The Credential to test.
+     * @param homeAccountId  The home_account_id to match.
+     * @param environment    The environment to match.
+     * @param credentialType The CredentialType to match.
+     * @param clientId       The clientId to match.
+     * @param realm          The realm to match; applies to AccessTokens and IdTokens only.
+     * @param soughtScopes   The scopes to match, as returned by
+     *                       {@link #compileTarget(String, boolean)}; applies to AccessTokens and
+     *                       RefreshTokens only.
+     * @param authScheme     The auth scheme to match; applies to
+     *                       {@link CredentialType#AccessToken_With_AuthScheme} only.
+     * @return True if the Credential matches, false otherwise.
+     */
+    static boolean credentialMatches(@NonNull final Credential credential,
+                                     @Nullable final String homeAccountId,
+                                     @Nullable final String environment,
+                                     @Nullable final CredentialType credentialType,
+                                     @Nullable final String clientId,
+                                     @Nullable final String realm,
+                                     @Nullable final ScopeSet soughtScopes,
+                                     @Nullable final String authScheme) {
+        final boolean mustMatchOnRealm = !StringExtensions.isNullOrBlank(realm);
+        boolean matches = true;
+
+        if (!StringExtensions.isNullOrBlank(homeAccountId)) {
+            matches = homeAccountId.equalsIgnoreCase(credential.getHomeAccountId());
+        }
+
+        if (!StringExtensions.isNullOrBlank(environment)) {
+            matches = matches && environment.equalsIgnoreCase(credential.getEnvironment());
+        }
+
+        if (null != credentialType) {
+            matches = matches && credentialType.name().equalsIgnoreCase(credential.getCredentialType());
+        }
+
+        if (!StringExtensions.isNullOrBlank(clientId)) {
+            matches = matches && clientId.equalsIgnoreCase(credential.getClientId());
+        }
+
+        if (mustMatchOnRealm && credential instanceof AccessTokenRecord) {
+            final AccessTokenRecord accessToken = (AccessTokenRecord) credential;
+            matches = matches && realm.equalsIgnoreCase(accessToken.getRealm());
+        }
 
-            if (mustMatchOnAuthScheme && credential instanceof AccessTokenRecord) {
+        if (mustMatchOnRealm && credential instanceof IdTokenRecord) {
+            final IdTokenRecord idToken = (IdTokenRecord) credential;
+            matches = matches && realm.equalsIgnoreCase(idToken.getRealm());
+        }
+
+        if (null != soughtScopes) {
+            if (credential instanceof AccessTokenRecord) {
                 final AccessTokenRecord accessToken = (AccessTokenRecord) credential;
-                matches = matches && authScheme.equalsIgnoreCase(accessToken.getAccessTokenType());
+                matches = matches && accessToken.getTargetScopeSet().containsAll(soughtScopes);
+            } else if (credential instanceof RefreshTokenRecord) {
+                final RefreshTokenRecord refreshToken = (RefreshTokenRecord) credential;
+                matches = matches && refreshToken.getTargetScopeSet().containsAll(soughtScopes);
+            } else {
+                Logger.verbose(TAG, "Query specified target-match, but no target to match.");
             }
+        }
 
-            if (matches) {
-                matchingCredentials.add(credential);
-            }
+        if (credentialType == CredentialType.AccessToken_With_AuthScheme
+                && !StringExtensions.isNullOrBlank(authScheme)
+                && credential instanceof AccessTokenRecord) {
+            final AccessTokenRecord accessToken = (AccessTokenRecord) credential;
+            matches = matches && authScheme.equalsIgnoreCase(accessToken.getAccessTokenType());
         }
 
-        return matchingCredentials;
+        return matches;
     }
 
     /**
@@ -226,28 +376,28 @@ public abstract class AbstractAccountCredentialCache implements IAccountCredenti
         // The credentialTarget must contain all of the scopes in the targetToMatch
         // It may contain more, but it must contain minimally those
         // Matching is case-insensitive
-        final String splitCriteria = "\\s+";
-        final String[] targetToMatchArray = targetToMatch.split(splitCriteria);
-        final String[] credentialTargetArray = credentialTarget.split(splitCriteria);
-
-        // Declare Sets to contain these scopes
-        final Set<String> soughtTargetSet = new HashSet<>();
-        final Set<String> credentialTargetSet = new HashSet<>();
-
-        // Add the array values to these sets, lowercasing them
-        for (final String target : targetToMatchArray) {
-            soughtTargetSet.add(target.toLowerCase(Locale.ROOT));
-        }
-
-        for (final String target : credentialTargetArray) {
-            credentialTargetSet.add(target.toLowerCase(Locale.ROOT));
-        }
-
-        if (omitDefaultScopes) {
-            soughtTargetSet.removeAll(DEFAULT_SCOPES);
-            credentialTargetSet.removeAll(DEFAULT_SCOPES);
-        }
+        return ScopeSet.of(credentialTarget).containsAll(
+                compileTarget(targetToMatch, omitDefaultScopes)
+        );
+    }
 
-        return credentialTargetSet.containsAll(soughtTargetSet);
+    /**
+     * Prepares a sought target for repeated use with {@link ScopeSet#containsAll(ScopeSet)}.
+     * <p>
+     * Default scopes need only be dropped from the sought side: once they are absent from it,
+     * their presence in a credential's target cannot affect containment.
+     *
+     * @param targetToMatch     The target value[s] our cache-query is looking for.
+     * @param omitDefaultScopes True if MSAL's default scopes should be omitted from this lookup.
+     *                          False otherwise.
+     * @return The {@link ScopeSet} of sought scopes.
+     */
+    @NonNull
+    static ScopeSet compileTarget(@NonNull final String targetToMatch,
+                                  final boolean omitDefaultScopes) {
+        return ScopeSet.compile(
+                targetToMatch,
+                omitDefaultScopes ? DEFAULT_SCOPES : Collections.<String>emptySet()
+        );
     }
 }
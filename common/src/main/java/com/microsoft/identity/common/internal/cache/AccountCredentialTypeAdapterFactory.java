@@ -0,0 +1,286 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common.internal.cache;
+
+import androidx.annotation.NonNull;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.microsoft.identity.common.WarningType;
+import com.microsoft.identity.common.internal.dto.AccountCredentialBase;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Creates streaming {@link TypeAdapter}s for {@link AccountCredentialBase} subclasses.
+ * <p>
+ * On read, fields declared with {@link SerializedName} are filled and every other member is
+ * collected into {@link AccountCredentialBase#getAdditionalFields()}, in a single pass over the
+ * {@link JsonReader}. On write, additional fields are written after (or in place of, if they
+ * share a name) the declared fields. The output is that of Gson's reflective adapter followed by
+ * merging in the additional fields, which is what {@link CacheKeyValueDelegate} used to do by
+ * building and re-parsing intermediate JSON trees.
+ * <p>
+ * The fields of each class are inspected once and cached.
+ */
+final class AccountCredentialTypeAdapterFactory implements TypeAdapterFactory {
+
+    /**
+     * The serialized fields of a class, as discovered by reflection.
+     */
+    static final class SerializedFields {
+
+        /**
+         * Serialized name to Field, in the order in which Gson's reflective adapter writes them.
+         */
+        private final Map<String, Field> mFields;
+
+        /**
+         * Alternate serialized name to Field.
+         */
+        private final Map<String, Field> mAlternateFields;
+
+        SerializedFields(@NonNull final Map<String, Field> fields,
+                         @NonNull final Map<String, Field> alternateFields) {
+            mFields = Collections.unmodifiableMap(fields);
+            mAlternateFields = Collections.unmodifiableMap(alternateFields);
+        }
+
+        /**
+         * Gets the serialized fields of the class, keyed by serialized name.
+         *
+         * @return The fields.
+         */
+        @NonNull
+        Map<String, Field> getFields() {
+            return mFields;
+        }
+    }
+
+    private static final ConcurrentMap<Class<?>, SerializedFields> sFieldsByClass = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the (cached) serialized fields of the supplied class.
+     *
+     * @param clazz The {@link AccountCredentialBase} subclass to inspect.
+     * @return Its serialized fields.
+     */
+    @NonNull
+    static SerializedFields getSerializedFields(@NonNull final Class<?> clazz) {
+        SerializedFields serializedFields = sFieldsByClass.get(clazz);
+
+        if (null == serializedFields) {
+            final Map<String, Field> fields = new LinkedHashMap<>();
+            final Map<String, Field> alternateFields = new HashMap<>();
+
+            for (final Field field : CacheKeyValueDelegate.getSerializedNameAnnotatedFields(
+                    CacheKeyValueDelegate.getFieldsUpTo(clazz, AccountCredentialBase.class))) {
+                final SerializedName serializedName = field.getAnnotation(SerializedName.class);
+                field.setAccessible(true);
+                fields.put(serializedName.value(), field);
+
+                for (final String alternate : serializedName.alternate()) {
+                    alternateFields.put(alternate, field);
+                }
+            }
+
+            serializedFields = new SerializedFields(fields, alternateFields);
+            sFieldsByClass.putIfAbsent(clazz, serializedFields);
+        }
+
+        return serializedFields;
+    }
+
+    @Override
+    @SuppressWarnings(WarningType.unchecked_warning)
+    public <T> TypeAdapter<T> create(final Gson gson, final TypeToken<T> type) {
+        final Class<? super T> rawType = type.getRawType();
+
+        if (!AccountCredentialBase.class.isAssignableFrom(rawType)) {
+            return null;
+        }
+
+        return (TypeAdapter<T>) new AccountCredentialTypeAdapter(
+                (Class<? extends AccountCredentialBase>) rawType,
+                getSerializedFields(rawType),
+                gson.getAdapter(String.class),
+                gson.getAdapter(JsonElement.class)
+        );
+    }
+
+    private static final class AccountCredentialTypeAdapter extends TypeAdapter<AccountCredentialBase> {
+
+        private final Class<? extends AccountCredentialBase> mClass;
+        private final SerializedFields mSerializedFields;
+        private final TypeAdapter<String> mStringAdapter;
+        private final TypeAdapter<JsonElement> mJsonElementAdapter;
+
+        AccountCredentialTypeAdapter(@NonNull final Class<? extends AccountCredentialBase> clazz,
+                                     @NonNull final SerializedFields serializedFields,
+                                     @NonNull final TypeAdapter<String> stringAdapter,
+                                     @NonNull final TypeAdapter<JsonElement> jsonElementAdapter) {
+            mClass = clazz;
+            mSerializedFields = serializedFields;
+            mStringAdapter = stringAdapter;
+            mJsonElementAdapter = jsonElementAdapter;
+        }
+
+        @Override
+        public void write(final JsonWriter out, final AccountCredentialBase value) throws IOException {
+            if (null == value) {
+                out.nullValue();
+                return;
+            }
+
+            final Map<String, JsonElement> additionalFields = value.getAdditionalFields();
+
+            out.beginObject();
+
+            try {
+                for (final Map.Entry<String, Field> field : mSerializedFields.mFields.entrySet()) {
+                    final String name = field.getKey();
+                    final Object fieldValue = field.getValue().get(value);
+
+                    if (null == fieldValue) {
+                        continue;
+                    }
+
+                    out.name(name);
+
+                    // An additional field of the same name replaces the declared one
+                    if (null != additionalFields && additionalFields.containsKey(name)) {
+                        mJsonElementAdapter.write(out, additionalFields.get(name));
+                    } else {
+                        mStringAdapter.write(out, fieldValue.toString());
+                    }
+                }
+            } catch (final IllegalAccessException e) {
+                throw new IllegalStateException("Unable to read field of " + mClass.getSimpleName(), e);
+            }
+
+            if (null != additionalFields) {
+                for (final Map.Entry<String, JsonElement> additionalField : additionalFields.entrySet()) {
+                    final Field field = mSerializedFields.mFields.get(additionalField.getKey());
+
+                    if (null != field && wasWritten(field, value)) {
+                        continue;
+                    }
+
+                    out.name(additionalField.getKey());
+                    mJsonElementAdapter.write(out, additionalField.getValue());
+                }
+            }
+
+            out.endObject();
+        }
+
+        @Override
+        public AccountCredentialBase read(final JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            final AccountCredentialBase result = newInstance();
+            final Map<String, JsonElement> additionalFields = new HashMap<>();
+
+            in.beginObject();
+
+            try {
+                while (in.hasNext()) {
+                    final String name = in.nextName();
+                    final Field field = mSerializedFields.mFields.get(name);
+
+                    if (null != field) {
+                        field.set(result, mStringAdapter.read(in));
+                        continue;
+                    }
+
+                    final Field alternateField = mSerializedFields.mAlternateFields.get(name);
+
+                    if (null != alternateField) {
+                        // Only primary names are 'expected'; an alternate fills the field and,
+                        // as before, is also retained as an additional field
+                        final JsonElement element = mJsonElementAdapter.read(in);
+                        alternateField.set(result, toStringValue(name, element));
+                        additionalFields.put(name, element);
+                    } else {
+                        additionalFields.put(name, mJsonElementAdapter.read(in));
+                    }
+                }
+            } catch (final IllegalAccessException e) {
+                throw new IllegalStateException("Unable to set field of " + mClass.getSimpleName(), e);
+            }
+
+            in.endObject();
+
+            result.setAdditionalFields(additionalFields);
+
+            return result;
+        }
+
+        private static String toStringValue(@NonNull final String name, @NonNull final JsonElement element) {
+            if (element.isJsonNull()) {
+                return null;
+            } else if (element.isJsonPrimitive()) {
+                return element.getAsString();
+            }
+
+            throw new JsonSyntaxException("Expected a string for [" + name + "]");
+        }
+
+        private static boolean wasWritten(@NonNull final Field field,
+                                          @NonNull final AccountCredentialBase value) {
+            try {
+                return null != field.get(value);
+            } catch (final IllegalAccessException e) {
+                return false;
+            }
+        }
+
+        @NonNull
+        private AccountCredentialBase newInstance() {
+            try {
+                return mClass.newInstance();
+            } catch (final InstantiationException | IllegalAccessException e) {
+                throw new JsonParseException("Unable to instantiate " + mClass.getSimpleName(), e);
+            }
+        }
+    }
+}
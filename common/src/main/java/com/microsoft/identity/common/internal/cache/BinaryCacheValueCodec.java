@@ -0,0 +1,342 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common.internal.cache;
+
+import android.util.Base64;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.microsoft.identity.common.adal.internal.util.StringExtensions;
+import com.microsoft.identity.common.internal.dto.AccessTokenRecord;
+import com.microsoft.identity.common.internal.dto.AccountCredentialBase;
+import com.microsoft.identity.common.internal.dto.AccountRecord;
+import com.microsoft.identity.common.internal.dto.Credential;
+import com.microsoft.identity.common.internal.dto.RefreshTokenRecord;
+import com.microsoft.identity.common.internal.logging.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A compact binary encoding of {@link AccountCredentialBase} cache values, as an alternative to
+ * the JSON written by {@link CacheKeyValueDelegate}.
+ * <p>
+ * An encoded value is {@link #FORMAT_MARKER} followed by the Base64 of: a format version byte,
+ * a field count, then each field as a tag byte, a name (or, for well-known names, a one-byte
+ * id from {@link #FIELD_DICTIONARY}) and a value. Fields declared by the record's class are
+ * written as Strings; additional fields are written as Strings if they are JSON strings and as
+ * JSON text otherwise, so that they round-trip losslessly.
+ * <p>
+ * Since JSON values never begin with {@link #FORMAT_MARKER}, readers can tell the two formats
+ * apart and existing JSON entries remain readable.
+ */
+final class BinaryCacheValueCodec {
+
+    private static final String TAG = BinaryCacheValueCodec.class.getSimpleName();
+
+    /**
+     * Prefixes every binary-encoded value.
+     */
+    static final String FORMAT_MARKER = "#b";
+
+    /**
+     * The version of the encoding written by this class.
+     */
+    static final int FORMAT_VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName(StringExtensions.ENCODING_UTF8);
+
+    private static final int TAG_DICTIONARY_STRING = 1;
+    private static final int TAG_NAMED_STRING = 2;
+    private static final int TAG_NAMED_JSON = 3;
+
+    private static final int VARINT_PAYLOAD_BITS = 7;
+    private static final int VARINT_PAYLOAD_MASK = 0x7F;
+    private static final int VARINT_CONTINUATION_BIT = 0x80;
+    private static final int VARINT_MAX_SHIFT = 28;
+
+    private static final int INITIAL_BUFFER_BYTES = 256;
+
+    /**
+     * Well-known field names, encoded by their (1-based) position in this array. This list is
+     * part of the format: entries may be appended, but never removed or reordered.
+     */
+    private static final String[] FIELD_DICTIONARY = new String[]{
+            AccountRecord.SerializedNames.HOME_ACCOUNT_ID,
+            AccountRecord.SerializedNames.ENVIRONMENT,
+            AccountRecord.SerializedNames.REALM,
+            AccountRecord.SerializedNames.LOCAL_ACCOUNT_ID,
+            AccountRecord.SerializedNames.USERNAME,
+            AccountRecord.SerializedNames.AUTHORITY_TYPE,
+            AccountRecord.SerializedNames.ALTERNATIVE_ACCOUNT_ID,
+            AccountRecord.SerializedNames.FIRST_NAME,
+            AccountRecord.SerializedNames.FAMILY_NAME,
+            AccountRecord.SerializedNames.MIDDLE_NAME,
+            AccountRecord.SerializedNames.NAME,
+            AccountRecord.SerializedNames.AVATAR_URL,
+            AccountRecord.SerializedNames.CLIENT_INFO,
+            Credential.SerializedNames.CLIENT_ID,
+            Credential.SerializedNames.CREDENTIAL_TYPE,
+            Credential.SerializedNames.SECRET,
+            Credential.SerializedNames.CACHED_AT,
+            Credential.SerializedNames.EXPIRES_ON,
+            AccessTokenRecord.SerializedNames.TOKEN_TYPE,
+            AccessTokenRecord.SerializedNames.AUTHORITY,
+            AccessTokenRecord.SerializedNames.EXTENDED_EXPIRES_ON,
+            AccessTokenRecord.SerializedNames.TARGET,
+            AccessTokenRecord.SerializedNames.KID,
+            RefreshTokenRecord.SerializedNames.FAMILY_ID
+    };
+
+    private static final Map<String, Integer> FIELD_DICTIONARY_IDS = new HashMap<>();
+
+    static {
+        for (int ii = 0; ii < FIELD_DICTIONARY.length; ii++) {
+            FIELD_DICTIONARY_IDS.put(FIELD_DICTIONARY[ii], ii + 1);
+        }
+    }
+
+    private BinaryCacheValueCodec() {
+        // Utility class.
+    }
+
+    /**
+     * Tests whether the supplied cache value was written by this codec.
+     *
+     * @param cacheValue The cache value to inspect.
+     * @return True if the value is binary-encoded, false if it is (presumably) JSON.
+     */
+    static boolean isEncoded(@Nullable final String cacheValue) {
+        return null != cacheValue && cacheValue.startsWith(FORMAT_MARKER);
+    }
+
+    /**
+     * Encodes the supplied record.
+     *
+     * @param record The record to encode.
+     * @return The encoded cache value.
+     */
+    @NonNull
+    static String encode(@NonNull final AccountCredentialBase record) {
+        final Map<String, Field> fields = AccountCredentialTypeAdapterFactory.getSerializedFields(record.getClass()).getFields();
+        final Map<String, String> fieldValues = new HashMap<>();
+
+        try {
+            for (final Map.Entry<String, Field> field : fields.entrySet()) {
+                final Object value = field.getValue().get(record);
+
+                if (null != value) {
+                    fieldValues.put(field.getKey(), value.toString());
+                }
+            }
+        } catch (final IllegalAccessException e) {
+            // Fields are made accessible when first inspected
+            throw new IllegalStateException("Unable to read field of " + record.getClass().getSimpleName(), e);
+        }
+
+        final Map<String, JsonElement> additionalFields = record.getAdditionalFields();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(INITIAL_BUFFER_BYTES);
+        final DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            out.writeByte(FORMAT_VERSION);
+            writeVarInt(out, fieldValues.size() + (null == additionalFields ? 0 : additionalFields.size()));
+
+            for (final Map.Entry<String, String> fieldValue : fieldValues.entrySet()) {
+                writeString(out, fieldValue.getKey(), fieldValue.getValue());
+            }
+
+            if (null != additionalFields) {
+                for (final Map.Entry<String, JsonElement> additionalField : additionalFields.entrySet()) {
+                    final JsonElement value = additionalField.getValue();
+
+                    if (null != value && value.isJsonPrimitive() && value.getAsJsonPrimitive().isString()) {
+                        writeString(out, additionalField.getKey(), value.getAsString());
+                    } else {
+                        out.writeByte(TAG_NAMED_JSON);
+                        writeBytes(out, additionalField.getKey().getBytes(UTF8));
+                        writeBytes(out, String.valueOf(value).getBytes(UTF8));
+                    }
+                }
+            }
+
+            out.flush();
+        } catch (final IOException e) {
+            // Writing to memory; not expected
+            throw new IllegalStateException("Unable to encode " + record.getClass().getSimpleName(), e);
+        }
+
+        return FORMAT_MARKER + Base64.encodeToString(bytes.toByteArray(), Base64.NO_WRAP);
+    }
+
+    /**
+     * Decodes the supplied cache value into an instance of the supplied class.
+     *
+     * @param cacheValue The binary-encoded cache value.
+     * @param clazz      The class of record to decode.
+     * @param <T>        The type of record to decode.
+     * @return The decoded record, or null if the value could not be decoded.
+     */
+    @Nullable
+    static <T extends AccountCredentialBase> T decode(@NonNull final String cacheValue,
+                                                      @NonNull final Class<T> clazz) {
+        final String methodName = ":decode";
+
+        try {
+            final byte[] bytes = Base64.decode(cacheValue.substring(FORMAT_MARKER.length()), Base64.NO_WRAP);
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            final int version = in.readUnsignedByte();
+
+            if (version > FORMAT_VERSION) {
+                Logger.warn(TAG + methodName, "Unsupported format version [" + version + "]");
+                return null;
+            }
+
+            final Map<String, Field> fields = AccountCredentialTypeAdapterFactory.getSerializedFields(clazz).getFields();
+            final Map<String, JsonElement> additionalFields = new HashMap<>();
+            final T record = clazz.newInstance();
+            final int fieldCount = readVarInt(in);
+
+            for (int ii = 0; ii < fieldCount; ii++) {
+                final int tag = in.readUnsignedByte();
+                final String name;
+                final String value;
+
+                if (TAG_DICTIONARY_STRING == tag) {
+                    final int id = in.readUnsignedByte();
+
+                    if (id < 1 || id > FIELD_DICTIONARY.length) {
+                        throw new IOException("Unknown field id [" + id + "]");
+                    }
+
+                    name = FIELD_DICTIONARY[id - 1];
+                    value = new String(readBytes(in), UTF8);
+                } else if (TAG_NAMED_STRING == tag || TAG_NAMED_JSON == tag) {
+                    name = new String(readBytes(in), UTF8);
+                    value = new String(readBytes(in), UTF8);
+                } else {
+                    throw new IOException("Unknown field tag [" + tag + "]");
+                }
+
+                final Field field = fields.get(name);
+
+                if (TAG_NAMED_JSON == tag) {
+                    additionalFields.put(name, new JsonParser().parse(value));
+                } else if (null != field) {
+                    field.set(record, value);
+                } else {
+                    additionalFields.put(name, new JsonPrimitive(value));
+                }
+            }
+
+            record.setAdditionalFields(additionalFields);
+
+            return record;
+        } catch (final IOException | IllegalArgumentException | JsonParseException e) {
+            Logger.error(TAG + methodName, "Failed to decode cache value.", null);
+        } catch (final InstantiationException | IllegalAccessException e) {
+            Logger.error(TAG + methodName, "Failed to instantiate " + clazz.getSimpleName(), e);
+        }
+
+        return null;
+    }
+
+    private static void writeString(@NonNull final DataOutputStream out,
+                                    @NonNull final String name,
+                                    @NonNull final String value) throws IOException {
+        final Integer id = FIELD_DICTIONARY_IDS.get(name);
+
+        if (null != id) {
+            out.writeByte(TAG_DICTIONARY_STRING);
+            out.writeByte(id);
+        } else {
+            out.writeByte(TAG_NAMED_STRING);
+            writeBytes(out, name.getBytes(UTF8));
+        }
+
+        writeBytes(out, value.getBytes(UTF8));
+    }
+
+    private static void writeBytes(@NonNull final DataOutputStream out,
+                                   @NonNull final byte[] value) throws IOException {
+        writeVarInt(out, value.length);
+        out.write(value);
+    }
+
+    @NonNull
+    private static byte[] readBytes(@NonNull final DataInputStream in) throws IOException {
+        final int length = readVarInt(in);
+
+        if (length > in.available()) {
+            throw new IOException("Truncated value.");
+        }
+
+        final byte[] value = new byte[length];
+        in.readFully(value);
+
+        return value;
+    }
+
+    private static void writeVarInt(@NonNull final DataOutputStream out, final int value) throws IOException {
+        int remaining = value;
+
+        while ((remaining & ~VARINT_PAYLOAD_MASK) != 0) {
+            out.writeByte((remaining & VARINT_PAYLOAD_MASK) | VARINT_CONTINUATION_BIT);
+            remaining >>>= VARINT_PAYLOAD_BITS;
+        }
+
+        out.writeByte(remaining);
+    }
+
+    private static int readVarInt(@NonNull final DataInputStream in) throws IOException {
+        int value = 0;
+
+        for (int shift = 0; shift <= VARINT_MAX_SHIFT; shift += VARINT_PAYLOAD_BITS) {
+            final int b = in.readUnsignedByte();
+            value |= (b & VARINT_PAYLOAD_MASK) << shift;
+
+            if ((b & VARINT_CONTINUATION_BIT) == 0) {
+                // Only lengths and counts are encoded, so a negative value is corrupt
+                if (value < 0) {
+                    throw new IOException("Negative length.");
+                }
+
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed length.");
+    }
+}
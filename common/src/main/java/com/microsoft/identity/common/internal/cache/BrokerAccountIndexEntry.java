@@ -0,0 +1,99 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common.internal.cache;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * An entry of the {@link IBrokerAccountIndex}: records that the broker cache identified by
+ * {@link #isFoci()} and {@link #getUid()} holds records of an account.
+ * <p>
+ * Entries with a client id record that the cache holds IdTokens or refresh tokens of the account
+ * for that client. Entries without a client id record that the cache holds an AccountRecord of
+ * the account.
+ */
+public class BrokerAccountIndexEntry extends AbstractApplicationMetadata {
+
+    private static final class SerializedNames extends AbstractApplicationMetadata.SerializedNames {
+        static final String HOME_ACCOUNT_ID = "home_account_id";
+        static final String FOCI = "foci";
+    }
+
+    @SerializedName(SerializedNames.HOME_ACCOUNT_ID)
+    private String mHomeAccountId;
+
+    @SerializedName(SerializedNames.FOCI)
+    private boolean mFoci;
+
+    public String getHomeAccountId() {
+        return mHomeAccountId;
+    }
+
+    public void setHomeAccountId(final String homeAccountId) {
+        mHomeAccountId = homeAccountId;
+    }
+
+    /**
+     * @return True if the records are held by the FOCI cache, in which case the uid is unused.
+     * False if they are held by the cache of the app with this uid.
+     */
+    public boolean isFoci() {
+        return mFoci;
+    }
+
+    public void setFoci(final boolean foci) {
+        mFoci = foci;
+    }
+
+    //CHECKSTYLE:OFF
+    // This method is generated. Checkstyle and/or PMD has been disabled.
+    // This method *must* be regenerated if the class' structural definition changes through the
+    // addition/subtraction of fields.
+    @SuppressWarnings("PMD")
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        if (!super.equals(o)) return false;
+
+        BrokerAccountIndexEntry entry = (BrokerAccountIndexEntry) o;
+
+        if (mFoci != entry.mFoci) return false;
+        return mHomeAccountId != null ? mHomeAccountId.equals(entry.mHomeAccountId) : entry.mHomeAccountId == null;
+    }
+    //CHECKSTYLE:ON
+
+    //CHECKSTYLE:OFF
+    // This method is generated. Checkstyle and/or PMD has been disabled.
+    // This method *must* be regenerated if the class' structural definition changes through the
+    // addition/subtraction of fields.
+    @SuppressWarnings("PMD")
+    @Override
+    public int hashCode() {
+        int result = super.hashCode();
+        result = 31 * result + (mHomeAccountId != null ? mHomeAccountId.hashCode() : 0);
+        result = 31 * result + (mFoci ? 1 : 0);
+        return result;
+    }
+    //CHECKSTYLE:ON
+}
@@ -103,6 +103,17 @@ public class BrokerOAuth2TokenCache
     private final int mCallingProcessUid;
     private ProcessUidCacheFactory mDelegate = null;
 
+    /**
+     * Maps each account to the caches which hold its records, so that lookups and removals of an
+     * account need not open every cache.
+     */
+    private final IBrokerAccountIndex mAccountIndex;
+
+    /**
+     * True if the caches of this instance are read into memory ahead of first use.
+     */
+    private final boolean mPrefetch;
+
     /**
      * Constructs a new BrokerOAuth2TokenCache.
      *
@@ -113,16 +124,42 @@ public class BrokerOAuth2TokenCache
     public BrokerOAuth2TokenCache(@NonNull final Context context,
                                   int callingProcessUid,
                                   @NonNull IBrokerApplicationMetadataCache applicationMetadataCache) {
+        this(context, callingProcessUid, applicationMetadataCache, false);
+    }
+
+    /**
+     * Constructs a new BrokerOAuth2TokenCache.
+     *
+     * @param context                  The current application context.
+     * @param callingProcessUid        The UID of the current broker-calling app.
+     * @param applicationMetadataCache The metadata cache to use.
+     * @param prefetch                 True if the FOCI cache and the cache of the calling app
+     *                                 should be read into memory on background threads now,
+     *                                 rather than on first use. Requests made before the reads
+     *                                 complete wait for them. The in-memory copies do not observe
+     *                                 writes made through other instances.
+     */
+    public BrokerOAuth2TokenCache(@NonNull final Context context,
+                                  int callingProcessUid,
+                                  @NonNull IBrokerApplicationMetadataCache applicationMetadataCache,
+                                  final boolean prefetch) {
         super(context);
 
         Logger.verbose(
                 TAG + "ctor",
-                "Init::" + TAG
+                "Init::" + TAG + ", prefetch: [" + prefetch + "]"
         );
 
+        mPrefetch = prefetch;
         mCallingProcessUid = callingProcessUid;
-        mFociCache = initializeFociCache(context);
+        mFociCache = initializeFociCache(context, prefetch);
         mApplicationMetadataCache = applicationMetadataCache;
+        mAccountIndex = new SharedPreferencesBrokerAccountIndex(context);
+
+        if (prefetch) {
+            // Warm the pooled cache of the calling app
+            initializeProcessUidCache(context, callingProcessUid);
+        }
     }
 
     /**
@@ -165,6 +202,8 @@ public class BrokerOAuth2TokenCache
         mApplicationMetadataCache = applicationMetadataCache;
         mCallingProcessUid = callingProcessUid;
         mFociCache = fociCache;
+        mPrefetch = false;
+        mAccountIndex = new SharedPreferencesBrokerAccountIndex(context);
     }
 
     /**
@@ -194,16 +233,14 @@ public class BrokerOAuth2TokenCache
                         + "]"
         );
 
+        MsalOAuth2TokenCache targetCache;
+
         if (isFoci) {
             // Save to the foci cache....
-            result = mFociCache.save(
-                    accountRecord,
-                    idTokenRecord,
-                    accessTokenRecord
-            );
+            targetCache = mFociCache;
         } else {
             // Save to the processUid cache... or create a new one
-            MsalOAuth2TokenCache targetCache = getTokenCacheForClient(
+            targetCache = getTokenCacheForClient(
                     idTokenRecord.getClientId(),
                     idTokenRecord.getEnvironment(),
                     mCallingProcessUid
@@ -220,14 +257,22 @@ public class BrokerOAuth2TokenCache
                         mCallingProcessUid
                 );
             }
-
-            result = targetCache.save(
-                    accountRecord,
-                    idTokenRecord,
-                    accessTokenRecord
-            );
         }
 
+        updateAccountIndex(
+                targetCache,
+                mCallingProcessUid,
+                accountRecord.getHomeAccountId(),
+                accessTokenRecord.getEnvironment(),
+                accessTokenRecord.getClientId()
+        );
+
+        result = targetCache.save(
+                accountRecord,
+                idTokenRecord,
+                accessTokenRecord
+        );
+
         updateApplicationMetadataCache(
                 result.getAccessToken().getClientId(),
                 result.getAccessToken().getEnvironment(),
@@ -297,7 +342,7 @@ public class BrokerOAuth2TokenCache
                         + "]"
         );
 
-        OAuth2TokenCache targetCache;
+        MsalOAuth2TokenCache targetCache;
 
         if (isFoci) {
             targetCache = mFociCache;
@@ -326,6 +371,14 @@ public class BrokerOAuth2TokenCache
             }
         }
 
+        updateAccountIndex(
+                targetCache,
+                mCallingProcessUid,
+                oAuth2Strategy,
+                request,
+                response
+        );
+
         // Suppressing unchecked warnings due to casting of rawtypes to generic types of OAuth2TokenCache's instance targetCache while calling method save
         @SuppressWarnings(WarningType.unchecked_warning)
         final ICacheRecord result = targetCache.save(
@@ -355,7 +408,7 @@ public class BrokerOAuth2TokenCache
 
             final boolean isFoci = !StringExtensions.isNullOrBlank(response.getFamilyId());
 
-            OAuth2TokenCache targetCache;
+            MsalOAuth2TokenCache targetCache;
 
             Logger.info(
                     TAG + methodName,
@@ -385,6 +438,14 @@ public class BrokerOAuth2TokenCache
                 }
             }
 
+            updateAccountIndex(
+                    targetCache,
+                    mCallingProcessUid,
+                    oAuth2Strategy,
+                    request,
+                    response
+            );
+
             final List<ICacheRecord> result = targetCache.saveAndLoadAggregatedAccountData(
                     oAuth2Strategy,
                     request,
@@ -434,6 +495,206 @@ public class BrokerOAuth2TokenCache
         );
     }
 
+    /**
+     * Records in the account index that the supplied cache is about to hold an account and tokens
+     * of the supplied client. Called before the cache is written: the entries are persisted
+     * before this returns, so that the records are never on disk without their entries, which
+     * device-wide sign-out relies on. An entry whose records were never written is harmless.
+     *
+     * @param targetCache   The cache to be written.
+     * @param uid           The uid of the targetCache, if it is not the FOCI cache.
+     * @param homeAccountId The home_account_id of the account.
+     * @param environment   The environment of the account.
+     * @param clientId      The client id of the tokens.
+     */
+    private void updateAccountIndex(@NonNull final OAuth2TokenCache targetCache,
+                                    final int uid,
+                                    @NonNull final String homeAccountId,
+                                    @NonNull final String environment,
+                                    @NonNull final String clientId) {
+        final String methodName = ":updateAccountIndex";
+
+        final boolean isFoci = mFociCache == targetCache;
+        final List<BrokerAccountIndexEntry> entries = new ArrayList<>();
+        entries.add(newAccountIndexEntry(homeAccountId, environment, null, isFoci, uid));
+        entries.add(newAccountIndexEntry(homeAccountId, environment, clientId, isFoci, uid));
+
+        final boolean success = mAccountIndex.insertAll(entries);
+
+        Logger.info(
+                TAG + methodName,
+                "Account index updated successfully? ["
+                        + success
+                        + "]"
+        );
+    }
+
+    /**
+     * As {@link #updateAccountIndex(OAuth2TokenCache, int, String, String, String)}, for the
+     * account and refresh token which the supplied cache will create from the supplied response.
+     *
+     * @param targetCache    The cache to be written.
+     * @param uid            The uid of the targetCache, if it is not the FOCI cache.
+     * @param oAuth2Strategy The strategy of the save.
+     * @param request        The request of the save.
+     * @param response       The response to be saved.
+     */
+    @SuppressWarnings(UNCHECKED)
+    private void updateAccountIndex(@NonNull final MsalOAuth2TokenCache targetCache,
+                                    final int uid,
+                                    @NonNull final GenericOAuth2Strategy oAuth2Strategy,
+                                    @NonNull final GenericAuthorizationRequest request,
+                                    @NonNull final GenericTokenResponse response) {
+        final IAccountCredentialAdapter adapter = targetCache.getAccountCredentialAdapter();
+        final AccountRecord account = adapter.createAccount(oAuth2Strategy, request, response);
+        final RefreshTokenRecord refreshToken = adapter.createRefreshToken(oAuth2Strategy, request, response);
+
+        updateAccountIndex(
+                targetCache,
+                uid,
+                account.getHomeAccountId(),
+                refreshToken.getEnvironment(),
+                refreshToken.getClientId()
+        );
+    }
+
+    private static BrokerAccountIndexEntry newAccountIndexEntry(@NonNull final String homeAccountId,
+                                                                @NonNull final String environment,
+                                                                @Nullable final String clientId,
+                                                                final boolean isFoci,
+                                                                final int uid) {
+        final BrokerAccountIndexEntry entry = new BrokerAccountIndexEntry();
+        entry.setHomeAccountId(homeAccountId);
+        entry.setEnvironment(environment);
+        entry.setClientId(clientId);
+        entry.setFoci(isFoci);
+        // The uid is unused for the FOCI cache; fix it so that its entries are not duplicated
+        entry.setUid(isFoci ? 0 : uid);
+
+        return entry;
+    }
+
+    /**
+     * Returns the account index, first scanning into it the caches of any applications not yet
+     * indexed: those written before the index existed, or other than through this class.
+     *
+     * @return The account index.
+     */
+    private IBrokerAccountIndex getAccountIndex() {
+        final String methodName = ":getAccountIndex";
+
+        final Set<BrokerApplicationMetadata> indexedApplications =
+                mAccountIndex.getIndexedApplications();
+        final List<BrokerApplicationMetadata> unindexedApplications = new ArrayList<>();
+
+        for (final BrokerApplicationMetadata metadata : mApplicationMetadataCache.getAll()) {
+            if (!indexedApplications.contains(metadata)) {
+                unindexedApplications.add(metadata);
+            }
+        }
+
+        if (!unindexedApplications.isEmpty()) {
+            Logger.info(
+                    TAG + methodName,
+                    "Indexing ["
+                            + unindexedApplications.size()
+                            + "] applications."
+            );
+
+            final Set<BrokerAccountIndexEntry> entries = new HashSet<>();
+            final Set<Integer> scannedUids = new HashSet<>();
+            boolean scannedFoci = false;
+
+            // Scan each cache once, however many applications share it
+            for (final BrokerApplicationMetadata metadata : unindexedApplications) {
+                final boolean isFoci = null != metadata.getFoci();
+
+                if (isFoci) {
+                    if (scannedFoci) {
+                        continue;
+                    }
+
+                    scannedFoci = true;
+                } else if (!scannedUids.add(metadata.getUid())) {
+                    continue;
+                }
+
+                final MsalOAuth2TokenCache cache = isFoci
+                        ? mFociCache
+                        : initializeProcessUidCache(getContext(), metadata.getUid());
+
+                entries.addAll(
+                        getAccountIndexEntries(
+                                cache.getAccountCredentialCache(),
+                                isFoci,
+                                metadata.getUid()
+                        )
+                );
+            }
+
+            // Insert the entries first, so that an interrupted scan is repeated
+            mAccountIndex.insertAll(entries);
+            mAccountIndex.addIndexedApplications(unindexedApplications);
+        }
+
+        return mAccountIndex;
+    }
+
+    /**
+     * Scans the supplied cache into account index entries.
+     *
+     * @param cache  The cache to scan.
+     * @param isFoci True if the cache is the FOCI cache.
+     * @param uid    The uid of the cache, if it is not the FOCI cache.
+     * @return The entries for the accounts and app credentials in the cache.
+     */
+    private static List<BrokerAccountIndexEntry> getAccountIndexEntries(@NonNull final IAccountCredentialCache cache,
+                                                                        final boolean isFoci,
+                                                                        final int uid) {
+        final List<BrokerAccountIndexEntry> entries = new ArrayList<>();
+
+        for (final AccountRecord account : cache.getAccounts()) {
+            entries.add(
+                    newAccountIndexEntry(
+                            account.getHomeAccountId(),
+                            account.getEnvironment(),
+                            null,
+                            isFoci,
+                            uid
+                    )
+            );
+        }
+
+        // Index the credentials which associate an account with an app: IdTokens and RTs
+        for (final Credential credential : cache.getCredentials()) {
+            if (credential instanceof IdTokenRecord || credential instanceof RefreshTokenRecord) {
+                entries.add(
+                        newAccountIndexEntry(
+                                credential.getHomeAccountId(),
+                                credential.getEnvironment(),
+                                credential.getClientId(),
+                                isFoci,
+                                uid
+                        )
+                );
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * Returns the cache identified by the supplied account index entry.
+     *
+     * @param entry The entry.
+     * @return The FOCI cache or the app-specific cache of the entry.
+     */
+    private MsalOAuth2TokenCache getTokenCacheForAccountIndexEntry(@NonNull final BrokerAccountIndexEntry entry) {
+        return entry.isFoci()
+                ? mFociCache
+                : initializeProcessUidCache(getContext(), entry.getUid());
+    }
+
     @Override
     public ICacheRecord save(@NonNull final AccountRecord accountRecord,
                              @NonNull final IdTokenRecord idTokenRecord) {
@@ -778,7 +1039,7 @@ public class BrokerOAuth2TokenCache
         } else {
             // If no environment was specified, return all of the accounts across all of the envs...
             // Callers should really specify an environment...
-            final List<OAuth2TokenCache> caches = getTokenCachesForClientId(clientId);
+            final List<OAuth2TokenCache> caches = getTokenCachesForAccount(clientId, homeAccountId);
 
             // Declare a new List to which we will add all of our results...
             result = new ArrayList<>();
@@ -802,6 +1063,42 @@ public class BrokerOAuth2TokenCache
         return result;
     }
 
+    /**
+     * As {@link #getTokenCachesForClientId(String)}, but only the caches which hold tokens of the
+     * supplied client for the supplied account, per the account index.
+     *
+     * @param clientId      The client id.
+     * @param homeAccountId The home_account_id of the account.
+     * @return The FOCI cache and/or the cache of the calling app, if they hold such tokens.
+     */
+    private List<OAuth2TokenCache> getTokenCachesForAccount(@NonNull final String clientId,
+                                                            @NonNull final String homeAccountId) {
+        boolean containsFoci = false;
+        boolean containsCallingProcessUidCache = false;
+
+        for (final BrokerAccountIndexEntry entry : getAccountIndex().getEntries(homeAccountId, null)) {
+            if (clientId.equals(entry.getClientId())) {
+                if (entry.isFoci()) {
+                    containsFoci = true;
+                } else if (mCallingProcessUid == entry.getUid()) {
+                    containsCallingProcessUidCache = true;
+                }
+            }
+        }
+
+        final List<OAuth2TokenCache> result = new ArrayList<>();
+
+        if (containsFoci) {
+            result.add(mFociCache);
+        }
+
+        if (containsCallingProcessUidCache) {
+            result.add(initializeProcessUidCache(getContext(), mCallingProcessUid));
+        }
+
+        return result;
+    }
+
     private List<OAuth2TokenCache> getTokenCachesForClientId(@NonNull final String clientId) {
         final List<BrokerApplicationMetadata> allMetadata = mApplicationMetadataCache.getAll();
         final List<OAuth2TokenCache> result = new ArrayList<>();
@@ -1102,24 +1399,24 @@ public class BrokerOAuth2TokenCache
 
         final Set<AccountRecord> allAccounts = new HashSet<>();
 
-        final List<BrokerApplicationMetadata> allMetadata = mApplicationMetadataCache.getAll();
-
-        for (final BrokerApplicationMetadata metadata : allMetadata) {
-            final OAuth2TokenCache candidateCache = getTokenCacheForClient(
-                    metadata.getClientId(),
-                    metadata.getEnvironment(),
-                    metadata.getUid() // Supports v1 broker back-compat which yields all accounts
-            );
+        // Open only the app-specific caches which hold accounts, and each of them once.
+        // Supports v1 broker back-compat which yields all accounts
+        final Set<Integer> uidsWithAccounts = new HashSet<>();
 
-            if (null != candidateCache) {
-                allAccounts.addAll(
-                        ((MsalOAuth2TokenCache) candidateCache)
-                                .getAccountCredentialCache()
-                                .getAccounts()
-                );
+        for (final BrokerAccountIndexEntry entry : getAccountIndex().getAll()) {
+            if (!entry.isFoci()) {
+                uidsWithAccounts.add(entry.getUid());
             }
         }
 
+        for (final int uid : uidsWithAccounts) {
+            allAccounts.addAll(
+                    initializeProcessUidCache(getContext(), uid)
+                            .getAccountCredentialCache()
+                            .getAccounts()
+            );
+        }
+
         // Hit the FOCI cache
         allAccounts.addAll(mFociCache.getAccountCredentialCache().getAccounts());
 
@@ -1157,29 +1454,54 @@ public class BrokerOAuth2TokenCache
             throw new IllegalArgumentException("AccountRecord may not be null.");
         }
 
-        final Set<String> allClientIds = mApplicationMetadataCache.getAllClientIds();
+        // Visit only the caches holding this account, for the clients whose tokens they hold
+        final List<BrokerAccountIndexEntry> entries = getAccountIndex().getEntries(
+                accountRecord.getHomeAccountId(),
+                accountRecord.getEnvironment()
+        );
 
         Logger.info(
                 TAG + methodName,
                 "Found ["
-                        + allClientIds.size()
-                        + "] client ids."
+                        + entries.size()
+                        + "] account index entries."
         );
 
         final List<AccountDeletionRecord> deletionRecordList = new ArrayList<>();
+        final List<BrokerAccountIndexEntry> removedEntries = new ArrayList<>();
 
-        for (final String clientId : allClientIds) {
-            deletionRecordList.add(
-                    removeAccountInternal(
-                            accountRecord.getEnvironment(),
-                            clientId,
+        for (final BrokerAccountIndexEntry entry : entries) {
+            if (null != entry.getClientId()) {
+                deletionRecordList.add(
+                        getTokenCacheForAccountIndexEntry(entry).removeAccount(
+                                accountRecord.getEnvironment(),
+                                entry.getClientId(),
+                                accountRecord.getHomeAccountId(),
+                                null
+                        )
+                );
+
+                // Every token of this client for this account has been removed
+                removedEntries.add(entry);
+            }
+        }
+
+        for (final BrokerAccountIndexEntry entry : entries) {
+            // AccountRecords are kept if no client has tokens for them, so confirm their removal
+            if (null == entry.getClientId()
+                    && getTokenCacheForAccountIndexEntry(entry)
+                    .getAccountCredentialCache()
+                    .getAccountsFilteredBy(
                             accountRecord.getHomeAccountId(),
-                            null,
-                            true
-                    )
-            );
+                            accountRecord.getEnvironment(),
+                            null // wildcard (*) realm
+                    ).isEmpty()) {
+                removedEntries.add(entry);
+            }
         }
 
+        mAccountIndex.removeAll(removedEntries);
+
         // Create a List of the deleted AccountRecords...
         final List<AccountRecord> deletedAccountRecords = new ArrayList<>();
 
@@ -1511,44 +1833,75 @@ public class BrokerOAuth2TokenCache
             return mDelegate.getTokenCache(context, bindingProcessUid);
         }
 
-        final IStorageHelper storageHelper = new StorageHelper(context);
-        final ISharedPreferencesFileManager sharedPreferencesFileManager =
-                new SharedPreferencesFileManager(
-                        context,
-                        SharedPreferencesAccountCredentialCache
-                                .getBrokerUidSequesteredFilename(bindingProcessUid),
-                        storageHelper
-                );
+        // Pooled caches outlive the caller, so hold the application context only
+        final Context applicationContext = context.getApplicationContext();
+
+        // Reuse the pooled cache of this uid, if any, rather than building a cold one
+        return BrokerTokenCachePool.getInstance().getProcessUidCache(
+                bindingProcessUid,
+                new BrokerTokenCachePool.TokenCacheFactory<MsalOAuth2TokenCache>() {
+                    @Override
+                    public MsalOAuth2TokenCache create() {
+                        final IStorageHelper storageHelper = new StorageHelper(applicationContext);
+                        final ISharedPreferencesFileManager sharedPreferencesFileManager =
+                                new SharedPreferencesFileManager(
+                                        applicationContext,
+                                        SharedPreferencesAccountCredentialCache
+                                                .getBrokerUidSequesteredFilename(bindingProcessUid),
+                                        storageHelper
+                                );
 
-        return getTokenCache(context, sharedPreferencesFileManager, false);
+                        return getTokenCache(
+                                applicationContext,
+                                sharedPreferencesFileManager,
+                                false,
+                                mPrefetch && bindingProcessUid == mCallingProcessUid
+                        );
+                    }
+                }
+        );
     }
 
-    private static MicrosoftFamilyOAuth2TokenCache initializeFociCache(@NonNull final Context context) {
+    private static MicrosoftFamilyOAuth2TokenCache initializeFociCache(@NonNull final Context context,
+                                                                       final boolean prefetch) {
         final String methodName = ":initializeFociCache";
         Logger.verbose(
                 TAG + methodName,
                 "Initializing foci cache"
         );
-        final IStorageHelper storageHelper = new StorageHelper(context);
-        final ISharedPreferencesFileManager sharedPreferencesFileManager =
-                new SharedPreferencesFileManager(
-                        context,
-                        BROKER_FOCI_ACCOUNT_CREDENTIAL_SHARED_PREFERENCES,
-                        storageHelper
-                );
 
-        return getTokenCache(context, sharedPreferencesFileManager, true);
+        // The pooled cache outlives the caller, so hold the application context only
+        final Context applicationContext = context.getApplicationContext();
+
+        return BrokerTokenCachePool.getInstance().getFociCache(
+                new BrokerTokenCachePool.TokenCacheFactory<MicrosoftFamilyOAuth2TokenCache>() {
+                    @Override
+                    public MicrosoftFamilyOAuth2TokenCache create() {
+                        final IStorageHelper storageHelper = new StorageHelper(applicationContext);
+                        final ISharedPreferencesFileManager sharedPreferencesFileManager =
+                                new SharedPreferencesFileManager(
+                                        applicationContext,
+                                        BROKER_FOCI_ACCOUNT_CREDENTIAL_SHARED_PREFERENCES,
+                                        storageHelper
+                                );
+
+                        return getTokenCache(applicationContext, sharedPreferencesFileManager, true, prefetch);
+                    }
+                }
+        );
     }
 
     @SuppressWarnings(UNCHECKED)
     private static <T extends MsalOAuth2TokenCache> T getTokenCache(@NonNull final Context context,
                                                                     @NonNull final ISharedPreferencesFileManager spfm,
-                                                                    boolean isFoci) {
+                                                                    boolean isFoci,
+                                                                    final boolean prefetch) {
         final ICacheKeyValueDelegate cacheKeyValueDelegate = new CacheKeyValueDelegate();
         final IAccountCredentialCache accountCredentialCache =
-                new SharedPreferencesAccountCredentialCache(
+                MsalOAuth2TokenCache.createAccountCredentialCache(
                         cacheKeyValueDelegate,
-                        spfm
+                        spfm,
+                        prefetch
                 );
         final MicrosoftStsAccountCredentialAdapter accountCredentialAdapter =
                 new MicrosoftStsAccountCredentialAdapter();
@@ -1637,6 +1990,9 @@ public class BrokerOAuth2TokenCache
 
         final int uid = Integer.valueOf(uidStr);
 
+        // The uid of the app-specific cache written, if not the FOCI cache
+        int targetUid = mCallingProcessUid;
+
         if (isFrt) {
             Logger.verbose(
                     TAG + methodName,
@@ -1663,9 +2019,17 @@ public class BrokerOAuth2TokenCache
                         getContext(),
                         uid
                 );
+                targetUid = uid;
             }
         }
         try {
+            updateAccountIndex(
+                    targetCache,
+                    targetUid,
+                    account.getHomeAccountId(),
+                    refreshToken.getEnvironment(),
+                    refreshToken.getClientId()
+            );
             targetCacheSetSingleSignOnState(account, refreshToken, targetCache);
             updateApplicationMetadataCache(
                     refreshToken.getClientId(),
@@ -0,0 +1,254 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common.internal.cache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.microsoft.identity.common.internal.logging.Logger;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide pool of the per-uid and FOCI {@link MsalOAuth2TokenCache}s used by
+ * {@link BrokerOAuth2TokenCache}.
+ * <p>
+ * A token cache is cheap to use but not to build: each one carries its own file manager,
+ * serializer and, if prefetched, an in-memory copy of its file. Pooling them lets repeated broker
+ * calls for the same app reuse a warm cache. The pool is bounded: beyond its maximum size the
+ * least-recently used cache is dropped, and caches unused for longer than the idle timeout are
+ * dropped on the next access to the pool. Callers which change a cache's file other than through
+ * its pooled instance should {@link #invalidate(int)} it.
+ * <p>
+ * A dropped cache may still be in use by its callers. If it indexes its file in memory, the cache
+ * rebuilt in its place shares that index, so that neither misses the other's writes; see
+ * {@link MsalOAuth2TokenCache#createAccountCredentialCache}.
+ */
+public final class BrokerTokenCachePool {
+
+    private static final String TAG = BrokerTokenCachePool.class.getSimpleName();
+
+    /**
+     * The default number of pooled caches.
+     */
+    public static final int DEFAULT_MAX_SIZE = 8;
+
+    /**
+     * The default time after which an unused cache is dropped: 5 minutes.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final String FOCI_KEY = "foci";
+
+    private static final String UID_KEY_PREFIX = "uid-";
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private static final BrokerTokenCachePool INSTANCE =
+            new BrokerTokenCachePool(DEFAULT_MAX_SIZE, DEFAULT_IDLE_TIMEOUT_MILLIS);
+
+    /**
+     * Builds a cache on a miss.
+     *
+     * @param <T> The type of cache built.
+     */
+    interface TokenCacheFactory<T extends MsalOAuth2TokenCache> {
+
+        /**
+         * Builds the cache.
+         *
+         * @return The new cache.
+         */
+        T create();
+    }
+
+    private static final class Entry {
+
+        private final MsalOAuth2TokenCache mTokenCache;
+
+        private long mLastAccessNanos;
+
+        Entry(@NonNull final MsalOAuth2TokenCache tokenCache) {
+            mTokenCache = tokenCache;
+        }
+    }
+
+    private final int mMaxSize;
+    private final long mIdleTimeoutNanos;
+
+    /**
+     * Pooled caches, in access order (least-recently used first).
+     */
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+
+    /**
+     * Constructs a new BrokerTokenCachePool.
+     *
+     * @param maxSize           The maximum number of pooled caches.
+     * @param idleTimeoutMillis The time after which an unused cache is dropped.
+     */
+    @VisibleForTesting
+    BrokerTokenCachePool(final int maxSize, final long idleTimeoutMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive.");
+        }
+
+        mMaxSize = maxSize;
+        mIdleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+    }
+
+    /**
+     * Gets the process-wide instance.
+     *
+     * @return The BrokerTokenCachePool.
+     */
+    @NonNull
+    public static BrokerTokenCachePool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the pooled cache of the supplied uid, building it if it is not pooled.
+     *
+     * @param uid     The uid of the app whose cache is sought.
+     * @param factory Builds the cache on a miss.
+     * @return The cache.
+     */
+    @NonNull
+    MsalOAuth2TokenCache getProcessUidCache(final int uid,
+                                            @NonNull final TokenCacheFactory<MsalOAuth2TokenCache> factory) {
+        return getTokenCache(UID_KEY_PREFIX + uid, factory);
+    }
+
+    /**
+     * Gets the pooled FOCI cache, building it if it is not pooled.
+     *
+     * @param factory Builds the cache on a miss.
+     * @return The cache.
+     */
+    @NonNull
+    MicrosoftFamilyOAuth2TokenCache getFociCache(@NonNull final TokenCacheFactory<MicrosoftFamilyOAuth2TokenCache> factory) {
+        return (MicrosoftFamilyOAuth2TokenCache) getTokenCache(FOCI_KEY, factory);
+    }
+
+    private synchronized MsalOAuth2TokenCache getTokenCache(@NonNull final String key,
+                                                            @NonNull final TokenCacheFactory<? extends MsalOAuth2TokenCache> factory) {
+        final String methodName = ":getTokenCache";
+
+        final long now = System.nanoTime();
+        evictIdleEntries(now);
+
+        Entry entry = mEntries.get(key);
+
+        if (null == entry) {
+            Logger.verbose(
+                    TAG + methodName,
+                    "Pool miss for [" + key + "]"
+            );
+
+            entry = new Entry(factory.create());
+            mEntries.put(key, entry);
+            evictEldestEntries();
+        }
+
+        entry.mLastAccessNanos = now;
+
+        return entry.mTokenCache;
+    }
+
+    private void evictIdleEntries(final long now) {
+        final Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+
+        // In access order, so the first entry in use ends the idle ones
+        while (iterator.hasNext()) {
+            final Map.Entry<String, Entry> entry = iterator.next();
+
+            if (now - entry.getValue().mLastAccessNanos < mIdleTimeoutNanos) {
+                break;
+            }
+
+            Logger.verbose(
+                    TAG + ":evictIdleEntries",
+                    "Dropping idle cache [" + entry.getKey() + "]"
+            );
+
+            iterator.remove();
+        }
+    }
+
+    private void evictEldestEntries() {
+        final Iterator<String> iterator = mEntries.keySet().iterator();
+
+        while (mEntries.size() > mMaxSize) {
+            final String key = iterator.next();
+
+            Logger.verbose(
+                    TAG + ":evictEldestEntries",
+                    "Dropping least-recently used cache [" + key + "]"
+            );
+
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Drops the pooled cache of the supplied uid, if any, so that it is rebuilt on next use.
+     *
+     * @param uid The uid of the app whose cache should be dropped.
+     */
+    public synchronized void invalidate(final int uid) {
+        Logger.verbose(TAG + ":invalidate", "Dropping cache of uid [" + uid + "]");
+        mEntries.remove(UID_KEY_PREFIX + uid);
+    }
+
+    /**
+     * Drops the pooled FOCI cache, if any, so that it is rebuilt on next use.
+     */
+    public synchronized void invalidateFoci() {
+        Logger.verbose(TAG + ":invalidateFoci", "Dropping FOCI cache.");
+        mEntries.remove(FOCI_KEY);
+    }
+
+    /**
+     * Drops every pooled cache.
+     */
+    public synchronized void invalidateAll() {
+        Logger.verbose(TAG + ":invalidateAll", "Dropping all caches.");
+        mEntries.clear();
+    }
+
+    /**
+     * Gets the number of pooled caches.
+     *
+     * @return The pool size.
+     */
+    @VisibleForTesting
+    synchronized int size() {
+        return mEntries.size();
+    }
+}
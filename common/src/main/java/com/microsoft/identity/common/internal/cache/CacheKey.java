@@ -0,0 +1,494 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common.internal.cache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.microsoft.identity.common.adal.internal.util.StringExtensions;
+import com.microsoft.identity.common.internal.dto.AccessTokenRecord;
+import com.microsoft.identity.common.internal.dto.AccountRecord;
+import com.microsoft.identity.common.internal.dto.Credential;
+import com.microsoft.identity.common.internal.dto.CredentialType;
+import com.microsoft.identity.common.internal.dto.IdTokenRecord;
+import com.microsoft.identity.common.internal.dto.RefreshTokenRecord;
+import com.microsoft.identity.common.internal.providers.oauth2.TokenRequest;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static com.microsoft.identity.common.internal.cache.CacheKeyValueDelegate.CACHE_VALUE_SEPARATOR;
+import static com.microsoft.identity.common.internal.controllers.BaseController.DEFAULT_SCOPES;
+
+/**
+ * A cache key, as generated by {@link CacheKeyValueDelegate}.
+ * <p>
+ * Account keys have the form {@code <home_account_id>-<environment>-<realm>}; Credential keys
+ * have the form {@code <home_account_id>-<environment>-<credential_type>-<client_id>-<realm>-<target>}
+ * (followed by {@code -<auth_scheme>} for PoP access tokens). Every component is lowercased and
+ * trimmed.
+ * <p>
+ * Since the separator may itself occur within components (home account ids, client ids and
+ * realms are typically GUIDs), a stored key cannot be split back into every component
+ * unambiguously. {@link #parse(String)} therefore resolves the credential type, which is drawn
+ * from a fixed set, and the account and credential segments either side of it. The
+ * {@code mayMatch} methods use these to rule out entries without reading their values; they only
+ * ever return false for keys whose records cannot match, so the exact matching rules must still
+ * be applied to the records of keys which pass.
+ * <p>
+ * Parsed keys are cached, so the cost of parsing is paid once per distinct key (up to a bound).
+ */
+public final class CacheKey {
+
+    private static final String FOCI_PREFIX = "foci-";
+
+    /**
+     * Separates the object id from the tenant id in a home_account_id.
+     */
+    private static final char HOME_ACCOUNT_ID_SEPARATOR = '.';
+
+    private static final char ASCII_MAX = 0x7F;
+
+    /**
+     * The maximum number of parsed keys to retain.
+     */
+    private static final int MAX_CACHED_KEYS = 4096;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private static final int KEY_CAPACITY = 256;
+
+    private static final Map<String, CacheKey> sParsedKeys =
+            new LinkedHashMap<String, CacheKey>(INITIAL_CAPACITY, LOAD_FACTOR, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, CacheKey> eldest) {
+                    return size() > MAX_CACHED_KEYS;
+                }
+            };
+
+    private final String mRawKey;
+
+    @Nullable
+    private final CredentialType mCredentialType;
+
+    /**
+     * For Accounts, the whole key. For Credentials, the portion preceding the credential type:
+     * {@code <home_account_id>-<environment>}.
+     */
+    private final String mAccountSegment;
+
+    /**
+     * For Credentials, the portion following the credential type:
+     * {@code <client_id>-<realm>-<target>[-<auth_scheme>]}. Empty for Accounts.
+     */
+    private final String mCredentialSegment;
+
+    /**
+     * True if the key could not be segmented reliably, in which case it matches everything.
+     */
+    private final boolean mAmbiguous;
+
+    private CacheKey(@NonNull final String rawKey,
+                     @Nullable final CredentialType credentialType,
+                     @NonNull final String accountSegment,
+                     @NonNull final String credentialSegment,
+                     final boolean ambiguous) {
+        mRawKey = rawKey;
+        mCredentialType = credentialType;
+        mAccountSegment = accountSegment;
+        mCredentialSegment = credentialSegment;
+        mAmbiguous = ambiguous;
+    }
+
+    /**
+     * Builds the key of the supplied Account.
+     *
+     * @param account The Account.
+     * @return Its key.
+     */
+    @NonNull
+    public static CacheKey forAccount(@NonNull final AccountRecord account) {
+        final StringBuilder builder = new StringBuilder(KEY_CAPACITY);
+        appendSanitized(builder, account.getHomeAccountId()).append(CACHE_VALUE_SEPARATOR);
+        appendSanitized(builder, account.getEnvironment()).append(CACHE_VALUE_SEPARATOR);
+        appendSanitized(builder, account.getRealm());
+
+        final String rawKey = builder.toString();
+
+        return new CacheKey(rawKey, null, rawKey, "", false);
+    }
+
+    /**
+     * Builds the key of the supplied Credential.
+     *
+     * @param credential The Credential.
+     * @return Its key.
+     */
+    @NonNull
+    public static CacheKey forCredential(@NonNull final Credential credential) {
+        final StringBuilder builder = new StringBuilder(KEY_CAPACITY);
+        appendSanitized(builder, credential.getHomeAccountId()).append(CACHE_VALUE_SEPARATOR);
+        appendSanitized(builder, credential.getEnvironment());
+
+        final int accountSegmentEnd = builder.length();
+        builder.append(CACHE_VALUE_SEPARATOR);
+        appendSanitized(builder, credential.getCredentialType()).append(CACHE_VALUE_SEPARATOR);
+        final int credentialSegmentStart = builder.length();
+
+        String realm = null;
+        String target = null;
+        String authScheme = null;
+
+        if (credential instanceof AccessTokenRecord) {
+            final AccessTokenRecord accessToken = (AccessTokenRecord) credential;
+            realm = accessToken.getRealm();
+            target = accessToken.getTarget();
+
+            if (TokenRequest.TokenType.POP.equalsIgnoreCase(accessToken.getAccessTokenType())) {
+                authScheme = accessToken.getAccessTokenType();
+            }
+        } else if (credential instanceof RefreshTokenRecord) {
+            target = ((RefreshTokenRecord) credential).getTarget();
+        } else if (credential instanceof IdTokenRecord) {
+            realm = ((IdTokenRecord) credential).getRealm();
+            target = "";
+        }
+
+        final String familyId = credential instanceof RefreshTokenRecord
+                ? ((RefreshTokenRecord) credential).getFamilyId()
+                : null;
+
+        if (!StringExtensions.isNullOrBlank(familyId)) {
+            // FRTs are keyed by family id, not client id (and, as before, not sanitized)
+            builder.append(familyId.startsWith(FOCI_PREFIX) ? familyId.replace(FOCI_PREFIX, "") : familyId);
+        } else {
+            appendSanitized(builder, credential.getClientId());
+        }
+
+        builder.append(CACHE_VALUE_SEPARATOR);
+
+        if (credential instanceof AccessTokenRecord
+                || credential instanceof RefreshTokenRecord
+                || credential instanceof IdTokenRecord) {
+            appendSanitized(builder, realm).append(CACHE_VALUE_SEPARATOR);
+            appendSanitized(builder, target);
+        } else {
+            // Other types never had their realm and target filled in
+            builder.append(CacheKeyValueDelegate.CacheKeyReplacements.REALM)
+                    .append(CACHE_VALUE_SEPARATOR)
+                    .append(CacheKeyValueDelegate.CacheKeyReplacements.TARGET);
+        }
+
+        if (null != authScheme) {
+            builder.append(CACHE_VALUE_SEPARATOR);
+            appendSanitized(builder, authScheme);
+        }
+
+        final String rawKey = builder.toString();
+
+        return new CacheKey(
+                rawKey,
+                CredentialType.fromString(sanitize(credential.getCredentialType())),
+                rawKey.substring(0, accountSegmentEnd),
+                rawKey.substring(credentialSegmentStart),
+                false
+        );
+    }
+
+    /**
+     * Parses a stored key.
+     *
+     * @param rawKey The key, as stored.
+     * @return The parsed key.
+     */
+    @NonNull
+    public static CacheKey parse(@NonNull final String rawKey) {
+        synchronized (sParsedKeys) {
+            final CacheKey cached = sParsedKeys.get(rawKey);
+
+            if (null != cached) {
+                return cached;
+            }
+        }
+
+        final CredentialType credentialType =
+                SharedPreferencesAccountCredentialCache.getCredentialTypeForCredentialCacheKey(rawKey);
+
+        if (null == credentialType) {
+            return cache(new CacheKey(rawKey, null, rawKey, "", false));
+        }
+
+        final String typeToken = toTypeToken(credentialType);
+        final int typeStart = rawKey.indexOf(typeToken);
+        boolean ambiguous = rawKey.indexOf(typeToken, typeStart + 1) >= 0;
+
+        for (final CredentialType otherType : CredentialType.values()) {
+            // Another type's token elsewhere in the key (e.g. within a target) makes the split unreliable
+            ambiguous = ambiguous || (otherType != credentialType && rawKey.contains(toTypeToken(otherType)));
+        }
+
+        return cache(new CacheKey(
+                rawKey,
+                credentialType,
+                rawKey.substring(0, typeStart),
+                rawKey.substring(typeStart + typeToken.length()),
+                ambiguous
+        ));
+    }
+
+    /**
+     * Gets the leading part of the home_account_id of a stored key: the characters preceding its
+     * first '.', which is the whole object id of a home_account_id of the form
+     * {@code <oid>.<tid>}. Failing that, the characters preceding its first separator. Unlike the
+     * whole home_account_id, this can always be recovered from a key, and it is the same for every
+     * key of an account.
+     *
+     * @param rawKey The key, as stored.
+     * @return The leading part of its home_account_id. May be empty.
+     */
+    @NonNull
+    public static String getHomeAccountIdPrefix(@NonNull final String rawKey) {
+        // An object id contains no '.', and the home_account_id leads the key
+        final int objectIdEnd = rawKey.indexOf(HOME_ACCOUNT_ID_SEPARATOR);
+
+        if (objectIdEnd >= 0) {
+            return rawKey.substring(0, objectIdEnd);
+        }
+
+        final int separatorIndex = rawKey.indexOf(CACHE_VALUE_SEPARATOR);
+
+        return separatorIndex < 0 ? rawKey : rawKey.substring(0, separatorIndex);
+    }
+
+    /**
+     * Gets the leading part of the supplied home_account_id, as it appears in the keys of its
+     * records; see {@link #getHomeAccountIdPrefix(String)}.
+     *
+     * @param homeAccountId The home_account_id.
+     * @return The leading part of its keys, or null if the home_account_id cannot be compared
+     * against keys or has no '.' (the leading part of its keys then depends on the rest of them).
+     */
+    @Nullable
+    public static String getHomeAccountIdPrefixForHomeAccountId(@Nullable final String homeAccountId) {
+        if (!isComparable(homeAccountId)) {
+            return null;
+        }
+
+        final String sanitizedHomeAccountId = sanitize(homeAccountId);
+        final int objectIdEnd = sanitizedHomeAccountId.indexOf(HOME_ACCOUNT_ID_SEPARATOR);
+
+        return objectIdEnd < 0 ? null : sanitizedHomeAccountId.substring(0, objectIdEnd);
+    }
+
+    /**
+     * Gets the credential type denoted by this key.
+     *
+     * @return The credential type, or null if this is the key of an Account.
+     */
+    @Nullable
+    public CredentialType getCredentialType() {
+        return mCredentialType;
+    }
+
+    /**
+     * Tests whether this is the key of an Account.
+     *
+     * @return True if this key denotes an Account, false if it denotes a Credential.
+     */
+    public boolean isAccount() {
+        return null == mCredentialType;
+    }
+
+    /**
+     * Tests whether the Account stored under this key could match the supplied criteria, as
+     * applied by {@link AbstractAccountCredentialCache#getAccountsFilteredByInternal}.
+     *
+     * @param homeAccountId The sought home_account_id, or null.
+     * @param environment   The sought environment, or null.
+     * @param realm         The sought realm, or null.
+     * @return False if the Account cannot match; true if it may.
+     */
+    public boolean mayMatchAccount(@Nullable final String homeAccountId,
+                                   @Nullable final String environment,
+                                   @Nullable final String realm) {
+        if (!isAccount()) {
+            return false;
+        }
+
+        if (mAmbiguous) {
+            return true;
+        }
+
+        final String segment = mAccountSegment;
+
+        return (!isComparable(homeAccountId) || segment.startsWith(sanitize(homeAccountId) + CACHE_VALUE_SEPARATOR))
+                && (!isComparable(environment) || segment.contains(CACHE_VALUE_SEPARATOR + sanitize(environment) + CACHE_VALUE_SEPARATOR))
+                && (!isComparable(realm) || segment.endsWith(CACHE_VALUE_SEPARATOR + sanitize(realm)));
+    }
+
+    /**
+     * Tests whether the Credential stored under this key could match the supplied criteria, as
+     * applied by {@link AbstractAccountCredentialCache#getCredentialsFilteredByInternal}.
+     *
+     * @param homeAccountId  The sought home_account_id, or null.
+     * @param environment    The sought environment, or null.
+     * @param credentialType The sought credential type, or null.
+     * @param clientId       The sought client id, or null.
+     * @param realm          The sought realm, or null.
+     * @param target         The sought target, or null.
+     * @return False if the Credential cannot match; true if it may.
+     */
+    public boolean mayMatchCredential(@Nullable final String homeAccountId,
+                                      @Nullable final String environment,
+                                      @Nullable final CredentialType credentialType,
+                                      @Nullable final String clientId,
+                                      @Nullable final String realm,
+                                      @Nullable final String target) {
+        if (isAccount()) {
+            return false;
+        }
+
+        if (mAmbiguous) {
+            return true;
+        }
+
+        if (null != credentialType && credentialType != mCredentialType) {
+            return false;
+        }
+
+        // The home account id and environment are adjacent, and either may contain the separator
+        if (isComparable(homeAccountId)
+                && !mAccountSegment.startsWith(sanitize(homeAccountId) + CACHE_VALUE_SEPARATOR)) {
+            return false;
+        }
+
+        if (isComparable(environment)
+                && !mAccountSegment.endsWith(CACHE_VALUE_SEPARATOR + sanitize(environment))) {
+            return false;
+        }
+
+        // RTs are keyed by family id, rather than client id, if they are FRTs
+        if (isComparable(clientId)
+                && CredentialType.RefreshToken != mCredentialType
+                && !mCredentialSegment.startsWith(sanitize(clientId) + CACHE_VALUE_SEPARATOR)) {
+            return false;
+        }
+
+        // Realm is only matched on for ATs and IdTokens
+        if (isComparable(realm)
+                && hasRealm()
+                && !mCredentialSegment.contains(CACHE_VALUE_SEPARATOR + sanitize(realm) + CACHE_VALUE_SEPARATOR)) {
+            return false;
+        }
+
+        if (isComparable(target) && hasTarget()) {
+            for (final String scope : sanitize(target).split("\\s+")) {
+                if (!scope.isEmpty() && !DEFAULT_SCOPES.contains(scope) && !mCredentialSegment.contains(scope)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return obj instanceof CacheKey && mRawKey.equals(((CacheKey) obj).mRawKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return mRawKey.hashCode();
+    }
+
+    /**
+     * Gets the key, as stored.
+     *
+     * @return The raw key.
+     */
+    @Override
+    @NonNull
+    public String toString() {
+        return mRawKey;
+    }
+
+    private boolean hasRealm() {
+        return CredentialType.AccessToken == mCredentialType
+                || CredentialType.AccessToken_With_AuthScheme == mCredentialType
+                || CredentialType.IdToken == mCredentialType
+                || CredentialType.V1IdToken == mCredentialType;
+    }
+
+    private boolean hasTarget() {
+        return CredentialType.AccessToken == mCredentialType
+                || CredentialType.AccessToken_With_AuthScheme == mCredentialType
+                || CredentialType.RefreshToken == mCredentialType;
+    }
+
+    @NonNull
+    private static String toTypeToken(@NonNull final CredentialType credentialType) {
+        return CACHE_VALUE_SEPARATOR + credentialType.name().toLowerCase(Locale.US) + CACHE_VALUE_SEPARATOR;
+    }
+
+    @NonNull
+    private static CacheKey cache(@NonNull final CacheKey key) {
+        synchronized (sParsedKeys) {
+            sParsedKeys.put(key.mRawKey, key);
+        }
+
+        return key;
+    }
+
+    /**
+     * Only ASCII criteria are compared against keys: for those, lowercasing agrees with the
+     * case-insensitive comparison used when matching records.
+     */
+    private static boolean isComparable(@Nullable final String criterion) {
+        if (StringExtensions.isNullOrBlank(criterion)) {
+            return false;
+        }
+
+        for (int ii = 0; ii < criterion.length(); ii++) {
+            if (criterion.charAt(ii) > ASCII_MAX) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @NonNull
+    private static StringBuilder appendSanitized(@NonNull final StringBuilder builder,
+                                                 @Nullable final String component) {
+        return builder.append(sanitize(component));
+    }
+
+    @NonNull
+    private static String sanitize(@Nullable final String component) {
+        return null == component ? "" : component.toLowerCase(Locale.US).trim();
+    }
+}
@@ -0,0 +1,449 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common.internal.cache;
+
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.microsoft.identity.common.internal.logging.Logger;
+import com.microsoft.identity.common.internal.util.Predicate;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link ISharedPreferencesFileManager} which keeps decrypted values in memory so that repeated
+ * reads do not pay for a disk read and a decryption each time.
+ * <p>
+ * Writes are passed through to the wrapped {@link ISharedPreferencesFileManager} immediately and
+ * the in-memory copy is updated in the same call, so reads through this instance always observe
+ * its own writes. The in-memory copy is bounded by an approximate size (in bytes); once the bound
+ * is exceeded the least-recently used entries are dropped and will be read from the wrapped
+ * instance again on next access.
+ * <p>
+ * Writes made inside a batch are held with the batch, and are seen only by the thread which began
+ * it, until {@link #commitBatch()}; the in-memory copy is updated when the batch commits.
+ * <p>
+ * Writes made to the same file through a different {@link ISharedPreferencesFileManager} are not
+ * observed by this instance. Callers should route all access to a given file through one instance.
+ */
+public class CachedSharedPreferencesFileManager implements ISharedPreferencesFileManager {
+
+    private static final String TAG = CachedSharedPreferencesFileManager.class.getSimpleName();
+
+    /**
+     * The default upper bound on the memory used by decrypted entries: 1 MB.
+     */
+    public static final long DEFAULT_MAX_SIZE_BYTES = 1024 * 1024;
+
+    /**
+     * Java Strings are UTF-16, so each char costs (approximately) two bytes.
+     */
+    private static final int BYTES_PER_CHAR = 2;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final ISharedPreferencesFileManager mDelegate;
+    private final long mMaxSizeBytes;
+
+    /**
+     * Decrypted entries, in access order (least-recently used first).
+     */
+    private final LinkedHashMap<String, String> mEntries = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+
+    private long mSizeBytes;
+
+    /**
+     * Incremented on every write; used to discard values read from the wrapped instance if a
+     * write raced with the read.
+     */
+    private long mGeneration;
+
+    /**
+     * True if {@link #mEntries} mirrors every entry of the underlying file. Becomes false as soon
+     * as an entry is evicted.
+     */
+    private boolean mFullyLoaded;
+
+    /**
+     * The batch open on each thread, if any. Values are plaintext; a null value is a removal.
+     */
+    private final ThreadLocal<WriteBatch> mBatches = new ThreadLocal<>();
+
+    /**
+     * Constructs a new CachedSharedPreferencesFileManager bounded by
+     * {@link #DEFAULT_MAX_SIZE_BYTES}.
+     *
+     * @param delegate The {@link ISharedPreferencesFileManager} to which reads and writes are
+     *                 passed.
+     */
+    public CachedSharedPreferencesFileManager(@NonNull final ISharedPreferencesFileManager delegate) {
+        this(delegate, DEFAULT_MAX_SIZE_BYTES);
+    }
+
+    /**
+     * Constructs a new CachedSharedPreferencesFileManager.
+     *
+     * @param delegate     The {@link ISharedPreferencesFileManager} to which reads and writes are
+     *                     passed.
+     * @param maxSizeBytes The approximate upper bound on memory used by decrypted entries.
+     */
+    public CachedSharedPreferencesFileManager(@NonNull final ISharedPreferencesFileManager delegate,
+                                              final long maxSizeBytes) {
+        if (maxSizeBytes <= 0) {
+            throw new IllegalArgumentException("maxSizeBytes must be positive.");
+        }
+
+        Logger.verbose(TAG, "Init: " + TAG);
+        mDelegate = delegate;
+        mMaxSizeBytes = maxSizeBytes;
+    }
+
+    @Override
+    public void putString(final String key, final String value) {
+        final WriteBatch batch = mBatches.get();
+
+        if (null != batch) {
+            mDelegate.putString(key, value);
+            batch.put(key, value);
+            return;
+        }
+
+        synchronized (mEntries) {
+            // Held across the write so that the file and memory agree on the last writer
+            mDelegate.putString(key, value);
+            mGeneration++;
+
+            if (null == value) {
+                removeEntry(key);
+            } else {
+                putEntry(key, value);
+            }
+        }
+    }
+
+    @Override
+    @Nullable
+    public String getString(final String key) {
+        final WriteBatch batch = mBatches.get();
+
+        if (null != batch && batch.determines(key)) {
+            return batch.get(key);
+        }
+
+        final long generation;
+
+        synchronized (mEntries) {
+            final String cachedValue = mEntries.get(key);
+
+            if (null != cachedValue || mFullyLoaded) {
+                mHitCount.incrementAndGet();
+                return cachedValue;
+            }
+
+            generation = mGeneration;
+        }
+
+        mMissCount.incrementAndGet();
+        final String value = mDelegate.getString(key);
+
+        if (null != value) {
+            synchronized (mEntries) {
+                if (generation == mGeneration) {
+                    putEntry(key, value);
+                }
+            }
+        }
+
+        return value;
+    }
+
+    @Override
+    public void putLong(final String key, final long value) {
+        putString(key, String.valueOf(value));
+    }
+
+    @Override
+    public long getLong(final String key) {
+        final String result = getString(key);
+
+        if (!TextUtils.isEmpty(result)) {
+            return Long.parseLong(result);
+        }
+
+        return 0;
+    }
+
+    @Override
+    public String getSharedPreferencesFileName() {
+        return mDelegate.getSharedPreferencesFileName();
+    }
+
+    @Override
+    public Map<String, String> getAll() {
+        if (null != mBatches.get()) {
+            // Includes this thread's uncommitted writes; not for publishing
+            return mDelegate.getAll();
+        }
+
+        final long generation;
+
+        synchronized (mEntries) {
+            if (mFullyLoaded) {
+                mHitCount.incrementAndGet();
+                return new HashMap<>(mEntries);
+            }
+
+            generation = mGeneration;
+        }
+
+        mMissCount.incrementAndGet();
+        final Map<String, String> entries = mDelegate.getAll();
+
+        synchronized (mEntries) {
+            if (generation != mGeneration) {
+                // A write raced with this read; don't publish what may now be stale
+                return entries;
+            }
+
+            clearEntries();
+
+            for (final Map.Entry<String, String> entry : entries.entrySet()) {
+                putEntry(entry.getKey(), entry.getValue());
+            }
+
+            // Only if nothing was evicted while loading do we hold the whole file
+            mFullyLoaded = mEntries.size() == entries.size();
+        }
+
+        return entries;
+    }
+
+    @Override
+    public Map<String, String> getAll(@NonNull final Predicate<String> keyFilter) {
+        if (null != mBatches.get()) {
+            // Includes this thread's uncommitted writes; not for publishing
+            return mDelegate.getAll(keyFilter);
+        }
+
+        final long generation;
+
+        synchronized (mEntries) {
+            if (mFullyLoaded) {
+                mHitCount.incrementAndGet();
+                final Map<String, String> matchingEntries = new HashMap<>();
+
+                for (final Map.Entry<String, String> entry : mEntries.entrySet()) {
+                    if (keyFilter.test(entry.getKey())) {
+                        matchingEntries.put(entry.getKey(), entry.getValue());
+                    }
+                }
+
+                return matchingEntries;
+            }
+
+            generation = mGeneration;
+        }
+
+        mMissCount.incrementAndGet();
+        final Map<String, String> entries = mDelegate.getAll(keyFilter);
+
+        synchronized (mEntries) {
+            if (generation == mGeneration) {
+                for (final Map.Entry<String, String> entry : entries.entrySet()) {
+                    putEntry(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        return entries;
+    }
+
+    @Override
+    public boolean contains(final String key) {
+        return !TextUtils.isEmpty(getString(key));
+    }
+
+    @Override
+    public void clear() {
+        final WriteBatch batch = mBatches.get();
+
+        if (null != batch) {
+            mDelegate.clear();
+            batch.clear();
+            return;
+        }
+
+        synchronized (mEntries) {
+            mDelegate.clear();
+            mGeneration++;
+            clearEntries();
+            mFullyLoaded = true;
+        }
+    }
+
+    @Override
+    public void remove(final String key) {
+        final WriteBatch batch = mBatches.get();
+
+        if (null != batch) {
+            mDelegate.remove(key);
+            batch.put(key, null);
+            return;
+        }
+
+        synchronized (mEntries) {
+            mDelegate.remove(key);
+            mGeneration++;
+            removeEntry(key);
+        }
+    }
+
+    @Override
+    public void beginBatch() {
+        mDelegate.beginBatch();
+        WriteBatch.begin(mBatches);
+    }
+
+    @Override
+    public void commitBatch() {
+        final WriteBatch batch = WriteBatch.end(mBatches);
+
+        if (null == batch) {
+            mDelegate.commitBatch();
+            return;
+        }
+
+        synchronized (mEntries) {
+            // Held across the commit so that the file and memory agree on the last writer
+            mDelegate.commitBatch();
+            mGeneration++;
+
+            if (batch.isCleared()) {
+                clearEntries();
+                mFullyLoaded = true;
+            }
+
+            for (final Map.Entry<String, String> write : batch.getWrites().entrySet()) {
+                if (null == write.getValue()) {
+                    removeEntry(write.getKey());
+                } else {
+                    putEntry(write.getKey(), write.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of reads which were served from memory.
+     *
+     * @return The hit count.
+     */
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    /**
+     * Gets the number of reads which had to be served by the wrapped
+     * {@link ISharedPreferencesFileManager}.
+     *
+     * @return The miss count.
+     */
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    /**
+     * Gets the approximate memory currently used by decrypted entries, in bytes.
+     *
+     * @return The size in bytes.
+     */
+    public long getSizeBytes() {
+        synchronized (mEntries) {
+            return mSizeBytes;
+        }
+    }
+
+    /**
+     * Drops all decrypted entries held in memory. The underlying file is not modified.
+     */
+    public void evictAll() {
+        synchronized (mEntries) {
+            clearEntries();
+        }
+    }
+
+    // Must be called while holding the mEntries lock.
+    private void putEntry(@NonNull final String key, @NonNull final String value) {
+        final String previousValue = mEntries.put(key, value);
+
+        if (null != previousValue) {
+            mSizeBytes -= sizeOf(key, previousValue);
+        }
+
+        mSizeBytes += sizeOf(key, value);
+        trimToSize();
+    }
+
+    // Must be called while holding the mEntries lock.
+    private void removeEntry(@NonNull final String key) {
+        final String previousValue = mEntries.remove(key);
+
+        if (null != previousValue) {
+            mSizeBytes -= sizeOf(key, previousValue);
+        }
+    }
+
+    // Must be called while holding the mEntries lock.
+    private void clearEntries() {
+        mEntries.clear();
+        mSizeBytes = 0;
+        mFullyLoaded = false;
+    }
+
+    // Must be called while holding the mEntries lock.
+    private void trimToSize() {
+        final Iterator<Map.Entry<String, String>> iterator = mEntries.entrySet().iterator();
+
+        while (mSizeBytes > mMaxSizeBytes && iterator.hasNext()) {
+            final Map.Entry<String, String> eldest = iterator.next();
+            mSizeBytes -= sizeOf(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+            mFullyLoaded = false;
+        }
+    }
+
+    private static long sizeOf(@NonNull final String key, @NonNull final String value) {
+        return (long) (key.length() + value.length()) * BYTES_PER_CHAR;
+    }
+}
@@ -0,0 +1,140 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common.internal.cache;
+
+import androidx.annotation.Nullable;
+
+import com.microsoft.identity.common.internal.dto.CredentialType;
+
+/**
+ * The criteria of one bucket of a multi-bucket Credential lookup; see
+ * {@link IAccountCredentialCache#getCredentialsForQueries(java.util.List)}. Criteria are applied
+ * as by {@link IAccountCredentialCache#getCredentialsFilteredBy}: null criteria match any value.
+ */
+public final class CredentialQuery {
+
+    private final String mHomeAccountId;
+    private final String mEnvironment;
+    private final CredentialType mCredentialType;
+    private final String mClientId;
+    private final String mRealm;
+    private final String mTarget;
+    private final String mAuthScheme;
+
+    /**
+     * Constructs a new CredentialQuery.
+     *
+     * @param homeAccountId  The homeAccountId used to match Credential cache keys.
+     * @param environment    The environment used to match Credential cache keys.
+     * @param credentialType The sought CredentialType.
+     * @param clientId       The clientId used to match Credential cache keys.
+     * @param realm          The realm used to match Credential cache keys.
+     * @param target         The target used to match Credential cache keys.
+     * @param authScheme     The auth scheme used to match AccessTokens.
+     */
+    public CredentialQuery(@Nullable final String homeAccountId,
+                           @Nullable final String environment,
+                           @Nullable final CredentialType credentialType,
+                           @Nullable final String clientId,
+                           @Nullable final String realm,
+                           @Nullable final String target,
+                           @Nullable final String authScheme) {
+        mHomeAccountId = homeAccountId;
+        mEnvironment = environment;
+        mCredentialType = credentialType;
+        mClientId = clientId;
+        mRealm = realm;
+        mTarget = target;
+        mAuthScheme = authScheme;
+    }
+
+    /**
+     * Gets the homeAccountId.
+     *
+     * @return The homeAccountId criterion, or null for any.
+     */
+    @Nullable
+    public String getHomeAccountId() {
+        return mHomeAccountId;
+    }
+
+    /**
+     * Gets the environment.
+     *
+     * @return The environment criterion, or null for any.
+     */
+    @Nullable
+    public String getEnvironment() {
+        return mEnvironment;
+    }
+
+    /**
+     * Gets the CredentialType.
+     *
+     * @return The CredentialType criterion, or null for any.
+     */
+    @Nullable
+    public CredentialType getCredentialType() {
+        return mCredentialType;
+    }
+
+    /**
+     * Gets the clientId.
+     *
+     * @return The clientId criterion, or null for any.
+     */
+    @Nullable
+    public String getClientId() {
+        return mClientId;
+    }
+
+    /**
+     * Gets the realm.
+     *
+     * @return The realm criterion, or null for any.
+     */
+    @Nullable
+    public String getRealm() {
+        return mRealm;
+    }
+
+    /**
+     * Gets the target.
+     *
+     * @return The target criterion, or null for any.
+     */
+    @Nullable
+    public String getTarget() {
+        return mTarget;
+    }
+
+    /**
+     * Gets the auth scheme.
+     *
+     * @return The auth scheme criterion, or null for any.
+     */
+    @Nullable
+    public String getAuthScheme() {
+        return mAuthScheme;
+    }
+}
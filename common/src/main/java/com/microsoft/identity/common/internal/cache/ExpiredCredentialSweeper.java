@@ -0,0 +1,394 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common.internal.cache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.microsoft.identity.common.adal.internal.util.StringExtensions;
+import com.microsoft.identity.common.internal.dto.AccessTokenRecord;
+import com.microsoft.identity.common.internal.dto.AccountCredentialBase;
+import com.microsoft.identity.common.internal.dto.AccountRecord;
+import com.microsoft.identity.common.internal.dto.Credential;
+import com.microsoft.identity.common.internal.dto.IdTokenRecord;
+import com.microsoft.identity.common.internal.logging.Logger;
+import com.microsoft.identity.common.internal.util.Predicate;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Removes dead entries from an {@link IAccountCredentialCache} in the background, so that they
+ * are not read (and decrypted) by every scan until a request happens to find them.
+ * <p>
+ * A sweep removes, in a single batch:
+ * <ul>
+ * <li>access tokens past their expires_on, and past their extended_expires_on if one is set;</li>
+ * <li>ID tokens for which no Account with the same home_account_id and environment exists.
+ * ID tokens cached within the last {@link #ORPHAN_GRACE_PERIOD_SECONDS} are kept, as their
+ * Account may be being saved alongside them.</li>
+ * </ul>
+ * Sweeps are throttled: {@link #start()} sweeps once per interval, and {@link #requestSweep()}
+ * sweeps only if the interval has elapsed since the last sweep.
+ */
+public class ExpiredCredentialSweeper {
+
+    private static final String TAG = ExpiredCredentialSweeper.class.getSimpleName();
+
+    /**
+     * The default minimum interval between sweeps: 1 hour.
+     */
+    public static final long DEFAULT_MIN_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * ID tokens cached more recently than this are never considered orphaned.
+     */
+    public static final long ORPHAN_GRACE_PERIOD_SECONDS = TimeUnit.MINUTES.toSeconds(5);
+
+    private static final ScheduledExecutorService sSweepExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * The outcome of a sweep.
+     */
+    public static final class Result {
+
+        private final int mExpiredAccessTokenCount;
+        private final int mOrphanedIdTokenCount;
+        private final long mReclaimedBytes;
+
+        Result(final int expiredAccessTokenCount,
+               final int orphanedIdTokenCount,
+               final long reclaimedBytes) {
+            mExpiredAccessTokenCount = expiredAccessTokenCount;
+            mOrphanedIdTokenCount = orphanedIdTokenCount;
+            mReclaimedBytes = reclaimedBytes;
+        }
+
+        /**
+         * Gets the number of expired access tokens removed.
+         *
+         * @return The count.
+         */
+        public int getExpiredAccessTokenCount() {
+            return mExpiredAccessTokenCount;
+        }
+
+        /**
+         * Gets the number of orphaned ID tokens removed.
+         *
+         * @return The count.
+         */
+        public int getOrphanedIdTokenCount() {
+            return mOrphanedIdTokenCount;
+        }
+
+        /**
+         * Gets the number of entries removed.
+         *
+         * @return The count.
+         */
+        public int getReclaimedEntryCount() {
+            return mExpiredAccessTokenCount + mOrphanedIdTokenCount;
+        }
+
+        /**
+         * Gets the approximate size of the removed entries: the length of their keys and of their
+         * serialized (unencrypted) values.
+         *
+         * @return The size, in bytes.
+         */
+        public long getReclaimedBytes() {
+            return mReclaimedBytes;
+        }
+    }
+
+    private final IAccountCredentialCache mAccountCredentialCache;
+    private final ICacheKeyValueDelegate mCacheValueDelegate;
+    private final long mMinIntervalMillis;
+
+    /**
+     * Guards the sweep state below.
+     */
+    private final Object mLock = new Object();
+
+    /**
+     * The {@link System#nanoTime()} of the last sweep, or null if there has been none.
+     */
+    @Nullable
+    private Long mLastSweepNanos;
+
+    private boolean mSweepRequested;
+
+    @Nullable
+    private ScheduledFuture<?> mScheduledSweeps;
+
+    private final AtomicLong mReclaimedEntryCount = new AtomicLong();
+    private final AtomicLong mReclaimedBytes = new AtomicLong();
+
+    /**
+     * Constructs a new ExpiredCredentialSweeper which sweeps at most once per
+     * {@link #DEFAULT_MIN_INTERVAL_MILLIS}.
+     *
+     * @param accountCredentialCache The cache to sweep.
+     * @param cacheValueDelegate     The delegate used to measure removed entries.
+     */
+    public ExpiredCredentialSweeper(@NonNull final IAccountCredentialCache accountCredentialCache,
+                                    @NonNull final ICacheKeyValueDelegate cacheValueDelegate) {
+        this(accountCredentialCache, cacheValueDelegate, DEFAULT_MIN_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Constructs a new ExpiredCredentialSweeper.
+     *
+     * @param accountCredentialCache The cache to sweep.
+     * @param cacheValueDelegate     The delegate used to measure removed entries.
+     * @param minIntervalMillis      The minimum interval between sweeps.
+     */
+    public ExpiredCredentialSweeper(@NonNull final IAccountCredentialCache accountCredentialCache,
+                                    @NonNull final ICacheKeyValueDelegate cacheValueDelegate,
+                                    final long minIntervalMillis) {
+        if (minIntervalMillis <= 0) {
+            throw new IllegalArgumentException("minIntervalMillis must be positive.");
+        }
+
+        mAccountCredentialCache = accountCredentialCache;
+        mCacheValueDelegate = cacheValueDelegate;
+        mMinIntervalMillis = minIntervalMillis;
+    }
+
+    /**
+     * Sweeps in the background once per interval, until {@link #stop()}.
+     */
+    public void start() {
+        synchronized (mLock) {
+            if (null != mScheduledSweeps) {
+                return;
+            }
+
+            mScheduledSweeps = sSweepExecutor.scheduleWithFixedDelay(
+                    newSweepTask(),
+                    mMinIntervalMillis,
+                    mMinIntervalMillis,
+                    TimeUnit.MILLISECONDS
+            );
+        }
+    }
+
+    /**
+     * Stops the sweeps started by {@link #start()}. A sweep in progress runs to completion.
+     */
+    public void stop() {
+        synchronized (mLock) {
+            if (null != mScheduledSweeps) {
+                mScheduledSweeps.cancel(false);
+                mScheduledSweeps = null;
+            }
+        }
+    }
+
+    /**
+     * Sweeps in the background, unless a sweep has run within the interval or is already
+     * requested.
+     */
+    public void requestSweep() {
+        synchronized (mLock) {
+            if (mSweepRequested || !isSweepDue()) {
+                return;
+            }
+
+            mSweepRequested = true;
+        }
+
+        sSweepExecutor.execute(newSweepTask());
+    }
+
+    /**
+     * Sweeps now, regardless of the interval.
+     *
+     * @return The outcome of the sweep.
+     */
+    public Result sweep() {
+        final String methodName = ":sweep";
+
+        synchronized (mLock) {
+            mLastSweepNanos = System.nanoTime();
+        }
+
+        final long nowSeconds = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        final Set<List<String>> accountKeys = new HashSet<>();
+
+        for (final AccountRecord account : mAccountCredentialCache.getAccounts()) {
+            accountKeys.add(getAccountKey(account.getHomeAccountId(), account.getEnvironment()));
+        }
+
+        final List<AccountCredentialBase> removed = mAccountCredentialCache.removeAll(
+                new Predicate<AccountCredentialBase>() {
+                    @Override
+                    public boolean test(final AccountCredentialBase record) {
+                        if (record instanceof AccessTokenRecord) {
+                            return isPastExpiry((AccessTokenRecord) record);
+                        }
+
+                        if (record instanceof IdTokenRecord) {
+                            final IdTokenRecord idToken = (IdTokenRecord) record;
+
+                            return !isCachedSince(idToken, nowSeconds - ORPHAN_GRACE_PERIOD_SECONDS)
+                                    && !accountKeys.contains(
+                                    getAccountKey(idToken.getHomeAccountId(), idToken.getEnvironment())
+                            );
+                        }
+
+                        return false;
+                    }
+                }
+        );
+
+        int expiredAccessTokenCount = 0;
+        long reclaimedBytes = 0;
+
+        for (final AccountCredentialBase record : removed) {
+            final Credential credential = (Credential) record;
+
+            if (credential instanceof AccessTokenRecord) {
+                expiredAccessTokenCount++;
+            }
+
+            reclaimedBytes += mCacheValueDelegate.generateCacheKey(credential).length()
+                    + mCacheValueDelegate.generateCacheValue(credential).length();
+        }
+
+        final Result result = new Result(
+                expiredAccessTokenCount,
+                removed.size() - expiredAccessTokenCount,
+                reclaimedBytes
+        );
+
+        mReclaimedEntryCount.addAndGet(result.getReclaimedEntryCount());
+        mReclaimedBytes.addAndGet(result.getReclaimedBytes());
+
+        Logger.info(
+                TAG + methodName,
+                "Removed ["
+                        + result.getExpiredAccessTokenCount()
+                        + "] expired access tokens and ["
+                        + result.getOrphanedIdTokenCount()
+                        + "] orphaned ID tokens, reclaiming ["
+                        + result.getReclaimedBytes()
+                        + "] bytes."
+        );
+
+        return result;
+    }
+
+    /**
+     * Gets the number of entries removed by all sweeps so far.
+     *
+     * @return The count.
+     */
+    public long getReclaimedEntryCount() {
+        return mReclaimedEntryCount.get();
+    }
+
+    /**
+     * Gets the approximate size of the entries removed by all sweeps so far; see
+     * {@link Result#getReclaimedBytes()}.
+     *
+     * @return The size, in bytes.
+     */
+    public long getReclaimedBytes() {
+        return mReclaimedBytes.get();
+    }
+
+    private Runnable newSweepTask() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (isSweepDueAndClearRequest()) {
+                        sweep();
+                    }
+                } catch (final RuntimeException e) {
+                    Logger.error(
+                            TAG + ":newSweepTask",
+                            "Failed to sweep the cache.",
+                            e
+                    );
+                }
+            }
+        };
+    }
+
+    private boolean isSweepDueAndClearRequest() {
+        synchronized (mLock) {
+            mSweepRequested = false;
+
+            return isSweepDue();
+        }
+    }
+
+    // Must be called while holding the mLock.
+    private boolean isSweepDue() {
+        return null == mLastSweepNanos
+                || TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mLastSweepNanos) >= mMinIntervalMillis;
+    }
+
+    /**
+     * Tests whether the supplied access token can no longer be used: it is past its expires_on,
+     * and past its extended_expires_on if one is set.
+     */
+    private static boolean isPastExpiry(@NonNull final AccessTokenRecord accessToken) {
+        try {
+            return accessToken.isExpired()
+                    && (StringExtensions.isNullOrBlank(accessToken.getExtendedExpiresOn())
+                    || accessToken.isExtendedExpired());
+        } catch (final NumberFormatException e) {
+            // An expiry we cannot read is left for the request path to deal with
+            return false;
+        }
+    }
+
+    private static boolean isCachedSince(@NonNull final Credential credential, final long sinceSeconds) {
+        try {
+            return !StringExtensions.isNullOrBlank(credential.getCachedAt())
+                    && Long.parseLong(credential.getCachedAt()) >= sinceSeconds;
+        } catch (final NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static List<String> getAccountKey(@Nullable final String homeAccountId,
+                                              @Nullable final String environment) {
+        return Arrays.asList(
+                null == homeAccountId ? null : homeAccountId.toLowerCase(Locale.US),
+                null == environment ? null : environment.toLowerCase(Locale.US)
+        );
+    }
+}
@@ -0,0 +1,69 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common.internal.cache;
+
+import androidx.annotation.NonNull;
+
+import com.microsoft.identity.common.internal.util.Predicate;
+
+/**
+ * A key filter for a query of a single home_account_id: no record stored under a key of any
+ * other home_account_id can match the query.
+ * <p>
+ * It behaves exactly as the filter it wraps; implementations of
+ * {@link ISharedPreferencesFileManager#getAll(Predicate)} which partition their entries by
+ * account, such as {@link ShardedSharedPreferencesFileManager}, may use the home_account_id to
+ * read only the partition of that account.
+ */
+public final class HomeAccountIdKeyFilter implements Predicate<String> {
+
+    private final String mHomeAccountId;
+    private final Predicate<String> mKeyFilter;
+
+    /**
+     * Constructs a new HomeAccountIdKeyFilter.
+     *
+     * @param homeAccountId The home_account_id of the query.
+     * @param keyFilter     The filter to apply to each key.
+     */
+    public HomeAccountIdKeyFilter(@NonNull final String homeAccountId,
+                                  @NonNull final Predicate<String> keyFilter) {
+        mHomeAccountId = homeAccountId;
+        mKeyFilter = keyFilter;
+    }
+
+    /**
+     * Gets the home_account_id of the query.
+     *
+     * @return The home_account_id.
+     */
+    @NonNull
+    public String getHomeAccountId() {
+        return mHomeAccountId;
+    }
+
+    @Override
+    public boolean test(final String cacheKey) {
+        return mKeyFilter.test(cacheKey);
+    }
+}
@@ -22,9 +22,11 @@
 // THE SOFTWARE.
 package com.microsoft.identity.common.internal.cache;
 
+import com.microsoft.identity.common.internal.dto.AccountCredentialBase;
 import com.microsoft.identity.common.internal.dto.AccountRecord;
 import com.microsoft.identity.common.internal.dto.Credential;
 import com.microsoft.identity.common.internal.dto.CredentialType;
+import com.microsoft.identity.common.internal.util.Predicate;
 
 import java.util.List;
 
@@ -112,6 +114,16 @@ public interface IAccountCredentialCache {
             final String authScheme
     );
 
+    /**
+     * Runs the supplied queries in a single pass over the cache, partitioning the matching
+     * Credentials into one bucket per query. A Credential matching several queries is added to
+     * each of their buckets.
+     *
+     * @param queries The criteria of each bucket.
+     * @return One mutable List of matching Credentials per query, in the order of the queries.
+     */
+    List<List<Credential>> getCredentialsForQueries(final List<CredentialQuery> queries);
+
     /**
      * Removes the supplied Account from the cache.
      *
@@ -128,9 +140,36 @@ public interface IAccountCredentialCache {
      */
     boolean removeCredential(final Credential credentialToRemove);
 
+    /**
+     * Removes every Account and Credential which satisfies the supplied predicate. The removals
+     * are persisted together, as in a batch.
+     *
+     * @param predicate The test applied to each Account and Credential.
+     * @return The removed Accounts and Credentials.
+     */
+    List<AccountCredentialBase> removeAll(final Predicate<AccountCredentialBase> predicate);
+
     /**
      * Clear the contents of the cache.
      */
     void clearAll();
 
+    /**
+     * Begins a batch of writes. Until the matching {@link #commitBatch()}, saves and removals are
+     * buffered and then persisted together, with a single write to the underlying storage.
+     * <p>
+     * A batch belongs to the thread which began it, and {@link #commitBatch()} must be called on
+     * that thread. Only that thread's saves and removals join the batch, and no other thread
+     * observes them before the commit; implementations either leave other threads reading the
+     * committed state or make them wait for the commit.
+     * <p>
+     * Batches may be nested; only the outermost {@link #commitBatch()} persists.
+     */
+    void beginBatch();
+
+    /**
+     * Ends the batch started by {@link #beginBatch()}, persisting the buffered writes if this is
+     * the outermost batch.
+     */
+    void commitBatch();
 }
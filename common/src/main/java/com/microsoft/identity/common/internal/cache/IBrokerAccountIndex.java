@@ -0,0 +1,81 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common.internal.cache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A broker-wide index of the caches holding records of each account, so that account lookups
+ * and removals need only open the caches which hold that account.
+ * <p>
+ * The index is a superset: an entry may outlive the records it describes, but records written
+ * through the broker are always indexed, as their entries are persisted before them. Caches written by other means are indexed by scanning
+ * them, once per {@link BrokerApplicationMetadata}; see {@link #getIndexedApplications()}.
+ */
+public interface IBrokerAccountIndex extends ISimpleCache<BrokerAccountIndexEntry> {
+
+    /**
+     * Returns the entries of the supplied account.
+     *
+     * @param homeAccountId The home_account_id of the account, matched ignoring case.
+     * @param environment   The environment of the account, matched ignoring case. If null, any.
+     * @return The matching entries. May be empty, never null.
+     */
+    List<BrokerAccountIndexEntry> getEntries(@NonNull String homeAccountId, @Nullable String environment);
+
+    /**
+     * Inserts each of the supplied entries, with a single write which has reached disk when this
+     * returns.
+     *
+     * @param entries The entries to insert.
+     * @return True, if inserted and written. False otherwise.
+     */
+    boolean insertAll(@NonNull Collection<BrokerAccountIndexEntry> entries);
+
+    /**
+     * Removes each of the supplied entries, with a single write.
+     *
+     * @param entries The entries to remove.
+     * @return True if removed or none exist. False otherwise.
+     */
+    boolean removeAll(@NonNull Collection<BrokerAccountIndexEntry> entries);
+
+    /**
+     * @return The applications whose caches have been scanned into this index. May be empty,
+     * never null.
+     */
+    Set<BrokerApplicationMetadata> getIndexedApplications();
+
+    /**
+     * Records that the caches of the supplied applications have been scanned into this index.
+     *
+     * @param applications The scanned applications.
+     * @return True, if recorded. False otherwise.
+     */
+    boolean addIndexedApplications(@NonNull Collection<BrokerApplicationMetadata> applications);
+}
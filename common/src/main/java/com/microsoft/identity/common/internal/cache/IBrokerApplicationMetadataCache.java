@@ -30,17 +30,17 @@ import java.util.Set;
 public interface IBrokerApplicationMetadataCache extends ISimpleCache<BrokerApplicationMetadata> {
 
     /**
-     * @return A Set of all ClientIds known to this cache. May be empty, but never null.
+     * @return An unmodifiable Set of all ClientIds known to this cache. May be empty, but never null.
      */
     Set<String> getAllClientIds();
 
     /**
-     * @return The Set of all FoCI clientIds.
+     * @return The unmodifiable Set of all FoCI clientIds.
      */
     Set<String> getAllFociClientIds();
 
     /**
-     * @return The Set of all non-FoCI clientIds.
+     * @return The unmodifiable Set of all non-FoCI clientIds.
      */
     Set<String> getAllNonFociClientIds();
 
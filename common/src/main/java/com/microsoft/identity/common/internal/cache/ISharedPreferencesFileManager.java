@@ -24,6 +24,8 @@ package com.microsoft.identity.common.internal.cache;
 
 import android.content.SharedPreferences;
 
+import com.microsoft.identity.common.internal.util.Predicate;
+
 import java.util.Map;
 
 
@@ -77,6 +79,18 @@ public interface ISharedPreferencesFileManager {
      */
     Map<String, String> getAll();
 
+    /**
+     * Returns the entries in the {@link SharedPreferences} file whose keys match the supplied
+     * filter. Values are only read (and decrypted, if applicable) for keys which match.
+     * <p>
+     * Note that you must not modify the collection returned by this method, or alter any of its
+     * contents. The consistency of your stored data is not guaranteed if you do.
+     *
+     * @param keyFilter The filter to apply to each key.
+     * @return A Map of the matching entries.
+     */
+    Map<String, String> getAll(Predicate<String> keyFilter);
+
     /**
      * Tests if the {@link SharedPreferences} file contains an entry for the supplied key.
      *
@@ -96,4 +110,26 @@ public interface ISharedPreferencesFileManager {
      * @param key The key whose value should be cleared.
      */
     void remove(final String key);
+
+    /**
+     * Begins a batch of writes. Until the matching {@link #commitBatch()}, calls to
+     * {@link #putString(String, String)}, {@link #remove(String)} and {@link #clear()} are
+     * buffered in memory, then persisted together with a single write to the
+     * {@link SharedPreferences} file.
+     * <p>
+     * A batch belongs to the thread which began it, and {@link #commitBatch()} must be called on
+     * that thread. Only that thread's writes join the batch, and only its reads see them before
+     * the commit; other threads keep reading and writing the file as if no batch were open.
+     * <p>
+     * Batches may be nested; only the outermost {@link #commitBatch()} persists.
+     */
+    void beginBatch();
+
+    /**
+     * Ends the batch started by {@link #beginBatch()}, persisting the buffered writes if this is
+     * the outermost batch.
+     *
+     * @throws IllegalStateException If no batch is in progress on the calling thread.
+     */
+    void commitBatch();
 }
@@ -0,0 +1,717 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common.internal.cache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.microsoft.identity.common.adal.internal.util.StringExtensions;
+import com.microsoft.identity.common.internal.dto.AccessTokenRecord;
+import com.microsoft.identity.common.internal.dto.AccountCredentialBase;
+import com.microsoft.identity.common.internal.dto.AccountRecord;
+import com.microsoft.identity.common.internal.dto.Credential;
+import com.microsoft.identity.common.internal.dto.CredentialType;
+import com.microsoft.identity.common.internal.dto.IdTokenRecord;
+import com.microsoft.identity.common.internal.logging.Logger;
+import com.microsoft.identity.common.internal.util.Predicate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+/**
+ * An {@link IAccountCredentialCache} which keeps every {@link AccountRecord} and
+ * {@link Credential} of a backing {@link IAccountCredentialCache} in memory, indexed by
+ * home_account_id, client_id, credential_type, environment and realm.
+ * <p>
+ * The backing cache is read in full on first use; afterwards, filtered lookups are answered by
+ * intersecting the relevant index buckets, and only the surviving candidates are subjected to the
+ * remaining (target, auth scheme) checks. All writes are passed to the backing cache and the
+ * indexes are updated in place.
+ * <p>
+ * The backing cache may instead be read ahead of first use, on a background thread, via
+ * {@link #prefetch()}; callers which arrive while that read is in progress wait for it rather
+ * than starting another.
+ * <p>
+ * The indexes are updated as soon as a write is made, so while a batch is open, other threads
+ * wait for it to be committed before reading or writing through this instance.
+ * <p>
+ * Records returned by this cache are shared with its indexes and must be treated as read-only.
+ * Writes made to the backing cache through any other instance are not observed; see
+ * {@link MsalOAuth2TokenCache#createAccountCredentialCache}, which shares one instance per file.
+ */
+public class IndexedAccountCredentialCache extends AbstractAccountCredentialCache {
+
+    private static final String TAG = IndexedAccountCredentialCache.class.getSimpleName();
+
+    /**
+     * Runs the background reads started by {@link #prefetch()}.
+     */
+    private static final ExecutorService sPrefetchExecutor = Executors.newCachedThreadPool();
+
+    private final IAccountCredentialCache mBackingCache;
+    private final ICacheKeyValueDelegate mCacheValueDelegate;
+
+    // Primary storage, by cache key
+    private final Map<String, AccountRecord> mAccounts = new HashMap<>();
+    private final Map<String, Credential> mCredentials = new HashMap<>();
+
+    // Account indexes: normalized value -> cache keys
+    private final Map<String, Set<String>> mAccountsByHomeAccountId = new HashMap<>();
+    private final Map<String, Set<String>> mAccountsByEnvironment = new HashMap<>();
+    private final Map<String, Set<String>> mAccountsByRealm = new HashMap<>();
+
+    // Credential indexes: normalized value -> cache keys
+    private final Map<String, Set<String>> mCredentialsByHomeAccountId = new HashMap<>();
+    private final Map<String, Set<String>> mCredentialsByEnvironment = new HashMap<>();
+    private final Map<String, Set<String>> mCredentialsByType = new HashMap<>();
+    private final Map<String, Set<String>> mCredentialsByClientId = new HashMap<>();
+    private final Map<String, Set<String>> mCredentialsByRealm = new HashMap<>();
+
+    /**
+     * Keys of Credentials which carry no realm (such as RefreshTokens). A realm filter does not
+     * apply to these, so they always survive the realm intersection.
+     */
+    private final Set<String> mCredentialsWithoutRealm = new HashSet<>();
+
+    private boolean mLoaded;
+
+    /**
+     * The read of the backing cache in progress, if any.
+     */
+    private FutureTask<Snapshot> mLoadTask;
+
+    /**
+     * The thread whose batch is open, if any, and the nesting depth of that batch.
+     */
+    private Thread mBatchOwner;
+    private int mBatchDepth;
+
+    /**
+     * Constructs a new IndexedAccountCredentialCache.
+     *
+     * @param cacheValueDelegate The {@link ICacheKeyValueDelegate} used by the backing cache
+     *                           to generate cache keys.
+     * @param backingCache       The {@link IAccountCredentialCache} to index.
+     */
+    public IndexedAccountCredentialCache(@NonNull final ICacheKeyValueDelegate cacheValueDelegate,
+                                         @NonNull final IAccountCredentialCache backingCache) {
+        Logger.verbose(TAG, "Init: " + TAG);
+        mCacheValueDelegate = cacheValueDelegate;
+        mBackingCache = backingCache;
+    }
+
+    @Override
+    public synchronized void saveAccount(@NonNull final AccountRecord account) {
+        awaitBatch();
+        mBackingCache.saveAccount(account);
+        ensureLoaded();
+        indexAccount(mCacheValueDelegate.generateCacheKey(account), account);
+    }
+
+    @Override
+    public synchronized void saveCredential(@NonNull final Credential credential) {
+        awaitBatch();
+        mBackingCache.saveCredential(credential);
+        ensureLoaded();
+        indexCredential(mCacheValueDelegate.generateCacheKey(credential), credential);
+    }
+
+    @Override
+    @Nullable
+    public synchronized AccountRecord getAccount(@NonNull final String cacheKey) {
+        awaitBatch();
+        ensureLoaded();
+        return mAccounts.get(cacheKey);
+    }
+
+    @Override
+    @Nullable
+    public synchronized Credential getCredential(@NonNull final String cacheKey) {
+        awaitBatch();
+        ensureLoaded();
+        return mCredentials.get(cacheKey);
+    }
+
+    @Override
+    @NonNull
+    public synchronized List<AccountRecord> getAccounts() {
+        awaitBatch();
+        ensureLoaded();
+        return new ArrayList<>(mAccounts.values());
+    }
+
+    @Override
+    @NonNull
+    public synchronized List<AccountRecord> getAccountsFilteredBy(@Nullable final String homeAccountId,
+                                                                  @Nullable final String environment,
+                                                                  @Nullable final String realm) {
+        awaitBatch();
+        ensureLoaded();
+
+        final List<Set<String>> buckets = new ArrayList<>();
+        addBucket(buckets, mAccountsByHomeAccountId, homeAccountId);
+        addBucket(buckets, mAccountsByEnvironment, environment);
+        addBucket(buckets, mAccountsByRealm, realm);
+
+        if (buckets.isEmpty()) {
+            return new ArrayList<>(mAccounts.values());
+        }
+
+        final List<AccountRecord> matchingAccounts = new ArrayList<>();
+
+        for (final String cacheKey : intersect(buckets)) {
+            matchingAccounts.add(mAccounts.get(cacheKey));
+        }
+
+        Logger.verbose(TAG, "Found [" + matchingAccounts.size() + "] matching Accounts...");
+
+        return matchingAccounts;
+    }
+
+    @Override
+    @NonNull
+    public synchronized List<Credential> getCredentials() {
+        awaitBatch();
+        ensureLoaded();
+        return new ArrayList<>(mCredentials.values());
+    }
+
+    @Override
+    @NonNull
+    public synchronized List<Credential> getCredentialsFilteredBy(@Nullable final String homeAccountId,
+                                                                  @Nullable final String environment,
+                                                                  @Nullable final CredentialType credentialType,
+                                                                  @Nullable final String clientId,
+                                                                  @Nullable final String realm,
+                                                                  @Nullable final String target,
+                                                                  @Nullable final String authScheme) {
+        awaitBatch();
+        ensureLoaded();
+
+        final List<Set<String>> buckets = new ArrayList<>();
+        addBucket(buckets, mCredentialsByHomeAccountId, homeAccountId);
+        addBucket(buckets, mCredentialsByEnvironment, environment);
+        addBucket(buckets, mCredentialsByType, null == credentialType ? null : credentialType.name());
+        addBucket(buckets, mCredentialsByClientId, clientId);
+
+        if (!StringExtensions.isNullOrBlank(realm)) {
+            final Set<String> realmBucket = new HashSet<>(mCredentialsWithoutRealm);
+            final Set<String> keysInRealm = mCredentialsByRealm.get(normalize(realm));
+
+            if (null != keysInRealm) {
+                realmBucket.addAll(keysInRealm);
+            }
+
+            buckets.add(realmBucket);
+        }
+
+        final List<Credential> candidates;
+
+        if (buckets.isEmpty()) {
+            candidates = new ArrayList<>(mCredentials.values());
+        } else {
+            candidates = new ArrayList<>();
+
+            for (final String cacheKey : intersect(buckets)) {
+                candidates.add(mCredentials.get(cacheKey));
+            }
+        }
+
+        // The indexes narrow the search; the remaining criteria (target, auth scheme) and the
+        // exact matching semantics are applied to whatever candidates remain.
+        final List<Credential> matchingCredentials = getCredentialsFilteredByInternal(
+                homeAccountId,
+                environment,
+                credentialType,
+                clientId,
+                realm,
+                target,
+                authScheme,
+                candidates
+        );
+
+        Logger.verbose(TAG, "Found [" + matchingCredentials.size() + "] matching Credentials...");
+
+        return matchingCredentials;
+    }
+
+    @Override
+    @NonNull
+    public synchronized List<List<Credential>> getCredentialsForQueries(
+            @NonNull final List<CredentialQuery> queries) {
+        awaitBatch();
+        // Each query is answered from the indexes, so the backing cache is read at most once
+        final List<List<Credential>> buckets = new ArrayList<>(queries.size());
+
+        for (final CredentialQuery query : queries) {
+            buckets.add(getCredentialsFilteredBy(
+                    query.getHomeAccountId(),
+                    query.getEnvironment(),
+                    query.getCredentialType(),
+                    query.getClientId(),
+                    query.getRealm(),
+                    query.getTarget(),
+                    query.getAuthScheme()
+            ));
+        }
+
+        return buckets;
+    }
+
+    @Override
+    public synchronized boolean removeAccount(@NonNull final AccountRecord accountToRemove) {
+        awaitBatch();
+        joinLoad();
+        final boolean removed = mBackingCache.removeAccount(accountToRemove);
+
+        if (removed && mLoaded) {
+            unindexAccount(mCacheValueDelegate.generateCacheKey(accountToRemove));
+        }
+
+        return removed;
+    }
+
+    @Override
+    public synchronized boolean removeCredential(@NonNull final Credential credentialToRemove) {
+        awaitBatch();
+        joinLoad();
+        final boolean removed = mBackingCache.removeCredential(credentialToRemove);
+
+        if (removed && mLoaded) {
+            unindexCredential(mCacheValueDelegate.generateCacheKey(credentialToRemove));
+        }
+
+        return removed;
+    }
+
+    @Override
+    @NonNull
+    public synchronized List<AccountCredentialBase> removeAll(
+            @NonNull final Predicate<AccountCredentialBase> predicate) {
+        awaitBatch();
+        joinLoad();
+
+        if (!mLoaded) {
+            // Nothing to keep consistent; let the backing cache do it in one pass
+            return mBackingCache.removeAll(predicate);
+        }
+
+        // Test the in-memory records, then remove the matches by key
+        final List<AccountCredentialBase> removed = new ArrayList<>();
+
+        mBackingCache.beginBatch();
+
+        try {
+            for (final Credential credential : new ArrayList<>(mCredentials.values())) {
+                if (predicate.test(credential) && removeCredential(credential)) {
+                    removed.add(credential);
+                }
+            }
+
+            for (final AccountRecord account : new ArrayList<>(mAccounts.values())) {
+                if (predicate.test(account) && removeAccount(account)) {
+                    removed.add(account);
+                }
+            }
+        } finally {
+            mBackingCache.commitBatch();
+        }
+
+        return removed;
+    }
+
+    @Override
+    public synchronized void clearAll() {
+        awaitBatch();
+        mBackingCache.clearAll();
+        clearIndexes();
+        mLoadTask = null;
+        mLoaded = true;
+    }
+
+    @Override
+    public void beginBatch() {
+        synchronized (this) {
+            awaitBatch();
+            mBatchOwner = Thread.currentThread();
+            mBatchDepth++;
+        }
+
+        mBackingCache.beginBatch();
+    }
+
+    @Override
+    public void commitBatch() {
+        synchronized (this) {
+            if (mBatchOwner != Thread.currentThread()) {
+                throw new IllegalStateException("commitBatch() called without beginBatch()");
+            }
+        }
+
+        try {
+            mBackingCache.commitBatch();
+        } finally {
+            synchronized (this) {
+                if (--mBatchDepth == 0) {
+                    mBatchOwner = null;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the in-memory indexes. They will be rebuilt from the backing cache on next use.
+     */
+    public synchronized void invalidate() {
+        awaitBatch();
+        clearIndexes();
+        mLoadTask = null;
+        mLoaded = false;
+    }
+
+    /**
+     * Starts reading the backing cache on a background thread, so that the indexes are built
+     * before they are first needed. Does nothing if they are built, or being built, already.
+     */
+    public synchronized void prefetch() {
+        if (mLoaded || null != mLoadTask) {
+            return;
+        }
+
+        Logger.verbose(TAG + ":prefetch", "Reading backing cache in the background...");
+        mLoadTask = newLoadTask();
+        sPrefetchExecutor.execute(mLoadTask);
+    }
+
+    /**
+     * Waits while another thread has a batch open, so that its uncommitted writes are not
+     * observed. Must be called while holding this object's lock.
+     */
+    private void awaitBatch() {
+        boolean interrupted = false;
+
+        while (null != mBatchOwner && mBatchOwner != Thread.currentThread()) {
+            try {
+                wait();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Must be called while holding this object's lock.
+    private void ensureLoaded() {
+        if (mLoaded) {
+            return;
+        }
+
+        final String methodName = ":ensureLoaded";
+        FutureTask<Snapshot> loadTask = mLoadTask;
+
+        if (null == loadTask) {
+            Logger.verbose(TAG + methodName, "Building indexes from backing cache...");
+            loadTask = newLoadTask();
+            mLoadTask = loadTask;
+            loadTask.run();
+        } else {
+            Logger.verbose(TAG + methodName, "Joining read of backing cache in progress...");
+        }
+
+        final Snapshot snapshot;
+
+        try {
+            snapshot = getUninterruptibly(loadTask);
+        } finally {
+            // On failure, the next caller starts over
+            mLoadTask = null;
+        }
+
+        for (final AccountRecord account : snapshot.mAccounts) {
+            indexAccount(mCacheValueDelegate.generateCacheKey(account), account);
+        }
+
+        for (final Credential credential : snapshot.mCredentials) {
+            indexCredential(mCacheValueDelegate.generateCacheKey(credential), credential);
+        }
+
+        mLoaded = true;
+
+        Logger.verbose(
+                TAG + methodName,
+                "Indexed [" + mAccounts.size() + "] Accounts and ["
+                        + mCredentials.size() + "] Credentials."
+        );
+    }
+
+    /**
+     * Completes the read of the backing cache in progress, if any, so that a removal made now is
+     * applied to its result. Must be called while holding this object's lock.
+     */
+    private void joinLoad() {
+        if (!mLoaded && null != mLoadTask) {
+            ensureLoaded();
+        }
+    }
+
+    /**
+     * Creates a task which reads every record of the backing cache. The task must not take this
+     * object's lock, as callers holding it wait for the task.
+     */
+    @NonNull
+    private FutureTask<Snapshot> newLoadTask() {
+        return new FutureTask<>(new Callable<Snapshot>() {
+            @Override
+            public Snapshot call() {
+                return new Snapshot(mBackingCache.getAccounts(), mBackingCache.getCredentials());
+            }
+        });
+    }
+
+    @NonNull
+    private static Snapshot getUninterruptibly(@NonNull final FutureTask<Snapshot> loadTask) {
+        boolean interrupted = false;
+
+        try {
+            while (true) {
+                try {
+                    return loadTask.get();
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                } catch (final ExecutionException e) {
+                    final Throwable cause = e.getCause();
+
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void indexAccount(@NonNull final String cacheKey, @NonNull final AccountRecord account) {
+        unindexAccount(cacheKey);
+        mAccounts.put(cacheKey, account);
+        addToIndex(mAccountsByHomeAccountId, account.getHomeAccountId(), cacheKey);
+        addToIndex(mAccountsByEnvironment, account.getEnvironment(), cacheKey);
+        addToIndex(mAccountsByRealm, account.getRealm(), cacheKey);
+    }
+
+    private void unindexAccount(@NonNull final String cacheKey) {
+        final AccountRecord account = mAccounts.remove(cacheKey);
+
+        if (null != account) {
+            removeFromIndex(mAccountsByHomeAccountId, account.getHomeAccountId(), cacheKey);
+            removeFromIndex(mAccountsByEnvironment, account.getEnvironment(), cacheKey);
+            removeFromIndex(mAccountsByRealm, account.getRealm(), cacheKey);
+        }
+    }
+
+    private void indexCredential(@NonNull final String cacheKey, @NonNull final Credential credential) {
+        unindexCredential(cacheKey);
+        mCredentials.put(cacheKey, credential);
+        addToIndex(mCredentialsByHomeAccountId, credential.getHomeAccountId(), cacheKey);
+        addToIndex(mCredentialsByEnvironment, credential.getEnvironment(), cacheKey);
+        addToIndex(mCredentialsByType, credential.getCredentialType(), cacheKey);
+        addToIndex(mCredentialsByClientId, credential.getClientId(), cacheKey);
+
+        final String realm = getRealm(credential);
+
+        if (null == realm) {
+            mCredentialsWithoutRealm.add(cacheKey);
+        } else {
+            addToIndex(mCredentialsByRealm, realm, cacheKey);
+        }
+    }
+
+    private void unindexCredential(@NonNull final String cacheKey) {
+        final Credential credential = mCredentials.remove(cacheKey);
+
+        if (null != credential) {
+            removeFromIndex(mCredentialsByHomeAccountId, credential.getHomeAccountId(), cacheKey);
+            removeFromIndex(mCredentialsByEnvironment, credential.getEnvironment(), cacheKey);
+            removeFromIndex(mCredentialsByType, credential.getCredentialType(), cacheKey);
+            removeFromIndex(mCredentialsByClientId, credential.getClientId(), cacheKey);
+
+            final String realm = getRealm(credential);
+
+            if (null == realm) {
+                mCredentialsWithoutRealm.remove(cacheKey);
+            } else {
+                removeFromIndex(mCredentialsByRealm, realm, cacheKey);
+            }
+        }
+    }
+
+    private void clearIndexes() {
+        mAccounts.clear();
+        mCredentials.clear();
+        mAccountsByHomeAccountId.clear();
+        mAccountsByEnvironment.clear();
+        mAccountsByRealm.clear();
+        mCredentialsByHomeAccountId.clear();
+        mCredentialsByEnvironment.clear();
+        mCredentialsByType.clear();
+        mCredentialsByClientId.clear();
+        mCredentialsByRealm.clear();
+        mCredentialsWithoutRealm.clear();
+    }
+
+    /**
+     * Returns the realm of the supplied Credential, or null if realm-filtering does not apply to
+     * its type. Mirrors the realm semantics of
+     * {@link AbstractAccountCredentialCache#getCredentialsFilteredByInternal}.
+     */
+    @Nullable
+    private static String getRealm(@NonNull final Credential credential) {
+        if (credential instanceof AccessTokenRecord) {
+            return StringExtensions.isNullOrBlank(((AccessTokenRecord) credential).getRealm())
+                    ? ""
+                    : ((AccessTokenRecord) credential).getRealm();
+        }
+
+        if (credential instanceof IdTokenRecord) {
+            return StringExtensions.isNullOrBlank(((IdTokenRecord) credential).getRealm())
+                    ? ""
+                    : ((IdTokenRecord) credential).getRealm();
+        }
+
+        return null;
+    }
+
+    /**
+     * Adds the index bucket for the supplied value to the list of buckets to intersect. If the
+     * value is blank, the criterion is not applied. If no record has the value, an empty bucket
+     * is added, which makes the intersection empty.
+     */
+    private static void addBucket(@NonNull final List<Set<String>> buckets,
+                                  @NonNull final Map<String, Set<String>> index,
+                                  @Nullable final String value) {
+        if (StringExtensions.isNullOrBlank(value)) {
+            return;
+        }
+
+        final Set<String> bucket = index.get(normalize(value));
+        buckets.add(null == bucket ? Collections.<String>emptySet() : bucket);
+    }
+
+    @NonNull
+    private static Set<String> intersect(@NonNull final List<Set<String>> buckets) {
+        // Walk the smallest bucket, probing the others
+        Collections.sort(buckets, new Comparator<Set<String>>() {
+            @Override
+            public int compare(final Set<String> lhs, final Set<String> rhs) {
+                return lhs.size() - rhs.size();
+            }
+        });
+
+        final Set<String> result = new HashSet<>();
+
+        for (final String cacheKey : buckets.get(0)) {
+            boolean inAll = true;
+
+            for (int ii = 1; ii < buckets.size() && inAll; ii++) {
+                inAll = buckets.get(ii).contains(cacheKey);
+            }
+
+            if (inAll) {
+                result.add(cacheKey);
+            }
+        }
+
+        return result;
+    }
+
+    private static void addToIndex(@NonNull final Map<String, Set<String>> index,
+                                   @Nullable final String value,
+                                   @NonNull final String cacheKey) {
+        final String normalizedValue = normalize(value);
+        Set<String> bucket = index.get(normalizedValue);
+
+        if (null == bucket) {
+            bucket = new HashSet<>();
+            index.put(normalizedValue, bucket);
+        }
+
+        bucket.add(cacheKey);
+    }
+
+    private static void removeFromIndex(@NonNull final Map<String, Set<String>> index,
+                                        @Nullable final String value,
+                                        @NonNull final String cacheKey) {
+        final String normalizedValue = normalize(value);
+        final Set<String> bucket = index.get(normalizedValue);
+
+        if (null != bucket) {
+            bucket.remove(cacheKey);
+
+            if (bucket.isEmpty()) {
+                index.remove(normalizedValue);
+            }
+        }
+    }
+
+    @NonNull
+    private static String normalize(@Nullable final String value) {
+        return null == value ? "" : value.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The records read from the backing cache by a load task.
+     */
+    private static final class Snapshot {
+
+        private final List<AccountRecord> mAccounts;
+        private final List<Credential> mCredentials;
+
+        Snapshot(@NonNull final List<AccountRecord> accounts,
+                 @NonNull final List<Credential> credentials) {
+            mAccounts = accounts;
+            mCredentials = credentials;
+        }
+    }
+}
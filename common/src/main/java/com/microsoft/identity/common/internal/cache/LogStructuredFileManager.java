@@ -0,0 +1,977 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common.internal.cache;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.microsoft.identity.common.adal.internal.cache.IStorageHelper;
+import com.microsoft.identity.common.adal.internal.util.StringExtensions;
+import com.microsoft.identity.common.internal.logging.Logger;
+import com.microsoft.identity.common.internal.util.Predicate;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * An {@link ISharedPreferencesFileManager} backed by an append-only log of records rather than
+ * by a {@link SharedPreferences} XML file.
+ * <p>
+ * Every write appends a single record to the end of the log, so the cost of a write does not
+ * grow with the number of entries already stored. An in-memory index maps each key to the
+ * position of its latest value in the log; values are read from disk (and decrypted) on demand.
+ * <p>
+ * Each record carries a CRC32 checksum. When the log is opened, records are replayed in order
+ * and replay stops at the first truncated or corrupt record (for example, one torn by a crash
+ * mid-write); the log is truncated to the last intact record. An append which fails part-way is
+ * rolled back the same way, so that later appends follow the last intact record; if that is not
+ * possible, further writes throw {@link IllegalStateException} until the log is cleared.
+ * <p>
+ * Superseded records are reclaimed by compaction, which rewrites the live records to a new file
+ * on a background thread and atomically replaces the log once more than half of it is garbage.
+ * <p>
+ * On first use, the entries of the {@link SharedPreferences} file of the same name are copied to
+ * the log and the {@link SharedPreferences} file is cleared.
+ * <p>
+ * The index is only valid for as long as no one else writes the log, so a process holds at most
+ * one instance per log file: instances are obtained from {@link #open(Context, String, IStorageHelper)},
+ * which returns the instance already open for the file, if any, and are released with
+ * {@link #close()}.
+ */
+public class LogStructuredFileManager implements ISharedPreferencesFileManager {
+
+    private static final String TAG = LogStructuredFileManager.class.getSimpleName();
+
+    /**
+     * The suffix appended to the file name to form the name of the log file.
+     */
+    public static final String LOG_FILE_SUFFIX = ".log";
+
+    private static final String COMPACTION_FILE_SUFFIX = ".compacting";
+
+    private static final Charset UTF8 = Charset.forName(StringExtensions.ENCODING_UTF8);
+
+    private static final byte RECORD_TYPE_PUT = 1;
+    private static final byte RECORD_TYPE_REMOVE = 2;
+
+    /**
+     * type (1 byte) + key length (4 bytes).
+     */
+    private static final int KEY_HEADER_BYTES = 5;
+
+    /**
+     * value length (4 bytes).
+     */
+    private static final int VALUE_HEADER_BYTES = 4;
+
+    /**
+     * CRC32 (4 bytes).
+     */
+    private static final int TRAILER_BYTES = 4;
+
+    /**
+     * Logs smaller than this are never compacted.
+     */
+    private static final long MIN_COMPACTION_BYTES = 64 * 1024;
+
+    private static final int COPY_BUFFER_BYTES = 8 * 1024;
+
+    private static final ExecutorService sCompactionExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * The open instances, by the absolute path of their log file. Guarded by its own lock.
+     */
+    private static final Map<String, LogStructuredFileManager> sOpenInstances = new HashMap<>();
+
+    /**
+     * The location of a value inside the log.
+     */
+    private static final class RecordPointer {
+        private final long mRecordOffset;
+        private final int mRecordLength;
+        private final long mValueOffset;
+        private final int mValueLength;
+
+        RecordPointer(final long recordOffset,
+                      final int recordLength,
+                      final long valueOffset,
+                      final int valueLength) {
+            mRecordOffset = recordOffset;
+            mRecordLength = recordLength;
+            mValueOffset = valueOffset;
+            mValueLength = valueLength;
+        }
+
+        RecordPointer movedTo(final long recordOffset) {
+            return new RecordPointer(
+                    recordOffset,
+                    mRecordLength,
+                    recordOffset + (mValueOffset - mRecordOffset),
+                    mValueLength
+            );
+        }
+    }
+
+    private final String mName;
+    private final File mLogFile;
+    private final File mCompactionFile;
+    private final IStorageHelper mStorageHelper;
+
+    /**
+     * Key to the location of its current value. Guarded by this object's lock.
+     */
+    private final Map<String, RecordPointer> mIndex = new HashMap<>();
+
+    /**
+     * The batch open on each thread, if any.
+     */
+    private final ThreadLocal<WriteBatch> mBatches = new ThreadLocal<>();
+
+    private RandomAccessFile mLog;
+    private long mLiveBytes;
+    private boolean mCompactionScheduled;
+
+    /**
+     * The number of {@link #open} calls not yet matched by {@link #close()}. Guarded by the
+     * {@link #sOpenInstances} lock.
+     */
+    private int mOpenCount;
+
+    /**
+     * Set once the log file has been closed. Guarded by this object's lock.
+     */
+    private boolean mClosed;
+
+    /**
+     * Held for the duration of a compaction, so that two compactions never share the compaction
+     * file. Taken before, never while holding, this object's lock.
+     */
+    private final Object mCompactionLock = new Object();
+
+    /**
+     * Set if a failed append could not be rolled back, leaving an incomplete record at the end of
+     * the log. Records appended after it would be discarded on the next open, so no further
+     * writes are accepted until the log is cleared.
+     */
+    private boolean mUnwritable;
+
+    /**
+     * Incremented whenever the log file is replaced or truncated, so that a compaction which
+     * raced with such a change can detect that its snapshot is stale.
+     */
+    private long mLogGeneration;
+
+    /**
+     * Opens the log of the supplied name, or returns the instance which already has it open.
+     * Each call must be matched by a call to {@link #close()}.
+     *
+     * @param context       Interface to global information about an application environment.
+     * @param name          The name of the file. If a {@link SharedPreferences} file of this
+     *                      name exists and no log exists yet, its entries are migrated.
+     * @param storageHelper The {@link IStorageHelper} to handle encryption/decryption of values,
+     *                      or null if values should be stored as-is. Ignored if the log is open
+     *                      already, in which case the instance keeps the one it was opened with.
+     * @return The LogStructuredFileManager of the log.
+     */
+    @NonNull
+    public static LogStructuredFileManager open(@NonNull final Context context,
+                                                @NonNull final String name,
+                                                @Nullable final IStorageHelper storageHelper) {
+        return open(context, name, new File(context.getFilesDir(), name + LOG_FILE_SUFFIX), storageHelper);
+    }
+
+    @VisibleForTesting
+    @NonNull
+    static LogStructuredFileManager open(@NonNull final Context context,
+                                         @NonNull final String name,
+                                         @NonNull final File logFile,
+                                         @Nullable final IStorageHelper storageHelper) {
+        final String path = logFile.getAbsolutePath();
+
+        synchronized (sOpenInstances) {
+            LogStructuredFileManager instance = sOpenInstances.get(path);
+
+            if (null == instance) {
+                instance = new LogStructuredFileManager(context, name, logFile, storageHelper);
+                sOpenInstances.put(path, instance);
+            }
+
+            instance.mOpenCount++;
+
+            return instance;
+        }
+    }
+
+    private LogStructuredFileManager(@NonNull final Context context,
+                                     @NonNull final String name,
+                                     @NonNull final File logFile,
+                                     @Nullable final IStorageHelper storageHelper) {
+        Logger.verbose(TAG, "Init: " + TAG);
+        mName = name;
+        mLogFile = logFile;
+        mCompactionFile = new File(logFile.getPath() + COMPACTION_FILE_SUFFIX);
+        mStorageHelper = storageHelper;
+
+        synchronized (this) {
+            open(context);
+        }
+    }
+
+    /**
+     * Releases this instance. Once every {@link #open} of the log has been matched, the log file is
+     * closed and the instance must no longer be used; a later {@link #open} reads the log afresh.
+     */
+    public void close() {
+        final String methodName = ":close";
+
+        synchronized (sOpenInstances) {
+            if (mOpenCount <= 0) {
+                throw new IllegalStateException("close() called more often than open()");
+            }
+
+            if (--mOpenCount > 0) {
+                return;
+            }
+
+            sOpenInstances.remove(mLogFile.getAbsolutePath());
+        }
+
+        synchronized (this) {
+            try {
+                mLog.close();
+            } catch (final IOException e) {
+                Logger.error(TAG + methodName, "Failed to close log.", e);
+            }
+
+            // Makes a compaction in progress abort rather than write the closed log
+            mClosed = true;
+            mLogGeneration++;
+        }
+    }
+
+    @Override
+    public void putString(final String key, final String value) {
+        final WriteBatch batch = mBatches.get();
+
+        if (null != batch) {
+            batch.put(key, value);
+            return;
+        }
+
+        synchronized (this) {
+            if (null == value && !mIndex.containsKey(key)) {
+                // Nothing to remove; don't grow the log
+                return;
+            }
+
+            final Map<String, String> write = new HashMap<>();
+            write.put(key, value);
+            appendAll(write);
+        }
+    }
+
+    @Override
+    @Nullable
+    public String getString(final String key) {
+        final WriteBatch batch = mBatches.get();
+
+        if (null != batch && batch.determines(key)) {
+            return batch.get(key);
+        }
+
+        final String storedValue;
+
+        synchronized (this) {
+            storedValue = readValue(key);
+        }
+
+        return toClearText(key, storedValue);
+    }
+
+    @Override
+    public void putLong(final String key, final long value) {
+        putString(key, String.valueOf(value));
+    }
+
+    @Override
+    public long getLong(final String key) {
+        final String result = getString(key);
+
+        if (!TextUtils.isEmpty(result)) {
+            return Long.parseLong(result);
+        }
+
+        return 0;
+    }
+
+    @Override
+    public String getSharedPreferencesFileName() {
+        return mName;
+    }
+
+    @Override
+    public Map<String, String> getAll() {
+        return getAllInternal(null);
+    }
+
+    @Override
+    public Map<String, String> getAll(@NonNull final Predicate<String> keyFilter) {
+        return getAllInternal(keyFilter);
+    }
+
+    @Override
+    public boolean contains(final String key) {
+        return !TextUtils.isEmpty(getString(key));
+    }
+
+    @Override
+    public void clear() {
+        final String methodName = ":clear";
+
+        final WriteBatch batch = mBatches.get();
+
+        if (null != batch) {
+            batch.clear();
+            return;
+        }
+
+        synchronized (this) {
+            try {
+                truncate();
+            } catch (final IOException e) {
+                Logger.error(TAG + methodName, "Failed to clear log.", e);
+            }
+        }
+    }
+
+    @Override
+    public void remove(final String key) {
+        Logger.info(
+                TAG,
+                "Removing cache key"
+        );
+
+        putString(key, null);
+
+        Logger.infoPII(
+                TAG,
+                "Removed cache key ["
+                        + key
+                        + "]"
+        );
+    }
+
+    @Override
+    public void beginBatch() {
+        WriteBatch.begin(mBatches);
+    }
+
+    @Override
+    public void commitBatch() {
+        final String methodName = ":commitBatch";
+        final WriteBatch batch = WriteBatch.end(mBatches);
+
+        if (null == batch) {
+            return;
+        }
+
+        synchronized (this) {
+            try {
+                if (batch.isCleared()) {
+                    truncate();
+                }
+            } catch (final IOException e) {
+                Logger.error(TAG + methodName, "Failed to clear log.", e);
+            }
+
+            appendAll(batch.getWrites());
+        }
+    }
+
+    /**
+     * Rewrites the log so that it contains only live records, on the calling thread.
+     */
+    @VisibleForTesting
+    void compact() {
+        synchronized (mCompactionLock) {
+            compactInternal();
+        }
+    }
+
+    private void compactInternal() {
+        final String methodName = ":compact";
+
+        final Map<String, RecordPointer> snapshot;
+        final long snapshotGeneration;
+        final long snapshotEnd;
+
+        synchronized (this) {
+            mCompactionScheduled = false;
+
+            if (mClosed) {
+                return;
+            }
+
+            snapshot = new HashMap<>(mIndex);
+            snapshotGeneration = mLogGeneration;
+
+            try {
+                snapshotEnd = mLog.length();
+            } catch (final IOException e) {
+                Logger.error(TAG + methodName, "Failed to read log length.", e);
+                return;
+            }
+        }
+
+        Logger.verbose(TAG + methodName, "Compacting [" + snapshot.size() + "] records...");
+
+        // The log is append-only, so records covered by the snapshot cannot change underneath
+        // us; copy them out without blocking readers and writers.
+        final Map<String, RecordPointer> compactedIndex = new HashMap<>();
+
+        try {
+            final RandomAccessFile source = new RandomAccessFile(mLogFile, "r");
+            final RandomAccessFile target = new RandomAccessFile(mCompactionFile, "rw");
+
+            try {
+                target.setLength(0);
+
+                for (final Map.Entry<String, RecordPointer> entry : snapshot.entrySet()) {
+                    final RecordPointer pointer = entry.getValue();
+                    final byte[] record = new byte[pointer.mRecordLength];
+                    source.seek(pointer.mRecordOffset);
+                    source.readFully(record);
+                    compactedIndex.put(entry.getKey(), pointer.movedTo(target.getFilePointer()));
+                    target.write(record);
+                }
+
+                synchronized (this) {
+                    if (snapshotGeneration != mLogGeneration) {
+                        Logger.verbose(TAG + methodName, "Log changed during compaction; aborting.");
+                        return;
+                    }
+
+                    if (mUnwritable) {
+                        Logger.warn(TAG + methodName, "Log ends with an incomplete record; aborting.");
+                        return;
+                    }
+
+                    // Carry over whatever was appended while we were copying, then swap files
+                    final long tailStart = target.getFilePointer();
+                    copyRange(mLog, snapshotEnd, mLog.length(), target);
+                    target.getFD().sync();
+                    replay(mCompactionFile, tailStart, compactedIndex);
+
+                    mLog.close();
+
+                    if (!mCompactionFile.renameTo(mLogFile)) {
+                        Logger.warn(TAG + methodName, "Failed to replace log with compacted log.");
+                        mLog = new RandomAccessFile(mLogFile, "rw");
+                        return;
+                    }
+
+                    mLog = new RandomAccessFile(mLogFile, "rw");
+                    mLogGeneration++;
+                    mIndex.clear();
+                    mIndex.putAll(compactedIndex);
+                    mLiveBytes = sumRecordLengths(mIndex);
+
+                    Logger.verbose(TAG + methodName, "Compacted log to [" + mLog.length() + "] bytes.");
+                }
+            } finally {
+                source.close();
+                target.close();
+            }
+        } catch (final IOException e) {
+            Logger.error(TAG + methodName, "Compaction failed.", e);
+        } finally {
+            if (mCompactionFile.exists() && !mCompactionFile.delete()) {
+                Logger.warn(TAG + methodName, "Failed to delete compaction file.");
+            }
+        }
+    }
+
+    private Map<String, String> getAllInternal(@Nullable final Predicate<String> keyFilter) {
+        final Map<String, String> storedValues = new HashMap<>();
+        final WriteBatch batch = mBatches.get();
+        final Map<String, String> pendingWrites = null == batch
+                ? new HashMap<String, String>()
+                : batch.getWrites();
+
+        synchronized (this) {
+            if (null == batch || !batch.isCleared()) {
+                for (final String key : mIndex.keySet()) {
+                    // Filter on the (plaintext) key first, so that we only read what was asked for
+                    if ((null == keyFilter || keyFilter.test(key)) && !pendingWrites.containsKey(key)) {
+                        storedValues.put(key, readValue(key));
+                    }
+                }
+            }
+        }
+
+        final Map<String, String> entries = new HashMap<>();
+
+        for (final Map.Entry<String, String> entry : storedValues.entrySet()) {
+            final String value = toClearText(entry.getKey(), entry.getValue());
+
+            if (!TextUtils.isEmpty(value)) {
+                entries.put(entry.getKey(), value);
+            }
+        }
+
+        for (final Map.Entry<String, String> pendingWrite : pendingWrites.entrySet()) {
+            if (null != pendingWrite.getValue()
+                    && (null == keyFilter || keyFilter.test(pendingWrite.getKey()))) {
+                entries.put(pendingWrite.getKey(), pendingWrite.getValue());
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * Decrypts the supplied stored value, if applicable. Undecryptable values are removed.
+     */
+    @Nullable
+    private String toClearText(@NonNull final String key, @Nullable final String storedValue) {
+        if (null == mStorageHelper || StringExtensions.isNullOrBlank(storedValue)) {
+            return storedValue;
+        }
+
+        final String decryptedValue = encryptDecryptInternal(storedValue, false);
+
+        if (StringExtensions.isNullOrBlank(decryptedValue)) {
+            Logger.warn(
+                    TAG,
+                    "Failed to decrypt value! "
+                            + "This usually signals an issue with KeyStore or the provided SecretKeys."
+            );
+
+            remove(key);
+        }
+
+        return decryptedValue;
+    }
+
+    // Must be called while holding this object's lock.
+    private void open(@NonNull final Context context) {
+        final String methodName = ":open";
+
+        if (mCompactionFile.exists() && !mCompactionFile.delete()) {
+            Logger.warn(TAG + methodName, "Failed to delete stale compaction file.");
+        }
+
+        try {
+            if (!mLogFile.exists()) {
+                migrateFromSharedPreferences(context);
+            }
+
+            final long validLength = replay(mLogFile, 0, mIndex);
+            mLog = new RandomAccessFile(mLogFile, "rw");
+
+            if (mLog.length() > validLength) {
+                Logger.warn(
+                        TAG + methodName,
+                        "Discarding [" + (mLog.length() - validLength) + "] bytes of incomplete or corrupt records."
+                );
+                mLog.setLength(validLength);
+            }
+
+            mLiveBytes = sumRecordLengths(mIndex);
+        } catch (final IOException e) {
+            Logger.error(TAG + methodName, "Failed to open log.", e);
+            throw new IllegalStateException("Unable to open " + mLogFile.getName(), e);
+        }
+
+        Logger.verbose(TAG + methodName, "Loaded [" + mIndex.size() + "] entries.");
+    }
+
+    /**
+     * Copies the entries of the {@link SharedPreferences} file of the same name into a new log,
+     * then clears the {@link SharedPreferences} file. The stored (encrypted) values are copied
+     * verbatim.
+     */
+    private void migrateFromSharedPreferences(@NonNull final Context context) throws IOException {
+        final String methodName = ":migrateFromSharedPreferences";
+
+        final SharedPreferences sharedPreferences = context.getSharedPreferences(mName, Context.MODE_PRIVATE);
+        final Map<String, ?> entries = sharedPreferences.getAll();
+        final RandomAccessFile target = new RandomAccessFile(mCompactionFile, "rw");
+
+        try {
+            target.setLength(0);
+
+            for (final Map.Entry<String, ?> entry : entries.entrySet()) {
+                if (entry.getValue() instanceof String) {
+                    target.write(encodeRecord(entry.getKey(), (String) entry.getValue()));
+                } else {
+                    Logger.warn(TAG + methodName, "Skipping non-String value.");
+                }
+            }
+
+            target.getFD().sync();
+        } finally {
+            target.close();
+        }
+
+        if (!mCompactionFile.renameTo(mLogFile)) {
+            throw new IOException("Failed to create " + mLogFile.getName());
+        }
+
+        if (!entries.isEmpty()) {
+            sharedPreferences.edit().clear().apply();
+        }
+
+        Logger.info(TAG + methodName, "Migrated [" + entries.size() + "] entries.");
+    }
+
+    // Must be called while holding this object's lock.
+    private void appendAll(@NonNull final Map<String, String> writes) {
+        final String methodName = ":appendAll";
+
+        if (writes.isEmpty()) {
+            return;
+        }
+
+        if (mUnwritable) {
+            throw new IllegalStateException("Unable to write to " + mLogFile.getName() + " after a failed append.");
+        }
+
+        long appendOffset = -1;
+
+        try {
+            final ByteArrayOutputStream records = new ByteArrayOutputStream();
+            final List<String> keys = new ArrayList<>();
+            final List<Integer> lengths = new ArrayList<>();
+            final List<Integer> valueLengths = new ArrayList<>();
+
+            for (final Map.Entry<String, String> write : writes.entrySet()) {
+                final String storedValue = null == write.getValue() || null == mStorageHelper
+                        ? write.getValue()
+                        : encryptDecryptInternal(write.getValue(), true);
+                final byte[] record = encodeRecord(write.getKey(), storedValue);
+                records.write(record);
+                keys.add(write.getKey());
+                lengths.add(record.length);
+                valueLengths.add(null == storedValue ? -1 : storedValue.getBytes(UTF8).length);
+            }
+
+            // A single write for all records, at the end of the log
+            appendOffset = mLog.length();
+            mLog.seek(appendOffset);
+            mLog.write(records.toByteArray());
+
+            long offset = appendOffset;
+
+            for (int ii = 0; ii < keys.size(); ii++) {
+                final String key = keys.get(ii);
+                final int recordLength = lengths.get(ii);
+                final int valueLength = valueLengths.get(ii);
+                final RecordPointer previous;
+
+                if (valueLength < 0) {
+                    previous = mIndex.remove(key);
+                } else {
+                    previous = mIndex.put(key, new RecordPointer(
+                            offset,
+                            recordLength,
+                            offset + recordLength - TRAILER_BYTES - valueLength,
+                            valueLength
+                    ));
+                    mLiveBytes += recordLength;
+                }
+
+                if (null != previous) {
+                    mLiveBytes -= previous.mRecordLength;
+                }
+
+                offset += recordLength;
+            }
+        } catch (final IOException e) {
+            Logger.error(TAG + methodName, "Failed to append to log.", e);
+
+            if (appendOffset >= 0) {
+                rollBackAppend(appendOffset);
+            }
+
+            return;
+        }
+
+        scheduleCompactionIfNeeded();
+    }
+
+    /**
+     * Discards whatever part of a failed append reached the log, so that later appends follow the
+     * last complete record. Must be called while holding this object's lock.
+     */
+    private void rollBackAppend(final long appendOffset) {
+        final String methodName = ":rollBackAppend";
+
+        try {
+            mLog.setLength(appendOffset);
+        } catch (final IOException e) {
+            Logger.error(TAG + methodName, "Failed to roll back append; refusing further writes.", e);
+            mUnwritable = true;
+            throw new IllegalStateException("Unable to roll back a failed append to " + mLogFile.getName(), e);
+        }
+    }
+
+    // Must be called while holding this object's lock.
+    private void scheduleCompactionIfNeeded() {
+        final long logLength;
+
+        try {
+            logLength = mLog.length();
+        } catch (final IOException e) {
+            return;
+        }
+
+        final long garbageBytes = logLength - mLiveBytes;
+
+        if (!mCompactionScheduled && logLength >= MIN_COMPACTION_BYTES && garbageBytes > mLiveBytes) {
+            mCompactionScheduled = true;
+            sCompactionExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    compact();
+                }
+            });
+        }
+    }
+
+    // Must be called while holding this object's lock.
+    private void truncate() throws IOException {
+        mLog.setLength(0);
+        mUnwritable = false;
+        mIndex.clear();
+        mLiveBytes = 0;
+        mLogGeneration++;
+    }
+
+    // Must be called while holding this object's lock.
+    @Nullable
+    private String readValue(@NonNull final String key) {
+        final String methodName = ":readValue";
+        final RecordPointer pointer = mIndex.get(key);
+
+        if (null == pointer) {
+            return null;
+        }
+
+        try {
+            final byte[] value = new byte[pointer.mValueLength];
+            mLog.seek(pointer.mValueOffset);
+            mLog.readFully(value);
+            return new String(value, UTF8);
+        } catch (final IOException e) {
+            Logger.error(TAG + methodName, "Failed to read value.", e);
+            return null;
+        }
+    }
+
+    @Nullable
+    private String encryptDecryptInternal(@NonNull final String inputText, final boolean encrypt) {
+        final String methodName = ":encryptDecryptInternal";
+
+        try {
+            return encrypt
+                    ? mStorageHelper.encrypt(inputText)
+                    : mStorageHelper.decrypt(inputText);
+        } catch (GeneralSecurityException | IOException e) {
+            Logger.error(
+                    TAG + methodName,
+                    "Failed to " + (encrypt ? "encrypt" : "decrypt") + " value",
+                    encrypt
+                            ? null // If we failed to encrypt, don't log the error as it may contain a token
+                            : e // If we failed to decrypt, we couldn't see that secret value so log the error
+            );
+
+            return null;
+        }
+    }
+
+    /**
+     * Encodes a record: type, key length, key, value length, value, CRC32 of all preceding bytes.
+     * A null value encodes a removal.
+     */
+    @NonNull
+    private static byte[] encodeRecord(@NonNull final String key, @Nullable final String value) throws IOException {
+        final byte[] keyBytes = key.getBytes(UTF8);
+        final byte[] valueBytes = null == value ? new byte[0] : value.getBytes(UTF8);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                KEY_HEADER_BYTES + keyBytes.length + VALUE_HEADER_BYTES + valueBytes.length + TRAILER_BYTES
+        );
+        final DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeByte(null == value ? RECORD_TYPE_REMOVE : RECORD_TYPE_PUT);
+        out.writeInt(keyBytes.length);
+        out.write(keyBytes);
+        out.writeInt(valueBytes.length);
+        out.write(valueBytes);
+
+        final CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+        out.flush();
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Replays the records of the supplied file, starting at the supplied offset, into the index.
+     *
+     * @return The offset just past the last intact record.
+     */
+    private static long replay(@NonNull final File file,
+                               final long startOffset,
+                               @NonNull final Map<String, RecordPointer> index) throws IOException {
+        final String methodName = ":replay";
+
+        if (!file.exists()) {
+            return 0;
+        }
+
+        final long fileLength = file.length();
+        final FileInputStream fileIn = new FileInputStream(file);
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(fileIn));
+        long offset = startOffset;
+
+        try {
+            if (fileIn.skip(startOffset) != startOffset) {
+                return startOffset;
+            }
+
+            while (offset < fileLength) {
+                final CRC32 crc = new CRC32();
+                final byte type = in.readByte();
+                final int keyLength = in.readInt();
+
+                if ((type != RECORD_TYPE_PUT && type != RECORD_TYPE_REMOVE)
+                        || keyLength < 0 || keyLength > fileLength - offset) {
+                    break;
+                }
+
+                final byte[] keyBytes = new byte[keyLength];
+                in.readFully(keyBytes);
+                final int valueLength = in.readInt();
+
+                if (valueLength < 0 || valueLength > fileLength - offset) {
+                    break;
+                }
+
+                final byte[] valueBytes = new byte[valueLength];
+                in.readFully(valueBytes);
+                final int checksum = in.readInt();
+
+                final ByteArrayOutputStream header = new ByteArrayOutputStream(KEY_HEADER_BYTES);
+                final DataOutputStream headerOut = new DataOutputStream(header);
+                headerOut.writeByte(type);
+                headerOut.writeInt(keyLength);
+                crc.update(header.toByteArray());
+                crc.update(keyBytes);
+                header.reset();
+                headerOut.writeInt(valueLength);
+                crc.update(header.toByteArray());
+                crc.update(valueBytes);
+
+                if ((int) crc.getValue() != checksum) {
+                    Logger.warn(TAG + methodName, "Checksum mismatch at offset [" + offset + "]");
+                    break;
+                }
+
+                final int recordLength = KEY_HEADER_BYTES + keyLength + VALUE_HEADER_BYTES + valueLength + TRAILER_BYTES;
+                final String key = new String(keyBytes, UTF8);
+
+                if (type == RECORD_TYPE_PUT) {
+                    index.put(key, new RecordPointer(
+                            offset,
+                            recordLength,
+                            offset + recordLength - TRAILER_BYTES - valueLength,
+                            valueLength
+                    ));
+                } else {
+                    index.remove(key);
+                }
+
+                offset += recordLength;
+            }
+        } catch (final EOFException e) {
+            Logger.warn(TAG + methodName, "Truncated record at offset [" + offset + "]");
+        } finally {
+            in.close();
+        }
+
+        return offset;
+    }
+
+    private static void copyRange(@NonNull final RandomAccessFile source,
+                                  final long start,
+                                  final long end,
+                                  @NonNull final RandomAccessFile target) throws IOException {
+        final byte[] buffer = new byte[COPY_BUFFER_BYTES];
+        long position = start;
+        source.seek(start);
+
+        while (position < end) {
+            final int count = source.read(buffer, 0, (int) Math.min(buffer.length, end - position));
+
+            if (count < 0) {
+                throw new EOFException();
+            }
+
+            target.write(buffer, 0, count);
+            position += count;
+        }
+    }
+
+    private static long sumRecordLengths(@NonNull final Map<String, RecordPointer> index) {
+        long sum = 0;
+
+        for (final RecordPointer pointer : index.values()) {
+            sum += pointer.mRecordLength;
+        }
+
+        return sum;
+    }
+}
@@ -38,6 +38,7 @@ import com.microsoft.identity.common.internal.dto.Credential;
 import com.microsoft.identity.common.internal.dto.CredentialType;
 import com.microsoft.identity.common.internal.dto.IdTokenRecord;
 import com.microsoft.identity.common.internal.dto.RefreshTokenRecord;
+import com.microsoft.identity.common.internal.dto.ScopeSet;
 import com.microsoft.identity.common.internal.logging.Logger;
 import com.microsoft.identity.common.internal.providers.oauth2.AuthorizationRequest;
 import com.microsoft.identity.common.internal.providers.oauth2.OAuth2Strategy;
@@ -46,7 +47,7 @@ import com.microsoft.identity.common.internal.providers.oauth2.TokenResponse;
 import java.util.ArrayList;
 import java.util.List;
 
-import static com.microsoft.identity.common.internal.cache.AbstractAccountCredentialCache.targetsIntersect;
+import static com.microsoft.identity.common.internal.cache.AbstractAccountCredentialCache.compileTarget;
 
 // Suppressing rawtype warnings due to the generic type OAuth2Strategy and AuthorizationRequest
 @SuppressWarnings(WarningType.rawtype_warning)
@@ -148,6 +149,8 @@ public class MicrosoftFamilyOAuth2TokenCache
         }
 
         if (null != target && null != authenticationScheme) {
+            final ScopeSet soughtScopes = compileTarget(target, true);
+
             for (final Credential credential : allCredentials) {
                 if (credential instanceof AccessTokenRecord) {
                     final AccessTokenRecord atRecord = (AccessTokenRecord) credential;
@@ -156,7 +159,7 @@ public class MicrosoftFamilyOAuth2TokenCache
                             && accountRecord.getEnvironment().equals(atRecord.getEnvironment())
                             && accountRecord.getHomeAccountId().equals(atRecord.getHomeAccountId())
                             && accountRecord.getRealm().equals(atRecord.getRealm())
-                            && targetsIntersect(target, atRecord.getTarget(), true)) {
+                            && atRecord.getTargetScopeSet().containsAll(soughtScopes)) {
                         if (CredentialType.AccessToken.name().equalsIgnoreCase(atRecord.getCredentialType())
                                 && BearerAuthenticationSchemeInternal.SCHEME_BEARER.equalsIgnoreCase(authenticationScheme.getName())) {
                             atRecordToReturn = atRecord;
@@ -124,14 +124,20 @@ public class MsalCppOAuth2TokenCache
                 refreshTokenRecord = (RefreshTokenRecord) credential;
             }
         }
-        if (accountRecord != null && refreshTokenRecord != null) {
-            // MSAL C++ writes credentials first and then the account.
-            // For a new account, this will not be true as the accountRecord will be null.
-            // For existing accounts, we would remove the old refresh token if present.
-            removeRefreshTokenIfNeeded(accountRecord, refreshTokenRecord);
-        }
+        getAccountCredentialCache().beginBatch();
+
+        try {
+            if (accountRecord != null && refreshTokenRecord != null) {
+                // MSAL C++ writes credentials first and then the account.
+                // For a new account, this will not be true as the accountRecord will be null.
+                // For existing accounts, we would remove the old refresh token if present.
+                removeRefreshTokenIfNeeded(accountRecord, refreshTokenRecord);
+            }
 
-        saveCredentialsInternal(credentials);
+            saveCredentialsInternal(credentials);
+        } finally {
+            getAccountCredentialCache().commitBatch();
+        }
     }
 
     /**
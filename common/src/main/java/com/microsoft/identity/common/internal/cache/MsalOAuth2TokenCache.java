@@ -35,6 +35,7 @@ import com.microsoft.identity.common.adal.internal.util.StringExtensions;
 import com.microsoft.identity.common.exception.ClientException;
 import com.microsoft.identity.common.internal.authscheme.AbstractAuthenticationScheme;
 import com.microsoft.identity.common.internal.dto.AccessTokenRecord;
+import com.microsoft.identity.common.internal.dto.AccountCredentialBase;
 import com.microsoft.identity.common.internal.dto.AccountRecord;
 import com.microsoft.identity.common.internal.dto.Credential;
 import com.microsoft.identity.common.internal.dto.CredentialType;
@@ -53,13 +54,17 @@ import com.microsoft.identity.common.internal.providers.oauth2.TokenResponse;
 import com.microsoft.identity.common.internal.telemetry.Telemetry;
 import com.microsoft.identity.common.internal.telemetry.events.CacheEndEvent;
 import com.microsoft.identity.common.internal.telemetry.events.CacheStartEvent;
+import com.microsoft.identity.common.internal.util.Predicate;
 import com.microsoft.identity.common.internal.util.StringUtil;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static com.microsoft.identity.common.exception.ErrorStrings.ACCOUNT_IS_SCHEMA_NONCOMPLIANT;
@@ -82,6 +87,22 @@ public class MsalOAuth2TokenCache
 
     private static final String TAG = MsalOAuth2TokenCache.class.getSimpleName();
 
+    // Buckets of the query plan run by load(), in order
+    private static final int LOAD_ACCESS_TOKENS = 0;
+    private static final int LOAD_REFRESH_TOKENS = 1;
+    private static final int LOAD_ID_TOKENS = 2;
+    private static final int LOAD_V1_ID_TOKENS = 3;
+    private static final int LOAD_FALLBACK_REFRESH_TOKENS = 4;
+    private static final int LOAD_QUERY_COUNT = 5;
+
+    /**
+     * The in-memory indexes in use, by file name. A file is indexed by at most one instance at a
+     * time, as an instance does not observe writes made through any other. Weakly held, so that an
+     * index is dropped once no token cache uses it.
+     */
+    private static final Map<String, WeakReference<IndexedAccountCredentialCache>> sIndexedCaches =
+            new HashMap<>();
+
     private IAccountCredentialCache mAccountCredentialCache;
 
     private final IAccountCredentialAdapter<
@@ -126,11 +147,33 @@ public class MsalOAuth2TokenCache
             MicrosoftStsTokenResponse,
             MicrosoftAccount,
             MicrosoftRefreshToken> create(@NonNull final Context context) {
+        return create(context, false);
+    }
+
+    /**
+     * Factory method for creating an instance of MsalOAuth2TokenCache, optionally prefetching.
+     * <p>
+     * NOTE: Currently this is configured for AAD v2 as the only IDP
+     *
+     * @param context  The Application Context
+     * @param prefetch True if the cache should be read into memory on a background thread now,
+     *                 rather than on the first request. Requests made before the read completes
+     *                 wait for it. The in-memory copy does not observe writes made through other
+     *                 instances, so only one prefetching instance should be used per process.
+     * @return An instance of the MsalOAuth2TokenCache.
+     */
+    public static MsalOAuth2TokenCache<
+            MicrosoftStsOAuth2Strategy,
+            MicrosoftStsAuthorizationRequest,
+            MicrosoftStsTokenResponse,
+            MicrosoftAccount,
+            MicrosoftRefreshToken> create(@NonNull final Context context,
+                                          final boolean prefetch) {
         final String methodName = ":create";
 
         Logger.verbose(
                 TAG + methodName,
-                "Creating MsalOAuth2TokenCache"
+                "Creating MsalOAuth2TokenCache, prefetch: [" + prefetch + "]"
         );
 
         // Init the new-schema cache
@@ -142,11 +185,11 @@ public class MsalOAuth2TokenCache
                         DEFAULT_ACCOUNT_CREDENTIAL_SHARED_PREFERENCES,
                         storageHelper
                 );
-        final IAccountCredentialCache accountCredentialCache =
-                new SharedPreferencesAccountCredentialCache(
-                        cacheKeyValueDelegate,
-                        sharedPreferencesFileManager
-                );
+        final IAccountCredentialCache accountCredentialCache = createAccountCredentialCache(
+                cacheKeyValueDelegate,
+                sharedPreferencesFileManager,
+                prefetch
+        );
         final MicrosoftStsAccountCredentialAdapter accountCredentialAdapter =
                 new MicrosoftStsAccountCredentialAdapter();
 
@@ -158,6 +201,53 @@ public class MsalOAuth2TokenCache
     }
 
 
+    /**
+     * Creates the {@link IAccountCredentialCache} for the supplied file. If prefetching, the
+     * records are indexed in memory and their read is started on a background thread.
+     * <p>
+     * While an in-memory index of the file is in use, it is returned instead, whether or not
+     * prefetching, so that every token cache of the file reads and writes through it.
+     *
+     * @param cacheKeyValueDelegate        The delegate used to generate cache keys and values.
+     * @param sharedPreferencesFileManager The file to read and write.
+     * @param prefetch                     True if the records should be read ahead of first use.
+     * @return The IAccountCredentialCache.
+     */
+    static IAccountCredentialCache createAccountCredentialCache(
+            @NonNull final ICacheKeyValueDelegate cacheKeyValueDelegate,
+            @NonNull final ISharedPreferencesFileManager sharedPreferencesFileManager,
+            final boolean prefetch) {
+        final String fileName = sharedPreferencesFileManager.getSharedPreferencesFileName();
+
+        synchronized (sIndexedCaches) {
+            final WeakReference<IndexedAccountCredentialCache> indexedCacheReference =
+                    sIndexedCaches.get(fileName);
+            final IndexedAccountCredentialCache indexedCacheInUse =
+                    null == indexedCacheReference ? null : indexedCacheReference.get();
+
+            if (null != indexedCacheInUse) {
+                return indexedCacheInUse;
+            }
+
+            final IAccountCredentialCache accountCredentialCache =
+                    new SharedPreferencesAccountCredentialCache(
+                            cacheKeyValueDelegate,
+                            sharedPreferencesFileManager
+                    );
+
+            if (!prefetch) {
+                return accountCredentialCache;
+            }
+
+            final IndexedAccountCredentialCache indexedAccountCredentialCache =
+                    new IndexedAccountCredentialCache(cacheKeyValueDelegate, accountCredentialCache);
+            indexedAccountCredentialCache.prefetch();
+            sIndexedCaches.put(fileName, new WeakReference<>(indexedAccountCredentialCache));
+
+            return indexedAccountCredentialCache;
+        }
+    }
+
     void validateNonNull(@Nullable final Object object,
                          @NonNull final String type) throws ClientException {
         final String message = type + " passed in is Null";
@@ -203,8 +293,14 @@ public class MsalOAuth2TokenCache
                 "Accounts/Credentials are valid.... proceeding"
         );
 
-        saveAccounts(accountRecord);
-        saveCredentialsInternal(idTokenRecord, accessTokenRecord);
+        mAccountCredentialCache.beginBatch();
+
+        try {
+            saveAccounts(accountRecord);
+            saveCredentialsInternal(idTokenRecord, accessTokenRecord);
+        } finally {
+            mAccountCredentialCache.commitBatch();
+        }
 
         final CacheRecord result = new CacheRecord();
         result.setAccount(accountRecord);
@@ -311,12 +407,19 @@ public class MsalOAuth2TokenCache
                 idTokenToSave
         );
 
-        // remove old refresh token if it's MRRT or FRT
-        removeRefreshTokenIfNeeded(accountToSave, refreshTokenToSave);
+        // Buffer the removals and saves below so that they reach disk in a single write
+        mAccountCredentialCache.beginBatch();
+
+        try {
+            // remove old refresh token if it's MRRT or FRT
+            removeRefreshTokenIfNeeded(accountToSave, refreshTokenToSave);
 
-        // Save the Account and Credentials...
-        saveAccounts(accountToSave);
-        saveCredentialsInternal(accessTokenToSave, refreshTokenToSave, idTokenToSave);
+            // Save the Account and Credentials...
+            saveAccounts(accountToSave);
+            saveCredentialsInternal(accessTokenToSave, refreshTokenToSave, idTokenToSave);
+        } finally {
+            mAccountCredentialCache.commitBatch();
+        }
 
         final CacheRecord result = new CacheRecord();
         result.setAccount(accountToSave);
@@ -351,12 +454,21 @@ public class MsalOAuth2TokenCache
      */
     ICacheRecord getSparseCacheRecordForAccount(@NonNull final String clientId,
                                                 @NonNull final AccountRecord acct) {
-        final String methodName = ":getSparseCacheRecordForAccount";
+        return getSparseCacheRecordForAccount(acct, getIdTokensForAccountRecord(clientId, acct));
+    }
 
-        final List<IdTokenRecord> acctIdTokens = getIdTokensForAccountRecord(
-                clientId,
-                acct
+    private ICacheRecord getSparseCacheRecordForAccount(@NonNull final String clientId,
+                                                        @NonNull final AccountRecord acct,
+                                                        @NonNull final List<Credential> appCredentials) {
+        return getSparseCacheRecordForAccount(
+                acct,
+                getIdTokensForAccountRecord(clientId, acct, appCredentials)
         );
+    }
+
+    private ICacheRecord getSparseCacheRecordForAccount(@NonNull final AccountRecord acct,
+                                                        @NonNull final List<IdTokenRecord> acctIdTokens) {
+        final String methodName = ":getSparseCacheRecordForAccount";
 
         if (acctIdTokens.size() > ID_TOKEN_TYPES.length) {
             // We shouldn't have more idtokens than types of idtokens... 1 each
@@ -503,8 +615,14 @@ public class MsalOAuth2TokenCache
             );
         } else {
             // Save the inputs
-            saveAccounts(accountToSave);
-            saveCredentialsInternal(idTokenToSave);
+            mAccountCredentialCache.beginBatch();
+
+            try {
+                saveAccounts(accountToSave);
+                saveCredentialsInternal(idTokenToSave);
+            } finally {
+                mAccountCredentialCache.commitBatch();
+            }
 
             // Set them as the result outputs
             result.setAccount(accountToSave);
@@ -525,12 +643,33 @@ public class MsalOAuth2TokenCache
                              @NonNull final AbstractAuthenticationScheme authScheme) {
         Telemetry.emit(new CacheStartEvent());
 
+        // Load the AccessTokens, RefreshTokens and IdTokens in a single pass
+        final List<List<Credential>> credentials = mAccountCredentialCache.getCredentialsForQueries(
+                getLoadQueries(clientId, target, account, authScheme)
+        );
+
+        final CacheRecord result = getLoadResult(account, credentials);
+
+        Telemetry.emit(new CacheEndEvent().putCacheRecordStatus(result));
+        return result;
+    }
+
+    /**
+     * Returns the query plan run by {@link #load}; see LOAD_* for its buckets.
+     */
+    @NonNull
+    private List<CredentialQuery> getLoadQueries(@NonNull final String clientId,
+                                                 @Nullable final String target,
+                                                 @NonNull final AccountRecord account,
+                                                 @NonNull final AbstractAuthenticationScheme authScheme) {
         final boolean isMultiResourceCapable = MicrosoftAccount.AUTHORITY_TYPE_V1_V2.equals(
                 account.getAuthorityType()
         );
 
-        // Load the AccessTokens
-        final List<Credential> accessTokens = mAccountCredentialCache.getCredentialsFilteredBy(
+        final List<CredentialQuery> queries = new ArrayList<>(LOAD_QUERY_COUNT);
+
+        // The AccessTokens
+        queries.add(new CredentialQuery(
                 account.getHomeAccountId(),
                 account.getEnvironment(),
                 getAccessTokenCredentialTypeForAuthenticationScheme(authScheme),
@@ -538,10 +677,10 @@ public class MsalOAuth2TokenCache
                 account.getRealm(),
                 target,
                 authScheme.getName()
-        );
+        ));
 
-        // Load the RefreshTokens
-        List<Credential> refreshTokens = mAccountCredentialCache.getCredentialsFilteredBy(
+        // The RefreshTokens
+        queries.add(new CredentialQuery(
                 account.getHomeAccountId(),
                 account.getEnvironment(),
                 CredentialType.RefreshToken,
@@ -553,7 +692,44 @@ public class MsalOAuth2TokenCache
                         ? null // wildcard (*)
                         : target,
                 null // not applicable
-        );
+        ));
+
+        // The IdTokens
+        queries.add(new CredentialQuery(
+                account.getHomeAccountId(),
+                account.getEnvironment(),
+                CredentialType.IdToken,
+                clientId,
+                account.getRealm(),
+                null, // wildcard (*),
+                null // not applicable
+        ));
+
+        // The v1 IdTokens
+        queries.add(new CredentialQuery(
+                account.getHomeAccountId(),
+                account.getEnvironment(),
+                CredentialType.V1IdToken,
+                clientId,
+                account.getRealm(),
+                null, // wildcard (*)
+                null // not applicable
+        ));
+
+        // Any RefreshToken of this user, in case no RefreshToken of this client is found
+        queries.add(getFallbackRefreshTokenQuery(account));
+
+        return queries;
+    }
+
+    /**
+     * Builds the result of {@link #load} from the buckets of its query plan.
+     */
+    @NonNull
+    private CacheRecord getLoadResult(@NonNull final AccountRecord account,
+                                      @NonNull final List<List<Credential>> credentials) {
+        final List<Credential> accessTokens = credentials.get(LOAD_ACCESS_TOKENS);
+        List<Credential> refreshTokens = credentials.get(LOAD_REFRESH_TOKENS);
 
         if (refreshTokens.isEmpty()) {
             // If we didn't find an RT in the cache, this could be a "TSL-seed" or "dual-client stack"
@@ -577,7 +753,9 @@ public class MsalOAuth2TokenCache
             // into same binary. If you do this, you'll get confusing errors that the RT used doesn't
             // match the client app registration. This assumption means we don't need to implement
             // "FoCI probing" and/or track FoCI app meta
-            final Credential fallbackFrt = getFamilyRefreshTokenForAccount(account);
+            final Credential fallbackFrt = getFamilyRefreshToken(
+                    credentials.get(LOAD_FALLBACK_REFRESH_TOKENS)
+            );
 
             if (null != fallbackFrt) {
                 refreshTokens = new ArrayList<>();
@@ -585,27 +763,8 @@ public class MsalOAuth2TokenCache
             }
         }
 
-        // Load the IdTokens
-        final List<Credential> idTokens = mAccountCredentialCache.getCredentialsFilteredBy(
-                account.getHomeAccountId(),
-                account.getEnvironment(),
-                CredentialType.IdToken,
-                clientId,
-                account.getRealm(),
-                null, // wildcard (*),
-                null // not applicable
-        );
-
-        // Load the v1 IdTokens
-        final List<Credential> v1IdTokens = mAccountCredentialCache.getCredentialsFilteredBy(
-                account.getHomeAccountId(),
-                account.getEnvironment(),
-                CredentialType.V1IdToken,
-                clientId,
-                account.getRealm(),
-                null, // wildcard (*)
-                null // not applicable
-        );
+        final List<Credential> idTokens = credentials.get(LOAD_ID_TOKENS);
+        final List<Credential> v1IdTokens = credentials.get(LOAD_V1_ID_TOKENS);
 
         final CacheRecord result = new CacheRecord();
         result.setAccount(account);
@@ -614,7 +773,6 @@ public class MsalOAuth2TokenCache
         result.setIdToken(idTokens.isEmpty() ? null : (IdTokenRecord) idTokens.get(0));
         result.setV1IdToken(v1IdTokens.isEmpty() ? null : (IdTokenRecord) v1IdTokens.get(0));
 
-        Telemetry.emit(new CacheEndEvent().putCacheRecordStatus(result));
         return result;
     }
 
@@ -626,14 +784,25 @@ public class MsalOAuth2TokenCache
      */
     @Nullable
     private RefreshTokenRecord getFamilyRefreshTokenForAccount(@NonNull final AccountRecord account) {
-        final String methodName = ":getFamilyRefreshTokensForAccount";
-
-        // Our eventual result - init to null, will assign if valid FRT is found
-        RefreshTokenRecord result = null;
-
         // Look for an arbitrary RT matching the current user.
         // If we find one, check that it is FoCI, if it is, assume it works.
+        final CredentialQuery query = getFallbackRefreshTokenQuery(account);
         final List<Credential> fallbackRts = mAccountCredentialCache.getCredentialsFilteredBy(
+                query.getHomeAccountId(),
+                query.getEnvironment(),
+                query.getCredentialType(),
+                query.getClientId(),
+                query.getRealm(),
+                query.getTarget(),
+                query.getAuthScheme()
+        );
+
+        return getFamilyRefreshToken(fallbackRts);
+    }
+
+    @NonNull
+    private static CredentialQuery getFallbackRefreshTokenQuery(@NonNull final AccountRecord account) {
+        return new CredentialQuery(
                 account.getHomeAccountId(),
                 account.getEnvironment(),
                 CredentialType.RefreshToken,
@@ -642,6 +811,20 @@ public class MsalOAuth2TokenCache
                 null, // wildcard (*) -- all FRTs are MRRTs by definition
                 null // not applicable
         );
+    }
+
+    /**
+     * Picks an FRT from the supplied RTs of an account.
+     *
+     * @param fallbackRts The RTs of the account for which an FRT is sought.
+     * @return An FRT, if any. May be null.
+     */
+    @Nullable
+    private static RefreshTokenRecord getFamilyRefreshToken(@NonNull final List<Credential> fallbackRts) {
+        final String methodName = ":getFamilyRefreshTokensForAccount";
+
+        // Our eventual result - init to null, will assign if valid FRT is found
+        RefreshTokenRecord result = null;
 
         if (!fallbackRts.isEmpty()) {
             Logger.verbose(
@@ -700,7 +883,16 @@ public class MsalOAuth2TokenCache
         synchronized (this) {
             final List<ICacheRecord> result = new ArrayList<>();
 
-            final ICacheRecord primaryCacheRecord = load(clientId, target, account, authScheme);
+            // Load the tokens of this account and the Credentials of this app in a single pass
+            final List<CredentialQuery> queries = getLoadQueries(clientId, target, account, authScheme);
+            queries.addAll(getAppCredentialQueries(account.getEnvironment(), clientId));
+
+            Telemetry.emit(new CacheStartEvent());
+
+            final List<List<Credential>> credentials = mAccountCredentialCache.getCredentialsForQueries(queries);
+            final CacheRecord primaryCacheRecord = getLoadResult(account, credentials);
+
+            Telemetry.emit(new CacheEndEvent().putCacheRecordStatus(primaryCacheRecord));
 
             // Set this result as the 0th entry in the result...
             result.add(primaryCacheRecord);
@@ -708,7 +900,8 @@ public class MsalOAuth2TokenCache
             final List<ICacheRecord> corollaryCacheRecords = getAccountsWithAggregatedAccountData(
                     account.getEnvironment(),
                     clientId,
-                    account.getHomeAccountId()
+                    account.getHomeAccountId(),
+                    concatenate(credentials.subList(LOAD_QUERY_COUNT, credentials.size()))
             );
 
             // corollaryCacheRecords will contain the original element that we've already added to
@@ -726,31 +919,61 @@ public class MsalOAuth2TokenCache
     @Override
     public List<IdTokenRecord> getIdTokensForAccountRecord(@Nullable String clientId,
                                                            @NonNull AccountRecord accountRecord) {
-        final List<IdTokenRecord> result = new ArrayList<>();
+        final List<CredentialQuery> queries = new ArrayList<>(ID_TOKEN_TYPES.length);
+
+        for (final CredentialType idTokenType : ID_TOKEN_TYPES) {
+            queries.add(new CredentialQuery(
+                    accountRecord.getHomeAccountId(),
+                    accountRecord.getEnvironment(),
+                    idTokenType,
+                    clientId, // If null, behaves as wildcard
+                    accountRecord.getRealm(),
+                    null, // wildcard (*)
+                    null // not applicable
+            ));
+        }
 
-        final List<Credential> idTokens = mAccountCredentialCache.getCredentialsFilteredBy(
-                accountRecord.getHomeAccountId(),
-                accountRecord.getEnvironment(),
-                CredentialType.IdToken,
-                clientId, // If null, behaves as wildcard
-                accountRecord.getRealm(),
-                null, // wildcard (*),
-                null // not applicable
-        );
+        return getIdTokens(concatenate(mAccountCredentialCache.getCredentialsForQueries(queries)));
+    }
 
-        idTokens.addAll(
-                mAccountCredentialCache.getCredentialsFilteredBy(
+    /**
+     * Selects the IdTokens of the supplied account from the supplied Credentials, as
+     * {@link #getIdTokensForAccountRecord(String, AccountRecord)} would load them.
+     *
+     * @param clientId       The client_id relative to which IdTokens should be selected.
+     * @param accountRecord  The account whose IdTokens are sought.
+     * @param appCredentials Credentials of this app, including the sought IdTokens.
+     * @return The IdTokens of the account.
+     */
+    private static List<IdTokenRecord> getIdTokensForAccountRecord(@NonNull final String clientId,
+                                                                   @NonNull final AccountRecord accountRecord,
+                                                                   @NonNull final List<Credential> appCredentials) {
+        final List<Credential> idTokens = new ArrayList<>();
+
+        for (final CredentialType idTokenType : ID_TOKEN_TYPES) {
+            for (final Credential credential : appCredentials) {
+                if (AbstractAccountCredentialCache.credentialMatches(
+                        credential,
                         accountRecord.getHomeAccountId(),
                         accountRecord.getEnvironment(),
-                        CredentialType.V1IdToken,
+                        idTokenType,
                         clientId,
                         accountRecord.getRealm(),
                         null, // wildcard (*)
                         null // not applicable
-                )
-        );
+                )) {
+                    idTokens.add(credential);
+                }
+            }
+        }
+
+        return getIdTokens(idTokens);
+    }
 
-        for (final Credential credential : idTokens) {
+    private static List<IdTokenRecord> getIdTokens(@NonNull final List<Credential> credentials) {
+        final List<IdTokenRecord> result = new ArrayList<>();
+
+        for (final Credential credential : credentials) {
             if (credential instanceof IdTokenRecord) {
                 result.add((IdTokenRecord) credential);
             }
@@ -759,6 +982,17 @@ public class MsalOAuth2TokenCache
         return Collections.unmodifiableList(result);
     }
 
+    @NonNull
+    private static List<Credential> concatenate(@NonNull final List<List<Credential>> buckets) {
+        final List<Credential> result = new ArrayList<>();
+
+        for (final List<Credential> bucket : buckets) {
+            result.addAll(bucket);
+        }
+
+        return result;
+    }
+
     @Override
     public boolean removeCredential(final Credential credential) {
         final String methodName = ":removeCredential";
@@ -832,28 +1066,57 @@ public class MsalOAuth2TokenCache
     public List<ICacheRecord> getAccountsWithAggregatedAccountData(@Nullable final String environment,
                                                                    @NonNull final String clientId,
                                                                    @NonNull final String homeAccountId) {
+        final List<Credential> appCredentials = concatenate(
+                mAccountCredentialCache.getCredentialsForQueries(
+                        getAppCredentialQueries(environment, clientId)
+                )
+        );
+
+        return getAccountsWithAggregatedAccountData(environment, clientId, homeAccountId, appCredentials);
+    }
+
+    /**
+     * As {@link #getAccountsWithAggregatedAccountData(String, String, String)}, but with the
+     * Credentials of the app already loaded, so that no further Credentials are read.
+     *
+     * @param environment    The environment to which the sought accounts are associated.
+     * @param clientId       The clientId of the app.
+     * @param homeAccountId  The homeAccountId of the sought accounts.
+     * @param appCredentials The Credentials returned by {@link #getAppCredentialQueries}.
+     * @return The accounts, with their IdTokens.
+     */
+    private List<ICacheRecord> getAccountsWithAggregatedAccountData(@Nullable final String environment,
+                                                                    @NonNull final String clientId,
+                                                                    @NonNull final String homeAccountId,
+                                                                    @NonNull final List<Credential> appCredentials) {
         final List<ICacheRecord> result = new ArrayList<>();
 
-        final AccountRecord anyMatchingAccount = getAccount(
-                environment,
-                clientId,
-                homeAccountId,
-                null // realm
-        );
+        final List<AccountRecord> appAccounts = getAccountsForApp(environment, appCredentials);
 
-        if (null != anyMatchingAccount) {
-            final List<AccountRecord> corollaryAccounts = getAllTenantAccountsForAccountByClientId(
-                    clientId,
-                    anyMatchingAccount
-            );
+        // As getAccount(), with any realm
+        AccountRecord anyMatchingAccount = null;
 
-            for (final AccountRecord accountRecord : corollaryAccounts) {
-                result.add(
-                        getSparseCacheRecordForAccount(
-                                clientId,
-                                accountRecord
-                        )
-                );
+        for (final AccountRecord account : appAccounts) {
+            if (homeAccountId.equals(account.getHomeAccountId())) {
+                anyMatchingAccount = account;
+                break;
+            }
+        }
+
+        if (null != anyMatchingAccount) {
+            // As getAllTenantAccountsForAccountByClientId(); the supplied account comes first
+            result.add(getSparseCacheRecordForAccount(clientId, anyMatchingAccount, appCredentials));
+
+            for (final AccountRecord account : appAccounts) {
+                if (!anyMatchingAccount.equals(account)
+                        && AbstractAccountCredentialCache.accountMatches(
+                        account,
+                        anyMatchingAccount.getHomeAccountId(),
+                        anyMatchingAccount.getEnvironment(),
+                        null // realm
+                )) {
+                    result.add(getSparseCacheRecordForAccount(clientId, account, appCredentials));
+                }
             }
         }
 
@@ -988,6 +1251,29 @@ public class MsalOAuth2TokenCache
                         + "ClientId: [" + clientId + "]"
         );
 
+        // Grab the Credentials for this app: v2 IdTokens, V1IdTokens and refresh tokens
+        final List<Credential> appCredentials = concatenate(
+                mAccountCredentialCache.getCredentialsForQueries(
+                        getAppCredentialQueries(environment, clientId)
+                )
+        );
+
+        return Collections.unmodifiableList(getAccountsForApp(environment, appCredentials));
+    }
+
+    /**
+     * Returns the Accounts of the supplied environment which have at least one of the supplied
+     * Credentials of an app.
+     *
+     * @param environment    The environment of the sought Accounts; if null, any environment.
+     * @param appCredentials The Credentials returned by {@link #getAppCredentialQueries}.
+     * @return A mutable List of the Accounts of the app.
+     */
+    @NonNull
+    private List<AccountRecord> getAccountsForApp(@Nullable final String environment,
+                                                  @NonNull final List<Credential> appCredentials) {
+        final String methodName = ":getAccountsForApp";
+
         final List<AccountRecord> accountsForThisApp = new ArrayList<>();
 
         // Get all of the Accounts for this environment
@@ -1003,44 +1289,6 @@ public class MsalOAuth2TokenCache
                 "Found " + accountsForEnvironment.size() + " accounts for this environment"
         );
 
-        // Grab the Credentials for this app...start with the v2 IdTokens....
-        final List<Credential> appCredentials =
-                mAccountCredentialCache.getCredentialsFilteredBy(
-                        null, // homeAccountId
-                        environment,
-                        CredentialType.IdToken,
-                        clientId,
-                        null, // realm
-                        null, // target,
-                        null // not applicable
-                );
-
-        // And also grab any V1IdTokens....
-        appCredentials.addAll(
-                mAccountCredentialCache.getCredentialsFilteredBy(
-                        null, // homeAccountId
-                        environment,
-                        CredentialType.V1IdToken,
-                        clientId,
-                        null, // realm
-                        null, // target
-                        null // not applicable
-                )
-        );
-
-        // And any refresh tokens...
-        appCredentials.addAll(
-                mAccountCredentialCache.getCredentialsFilteredBy(
-                        null,
-                        environment,
-                        CredentialType.RefreshToken,
-                        clientId,
-                        null,
-                        null,
-                        null
-                )
-        );
-
         // For each Account with an associated RT, add it to the result List...
         for (final AccountRecord account : accountsForEnvironment) {
             if (accountHasCredential(account, appCredentials)) {
@@ -1053,7 +1301,38 @@ public class MsalOAuth2TokenCache
                 "Found " + accountsForThisApp.size() + " accounts for this clientId"
         );
 
-        return Collections.unmodifiableList(accountsForThisApp);
+        return accountsForThisApp;
+    }
+
+    /**
+     * Returns the queries for the Credentials whose presence associates an Account with an app:
+     * its v2 IdTokens, V1IdTokens and refresh tokens.
+     *
+     * @param environment The environment of the sought Credentials; if null, any environment.
+     * @param clientId    The clientId of the app.
+     * @return The queries.
+     */
+    @NonNull
+    private static List<CredentialQuery> getAppCredentialQueries(@Nullable final String environment,
+                                                                 @NonNull final String clientId) {
+        final List<CredentialQuery> queries = new ArrayList<>();
+
+        for (final CredentialType type : new CredentialType[]{
+                CredentialType.IdToken,
+                CredentialType.V1IdToken,
+                CredentialType.RefreshToken}) {
+            queries.add(new CredentialQuery(
+                    null, // homeAccountId
+                    environment,
+                    type,
+                    clientId,
+                    null, // realm
+                    null, // target
+                    null // not applicable
+            ));
+        }
+
+        return queries;
     }
 
     @Override
@@ -1271,54 +1550,77 @@ public class MsalOAuth2TokenCache
                 "IsRealmAgnostic? " + isRealmAgnostic
         );
 
-        if (null != typesToRemove && typesToRemove.length > 0) {
-            for (final CredentialType type : typesToRemove) {
-                // A count of the deleted creds...
-                int deletedCredentialsOfTypeCount = removeCredentialsOfTypeForAccount(
-                        environment,
-                        clientId,
-                        type,
-                        targetAccount,
-                        isRealmAgnostic
-                );
+        final List<CredentialType> credentialTypes = null == typesToRemove
+                ? Collections.<CredentialType>emptyList()
+                : Arrays.asList(typesToRemove);
 
-                com.microsoft.identity.common.internal.logging.Logger.info(
-                        TAG + methodName,
-                        "Removed "
-                                + deletedCredentialsOfTypeCount
-                                + " credentials of type: "
-                                + type
-                );
-            }
-        } else {
+        if (credentialTypes.isEmpty()) {
             com.microsoft.identity.common.internal.logging.Logger.warn(
                     TAG + methodName,
                     "removeAccount called, but no CredentialTypes to remove specified"
             );
         }
 
-        final List<AccountRecord> deletedAccounts = new ArrayList<>();
+        // Remove the Credentials and Account[s] in a single pass and a single write
+        final List<AccountCredentialBase> removed = mAccountCredentialCache.removeAll(
+                new Predicate<AccountCredentialBase>() {
+                    @Override
+                    public boolean test(final AccountCredentialBase record) {
+                        if (record instanceof AccountRecord) {
+                            if (isRealmAgnostic) {
+                                // Remove all Accounts associated with this home_account_id...
+                                return AbstractAccountCredentialCache.accountMatches(
+                                        (AccountRecord) record,
+                                        homeAccountId,
+                                        environment,
+                                        null // wildcard (*) realm
+                                );
+                            }
+
+                            // Remove only the target Account
+                            return targetAccount.equals(record);
+                        }
+
+                        for (final CredentialType type : credentialTypes) {
+                            if (AbstractAccountCredentialCache.credentialMatches(
+                                    (Credential) record,
+                                    targetAccount.getHomeAccountId(),
+                                    environment,
+                                    type,
+                                    clientId,
+                                    isRealmAgnostic
+                                            ? null // wildcard (*) realm
+                                            : targetAccount.getRealm(),
+                                    null, // wildcard (*) target,
+                                    null)) {
+                                return true;
+                            }
+                        }
+
+                        return false;
+                    }
+                }
+        );
 
-        if (isRealmAgnostic) {
-            // Remove all Accounts associated with this home_account_id...
-            final List<AccountRecord> accountsToRemove = mAccountCredentialCache.getAccountsFilteredBy(
-                    homeAccountId,
-                    environment,
-                    null // wildcard (*) realm
-            );
+        final List<AccountRecord> deletedAccounts = new ArrayList<>();
+        int deletedCredentialsCount = 0;
 
-            for (final AccountRecord accountToRemove : accountsToRemove) {
-                if (mAccountCredentialCache.removeAccount(accountToRemove)) {
-                    deletedAccounts.add(accountToRemove);
-                }
-            }
-        } else {
-            // Remove only the target Account
-            if (mAccountCredentialCache.removeAccount(targetAccount)) {
-                deletedAccounts.add(targetAccount);
+        for (final AccountCredentialBase record : removed) {
+            if (record instanceof AccountRecord) {
+                deletedAccounts.add((AccountRecord) record);
+            } else {
+                deletedCredentialsCount++;
             }
         }
 
+        com.microsoft.identity.common.internal.logging.Logger.info(
+                TAG + methodName,
+                "Removed "
+                        + deletedCredentialsCount
+                        + " credentials of types: "
+                        + credentialTypes
+        );
+
         return new AccountDeletionRecord(deletedAccounts);
     }
 
@@ -1688,29 +1990,35 @@ public class MsalOAuth2TokenCache
                 accountDto.getAuthorityType()
         );
 
-        if (isFamilyRefreshToken || isMultiResourceCapable) {
-            final int refreshTokensRemoved = removeRefreshTokensForAccount(
-                    accountDto,
-                    isFamilyRefreshToken,
-                    accountDto.getEnvironment(),
-                    rt.getClientId()
-            );
+        mAccountCredentialCache.beginBatch();
 
-            Logger.info(
-                    TAG + methodName,
-                    "Refresh tokens removed: [" + refreshTokensRemoved + "]"
-            );
+        try {
+            if (isFamilyRefreshToken || isMultiResourceCapable) {
+                final int refreshTokensRemoved = removeRefreshTokensForAccount(
+                        accountDto,
+                        isFamilyRefreshToken,
+                        accountDto.getEnvironment(),
+                        rt.getClientId()
+                );
 
-            if (refreshTokensRemoved > 1) {
-                Logger.warn(
+                Logger.info(
                         TAG + methodName,
-                        "Multiple refresh tokens found for Account."
+                        "Refresh tokens removed: [" + refreshTokensRemoved + "]"
                 );
+
+                if (refreshTokensRemoved > 1) {
+                    Logger.warn(
+                            TAG + methodName,
+                            "Multiple refresh tokens found for Account."
+                    );
+                }
             }
-        }
 
-        saveAccounts(accountDto);
-        saveCredentialsInternal(idToken, rt);
+            saveAccounts(accountDto);
+            saveCredentialsInternal(idToken, rt);
+        } finally {
+            mAccountCredentialCache.commitBatch();
+        }
     }
 
     @Override
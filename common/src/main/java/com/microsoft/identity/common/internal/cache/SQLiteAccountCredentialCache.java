@@ -0,0 +1,786 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common.internal.cache;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.microsoft.identity.common.adal.internal.cache.IStorageHelper;
+import com.microsoft.identity.common.adal.internal.util.StringExtensions;
+import com.microsoft.identity.common.internal.dto.AccessTokenRecord;
+import com.microsoft.identity.common.internal.dto.AccountRecord;
+import com.microsoft.identity.common.internal.dto.Credential;
+import com.microsoft.identity.common.internal.dto.CredentialType;
+import com.microsoft.identity.common.internal.dto.IdTokenRecord;
+import com.microsoft.identity.common.internal.dto.RefreshTokenRecord;
+import com.microsoft.identity.common.internal.logging.Logger;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import static com.microsoft.identity.common.internal.controllers.BaseController.DEFAULT_SCOPES;
+
+/**
+ * An {@link IAccountCredentialCache} which stores Accounts and Credentials as rows of a SQLite
+ * database.
+ * <p>
+ * The fields used for lookups (home_account_id, environment, credential_type, client_id, realm)
+ * are stored as indexed columns, and each scope of a Credential's target is stored as a row of a
+ * separate indexed table, so that {@link #getCredentialsFilteredBy} is answered by an indexed
+ * query instead of by deserializing every Credential. The query narrows the candidates; the
+ * matching rules of {@link AbstractAccountCredentialCache} are then applied to those candidates
+ * so that results are identical to those of {@link SharedPreferencesAccountCredentialCache}.
+ * <p>
+ * The serialized record (which, for Credentials, contains the secret) is stored in the value
+ * column, encrypted row-by-row if an {@link IStorageHelper} is supplied. Lookup columns are
+ * stored in the clear, lowercased.
+ * <p>
+ * Entries stored in the existing {@link CacheKeyValueDelegate} format can be copied in using
+ * {@link #migrateFrom(IAccountCredentialCache)}.
+ */
+public class SQLiteAccountCredentialCache extends AbstractAccountCredentialCache {
+
+    private static final String TAG = SQLiteAccountCredentialCache.class.getSimpleName();
+
+    /**
+     * The default name of the database file.
+     */
+    public static final String DEFAULT_DATABASE_NAME = "com.microsoft.identity.client.account_credential_cache.db";
+
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE_ACCOUNTS = "accounts";
+    private static final String TABLE_CREDENTIALS = "credentials";
+    private static final String TABLE_CREDENTIAL_SCOPES = "credential_scopes";
+
+    private static final String COLUMN_CACHE_KEY = "cache_key";
+    private static final String COLUMN_HOME_ACCOUNT_ID = "home_account_id";
+    private static final String COLUMN_ENVIRONMENT = "environment";
+    private static final String COLUMN_REALM = "realm";
+    private static final String COLUMN_CREDENTIAL_TYPE = "credential_type";
+    private static final String COLUMN_CLIENT_ID = "client_id";
+    private static final String COLUMN_TARGET = "target";
+    private static final String COLUMN_SCOPE = "scope";
+    private static final String COLUMN_VALUE = "value";
+
+    private static final String[] VALUE_PROJECTION = new String[]{COLUMN_CACHE_KEY, COLUMN_CREDENTIAL_TYPE, COLUMN_VALUE};
+    private static final String[] ACCOUNT_VALUE_PROJECTION = new String[]{COLUMN_CACHE_KEY, COLUMN_VALUE};
+
+    private static final String EQUALS_ARG = " = ?";
+    private static final String AND = " AND ";
+
+    private static final String WHERE_CACHE_KEY = COLUMN_CACHE_KEY + EQUALS_ARG;
+
+    /**
+     * The credential types whose records carry no target, and so are not constrained by a
+     * target filter.
+     */
+    private static final String UNTARGETED_CREDENTIAL_TYPES = "('"
+            + CredentialType.IdToken.name().toLowerCase(Locale.ROOT) + "', '"
+            + CredentialType.V1IdToken.name().toLowerCase(Locale.ROOT) + "')";
+
+    private static final String SPLIT_CRITERIA = "\\s+";
+
+    private static final class DatabaseHelper extends SQLiteOpenHelper {
+
+        DatabaseHelper(@NonNull final Context context, @NonNull final String name) {
+            super(context, name, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(final SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_ACCOUNTS + " ("
+                    + COLUMN_CACHE_KEY + " TEXT PRIMARY KEY, "
+                    + COLUMN_HOME_ACCOUNT_ID + " TEXT, "
+                    + COLUMN_ENVIRONMENT + " TEXT, "
+                    + COLUMN_REALM + " TEXT, "
+                    + COLUMN_VALUE + " TEXT NOT NULL)");
+            db.execSQL("CREATE INDEX idx_accounts_lookup ON " + TABLE_ACCOUNTS + " ("
+                    + COLUMN_HOME_ACCOUNT_ID + ", "
+                    + COLUMN_ENVIRONMENT + ", "
+                    + COLUMN_REALM + ")");
+
+            db.execSQL("CREATE TABLE " + TABLE_CREDENTIALS + " ("
+                    + COLUMN_CACHE_KEY + " TEXT PRIMARY KEY, "
+                    + COLUMN_HOME_ACCOUNT_ID + " TEXT, "
+                    + COLUMN_ENVIRONMENT + " TEXT, "
+                    + COLUMN_CREDENTIAL_TYPE + " TEXT, "
+                    + COLUMN_CLIENT_ID + " TEXT, "
+                    + COLUMN_REALM + " TEXT, "
+                    + COLUMN_TARGET + " TEXT, "
+                    + COLUMN_VALUE + " TEXT NOT NULL)");
+            db.execSQL("CREATE INDEX idx_credentials_lookup ON " + TABLE_CREDENTIALS + " ("
+                    + COLUMN_HOME_ACCOUNT_ID + ", "
+                    + COLUMN_ENVIRONMENT + ", "
+                    + COLUMN_CREDENTIAL_TYPE + ", "
+                    + COLUMN_CLIENT_ID + ")");
+            db.execSQL("CREATE INDEX idx_credentials_client ON " + TABLE_CREDENTIALS + " ("
+                    + COLUMN_CLIENT_ID + ", "
+                    + COLUMN_CREDENTIAL_TYPE + ")");
+            db.execSQL("CREATE INDEX idx_credentials_realm ON " + TABLE_CREDENTIALS + " ("
+                    + COLUMN_REALM + ")");
+
+            // One row per (scope, credential), so that target matching can use an index
+            db.execSQL("CREATE TABLE " + TABLE_CREDENTIAL_SCOPES + " ("
+                    + COLUMN_SCOPE + " TEXT NOT NULL, "
+                    + COLUMN_CACHE_KEY + " TEXT NOT NULL, "
+                    + "PRIMARY KEY (" + COLUMN_SCOPE + ", " + COLUMN_CACHE_KEY + "))");
+            db.execSQL("CREATE INDEX idx_credential_scopes_key ON " + TABLE_CREDENTIAL_SCOPES + " ("
+                    + COLUMN_CACHE_KEY + ")");
+        }
+
+        @Override
+        public void onUpgrade(final SQLiteDatabase db, final int oldVersion, final int newVersion) {
+            // No upgrades yet; version 1 is the first schema
+        }
+    }
+
+    private final SQLiteOpenHelper mDatabaseHelper;
+    private final ICacheKeyValueDelegate mCacheValueDelegate;
+    private final IStorageHelper mStorageHelper;
+
+    /**
+     * Constructs a new SQLiteAccountCredentialCache using {@link #DEFAULT_DATABASE_NAME}.
+     *
+     * @param context                   Interface to global information about an application environment.
+     * @param accountCacheValueDelegate The {@link ICacheKeyValueDelegate} used to generate keys
+     *                                  and (de)serialize records.
+     * @param storageHelper             The {@link IStorageHelper} used to encrypt the value
+     *                                  column, or null to store values as-is.
+     */
+    public SQLiteAccountCredentialCache(@NonNull final Context context,
+                                        @NonNull final ICacheKeyValueDelegate accountCacheValueDelegate,
+                                        @Nullable final IStorageHelper storageHelper) {
+        this(context, DEFAULT_DATABASE_NAME, accountCacheValueDelegate, storageHelper);
+    }
+
+    /**
+     * Constructs a new SQLiteAccountCredentialCache.
+     *
+     * @param context                   Interface to global information about an application environment.
+     * @param databaseName              The name of the database file.
+     * @param accountCacheValueDelegate The {@link ICacheKeyValueDelegate} used to generate keys
+     *                                  and (de)serialize records.
+     * @param storageHelper             The {@link IStorageHelper} used to encrypt the value
+     *                                  column, or null to store values as-is.
+     */
+    public SQLiteAccountCredentialCache(@NonNull final Context context,
+                                        @NonNull final String databaseName,
+                                        @NonNull final ICacheKeyValueDelegate accountCacheValueDelegate,
+                                        @Nullable final IStorageHelper storageHelper) {
+        Logger.verbose(TAG, "Init: " + TAG);
+        mDatabaseHelper = new DatabaseHelper(context, databaseName);
+        mCacheValueDelegate = accountCacheValueDelegate;
+        mStorageHelper = storageHelper;
+    }
+
+    /**
+     * Copies every Account and Credential held by the supplied cache into this one, in a single
+     * transaction. The supplied cache is not modified; callers wishing to complete a migration
+     * should clear it once this method returns.
+     *
+     * @param source The cache to copy from, typically a {@link SharedPreferencesAccountCredentialCache}.
+     * @return The number of records copied.
+     */
+    public int migrateFrom(@NonNull final IAccountCredentialCache source) {
+        final String methodName = ":migrateFrom";
+
+        final List<AccountRecord> accounts = source.getAccounts();
+        final List<Credential> credentials = source.getCredentials();
+
+        beginBatch();
+        try {
+            for (final AccountRecord account : accounts) {
+                saveAccount(account);
+            }
+
+            for (final Credential credential : credentials) {
+                saveCredential(credential);
+            }
+        } finally {
+            commitBatch();
+        }
+
+        final int count = accounts.size() + credentials.size();
+        Logger.info(TAG + methodName, "Migrated [" + count + "] records.");
+
+        return count;
+    }
+
+    @Override
+    public void saveAccount(@NonNull final AccountRecord account) {
+        Logger.verbose(TAG, "Saving Account...");
+        final String cacheKey = mCacheValueDelegate.generateCacheKey(account);
+        Logger.verbosePII(TAG, "Generated cache key: [" + cacheKey + "]");
+
+        final String cacheValue = encrypt(mCacheValueDelegate.generateCacheValue(account));
+
+        if (null == cacheValue) {
+            Logger.warn(TAG, "Account not saved.");
+            return;
+        }
+
+        final ContentValues values = new ContentValues();
+        values.put(COLUMN_CACHE_KEY, cacheKey);
+        values.put(COLUMN_HOME_ACCOUNT_ID, normalize(account.getHomeAccountId()));
+        values.put(COLUMN_ENVIRONMENT, normalize(account.getEnvironment()));
+        values.put(COLUMN_REALM, normalize(account.getRealm()));
+        values.put(COLUMN_VALUE, cacheValue);
+
+        mDatabaseHelper.getWritableDatabase().insertWithOnConflict(
+                TABLE_ACCOUNTS,
+                null,
+                values,
+                SQLiteDatabase.CONFLICT_REPLACE
+        );
+    }
+
+    @Override
+    public void saveCredential(@NonNull final Credential credential) {
+        Logger.verbose(TAG, "Saving credential...");
+        final String cacheKey = mCacheValueDelegate.generateCacheKey(credential);
+        Logger.verbosePII(TAG, "Generated cache key: [" + cacheKey + "]");
+
+        final String cacheValue = encrypt(mCacheValueDelegate.generateCacheValue(credential));
+
+        if (null == cacheValue) {
+            Logger.warn(TAG, "Credential not saved.");
+            return;
+        }
+
+        final String target = getTarget(credential);
+        final ContentValues values = new ContentValues();
+        values.put(COLUMN_CACHE_KEY, cacheKey);
+        values.put(COLUMN_HOME_ACCOUNT_ID, normalize(credential.getHomeAccountId()));
+        values.put(COLUMN_ENVIRONMENT, normalize(credential.getEnvironment()));
+        values.put(COLUMN_CREDENTIAL_TYPE, normalize(credential.getCredentialType()));
+        values.put(COLUMN_CLIENT_ID, normalize(credential.getClientId()));
+        values.put(COLUMN_REALM, normalize(getRealm(credential)));
+        values.put(COLUMN_TARGET, target);
+        values.put(COLUMN_VALUE, cacheValue);
+
+        final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.insertWithOnConflict(TABLE_CREDENTIALS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            db.delete(TABLE_CREDENTIAL_SCOPES, WHERE_CACHE_KEY, new String[]{cacheKey});
+
+            if (null != target) {
+                for (final String scope : toScopeSet(target)) {
+                    final ContentValues scopeValues = new ContentValues();
+                    scopeValues.put(COLUMN_SCOPE, scope);
+                    scopeValues.put(COLUMN_CACHE_KEY, cacheKey);
+                    db.insertWithOnConflict(TABLE_CREDENTIAL_SCOPES, null, scopeValues, SQLiteDatabase.CONFLICT_IGNORE);
+                }
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    @Nullable
+    public AccountRecord getAccount(@NonNull final String cacheKey) {
+        Logger.verbose(TAG, "Loading Account by key...");
+        final List<AccountRecord> accounts = queryAccounts(WHERE_CACHE_KEY, new String[]{cacheKey});
+        return accounts.isEmpty() ? null : accounts.get(0);
+    }
+
+    @Override
+    @Nullable
+    public Credential getCredential(@NonNull final String cacheKey) {
+        Logger.verbose(TAG, "getCredential()");
+        Logger.verbosePII(TAG, "Using cache key: [" + cacheKey + "]");
+        final List<Credential> credentials = queryCredentials(WHERE_CACHE_KEY, new String[]{cacheKey});
+        return credentials.isEmpty() ? null : credentials.get(0);
+    }
+
+    @Override
+    @NonNull
+    public List<AccountRecord> getAccounts() {
+        Logger.verbose(TAG, "Loading Accounts...(no arg)");
+        return queryAccounts(null, null);
+    }
+
+    @Override
+    @NonNull
+    public List<AccountRecord> getAccountsFilteredBy(@Nullable final String homeAccountId,
+                                                     @Nullable final String environment,
+                                                     @Nullable final String realm) {
+        Logger.verbose(TAG, "Loading Accounts...");
+        final StringBuilder selection = new StringBuilder();
+        final List<String> selectionArgs = new ArrayList<>();
+
+        appendEquals(selection, selectionArgs, COLUMN_HOME_ACCOUNT_ID, homeAccountId);
+        appendEquals(selection, selectionArgs, COLUMN_ENVIRONMENT, environment);
+        appendEquals(selection, selectionArgs, COLUMN_REALM, realm);
+
+        final List<AccountRecord> matchingAccounts = getAccountsFilteredByInternal(
+                homeAccountId,
+                environment,
+                realm,
+                queryAccounts(toSelection(selection), toSelectionArgs(selectionArgs))
+        );
+
+        Logger.verbose(TAG, "Found [" + matchingAccounts.size() + "] matching Accounts...");
+
+        return matchingAccounts;
+    }
+
+    @Override
+    @NonNull
+    public List<Credential> getCredentials() {
+        Logger.verbose(TAG, "Loading Credentials...");
+        return queryCredentials(null, null);
+    }
+
+    @Override
+    @NonNull
+    public List<Credential> getCredentialsFilteredBy(@Nullable final String homeAccountId,
+                                                     @Nullable final String environment,
+                                                     @Nullable final CredentialType credentialType,
+                                                     @Nullable final String clientId,
+                                                     @Nullable final String realm,
+                                                     @Nullable final String target,
+                                                     @Nullable final String authScheme) {
+        Logger.verbose(TAG, "getCredentialsFilteredBy()");
+        final StringBuilder selection = new StringBuilder();
+        final List<String> selectionArgs = new ArrayList<>();
+
+        appendCredentialSelection(selection, selectionArgs, homeAccountId, environment, credentialType, clientId, realm, target);
+
+        // The query is a superset of the matches; apply the exact rules to what it found
+        final List<Credential> matchingCredentials = getCredentialsFilteredByInternal(
+                homeAccountId,
+                environment,
+                credentialType,
+                clientId,
+                realm,
+                target,
+                authScheme,
+                queryCredentials(toSelection(selection), toSelectionArgs(selectionArgs))
+        );
+
+        Logger.verbose(TAG, "Found [" + matchingCredentials.size() + "] matching Credentials...");
+
+        return matchingCredentials;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation runs one query for the union of the criteria of every query, and
+     * partitions the Credentials it finds.
+     */
+    @Override
+    @NonNull
+    public List<List<Credential>> getCredentialsForQueries(@NonNull final List<CredentialQuery> queries) {
+        Logger.verbose(TAG, "getCredentialsForQueries()");
+
+        if (queries.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        final StringBuilder selection = new StringBuilder();
+        final List<String> selectionArgs = new ArrayList<>();
+
+        for (final CredentialQuery query : queries) {
+            final StringBuilder querySelection = new StringBuilder();
+
+            appendCredentialSelection(
+                    querySelection,
+                    selectionArgs,
+                    query.getHomeAccountId(),
+                    query.getEnvironment(),
+                    query.getCredentialType(),
+                    query.getClientId(),
+                    query.getRealm(),
+                    query.getTarget()
+            );
+
+            if (querySelection.length() == 0) {
+                // This query matches every row, and so does the union
+                return partitionCredentials(queries, getCredentials());
+            }
+
+            if (selection.length() > 0) {
+                selection.append(" OR ");
+            }
+
+            selection.append('(').append(querySelection).append(')');
+        }
+
+        // The query is a superset of the matches of each bucket; partitioning applies the exact rules
+        return partitionCredentials(
+                queries,
+                queryCredentials(toSelection(selection), toSelectionArgs(selectionArgs))
+        );
+    }
+
+    @Override
+    public boolean removeAccount(@NonNull final AccountRecord accountToRemove) {
+        Logger.info(TAG, "Removing Account...");
+        if (null == accountToRemove) {
+            throw new IllegalArgumentException("Param [accountToRemove] cannot be null.");
+        }
+
+        final String cacheKey = mCacheValueDelegate.generateCacheKey(accountToRemove);
+        final AccountRecord currentAccount = getAccount(cacheKey);
+        boolean accountRemoved = false;
+
+        if (accountToRemove.equals(currentAccount)) {
+            accountRemoved = mDatabaseHelper.getWritableDatabase().delete(
+                    TABLE_ACCOUNTS,
+                    WHERE_CACHE_KEY,
+                    new String[]{cacheKey}
+            ) > 0;
+        }
+
+        Logger.info(TAG, "Account was removed? [" + accountRemoved + "]");
+
+        return accountRemoved;
+    }
+
+    @Override
+    public boolean removeCredential(@NonNull final Credential credentialToRemove) {
+        Logger.info(TAG, "Removing Credential...");
+        if (null == credentialToRemove) {
+            throw new IllegalArgumentException("Param [credentialToRemove] cannot be null.");
+        }
+
+        final String cacheKey = mCacheValueDelegate.generateCacheKey(credentialToRemove);
+        final Credential currentCredential = getCredential(cacheKey);
+        boolean credentialRemoved = false;
+
+        if (credentialToRemove.equals(currentCredential)) {
+            final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+            final String[] whereArgs = new String[]{cacheKey};
+            db.beginTransaction();
+            try {
+                credentialRemoved = db.delete(TABLE_CREDENTIALS, WHERE_CACHE_KEY, whereArgs) > 0;
+                db.delete(TABLE_CREDENTIAL_SCOPES, WHERE_CACHE_KEY, whereArgs);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+
+        Logger.info(TAG, "Credential was removed? [" + credentialRemoved + "]");
+
+        return credentialRemoved;
+    }
+
+    @Override
+    public void clearAll() {
+        Logger.info(TAG, "Clearing all SQLite entries...");
+        final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_ACCOUNTS, null, null);
+            db.delete(TABLE_CREDENTIALS, null, null);
+            db.delete(TABLE_CREDENTIAL_SCOPES, null, null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Logger.info(TAG, "SQLite entries cleared.");
+    }
+
+    /**
+     * Opens a transaction on the calling thread; writes made by this thread are committed
+     * together by the matching call to {@link #commitBatch()}.
+     */
+    @Override
+    public void beginBatch() {
+        mDatabaseHelper.getWritableDatabase().beginTransaction();
+    }
+
+    @Override
+    public void commitBatch() {
+        final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+
+        if (!db.inTransaction()) {
+            throw new IllegalStateException("commitBatch() called without beginBatch()");
+        }
+
+        db.setTransactionSuccessful();
+        db.endTransaction();
+    }
+
+    @NonNull
+    private List<AccountRecord> queryAccounts(@Nullable final String selection,
+                                              @Nullable final String[] selectionArgs) {
+        final List<AccountRecord> accounts = new ArrayList<>();
+        final Cursor cursor = mDatabaseHelper.getReadableDatabase().query(
+                TABLE_ACCOUNTS,
+                ACCOUNT_VALUE_PROJECTION,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                null
+        );
+
+        try {
+            while (cursor.moveToNext()) {
+                final AccountRecord account = mCacheValueDelegate.fromCacheValue(
+                        decrypt(cursor.getString(0), cursor.getString(1)),
+                        AccountRecord.class
+                );
+
+                if (null == account) {
+                    Logger.warn(TAG, "Deserialization failed. Skipping " + AccountRecord.class.getSimpleName());
+                } else {
+                    accounts.add(account);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return accounts;
+    }
+
+    @NonNull
+    private List<Credential> queryCredentials(@Nullable final String selection,
+                                              @Nullable final String[] selectionArgs) {
+        final List<Credential> credentials = new ArrayList<>();
+        final Cursor cursor = mDatabaseHelper.getReadableDatabase().query(
+                TABLE_CREDENTIALS,
+                VALUE_PROJECTION,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                null
+        );
+
+        try {
+            while (cursor.moveToNext()) {
+                final String cacheKey = cursor.getString(0);
+                final CredentialType type = CredentialType.fromString(cursor.getString(1));
+                final Class<? extends Credential> clazz = null == type
+                        ? null
+                        : getTargetClassForCredentialType(cacheKey, type);
+                final Credential credential = null == clazz
+                        ? null
+                        : (Credential) mCacheValueDelegate.fromCacheValue(decrypt(cacheKey, cursor.getString(2)), clazz);
+
+                if (null == credential) {
+                    Logger.warn(TAG, "Deserialization failed. Skipping " + Credential.class.getSimpleName());
+                } else {
+                    credentials.add(credential);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return credentials;
+    }
+
+    /**
+     * Selects the rows which may match the supplied criteria: a superset of the matches, to which
+     * {@link #getCredentialsFilteredByInternal} applies the exact rules.
+     */
+    private static void appendCredentialSelection(@NonNull final StringBuilder selection,
+                                                  @NonNull final List<String> selectionArgs,
+                                                  @Nullable final String homeAccountId,
+                                                  @Nullable final String environment,
+                                                  @Nullable final CredentialType credentialType,
+                                                  @Nullable final String clientId,
+                                                  @Nullable final String realm,
+                                                  @Nullable final String target) {
+        appendEquals(selection, selectionArgs, COLUMN_HOME_ACCOUNT_ID, homeAccountId);
+        appendEquals(selection, selectionArgs, COLUMN_ENVIRONMENT, environment);
+        appendEquals(selection, selectionArgs, COLUMN_CLIENT_ID, clientId);
+
+        if (null != credentialType) {
+            appendEquals(selection, selectionArgs, COLUMN_CREDENTIAL_TYPE, credentialType.name());
+        }
+
+        if (!StringExtensions.isNullOrBlank(realm)) {
+            // Realm only constrains credentials which carry one (ATs and IdTokens)
+            appendAnd(selection);
+            selection.append('(').append(COLUMN_REALM).append(" IS NULL OR ")
+                    .append(COLUMN_REALM).append(EQUALS_ARG).append(')');
+            selectionArgs.add(normalize(realm));
+        }
+
+        if (!StringExtensions.isNullOrBlank(target)) {
+            appendTargetSelection(selection, selectionArgs, toScopeSet(target));
+        }
+    }
+
+    /**
+     * Requires each sought scope (other than the default scopes, which are never matched on) to
+     * be present in the credential_scopes table for the credential, unless the credential's
+     * type carries no target.
+     */
+    private static void appendTargetSelection(@NonNull final StringBuilder selection,
+                                              @NonNull final List<String> selectionArgs,
+                                              @NonNull final Set<String> soughtScopes) {
+        if (soughtScopes.isEmpty()) {
+            return;
+        }
+
+        appendAnd(selection);
+        selection.append('(')
+                .append(COLUMN_CREDENTIAL_TYPE).append(" IN ").append(UNTARGETED_CREDENTIAL_TYPES)
+                .append(" OR ").append(COLUMN_CACHE_KEY).append(" IN (SELECT ").append(COLUMN_CACHE_KEY)
+                .append(" FROM ").append(TABLE_CREDENTIAL_SCOPES)
+                .append(" WHERE ").append(COLUMN_SCOPE).append(" IN (");
+
+        boolean first = true;
+        for (final String scope : soughtScopes) {
+            selection.append(first ? "?" : ", ?");
+            selectionArgs.add(scope);
+            first = false;
+        }
+
+        selection.append(") GROUP BY ").append(COLUMN_CACHE_KEY)
+                .append(" HAVING COUNT(*) = ").append(soughtScopes.size())
+                .append("))");
+    }
+
+    private static void appendEquals(@NonNull final StringBuilder selection,
+                                     @NonNull final List<String> selectionArgs,
+                                     @NonNull final String column,
+                                     @Nullable final String value) {
+        if (StringExtensions.isNullOrBlank(value)) {
+            return;
+        }
+
+        appendAnd(selection);
+        selection.append(column).append(EQUALS_ARG);
+        selectionArgs.add(normalize(value));
+    }
+
+    private static void appendAnd(@NonNull final StringBuilder selection) {
+        if (selection.length() > 0) {
+            selection.append(AND);
+        }
+    }
+
+    @Nullable
+    private static String toSelection(@NonNull final StringBuilder selection) {
+        return selection.length() == 0 ? null : selection.toString();
+    }
+
+    @Nullable
+    private static String[] toSelectionArgs(@NonNull final List<String> selectionArgs) {
+        return selectionArgs.isEmpty() ? null : selectionArgs.toArray(new String[0]);
+    }
+
+    /**
+     * Splits a target into its scopes, lowercased, less the default scopes.
+     */
+    @NonNull
+    private static Set<String> toScopeSet(@NonNull final String target) {
+        final Set<String> scopes = new HashSet<>();
+
+        for (final String scope : target.split(SPLIT_CRITERIA)) {
+            if (!scope.isEmpty()) {
+                scopes.add(scope.toLowerCase(Locale.ROOT));
+            }
+        }
+
+        scopes.removeAll(DEFAULT_SCOPES);
+
+        return scopes;
+    }
+
+    @Nullable
+    private static String getRealm(@NonNull final Credential credential) {
+        if (credential instanceof AccessTokenRecord) {
+            return ((AccessTokenRecord) credential).getRealm();
+        } else if (credential instanceof IdTokenRecord) {
+            return ((IdTokenRecord) credential).getRealm();
+        }
+
+        return null;
+    }
+
+    @Nullable
+    private static String getTarget(@NonNull final Credential credential) {
+        if (credential instanceof AccessTokenRecord) {
+            return ((AccessTokenRecord) credential).getTarget();
+        } else if (credential instanceof RefreshTokenRecord) {
+            return ((RefreshTokenRecord) credential).getTarget();
+        }
+
+        return null;
+    }
+
+    @Nullable
+    private static String normalize(@Nullable final String value) {
+        return null == value ? null : value.toLowerCase(Locale.ROOT);
+    }
+
+    @Nullable
+    private String encrypt(@NonNull final String cacheValue) {
+        final String methodName = ":encrypt";
+
+        if (null == mStorageHelper) {
+            return cacheValue;
+        }
+
+        try {
+            return mStorageHelper.encrypt(cacheValue);
+        } catch (GeneralSecurityException | IOException e) {
+            // Don't log the exception, as it may contain a token
+            Logger.error(TAG + methodName, "Failed to encrypt value", null);
+            return null;
+        }
+    }
+
+    @Nullable
+    private String decrypt(@NonNull final String cacheKey, @Nullable final String storedValue) {
+        final String methodName = ":decrypt";
+
+        if (null == mStorageHelper || StringExtensions.isNullOrBlank(storedValue)) {
+            return storedValue;
+        }
+
+        try {
+            return mStorageHelper.decrypt(storedValue);
+        } catch (GeneralSecurityException | IOException e) {
+            Logger.error(TAG + methodName, "Failed to decrypt value", e);
+            Logger.warnPII(TAG + methodName, "Undecryptable row: [" + cacheKey + "]");
+            return null;
+        }
+    }
+}
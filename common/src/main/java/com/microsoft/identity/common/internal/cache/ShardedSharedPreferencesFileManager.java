@@ -0,0 +1,415 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common.internal.cache;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.microsoft.identity.common.adal.internal.cache.IStorageHelper;
+import com.microsoft.identity.common.internal.logging.Logger;
+import com.microsoft.identity.common.internal.util.Predicate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An {@link ISharedPreferencesFileManager} which spreads its entries over several
+ * {@link SharedPreferences} files (shards), each managed by a {@link SharedPreferencesFileManager}.
+ * <p>
+ * Entries are routed by a stable hash of the leading part of the home_account_id in their key
+ * (see {@link CacheKey#getHomeAccountIdPrefix(String)}), so every entry of an account lives in the
+ * same shard. A write rewrites only the shard it falls in, and a read filtered by a
+ * {@link HomeAccountIdKeyFilter} reads only the shard of that account.
+ * <p>
+ * The shard count is recorded in the {@link SharedPreferences} file of the supplied name. On
+ * construction, entries found in that file (as written by a {@link SharedPreferencesFileManager}
+ * of the same name) are moved to their shards, and if the shard count has changed, entries are
+ * moved to their new shards.
+ */
+public class ShardedSharedPreferencesFileManager implements ISharedPreferencesFileManager {
+
+    private static final String TAG = ShardedSharedPreferencesFileManager.class.getSimpleName();
+
+    /**
+     * The default number of shards.
+     */
+    public static final int DEFAULT_SHARD_COUNT = 8;
+
+    /**
+     * Appended to the file name, followed by the index of the shard, to form the name of a shard.
+     */
+    public static final String SHARD_FILE_SUFFIX = "-shard-";
+
+    /**
+     * The key, in the file of the supplied name, of the shard count.
+     */
+    private static final String KEY_SHARD_COUNT = "com.microsoft.identity.shard-count";
+
+    /**
+     * Serializes resharding, so two instances never move the same entries at once.
+     */
+    private static final Object sReshardingLock = new Object();
+
+    private final String mSharedPreferencesFileName;
+    private final List<SharedPreferencesFileManager> mShards;
+
+    /**
+     * The batch open on each thread, if any.
+     */
+    private final ThreadLocal<ShardBatch> mBatches = new ThreadLocal<>();
+
+    /**
+     * A batch of one thread: its nesting depth, and the shards written to during it, in each of
+     * which that thread has begun a batch.
+     */
+    private static final class ShardBatch {
+        private int mDepth;
+        private final Set<SharedPreferencesFileManager> mShards = new LinkedHashSet<>();
+    }
+
+    /**
+     * Constructs a new ShardedSharedPreferencesFileManager with {@link #DEFAULT_SHARD_COUNT}
+     * shards.
+     *
+     * @param context       Interface to global information about an application environment.
+     * @param name          The name of the {@link SharedPreferences} file being sharded.
+     * @param storageHelper The {@link IStorageHelper} to handle encryption/decryption of values.
+     */
+    public ShardedSharedPreferencesFileManager(@NonNull final Context context,
+                                               @NonNull final String name,
+                                               @Nullable final IStorageHelper storageHelper) {
+        this(context, name, storageHelper, DEFAULT_SHARD_COUNT);
+    }
+
+    /**
+     * Constructs a new ShardedSharedPreferencesFileManager.
+     *
+     * @param context       Interface to global information about an application environment.
+     * @param name          The name of the {@link SharedPreferences} file being sharded.
+     * @param storageHelper The {@link IStorageHelper} to handle encryption/decryption of values.
+     * @param shardCount    The number of shards.
+     */
+    public ShardedSharedPreferencesFileManager(@NonNull final Context context,
+                                               @NonNull final String name,
+                                               @Nullable final IStorageHelper storageHelper,
+                                               final int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("shardCount must be positive.");
+        }
+
+        Logger.verbose(TAG, "Init: " + TAG);
+        mSharedPreferencesFileName = name;
+        mShards = new ArrayList<>(shardCount);
+
+        for (int ii = 0; ii < shardCount; ii++) {
+            mShards.add(openShard(context, name, storageHelper, ii));
+        }
+
+        synchronized (sReshardingLock) {
+            reshard(context, storageHelper);
+        }
+    }
+
+    @Override
+    public void putString(final String key, final String value) {
+        getShardForWrite(key).putString(key, value);
+    }
+
+    @Override
+    public String getString(final String key) {
+        return getShard(key).getString(key);
+    }
+
+    @Override
+    public void putLong(final String key, final long value) {
+        getShardForWrite(key).putLong(key, value);
+    }
+
+    @Override
+    public long getLong(final String key) {
+        return getShard(key).getLong(key);
+    }
+
+    @Override
+    public String getSharedPreferencesFileName() {
+        return mSharedPreferencesFileName;
+    }
+
+    @Override
+    public Map<String, String> getAll() {
+        final Map<String, String> entries = new HashMap<>();
+
+        for (final SharedPreferencesFileManager shard : mShards) {
+            entries.putAll(shard.getAll());
+        }
+
+        return entries;
+    }
+
+    @Override
+    public Map<String, String> getAll(@NonNull final Predicate<String> keyFilter) {
+        final String methodName = ":getAll";
+
+        if (keyFilter instanceof HomeAccountIdKeyFilter) {
+            final String homeAccountIdPrefix = CacheKey.getHomeAccountIdPrefixForHomeAccountId(
+                    ((HomeAccountIdKeyFilter) keyFilter).getHomeAccountId()
+            );
+
+            if (null != homeAccountIdPrefix) {
+                Logger.verbose(
+                        TAG + methodName,
+                        "Reading a single shard."
+                );
+
+                return mShards.get(getShardIndex(homeAccountIdPrefix, mShards.size())).getAll(keyFilter);
+            }
+        }
+
+        final Map<String, String> entries = new HashMap<>();
+
+        for (final SharedPreferencesFileManager shard : mShards) {
+            entries.putAll(shard.getAll(keyFilter));
+        }
+
+        return entries;
+    }
+
+    @Override
+    public boolean contains(final String key) {
+        return getShard(key).contains(key);
+    }
+
+    @Override
+    public void clear() {
+        for (final SharedPreferencesFileManager shard : mShards) {
+            beginShardBatchIfNeeded(shard);
+            shard.clear();
+        }
+    }
+
+    @Override
+    public void remove(final String key) {
+        getShardForWrite(key).remove(key);
+    }
+
+    @Override
+    public void beginBatch() {
+        ShardBatch batch = mBatches.get();
+
+        if (null == batch) {
+            batch = new ShardBatch();
+            mBatches.set(batch);
+        }
+
+        batch.mDepth++;
+    }
+
+    @Override
+    public void commitBatch() {
+        final String methodName = ":commitBatch";
+        final ShardBatch batch = mBatches.get();
+
+        if (null == batch) {
+            throw new IllegalStateException("commitBatch() called without beginBatch()");
+        }
+
+        if (--batch.mDepth > 0) {
+            // Nested batch; the outermost commit persists
+            return;
+        }
+
+        mBatches.remove();
+
+        Logger.verbose(
+                TAG + methodName,
+                "Committing batched writes to [" + batch.mShards.size() + "] shards."
+        );
+
+        // Only the shards which were written to are rewritten
+        for (final SharedPreferencesFileManager shard : batch.mShards) {
+            shard.commitBatch();
+        }
+    }
+
+    /**
+     * Gets the index of the shard holding the entries whose keys start with the supplied
+     * home_account_id prefix.
+     *
+     * @param homeAccountIdPrefix The leading part of the home_account_id.
+     * @param shardCount          The number of shards.
+     * @return The index of the shard.
+     */
+    @VisibleForTesting
+    static int getShardIndex(@NonNull final String homeAccountIdPrefix, final int shardCount) {
+        // String#hashCode() is specified by the language, so the routing is stable across releases
+        return (homeAccountIdPrefix.hashCode() & Integer.MAX_VALUE) % shardCount;
+    }
+
+    private SharedPreferencesFileManager getShard(@NonNull final String key) {
+        return mShards.get(getShardIndex(CacheKey.getHomeAccountIdPrefix(key), mShards.size()));
+    }
+
+    private SharedPreferencesFileManager getShardForWrite(@NonNull final String key) {
+        final SharedPreferencesFileManager shard = getShard(key);
+        beginShardBatchIfNeeded(shard);
+
+        return shard;
+    }
+
+    private void beginShardBatchIfNeeded(@NonNull final SharedPreferencesFileManager shard) {
+        final ShardBatch batch = mBatches.get();
+
+        if (null != batch && batch.mShards.add(shard)) {
+            shard.beginBatch();
+        }
+    }
+
+    private static SharedPreferencesFileManager openShard(@NonNull final Context context,
+                                                          @NonNull final String name,
+                                                          @Nullable final IStorageHelper storageHelper,
+                                                          final int index) {
+        return new SharedPreferencesFileManager(
+                context,
+                name + SHARD_FILE_SUFFIX + index,
+                storageHelper
+        );
+    }
+
+    /**
+     * Moves entries left in the unsharded file, or in the shards of a previous shard count, to
+     * their shards. Entries are written to their new shard before they are removed from the old,
+     * and the shard count is recorded last, so an interrupted resharding is completed by the next.
+     * <p>
+     * Must be called while holding the sReshardingLock.
+     *
+     * @param context       Interface to global information about an application environment.
+     * @param storageHelper The {@link IStorageHelper} to handle encryption/decryption of values.
+     */
+    private void reshard(@NonNull final Context context,
+                         @Nullable final IStorageHelper storageHelper) {
+        final String methodName = ":reshard";
+
+        final SharedPreferencesFileManager unshardedFile = new SharedPreferencesFileManager(
+                context,
+                mSharedPreferencesFileName,
+                storageHelper
+        );
+
+        final int shardCount = mShards.size();
+        final int previousShardCount = (int) unshardedFile.getLong(KEY_SHARD_COUNT);
+        final Map<String, String> unshardedEntries = unshardedFile.getAll(new Predicate<String>() {
+            @Override
+            public boolean test(final String key) {
+                return !KEY_SHARD_COUNT.equals(key);
+            }
+        });
+
+        if (previousShardCount == shardCount && unshardedEntries.isEmpty()) {
+            return;
+        }
+
+        Logger.info(
+                TAG + methodName,
+                "Resharding from ["
+                        + previousShardCount
+                        + "] to ["
+                        + shardCount
+                        + "] shards, with ["
+                        + unshardedEntries.size()
+                        + "] unsharded entries."
+        );
+
+        final Map<String, String> movedEntries = new HashMap<>(unshardedEntries);
+        final Map<SharedPreferencesFileManager, List<String>> movedKeysByPreviousShard = new HashMap<>();
+
+        if (previousShardCount != shardCount) {
+            for (int ii = 0; ii < previousShardCount; ii++) {
+                final SharedPreferencesFileManager previousShard = ii < shardCount
+                        ? mShards.get(ii)
+                        : openShard(context, mSharedPreferencesFileName, storageHelper, ii);
+                final List<String> movedKeys = new ArrayList<>();
+
+                for (final Map.Entry<String, String> entry : previousShard.getAll().entrySet()) {
+                    if (getShard(entry.getKey()) != previousShard) {
+                        movedEntries.put(entry.getKey(), entry.getValue());
+                        movedKeys.add(entry.getKey());
+                    }
+                }
+
+                if (!movedKeys.isEmpty()) {
+                    movedKeysByPreviousShard.put(previousShard, movedKeys);
+                }
+            }
+        }
+
+        // Write every moved entry to its new shard...
+        beginBatch();
+
+        try {
+            for (final Map.Entry<String, String> entry : movedEntries.entrySet()) {
+                putString(entry.getKey(), entry.getValue());
+            }
+        } finally {
+            commitBatch();
+        }
+
+        // ...then remove it from where it was...
+        for (final Map.Entry<SharedPreferencesFileManager, List<String>> entry
+                : movedKeysByPreviousShard.entrySet()) {
+            final SharedPreferencesFileManager previousShard = entry.getKey();
+
+            previousShard.beginBatch();
+
+            try {
+                for (final String key : entry.getValue()) {
+                    previousShard.remove(key);
+                }
+            } finally {
+                previousShard.commitBatch();
+            }
+        }
+
+        // ...and finally, record the shard count
+        unshardedFile.beginBatch();
+
+        try {
+            unshardedFile.clear();
+            unshardedFile.putLong(KEY_SHARD_COUNT, shardCount);
+        } finally {
+            unshardedFile.commitBatch();
+        }
+
+        Logger.info(
+                TAG + methodName,
+                "Moved [" + movedEntries.size() + "] entries."
+        );
+    }
+}
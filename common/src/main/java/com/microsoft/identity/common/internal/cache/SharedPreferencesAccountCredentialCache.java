@@ -27,6 +27,7 @@ import androidx.annotation.Nullable;
 
 import com.microsoft.identity.common.adal.internal.util.StringExtensions;
 import com.microsoft.identity.common.internal.dto.AccessTokenRecord;
+import com.microsoft.identity.common.internal.dto.AccountCredentialBase;
 import com.microsoft.identity.common.internal.dto.AccountRecord;
 import com.microsoft.identity.common.internal.dto.Credential;
 import com.microsoft.identity.common.internal.dto.CredentialType;
@@ -34,6 +35,7 @@ import com.microsoft.identity.common.internal.dto.IAccountRecord;
 import com.microsoft.identity.common.internal.dto.IdTokenRecord;
 import com.microsoft.identity.common.internal.dto.RefreshTokenRecord;
 import com.microsoft.identity.common.internal.logging.Logger;
+import com.microsoft.identity.common.internal.util.Predicate;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -42,6 +44,8 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static com.microsoft.identity.common.internal.cache.CacheKeyValueDelegate.CACHE_VALUE_SEPARATOR;
 
@@ -88,6 +92,25 @@ public class SharedPreferencesAccountCredentialCache extends AbstractAccountCred
 
     private final ICacheKeyValueDelegate mCacheValueDelegate;
 
+    /**
+     * Reads take the read lock and so proceed in parallel; saves and removals take the write lock.
+     */
+    private final ReadWriteLock mLock = new ReentrantReadWriteLock();
+
+    private final Predicate<String> mAccountKeyFilter = new Predicate<String>() {
+        @Override
+        public boolean test(final String cacheKey) {
+            return isAccount(cacheKey);
+        }
+    };
+
+    private final Predicate<String> mCredentialKeyFilter = new Predicate<String>() {
+        @Override
+        public boolean test(final String cacheKey) {
+            return isCredential(cacheKey);
+        }
+    };
+
     /**
      * Constructor of SharedPreferencesAccountCredentialCache.
      *
@@ -103,113 +126,141 @@ public class SharedPreferencesAccountCredentialCache extends AbstractAccountCred
     }
 
     @Override
-    public synchronized void saveAccount(@NonNull final AccountRecord account) {
-        Logger.verbose(TAG, "Saving Account...");
-        Logger.verbose(TAG, "Account type: [" + account.getClass().getSimpleName() + "]");
-        final String cacheKey = mCacheValueDelegate.generateCacheKey(account);
-        Logger.verbosePII(TAG, "Generated cache key: [" + cacheKey + "]");
-        final String cacheValue = mCacheValueDelegate.generateCacheValue(account);
-        mSharedPreferencesFileManager.putString(cacheKey, cacheValue);
+    public void saveAccount(@NonNull final AccountRecord account) {
+        mLock.writeLock().lock();
+
+        try {
+            Logger.verbose(TAG, "Saving Account...");
+            Logger.verbose(TAG, "Account type: [" + account.getClass().getSimpleName() + "]");
+            final String cacheKey = mCacheValueDelegate.generateCacheKey(account);
+            Logger.verbosePII(TAG, "Generated cache key: [" + cacheKey + "]");
+            final String cacheValue = mCacheValueDelegate.generateCacheValue(account);
+            mSharedPreferencesFileManager.putString(cacheKey, cacheValue);
+        } finally {
+            mLock.writeLock().unlock();
+        }
     }
 
     @Override
-    public synchronized void saveCredential(@NonNull Credential credential) {
-        Logger.verbose(TAG, "Saving credential...");
-        final String cacheKey = mCacheValueDelegate.generateCacheKey(credential);
-        Logger.verbosePII(TAG, "Generated cache key: [" + cacheKey + "]");
-        final String cacheValue = mCacheValueDelegate.generateCacheValue(credential);
-        mSharedPreferencesFileManager.putString(cacheKey, cacheValue);
+    public void saveCredential(@NonNull Credential credential) {
+        mLock.writeLock().lock();
+
+        try {
+            Logger.verbose(TAG, "Saving credential...");
+            final String cacheKey = mCacheValueDelegate.generateCacheKey(credential);
+            Logger.verbosePII(TAG, "Generated cache key: [" + cacheKey + "]");
+            final String cacheValue = mCacheValueDelegate.generateCacheValue(credential);
+            mSharedPreferencesFileManager.putString(cacheKey, cacheValue);
+        } finally {
+            mLock.writeLock().unlock();
+        }
     }
 
     @Override
-    public synchronized AccountRecord getAccount(@NonNull final String cacheKey) {
-        Logger.verbose(TAG, "Loading Account by key...");
-        AccountRecord account = mCacheValueDelegate.fromCacheValue(
-                mSharedPreferencesFileManager.getString(cacheKey),
-                AccountRecord.class
-        );
+    public AccountRecord getAccount(@NonNull final String cacheKey) {
+        mLock.readLock().lock();
 
-        if (null == account) {
-            // We could not deserialize the target AccountRecord...
-            // Maybe it was encrypted for another application?
-            Logger.warn(
-                    TAG,
-                    ACCOUNT_RECORD_DESERIALIZATION_FAILED
+        try {
+            Logger.verbose(TAG, "Loading Account by key...");
+            AccountRecord account = mCacheValueDelegate.fromCacheValue(
+                    mSharedPreferencesFileManager.getString(cacheKey),
+                    AccountRecord.class
             );
-        } else if (EMPTY_ACCOUNT.equals(account)) {
-            Logger.warn(TAG, "The returned Account was uninitialized. Removing...");
-            mSharedPreferencesFileManager.remove(cacheKey);
-            account = null;
-        }
 
-        return account;
+            if (null == account) {
+                // We could not deserialize the target AccountRecord...
+                // Maybe it was encrypted for another application?
+                Logger.warn(
+                        TAG,
+                        ACCOUNT_RECORD_DESERIALIZATION_FAILED
+                );
+            } else if (EMPTY_ACCOUNT.equals(account)) {
+                Logger.warn(TAG, "The returned Account was uninitialized. Removing...");
+                // Safe under the read lock: writers are excluded, and concurrent removals agree
+                mSharedPreferencesFileManager.remove(cacheKey);
+                account = null;
+            }
+
+            return account;
+        } finally {
+            mLock.readLock().unlock();
+        }
     }
 
     @Override
     @Nullable
-    public synchronized Credential getCredential(@NonNull final String cacheKey) {
-        // TODO add support for more Credential types...
-        Logger.verbose(TAG, "getCredential()");
-        Logger.verbosePII(TAG, "Using cache key: [" + cacheKey + "]");
+    public Credential getCredential(@NonNull final String cacheKey) {
+        mLock.readLock().lock();
 
-        final CredentialType type = getCredentialTypeForCredentialCacheKey(cacheKey);
-        Class<? extends Credential> clazz = null;
+        try {
+            // TODO add support for more Credential types...
+            Logger.verbose(TAG, "getCredential()");
+            Logger.verbosePII(TAG, "Using cache key: [" + cacheKey + "]");
 
-        if (null != type) {
-            clazz = getTargetClassForCredentialType(cacheKey, type);
-        }
+            final CredentialType type = CacheKey.parse(cacheKey).getCredentialType();
+            Class<? extends Credential> clazz = null;
 
-        Credential credential = null;
+            if (null != type) {
+                clazz = getTargetClassForCredentialType(cacheKey, type);
+            }
 
-        if (null != clazz) {
-            credential = mCacheValueDelegate.fromCacheValue(
-                    mSharedPreferencesFileManager.getString(cacheKey),
-                    clazz
-            );
-        }
+            Credential credential = null;
 
-        if (null == credential) {
-            // We could not deserialize the target Credential...
-            // Maybe it was encrypted for another application?
-            Logger.warn(
-                    TAG,
-                    CREDENTIAL_DESERIALIZATION_FAILED
-            );
-        } else if ((AccessTokenRecord.class == clazz && EMPTY_AT.equals(credential))
-                || (RefreshTokenRecord.class == clazz && EMPTY_RT.equals(credential))
-                || (IdTokenRecord.class == clazz) && EMPTY_ID.equals(credential)) {
-            // The returned credential came back uninitialized...
-            // Remove the entry and return null...
-            Logger.warn(TAG, "The returned Credential was uninitialized. Removing...");
-            mSharedPreferencesFileManager.remove(cacheKey);
-            credential = null;
-        }
+            if (null != clazz) {
+                credential = mCacheValueDelegate.fromCacheValue(
+                        mSharedPreferencesFileManager.getString(cacheKey),
+                        clazz
+                );
+            }
+
+            if (null == credential) {
+                // We could not deserialize the target Credential...
+                // Maybe it was encrypted for another application?
+                Logger.warn(
+                        TAG,
+                        CREDENTIAL_DESERIALIZATION_FAILED
+                );
+            } else if ((AccessTokenRecord.class == clazz && EMPTY_AT.equals(credential))
+                    || (RefreshTokenRecord.class == clazz && EMPTY_RT.equals(credential))
+                    || (IdTokenRecord.class == clazz) && EMPTY_ID.equals(credential)) {
+                // The returned credential came back uninitialized...
+                // Remove the entry and return null...
+                Logger.warn(TAG, "The returned Credential was uninitialized. Removing...");
+                mSharedPreferencesFileManager.remove(cacheKey);
+                credential = null;
+            }
 
-        return credential;
+            return credential;
+        } finally {
+            mLock.readLock().unlock();
+        }
     }
 
     @NonNull
     private Map<String, AccountRecord> getAccountsWithKeys() {
+        return getAccountsWithKeys(mAccountKeyFilter);
+    }
+
+    @NonNull
+    private Map<String, AccountRecord> getAccountsWithKeys(@NonNull final Predicate<String> keyFilter) {
         Logger.verbose(TAG, "Loading Accounts + keys...");
-        final Map<String, ?> cacheValues = mSharedPreferencesFileManager.getAll();
+        final Map<String, ?> cacheValues = mSharedPreferencesFileManager.getAll(keyFilter);
         final Map<String, AccountRecord> accounts = new HashMap<>();
 
         for (Map.Entry<String, ?> cacheValue : cacheValues.entrySet()) {
             final String cacheKey = cacheValue.getKey();
-            if (isAccount(cacheKey)) {
-                final AccountRecord account = mCacheValueDelegate.fromCacheValue(
-                        cacheValue.getValue().toString(),
-                        AccountRecord.class
-                );
+            final AccountRecord account = mCacheValueDelegate.fromCacheValue(
+                    cacheValue.getValue().toString(),
+                    AccountRecord.class
+            );
 
-                if (null == account) {
-                    Logger.warn(
-                            TAG,
-                            ACCOUNT_RECORD_DESERIALIZATION_FAILED
-                    );
-                } else {
-                    accounts.put(cacheKey, account);
-                }
+            if (null == account) {
+                Logger.warn(
+                        TAG,
+                        ACCOUNT_RECORD_DESERIALIZATION_FAILED
+                );
+            } else {
+                accounts.put(cacheKey, account);
             }
         }
 
@@ -220,12 +271,18 @@ public class SharedPreferencesAccountCredentialCache extends AbstractAccountCred
 
     @Override
     @NonNull
-    public synchronized List<AccountRecord> getAccounts() {
-        Logger.verbose(TAG, "Loading Accounts...(no arg)");
-        final Map<String, AccountRecord> allAccounts = getAccountsWithKeys();
-        final List<AccountRecord> accounts = new ArrayList<>(allAccounts.values());
-        Logger.info(TAG, "Found [" + accounts.size() + "] Accounts...");
-        return accounts;
+    public List<AccountRecord> getAccounts() {
+        mLock.readLock().lock();
+
+        try {
+            Logger.verbose(TAG, "Loading Accounts...(no arg)");
+            final Map<String, AccountRecord> allAccounts = getAccountsWithKeys();
+            final List<AccountRecord> accounts = new ArrayList<>(allAccounts.values());
+            Logger.info(TAG, "Found [" + accounts.size() + "] Accounts...");
+            return accounts;
+        } finally {
+            mLock.readLock().unlock();
+        }
     }
 
     @Override
@@ -236,7 +293,21 @@ public class SharedPreferencesAccountCredentialCache extends AbstractAccountCred
             @Nullable final String realm) {
         Logger.verbose(TAG, "Loading Accounts...");
 
-        final List<AccountRecord> allAccounts = getAccounts();
+        // Rule out entries by key first, so that only candidates are decrypted and deserialized
+        final List<AccountRecord> allAccounts;
+
+        mLock.readLock().lock();
+
+        try {
+            allAccounts = new ArrayList<>(getAccountsWithKeys(forHomeAccountId(homeAccountId, new Predicate<String>() {
+                @Override
+                public boolean test(final String cacheKey) {
+                    return CacheKey.parse(cacheKey).mayMatchAccount(homeAccountId, environment, realm);
+                }
+            })).values());
+        } finally {
+            mLock.readLock().unlock();
+        }
 
         final List<AccountRecord> matchingAccounts = getAccountsFilteredByInternal(
                 homeAccountId,
@@ -252,26 +323,29 @@ public class SharedPreferencesAccountCredentialCache extends AbstractAccountCred
 
     @NonNull
     private Map<String, Credential> getCredentialsWithKeys() {
+        return getCredentialsWithKeys(mCredentialKeyFilter);
+    }
+
+    @NonNull
+    private Map<String, Credential> getCredentialsWithKeys(@NonNull final Predicate<String> keyFilter) {
         Logger.verbose(TAG, "Loading Credentials with keys...");
-        final Map<String, ?> cacheValues = mSharedPreferencesFileManager.getAll();
+        final Map<String, ?> cacheValues = mSharedPreferencesFileManager.getAll(keyFilter);
         final Map<String, Credential> credentials = new HashMap<>();
 
         for (Map.Entry<String, ?> cacheValue : cacheValues.entrySet()) {
             final String cacheKey = cacheValue.getKey();
-            if (isCredential(cacheKey)) {
-                final Credential credential = mCacheValueDelegate.fromCacheValue(
-                        cacheValue.getValue().toString(),
-                        credentialClassForType(cacheKey)
-                );
+            final Credential credential = mCacheValueDelegate.fromCacheValue(
+                    cacheValue.getValue().toString(),
+                    credentialClassForType(cacheKey)
+            );
 
-                if (null == credential) {
-                    Logger.warn(
-                            TAG,
-                            CREDENTIAL_DESERIALIZATION_FAILED
-                    );
-                } else {
-                    credentials.put(cacheKey, credential);
-                }
+            if (null == credential) {
+                Logger.warn(
+                        TAG,
+                        CREDENTIAL_DESERIALIZATION_FAILED
+                );
+            } else {
+                credentials.put(cacheKey, credential);
             }
         }
 
@@ -282,11 +356,17 @@ public class SharedPreferencesAccountCredentialCache extends AbstractAccountCred
 
     @Override
     @NonNull
-    public synchronized List<Credential> getCredentials() {
-        Logger.verbose(TAG, "Loading Credentials...");
-        final Map<String, Credential> allCredentials = getCredentialsWithKeys();
-        final List<Credential> creds = new ArrayList<>(allCredentials.values());
-        return creds;
+    public List<Credential> getCredentials() {
+        mLock.readLock().lock();
+
+        try {
+            Logger.verbose(TAG, "Loading Credentials...");
+            final Map<String, Credential> allCredentials = getCredentialsWithKeys();
+            final List<Credential> creds = new ArrayList<>(allCredentials.values());
+            return creds;
+        } finally {
+            mLock.readLock().unlock();
+        }
     }
 
     @Override
@@ -301,7 +381,28 @@ public class SharedPreferencesAccountCredentialCache extends AbstractAccountCred
             @Nullable final String authScheme) {
         Logger.verbose(TAG, "getCredentialsFilteredBy()");
 
-        final List<Credential> allCredentials = getCredentials();
+        // Rule out entries by key first, so that only candidates are decrypted and deserialized
+        final List<Credential> allCredentials;
+
+        mLock.readLock().lock();
+
+        try {
+            allCredentials = new ArrayList<>(getCredentialsWithKeys(forHomeAccountId(homeAccountId, new Predicate<String>() {
+                @Override
+                public boolean test(final String cacheKey) {
+                    return CacheKey.parse(cacheKey).mayMatchCredential(
+                            homeAccountId,
+                            environment,
+                            credentialType,
+                            clientId,
+                            realm,
+                            target
+                    );
+                }
+            })).values());
+        } finally {
+            mLock.readLock().unlock();
+        }
 
         final List<Credential> matchingCredentials = getCredentialsFilteredByInternal(
                 homeAccountId,
@@ -320,70 +421,250 @@ public class SharedPreferencesAccountCredentialCache extends AbstractAccountCred
     }
 
     @Override
-    public boolean removeAccount(@NonNull final AccountRecord accountToRemove) {
-        Logger.info(TAG, "Removing Account...");
-        if (null == accountToRemove) {
-            throw new IllegalArgumentException("Param [accountToRemove] cannot be null.");
+    @NonNull
+    public List<List<Credential>> getCredentialsForQueries(@NonNull final List<CredentialQuery> queries) {
+        Logger.verbose(TAG, "getCredentialsForQueries() [" + queries.size() + "] queries");
+
+        // Rule out entries by key first, keeping those which may match any of the queries
+        final List<Credential> candidates;
+
+        mLock.readLock().lock();
+
+        try {
+            candidates = new ArrayList<>(getCredentialsWithKeys(forHomeAccountId(getHomeAccountId(queries), new Predicate<String>() {
+                @Override
+                public boolean test(final String cacheKey) {
+                    final CacheKey parsedKey = CacheKey.parse(cacheKey);
+
+                    for (final CredentialQuery query : queries) {
+                        if (parsedKey.mayMatchCredential(
+                                query.getHomeAccountId(),
+                                query.getEnvironment(),
+                                query.getCredentialType(),
+                                query.getClientId(),
+                                query.getRealm(),
+                                query.getTarget())) {
+                            return true;
+                        }
+                    }
+
+                    return false;
+                }
+            })).values());
+        } finally {
+            mLock.readLock().unlock();
         }
 
-        final Map<String, AccountRecord> accounts = getAccountsWithKeys();
+        return partitionCredentials(queries, candidates);
+    }
+
+    @Override
+    public boolean removeAccount(@NonNull final AccountRecord accountToRemove) {
+        mLock.writeLock().lock();
 
-        boolean accountRemoved = false;
-        for (final Map.Entry<String, AccountRecord> entry : accounts.entrySet()) {
-            Logger.verbosePII(TAG, "Inspecting: [" + entry.getKey() + "]");
-            final IAccountRecord currentAccount = entry.getValue();
+        try {
+            Logger.info(TAG, "Removing Account...");
+            if (null == accountToRemove) {
+                throw new IllegalArgumentException("Param [accountToRemove] cannot be null.");
+            }
 
-            if (currentAccount.equals(accountToRemove)) {
-                mSharedPreferencesFileManager.remove(entry.getKey());
+            boolean accountRemoved = false;
+
+            // Records are stored under a key derived from their contents, so look there first
+            final String cacheKey = mCacheValueDelegate.generateCacheKey(accountToRemove);
+            final String cacheValue = mSharedPreferencesFileManager.getString(cacheKey);
+
+            if (null != cacheValue
+                    && accountToRemove.equals(mCacheValueDelegate.fromCacheValue(cacheValue, AccountRecord.class))) {
+                mSharedPreferencesFileManager.remove(cacheKey);
                 accountRemoved = true;
-                break;
+            } else {
+                Logger.verbose(TAG, "Account not found at its computed key. Scanning...");
+                final Map<String, AccountRecord> accounts = getAccountsWithKeys();
+
+                for (final Map.Entry<String, AccountRecord> entry : accounts.entrySet()) {
+                    Logger.verbosePII(TAG, "Inspecting: [" + entry.getKey() + "]");
+                    final IAccountRecord currentAccount = entry.getValue();
+
+                    if (currentAccount.equals(accountToRemove)) {
+                        mSharedPreferencesFileManager.remove(entry.getKey());
+                        accountRemoved = true;
+                        break;
+                    }
+                }
             }
-        }
 
-        Logger.info(TAG, "Account was removed? [" + accountRemoved + "]");
+            Logger.info(TAG, "Account was removed? [" + accountRemoved + "]");
 
-        return accountRemoved;
+            return accountRemoved;
+        } finally {
+            mLock.writeLock().unlock();
+        }
     }
 
     @Override
     public boolean removeCredential(@NonNull final Credential credentialToRemove) {
-        Logger.info(TAG, "Removing Credential...");
+        mLock.writeLock().lock();
 
-        if (null == credentialToRemove) {
-            throw new IllegalArgumentException("Param [credentialToRemove] cannot be null.");
-        }
+        try {
+            Logger.info(TAG, "Removing Credential...");
 
-        final Map<String, Credential> credentials = getCredentialsWithKeys();
+            if (null == credentialToRemove) {
+                throw new IllegalArgumentException("Param [credentialToRemove] cannot be null.");
+            }
 
-        boolean credentialRemoved = false;
-        for (final Map.Entry<String, Credential> entry : credentials.entrySet()) {
-            Logger.verbosePII(TAG, "Inspecting: [" + entry.getKey() + "]");
-            final Credential currentCredential = entry.getValue();
+            boolean credentialRemoved = false;
 
-            if (currentCredential.equals(credentialToRemove)) {
-                mSharedPreferencesFileManager.remove(entry.getKey());
+            // Records are stored under a key derived from their contents, so look there first
+            final String cacheKey = mCacheValueDelegate.generateCacheKey(credentialToRemove);
+            final String cacheValue = mSharedPreferencesFileManager.getString(cacheKey);
+            final Class<? extends Credential> clazz = isCredential(cacheKey)
+                    ? credentialClassForType(cacheKey)
+                    : null;
+
+            if (null != cacheValue
+                    && null != clazz
+                    && credentialToRemove.equals(mCacheValueDelegate.fromCacheValue(cacheValue, clazz))) {
+                mSharedPreferencesFileManager.remove(cacheKey);
                 credentialRemoved = true;
-                break;
+            } else {
+                Logger.verbose(TAG, "Credential not found at its computed key. Scanning...");
+                final Map<String, Credential> credentials = getCredentialsWithKeys();
+
+                for (final Map.Entry<String, Credential> entry : credentials.entrySet()) {
+                    Logger.verbosePII(TAG, "Inspecting: [" + entry.getKey() + "]");
+                    final Credential currentCredential = entry.getValue();
+
+                    if (currentCredential.equals(credentialToRemove)) {
+                        mSharedPreferencesFileManager.remove(entry.getKey());
+                        credentialRemoved = true;
+                        break;
+                    }
+                }
             }
+
+            Logger.info(TAG, "Credential was removed? [" + credentialRemoved + "]");
+
+            return credentialRemoved;
+        } finally {
+            mLock.writeLock().unlock();
         }
+    }
+
+    @Override
+    @NonNull
+    public List<AccountCredentialBase> removeAll(
+            @NonNull final Predicate<AccountCredentialBase> predicate) {
+        mLock.writeLock().lock();
+
+        try {
+            Logger.info(TAG, "Removing matching entries...");
+            final List<AccountCredentialBase> removed = new ArrayList<>();
+            final Map<String, String> cacheValues = mSharedPreferencesFileManager.getAll();
+
+            mSharedPreferencesFileManager.beginBatch();
+
+            try {
+                for (final Map.Entry<String, String> cacheValue : cacheValues.entrySet()) {
+                    final String cacheKey = cacheValue.getKey();
+                    final AccountCredentialBase record;
+
+                    if (isAccount(cacheKey)) {
+                        record = mCacheValueDelegate.fromCacheValue(cacheValue.getValue(), AccountRecord.class);
+                    } else if (isCredential(cacheKey)) {
+                        final Class<? extends Credential> clazz = credentialClassForType(cacheKey);
+                        record = null == clazz
+                                ? null
+                                : mCacheValueDelegate.fromCacheValue(cacheValue.getValue(), clazz);
+                    } else {
+                        continue;
+                    }
+
+                    if (null != record && predicate.test(record)) {
+                        Logger.verbosePII(TAG, "Removing: [" + cacheKey + "]");
+                        mSharedPreferencesFileManager.remove(cacheKey);
+                        removed.add(record);
+                    }
+                }
+            } finally {
+                mSharedPreferencesFileManager.commitBatch();
+            }
 
-        Logger.info(TAG, "Credential was removed? [" + credentialRemoved + "]");
+            Logger.info(TAG, "Removed [" + removed.size() + "] matching entries.");
 
-        return credentialRemoved;
+            return removed;
+        } finally {
+            mLock.writeLock().unlock();
+        }
     }
 
     @Override
     public void clearAll() {
-        Logger.info(TAG, "Clearing all SharedPreferences entries...");
-        mSharedPreferencesFileManager.clear();
-        Logger.info(TAG, "SharedPreferences cleared.");
+        mLock.writeLock().lock();
+
+        try {
+            Logger.info(TAG, "Clearing all SharedPreferences entries...");
+            mSharedPreferencesFileManager.clear();
+            Logger.info(TAG, "SharedPreferences cleared.");
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Begins a batch in the underlying {@link ISharedPreferencesFileManager}, which holds it for
+     * the calling thread; other threads read the committed entries until it is committed.
+     */
+    @Override
+    public void beginBatch() {
+        mSharedPreferencesFileManager.beginBatch();
+    }
+
+    @Override
+    public void commitBatch() {
+        mSharedPreferencesFileManager.commitBatch();
+    }
+
+    /**
+     * Marks the supplied key filter as belonging to a query of a single home_account_id, so that
+     * an {@link ISharedPreferencesFileManager} partitioned by account may read only its partition.
+     *
+     * @param homeAccountId The home_account_id of the query, or null if it spans accounts.
+     * @param keyFilter     The filter to apply to each key.
+     * @return The filter to pass to the {@link ISharedPreferencesFileManager}.
+     */
+    private static Predicate<String> forHomeAccountId(@Nullable final String homeAccountId,
+                                                      @NonNull final Predicate<String> keyFilter) {
+        return null == homeAccountId ? keyFilter : new HomeAccountIdKeyFilter(homeAccountId, keyFilter);
+    }
+
+    /**
+     * Gets the home_account_id shared by all of the supplied queries.
+     *
+     * @param queries The queries.
+     * @return The home_account_id, or null if the queries span accounts.
+     */
+    @Nullable
+    private static String getHomeAccountId(@NonNull final List<CredentialQuery> queries) {
+        String homeAccountId = null;
+
+        for (final CredentialQuery query : queries) {
+            if (null == query.getHomeAccountId()
+                    || (null != homeAccountId && !homeAccountId.equalsIgnoreCase(query.getHomeAccountId()))) {
+                return null;
+            }
+
+            homeAccountId = query.getHomeAccountId();
+        }
+
+        return homeAccountId;
     }
 
     private Class<? extends Credential> credentialClassForType(@NonNull final String cacheKey) {
         Logger.verbose(TAG, "Resolving class for key/CredentialType...");
         Logger.verbosePII(TAG, "Supplied key: [" + cacheKey + "]");
 
-        final CredentialType targetType = getCredentialTypeForCredentialCacheKey(cacheKey);
+        final CredentialType targetType = CacheKey.parse(cacheKey).getCredentialType();
 
         Logger.verbose(TAG, "CredentialType matched: [" + targetType + "]");
 
@@ -444,14 +725,14 @@ public class SharedPreferencesAccountCredentialCache extends AbstractAccountCred
 
     private boolean isAccount(@NonNull final String cacheKey) {
         Logger.verbosePII(TAG, "Evaluating cache key: [" + cacheKey + "]");
-        boolean isAccount = null == getCredentialTypeForCredentialCacheKey(cacheKey);
+        boolean isAccount = CacheKey.parse(cacheKey).isAccount();
         Logger.verbose(TAG, "isAccount? [" + isAccount + "]");
         return isAccount;
     }
 
     private boolean isCredential(@NonNull String cacheKey) {
         Logger.verbosePII(TAG, "Evaluating cache key: [" + cacheKey + "]");
-        boolean isCredential = null != getCredentialTypeForCredentialCacheKey(cacheKey);
+        boolean isCredential = !CacheKey.parse(cacheKey).isAccount();
         Logger.verbose(TAG, "isCredential? [" + isCredential + "]");
         return isCredential;
     }
@@ -0,0 +1,118 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common.internal.cache;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.reflect.TypeToken;
+import com.microsoft.identity.common.internal.logging.Logger;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An {@link IBrokerAccountIndex} persisted to SharedPreferences, alongside the broker's
+ * application metadata.
+ */
+public class SharedPreferencesBrokerAccountIndex
+        extends SharedPreferencesKeyedSimpleCacheImpl<BrokerAccountIndexEntry>
+        implements IBrokerAccountIndex {
+
+    private static final String TAG = SharedPreferencesBrokerAccountIndex.class.getSimpleName();
+
+    private static final String DEFAULT_ACCOUNT_INDEX_NAME = "com.microsoft.identity.account-index";
+
+    private static final String KEY_CACHE_LIST = "account-index";
+
+    private static final String KEY_INDEXED_APPLICATIONS = "account-index-applications";
+
+    private final SharedPreferencesKeyedSimpleCacheImpl<BrokerApplicationMetadata> mIndexedApplications;
+
+    public SharedPreferencesBrokerAccountIndex(@NonNull final Context context) {
+        super(context, DEFAULT_ACCOUNT_INDEX_NAME, KEY_CACHE_LIST);
+
+        mIndexedApplications = new SharedPreferencesKeyedSimpleCacheImpl<BrokerApplicationMetadata>(
+                context,
+                DEFAULT_ACCOUNT_INDEX_NAME,
+                KEY_INDEXED_APPLICATIONS) {
+            @Override
+            protected Type getListTypeToken() {
+                return new TypeToken<List<BrokerApplicationMetadata>>() {
+                }.getType();
+            }
+        };
+    }
+
+    @Override
+    public List<BrokerAccountIndexEntry> getEntries(@NonNull final String homeAccountId,
+                                                    @Nullable final String environment) {
+        final String methodName = ":getEntries";
+
+        final List<BrokerAccountIndexEntry> result = new ArrayList<>();
+
+        for (final BrokerAccountIndexEntry entry : getAll()) {
+            if (homeAccountId.equalsIgnoreCase(entry.getHomeAccountId())
+                    && (null == environment || environment.equalsIgnoreCase(entry.getEnvironment()))) {
+                result.add(entry);
+            }
+        }
+
+        Logger.verbose(
+                TAG + methodName,
+                "Found ["
+                        + result.size()
+                        + "] entries."
+        );
+
+        return result;
+    }
+
+    @Override
+    public boolean insertAll(@NonNull final Collection<BrokerAccountIndexEntry> entries) {
+        // Entries are written ahead of the records they describe, so wait for them to reach disk
+        return super.insertAll(entries) && flush();
+    }
+
+    @Override
+    public Set<BrokerApplicationMetadata> getIndexedApplications() {
+        return new HashSet<>(mIndexedApplications.getAll());
+    }
+
+    @Override
+    public boolean addIndexedApplications(@NonNull final Collection<BrokerApplicationMetadata> applications) {
+        return mIndexedApplications.insertAll(applications);
+    }
+
+    @Override
+    protected Type getListTypeToken() {
+        return new TypeToken<List<BrokerAccountIndexEntry>>() {
+        }.getType();
+    }
+}
@@ -33,12 +33,16 @@ import com.microsoft.identity.common.internal.logging.Logger;
 
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class SharedPreferencesBrokerApplicationMetadataCache
-        extends SharedPreferencesSimpleCacheImpl<BrokerApplicationMetadata>
+        extends SharedPreferencesKeyedSimpleCacheImpl<BrokerApplicationMetadata>
         implements IBrokerApplicationMetadataCache {
 
     private static final String TAG = SharedPreferencesBrokerApplicationMetadataCache.class.getSimpleName();
@@ -47,6 +51,56 @@ public class SharedPreferencesBrokerApplicationMetadataCache
 
     private static final String KEY_CACHE_LIST = "app-meta-cache";
 
+    private static final String INDEX_METADATA = "metadata";
+
+    private static final String INDEX_CLIENT_IDS = "client-ids";
+
+    /**
+     * The client ids of the cached metadata, by whether they are FoCI.
+     */
+    private static final class ClientIdIndex {
+
+        private final Set<String> mAllClientIds;
+
+        private final Set<String> mFociClientIds;
+
+        private final Set<String> mNonFociClientIds;
+
+        /**
+         * The metadata of every FoCI client id, whether or not the metadata itself is FoCI.
+         */
+        private final List<BrokerApplicationMetadata> mFociApplicationMetadata;
+
+        private ClientIdIndex(@NonNull final List<BrokerApplicationMetadata> allMetadata) {
+            final Set<String> allClientIds = new HashSet<>();
+            final Set<String> fociClientIds = new HashSet<>();
+            final Set<String> nonFociClientIds = new HashSet<>();
+
+            for (final BrokerApplicationMetadata metadata : allMetadata) {
+                allClientIds.add(metadata.getClientId());
+
+                if (TextUtils.isEmpty(metadata.getFoci())) {
+                    nonFociClientIds.add(metadata.getClientId());
+                } else {
+                    fociClientIds.add(metadata.getClientId());
+                }
+            }
+
+            final List<BrokerApplicationMetadata> fociApplicationMetadata = new ArrayList<>();
+
+            for (final BrokerApplicationMetadata metadata : allMetadata) {
+                if (fociClientIds.contains(metadata.getClientId())) {
+                    fociApplicationMetadata.add(metadata);
+                }
+            }
+
+            mAllClientIds = Collections.unmodifiableSet(allClientIds);
+            mFociClientIds = Collections.unmodifiableSet(fociClientIds);
+            mNonFociClientIds = Collections.unmodifiableSet(nonFociClientIds);
+            mFociApplicationMetadata = fociApplicationMetadata;
+        }
+    }
+
     public SharedPreferencesBrokerApplicationMetadataCache(@NonNull final Context context) {
         super(context, DEFAULT_APP_METADATA_CACHE_NAME, KEY_CACHE_LIST);
     }
@@ -55,11 +109,7 @@ public class SharedPreferencesBrokerApplicationMetadataCache
     public Set<String> getAllClientIds() {
         final String methodName = ":getAllClientIds";
 
-        final Set<String> allClientIds = new HashSet<>();
-
-        for (final BrokerApplicationMetadata metadata : getAll()) {
-            allClientIds.add(metadata.getClientId());
-        }
+        final Set<String> allClientIds = getClientIdIndex().mAllClientIds;
 
         Logger.verbose(
                 TAG + methodName,
@@ -73,62 +123,39 @@ public class SharedPreferencesBrokerApplicationMetadataCache
 
     @Override
     public Set<String> getAllFociClientIds() {
-        return getAllFociClientIds(false);
-    }
-
-    @Override
-    public Set<String> getAllNonFociClientIds() {
-        return getAllFociClientIds(true);
-    }
-
-    @Override
-    public List<BrokerApplicationMetadata> getAllFociApplicationMetadata() {
-        final Set<String> fociClientIds = getAllFociClientIds();
-
-        final List<BrokerApplicationMetadata> result = new ArrayList<>();
+        final String methodName = ":getAllFociClientIds";
 
-        final List<BrokerApplicationMetadata> allMetadata = getAll();
+        final Set<String> allFociClientIds = getClientIdIndex().mFociClientIds;
 
-        for (final BrokerApplicationMetadata metadata : allMetadata) {
-            if (fociClientIds.contains(metadata.getClientId())) {
-                result.add(metadata);
-            }
-        }
+        Logger.verbose(
+                TAG + methodName,
+                "Found ["
+                        + allFociClientIds.size()
+                        + "] client ids."
+        );
 
-        return result;
+        return allFociClientIds;
     }
 
-    /**
-     * Returns a list of FoCI clientIds or non-FoCI clientIds if inverseMatch is true.
-     *
-     * @param inverseMatch If false, match FoCI. If true, match non-FoCI.
-     * @return
-     */
-    private Set<String> getAllFociClientIds(final boolean inverseMatch) {
-        final String methodName = ":getAllFociClientIds";
-
-        final Set<String> allFociClientIds = new HashSet<>();
+    @Override
+    public Set<String> getAllNonFociClientIds() {
+        final String methodName = ":getAllNonFociClientIds";
 
-        for (final BrokerApplicationMetadata metadata : getAll()) {
-            if (!inverseMatch) { // match FoCI
-                if (!TextUtils.isEmpty(metadata.getFoci())) {
-                    allFociClientIds.add(metadata.getClientId());
-                }
-            } else { // match non FoCI
-                if (TextUtils.isEmpty(metadata.getFoci())) {
-                    allFociClientIds.add(metadata.getClientId());
-                }
-            }
-        }
+        final Set<String> allNonFociClientIds = getClientIdIndex().mNonFociClientIds;
 
         Logger.verbose(
                 TAG + methodName,
                 "Found ["
-                        + allFociClientIds.size()
+                        + allNonFociClientIds.size()
                         + "] client ids."
         );
 
-        return allFociClientIds;
+        return allNonFociClientIds;
+    }
+
+    @Override
+    public List<BrokerApplicationMetadata> getAllFociApplicationMetadata() {
+        return new ArrayList<>(getClientIdIndex().mFociApplicationMetadata);
     }
 
     @Nullable
@@ -138,22 +165,35 @@ public class SharedPreferencesBrokerApplicationMetadataCache
                                                  final int processUid) {
         final String methodName = ":getMetadata";
 
-        final List<BrokerApplicationMetadata> allMetadata = getAll();
-        BrokerApplicationMetadata result = null;
-
-        for (final BrokerApplicationMetadata metadata : allMetadata) {
-            if (clientId.equals(metadata.getClientId())
-                    && environment.equals(metadata.getEnvironment())
-                    && processUid == metadata.getUid()) {
-                Logger.verbose(
-                        TAG + metadata,
-                        "Metadata located."
-                );
+        final Map<List<Object>, BrokerApplicationMetadata> metadataIndex = getIndex(
+                INDEX_METADATA,
+                new IndexBuilder<BrokerApplicationMetadata, Map<List<Object>, BrokerApplicationMetadata>>() {
+                    @Override
+                    public Map<List<Object>, BrokerApplicationMetadata> build(
+                            @NonNull final List<BrokerApplicationMetadata> allMetadata) {
+                        final Map<List<Object>, BrokerApplicationMetadata> index = new HashMap<>();
+
+                        for (final BrokerApplicationMetadata metadata : allMetadata) {
+                            final List<Object> key = getMetadataKey(
+                                    metadata.getClientId(),
+                                    metadata.getEnvironment(),
+                                    metadata.getUid()
+                            );
+
+                            // The first match wins, as when the metadata was scanned in order
+                            if (!index.containsKey(key)) {
+                                index.put(key, metadata);
+                            }
+                        }
+
+                        return index;
+                    }
+                }
+        );
 
-                result = metadata;
-                break;
-            }
-        }
+        final BrokerApplicationMetadata result = metadataIndex.get(
+                getMetadataKey(clientId, environment, processUid)
+        );
 
         if (null == result) {
             Logger.warn(
@@ -164,11 +204,47 @@ public class SharedPreferencesBrokerApplicationMetadataCache
                             + environment
                             + "]"
             );
+        } else {
+            Logger.verbose(
+                    TAG + result,
+                    "Metadata located."
+            );
         }
 
         return result;
     }
 
+    /**
+     * Gets the memoized {@link ClientIdIndex} of this cache.
+     *
+     * @return The index.
+     */
+    private ClientIdIndex getClientIdIndex() {
+        return getIndex(
+                INDEX_CLIENT_IDS,
+                new IndexBuilder<BrokerApplicationMetadata, ClientIdIndex>() {
+                    @Override
+                    public ClientIdIndex build(@NonNull final List<BrokerApplicationMetadata> allMetadata) {
+                        return new ClientIdIndex(allMetadata);
+                    }
+                }
+        );
+    }
+
+    /**
+     * Gets the key of the metadata index for the supplied criteria.
+     *
+     * @param clientId    The client id.
+     * @param environment The environment.
+     * @param processUid  The uid of the app.
+     * @return The key, equal to the key of any other metadata with the same criteria.
+     */
+    private static List<Object> getMetadataKey(@Nullable final String clientId,
+                                               @Nullable final String environment,
+                                               final int processUid) {
+        return Arrays.<Object>asList(clientId, environment, processUid);
+    }
+
     @Override
     protected Type getListTypeToken() {
         return new TypeToken<List<BrokerApplicationMetadata>>() {
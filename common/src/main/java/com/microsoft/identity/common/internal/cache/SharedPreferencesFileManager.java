@@ -34,11 +34,20 @@ import com.microsoft.identity.common.WarningType;
 import com.microsoft.identity.common.adal.internal.cache.IStorageHelper;
 import com.microsoft.identity.common.adal.internal.util.StringExtensions;
 import com.microsoft.identity.common.internal.logging.Logger;
+import com.microsoft.identity.common.internal.util.Predicate;
 
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Convenience class for accessing {@link SharedPreferences}.
@@ -47,10 +56,41 @@ public class SharedPreferencesFileManager implements ISharedPreferencesFileManag
 
     private static final String TAG = SharedPreferencesFileManager.class.getSimpleName();
 
+    private static final int DECRYPTION_THREAD_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Bulk reads are split into tasks of at least this many values; smaller reads are decrypted
+     * on the calling thread, as handing them off would cost more than it saves.
+     */
+    private static final int MIN_VALUES_PER_DECRYPTION_TASK = 32;
+
+    private static final long DECRYPTION_THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Decrypts bulk reads in parallel. Idle threads time out, as bulk reads mostly happen while
+     * the caches above are cold.
+     */
+    private static final ThreadPoolExecutor sDecryptionExecutor = new ThreadPoolExecutor(
+            DECRYPTION_THREAD_POOL_SIZE,
+            DECRYPTION_THREAD_POOL_SIZE,
+            DECRYPTION_THREAD_KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>()
+    );
+
+    static {
+        sDecryptionExecutor.allowCoreThreadTimeOut(true);
+    }
+
     private final String mSharedPreferencesFileName;
     private final SharedPreferences mSharedPreferences;
     private final IStorageHelper mStorageHelper;
 
+    /**
+     * The batch open on each thread, if any.
+     */
+    private final ThreadLocal<WriteBatch> mBatches = new ThreadLocal<>();
+
     /**
      * Constructs an instance of SharedPreferencesFileManager.
      * The default operating mode is {@link Context#MODE_PRIVATE}
@@ -129,6 +169,13 @@ public class SharedPreferencesFileManager implements ISharedPreferencesFileManag
     public final void putString(
             final String key,
             final String value) {
+        final WriteBatch batch = mBatches.get();
+
+        if (null != batch) {
+            batch.put(key, value);
+            return;
+        }
+
         final SharedPreferences.Editor editor = mSharedPreferences.edit();
 
         if (null == mStorageHelper) {
@@ -144,6 +191,12 @@ public class SharedPreferencesFileManager implements ISharedPreferencesFileManag
     @Override
     @Nullable
     public final String getString(final String key) {
+        final WriteBatch batch = mBatches.get();
+
+        if (null != batch && batch.determines(key)) {
+            return batch.get(key);
+        }
+
         String restoredValue = mSharedPreferences.getString(key, null);
 
         if (null != mStorageHelper && !StringExtensions.isNullOrBlank(restoredValue)) {
@@ -190,25 +243,166 @@ public class SharedPreferencesFileManager implements ISharedPreferencesFileManag
 
     @Override
     public final Map<String, String> getAll() {
+        return getAllInternal(null);
+    }
+
+    @Override
+    public final Map<String, String> getAll(@NonNull final Predicate<String> keyFilter) {
+        return getAllInternal(keyFilter);
+    }
+
+    private Map<String, String> getAllInternal(@Nullable final Predicate<String> keyFilter) {
+        final WriteBatch batch = mBatches.get();
+
+        if (null != batch && batch.isCleared()) {
+            return applyPendingWrites(batch.getWrites(), new HashMap<String, String>(), keyFilter);
+        }
+
+        final Map<String, String> pendingWrites = null == batch || batch.getWrites().isEmpty()
+                ? null
+                : batch.getWrites();
 
         // Suppressing unchecked warnings due to casting Map<String,?> to Map<String,String>
         @SuppressWarnings(WarningType.unchecked_warning)
         final Map<String, String> entries = (Map<String, String>) mSharedPreferences.getAll();
 
-        if (null != mStorageHelper) {
-            final Iterator<Map.Entry<String, String>> iterator = entries.entrySet().iterator();
+        final Iterator<Map.Entry<String, String>> iterator = entries.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            final Map.Entry<String, String> entry = iterator.next();
+
+            // Filter on the (plaintext) key first, so that we only decrypt what was asked for.
+            // Entries which are about to be overwritten by the current batch needn't be read.
+            if ((null != keyFilter && !keyFilter.test(entry.getKey()))
+                    || (null != pendingWrites && pendingWrites.containsKey(entry.getKey()))) {
+                iterator.remove();
+            }
+        }
+
+        if (null != mStorageHelper && !entries.isEmpty()) {
+            decryptAll(entries);
+        }
+
+        if (null != pendingWrites) {
+            applyPendingWrites(pendingWrites, entries, keyFilter);
+        }
+
+        return entries;
+    }
+
+    /**
+     * Decrypts the values of the supplied entries in place. Entries which cannot be decrypted are
+     * removed, from both the supplied map and the underlying file.
+     * <p>
+     * Large maps are split across {@link #sDecryptionExecutor}, the calling thread taking the
+     * first share; the results are merged on the calling thread.
+     *
+     * @param entries The entries to decrypt.
+     */
+    private void decryptAll(@NonNull final Map<String, String> entries) {
+        final String methodName = ":decryptAll";
+        final List<String> keys = new ArrayList<>(entries.keySet());
+        final String[] values = new String[keys.size()];
+
+        for (int ii = 0; ii < values.length; ii++) {
+            values[ii] = entries.get(keys.get(ii));
+        }
+
+        final int taskCount = Math.min(
+                DECRYPTION_THREAD_POOL_SIZE,
+                values.length / MIN_VALUES_PER_DECRYPTION_TASK
+        );
+
+        if (taskCount > 1) {
+            Logger.verbose(
+                    TAG + methodName,
+                    "Decrypting " + values.length + " values in " + taskCount + " tasks."
+            );
+
+            final int valuesPerTask = (values.length + taskCount - 1) / taskCount;
+            final List<Future<?>> futures = new ArrayList<>(taskCount - 1);
+
+            for (int start = valuesPerTask; start < values.length; start += valuesPerTask) {
+                final int from = start;
+                final int to = Math.min(start + valuesPerTask, values.length);
 
-            while (iterator.hasNext()) {
-                final Map.Entry<String, String> entry = iterator.next();
-                final String decryptedValue = decrypt(entry.getValue());
+                futures.add(sDecryptionExecutor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        decryptRange(values, from, to);
+                    }
+                }));
+            }
+
+            decryptRange(values, 0, valuesPerTask);
+            awaitAll(futures);
+        } else {
+            decryptRange(values, 0, values.length);
+        }
 
-                if (TextUtils.isEmpty(decryptedValue)) {
-                    logWarningAndRemoveKey(entry.getKey());
-                    iterator.remove();
-                    continue;
+        for (int ii = 0; ii < values.length; ii++) {
+            final String key = keys.get(ii);
+
+            if (TextUtils.isEmpty(values[ii])) {
+                logWarningAndRemoveKey(key);
+                entries.remove(key);
+            } else {
+                entries.put(key, values[ii]);
+            }
+        }
+    }
+
+    /**
+     * Decrypts values[from, to) in place, leaving null where decryption fails.
+     */
+    private void decryptRange(@NonNull final String[] values, final int from, final int to) {
+        for (int ii = from; ii < to; ii++) {
+            values[ii] = decrypt(values[ii]);
+        }
+    }
+
+    /**
+     * Waits for the supplied tasks to complete. Interrupts are deferred until then, as the
+     * results are written to memory the caller is about to read.
+     */
+    private static void awaitAll(@NonNull final List<Future<?>> futures) {
+        boolean interrupted = false;
+
+        try {
+            for (final Future<?> future : futures) {
+                while (true) {
+                    try {
+                        future.get();
+                        break;
+                    } catch (final InterruptedException e) {
+                        interrupted = true;
+                    } catch (final ExecutionException e) {
+                        final Throwable cause = e.getCause();
+
+                        if (cause instanceof RuntimeException) {
+                            throw (RuntimeException) cause;
+                        } else if (cause instanceof Error) {
+                            throw (Error) cause;
+                        }
+
+                        throw new IllegalStateException(cause);
+                    }
                 }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 
-                entry.setValue(decryptedValue);
+    private static Map<String, String> applyPendingWrites(@NonNull final Map<String, String> pendingWrites,
+                                                          @NonNull final Map<String, String> entries,
+                                                          @Nullable final Predicate<String> keyFilter) {
+        for (final Map.Entry<String, String> pendingWrite : pendingWrites.entrySet()) {
+            if (null != pendingWrite.getValue()
+                    && (null == keyFilter || keyFilter.test(pendingWrite.getKey()))) {
+                entries.put(pendingWrite.getKey(), pendingWrite.getValue());
             }
         }
 
@@ -222,6 +416,13 @@ public class SharedPreferencesFileManager implements ISharedPreferencesFileManag
 
     @Override
     public final void clear() {
+        final WriteBatch batch = mBatches.get();
+
+        if (null != batch) {
+            batch.clear();
+            return;
+        }
+
         final SharedPreferences.Editor editor = mSharedPreferences.edit();
         editor.clear();
         editor.apply();
@@ -234,6 +435,13 @@ public class SharedPreferencesFileManager implements ISharedPreferencesFileManag
                 "Removing cache key"
         );
 
+        final WriteBatch batch = mBatches.get();
+
+        if (null != batch) {
+            batch.put(key, null);
+            return;
+        }
+
         final SharedPreferences.Editor editor = mSharedPreferences.edit();
         editor.remove(key);
         editor.apply();
@@ -246,6 +454,48 @@ public class SharedPreferencesFileManager implements ISharedPreferencesFileManag
         );
     }
 
+    @Override
+    public final void beginBatch() {
+        WriteBatch.begin(mBatches);
+    }
+
+    @Override
+    public final void commitBatch() {
+        final String methodName = ":commitBatch";
+        final WriteBatch batch = WriteBatch.end(mBatches);
+
+        if (null == batch) {
+            return;
+        }
+
+        // One Editor, one apply() for everything buffered in this batch
+        final SharedPreferences.Editor editor = mSharedPreferences.edit();
+
+        if (batch.isCleared()) {
+            editor.clear();
+        }
+
+        for (final Map.Entry<String, String> pendingWrite : batch.getWrites().entrySet()) {
+            final String key = pendingWrite.getKey();
+            final String value = pendingWrite.getValue();
+
+            if (null == value) {
+                editor.remove(key);
+            } else if (null == mStorageHelper) {
+                editor.putString(key, value);
+            } else {
+                editor.putString(key, encrypt(value));
+            }
+        }
+
+        Logger.verbose(
+                TAG + methodName,
+                "Committing [" + batch.getWrites().size() + "] batched writes."
+        );
+
+        editor.apply();
+    }
+
     @Nullable
     private String encrypt(@NonNull final String clearText) {
         return encryptDecryptInternal(clearText, true);
@@ -0,0 +1,482 @@
+//  Copyright (c) Microsoft Corporation.
+//  All rights reserved.
+//
+//  This code is licensed under the MIT License.
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files(the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions :
+//
+//  The above copyright notice and this permission notice shall be included in
+//  all copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+//  THE SOFTWARE.
+package com.microsoft.identity.common.internal.cache;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.microsoft.identity.common.internal.logging.Logger;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A simple metadata store definition that uses SharedPreferences to persist, read, update, and
+ * delete data, storing each element under its own key.
+ * <p>
+ * Unlike {@link SharedPreferencesSimpleCacheImpl}, an insert or removal writes only the affected
+ * elements, and reads are served from a decoded in-memory copy shared by all instances of the
+ * cache in this process. Writes are applied asynchronously; call {@link #flush()} to wait for them
+ * to reach disk.
+ * <p>
+ * Subclasses may memoize lookup structures over the elements with
+ * {@link #getIndex(String, IndexBuilder)}; these are rebuilt only after the cache changes.
+ * <p>
+ * Elements are keyed by their JSON, so two elements share a key exactly when they serialize
+ * identically. Elements persisted by {@link SharedPreferencesSimpleCacheImpl} under the same
+ * single key are migrated to this format when the cache is first loaded.
+ *
+ * @param <T> The type of metadata that will be persisted.
+ */
+public abstract class SharedPreferencesKeyedSimpleCacheImpl<T> implements ISimpleCache<T> {
+
+    private static final String TAG = SharedPreferencesKeyedSimpleCacheImpl.class.getSimpleName();
+
+    /**
+     * Separates the single key of the cache from the key of each element.
+     */
+    private static final String KEY_SEPARATOR = "::";
+
+    /**
+     * The decoded elements of each cache in this process, by SharedPreferences name and single
+     * key.
+     */
+    private static final Map<String, Map<String, DecodedEntries>> sDecodedEntries = new HashMap<>();
+
+    /**
+     * The decoded elements of one cache, by key. Guarded by itself.
+     */
+    private static final class DecodedEntries {
+
+        private final SharedPreferences mSharedPreferences;
+
+        private final Map<String, Object> mEntries = new LinkedHashMap<>();
+
+        /**
+         * The indexes built over {@link #mEntries}, by name. Cleared whenever it changes.
+         */
+        private final Map<String, Object> mIndexes = new HashMap<>();
+
+        private DecodedEntries(@NonNull final SharedPreferences sharedPreferences) {
+            mSharedPreferences = sharedPreferences;
+        }
+    }
+
+    /**
+     * Builds an index over the elements of a cache.
+     *
+     * @param <T> The type of the cached elements.
+     * @param <I> The type of the index.
+     */
+    protected interface IndexBuilder<T, I> {
+
+        /**
+         * Builds the index.
+         *
+         * @param elements The elements of the cache.
+         * @return The index over the supplied elements.
+         */
+        I build(@NonNull List<T> elements);
+    }
+
+    private final SharedPreferences mSharedPrefs;
+    private final String mPrefsName;
+    private final String mKeySingleEntry;
+    private final String mKeyPrefix;
+    private final Gson mGson = new Gson();
+
+    public SharedPreferencesKeyedSimpleCacheImpl(@NonNull final Context context,
+                                                 @NonNull final String prefsName,
+                                                 @NonNull final String singleKey) {
+        Logger.verbose(
+                TAG + "::ctor",
+                "Init"
+        );
+        mSharedPrefs = context.getSharedPreferences(
+                prefsName,
+                Context.MODE_PRIVATE
+        );
+        mPrefsName = prefsName;
+        mKeySingleEntry = singleKey;
+        mKeyPrefix = singleKey + KEY_SEPARATOR;
+    }
+
+    /**
+     * The List-type token for Gson, used for correctly deserializing JSON stored on disk.
+     *
+     * @return The List type to which the target JSON should be deserialized.
+     */
+    protected abstract Type getListTypeToken();
+
+    @Override
+    public boolean insert(T t) {
+        return insertAll(Collections.singletonList(t));
+    }
+
+    /**
+     * Inserts each of the supplied items into the cache, with a single write.
+     *
+     * @param items The items to insert.
+     * @return True, if inserted. False otherwise.
+     */
+    public boolean insertAll(@NonNull final Collection<T> items) {
+        final String methodName = ":insert";
+
+        final DecodedEntries decodedEntries = getDecodedEntries();
+
+        synchronized (decodedEntries) {
+            final SharedPreferences.Editor editor = mSharedPrefs.edit();
+            int inserted = 0;
+
+            for (final T item : items) {
+                final String json = mGson.toJson(item);
+                final String key = mKeyPrefix + json;
+
+                if (!decodedEntries.mEntries.containsKey(key)) {
+                    decodedEntries.mEntries.put(key, item);
+                    editor.putString(key, json);
+                    inserted++;
+                }
+            }
+
+            Logger.verbose(
+                    TAG + methodName,
+                    "Inserted ["
+                            + inserted
+                            + "] elements, new size: ["
+                            + decodedEntries.mEntries.size()
+                            + "]"
+            );
+
+            if (inserted > 0) {
+                decodedEntries.mIndexes.clear();
+                editor.apply();
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean remove(T t) {
+        return removeAll(Collections.singletonList(t));
+    }
+
+    /**
+     * Removes each of the supplied items from the cache, with a single write.
+     *
+     * @param items The items to remove.
+     * @return True if removed or none exist. False otherwise.
+     */
+    public boolean removeAll(@NonNull final Collection<T> items) {
+        final String methodName = ":remove";
+
+        final DecodedEntries decodedEntries = getDecodedEntries();
+
+        synchronized (decodedEntries) {
+            final SharedPreferences.Editor editor = mSharedPrefs.edit();
+            int removed = 0;
+
+            for (final T item : items) {
+                final String key = mKeyPrefix + mGson.toJson(item);
+
+                if (null != decodedEntries.mEntries.remove(key)) {
+                    editor.remove(key);
+                    removed++;
+                }
+            }
+
+            if (removed == 0) {
+                // Nothing to do, wasn't cached in the first place!
+                Logger.warn(
+                        TAG + methodName,
+                        "Nothing to delete -- cache entry is missing!"
+                );
+            } else {
+                Logger.verbose(
+                        TAG + methodName,
+                        "Removed ["
+                                + removed
+                                + "] elements, new size: ["
+                                + decodedEntries.mEntries.size()
+                                + "]"
+                );
+
+                decodedEntries.mIndexes.clear();
+                editor.apply();
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The returned elements are shared with the in-memory copy of the cache and must not be
+     * modified.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<T> getAll() {
+        final String methodName = ":getAll";
+
+        final DecodedEntries decodedEntries = getDecodedEntries();
+        final List<T> result;
+
+        synchronized (decodedEntries) {
+            result = new ArrayList<>((Collection<T>) decodedEntries.mEntries.values());
+        }
+
+        Logger.verbose(
+                TAG + methodName,
+                "Found ["
+                        + result.size()
+                        + "] cache entries."
+        );
+
+        return result;
+    }
+
+    /**
+     * Gets the named index over the elements of this cache, building it if the cache has changed
+     * since it was last built. Indexes are shared by all instances of the cache in this process,
+     * and must not be modified.
+     *
+     * @param name    The name of the index, unique within this cache.
+     * @param builder Builds the index if it is missing.
+     * @param <I>     The type of the index.
+     * @return The index.
+     */
+    @SuppressWarnings("unchecked")
+    protected <I> I getIndex(@NonNull final String name,
+                             @NonNull final IndexBuilder<T, I> builder) {
+        final String methodName = ":getIndex";
+
+        final DecodedEntries decodedEntries = getDecodedEntries();
+
+        synchronized (decodedEntries) {
+            I index = (I) decodedEntries.mIndexes.get(name);
+
+            if (null == index) {
+                Logger.verbose(
+                        TAG + methodName,
+                        "Building index [" + name + "]"
+                );
+
+                index = builder.build(
+                        new ArrayList<>((Collection<T>) decodedEntries.mEntries.values())
+                );
+                decodedEntries.mIndexes.put(name, index);
+            }
+
+            return index;
+        }
+    }
+
+    @Override
+    public boolean clear() {
+        final String methodName = ":clear";
+
+        final boolean cleared;
+
+        synchronized (sDecodedEntries) {
+            cleared = mSharedPrefs.edit().clear().commit();
+
+            // Every cache stored in this SharedPreferences file has been cleared
+            sDecodedEntries.remove(mPrefsName);
+        }
+
+        if (!cleared) {
+            Logger.warn(
+                    TAG + methodName,
+                    "Failed to clear cache."
+            );
+        } else {
+            Logger.verbose(
+                    TAG + methodName,
+                    "Cache successfully cleared."
+            );
+        }
+
+        return cleared;
+    }
+
+    /**
+     * Blocks until the writes applied by this cache have been written to disk.
+     *
+     * @return True if written. False otherwise.
+     */
+    public boolean flush() {
+        final String methodName = ":flush";
+
+        // Commits are written to disk after every previously applied write
+        final boolean flushed = mSharedPrefs.edit().commit();
+
+        Logger.verbose(
+                TAG + methodName,
+                "Cache flushed? ["
+                        + flushed
+                        + "]"
+        );
+
+        return flushed;
+    }
+
+    /**
+     * Gets the decoded elements of this cache, reading (and if needed, migrating) them from
+     * SharedPreferences if this process has not done so yet.
+     *
+     * @return The decoded elements.
+     */
+    private DecodedEntries getDecodedEntries() {
+        synchronized (sDecodedEntries) {
+            Map<String, DecodedEntries> caches = sDecodedEntries.get(mPrefsName);
+
+            if (null == caches) {
+                caches = new HashMap<>();
+                sDecodedEntries.put(mPrefsName, caches);
+            }
+
+            DecodedEntries decodedEntries = caches.get(mKeySingleEntry);
+
+            // A different SharedPreferences instance means the decoded copy is not of this file
+            if (null == decodedEntries || decodedEntries.mSharedPreferences != mSharedPrefs) {
+                decodedEntries = new DecodedEntries(mSharedPrefs);
+                loadEntries(decodedEntries.mEntries);
+                caches.put(mKeySingleEntry, decodedEntries);
+            }
+
+            return decodedEntries;
+        }
+    }
+
+    /**
+     * Reads the elements of this cache from SharedPreferences, migrating any elements persisted
+     * as a single list.
+     *
+     * @param entries The Map into which decoded elements are put, by key.
+     */
+    private void loadEntries(@NonNull final Map<String, Object> entries) {
+        final String methodName = ":loadEntries";
+
+        final Type elementType = ((ParameterizedType) getListTypeToken()).getActualTypeArguments()[0];
+
+        final Iterator<? extends Map.Entry<String, ?>> iterator = mSharedPrefs.getAll().entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            final Map.Entry<String, ?> entry = iterator.next();
+
+            if (entry.getKey().startsWith(mKeyPrefix) && entry.getValue() instanceof String) {
+                try {
+                    final Object element = mGson.fromJson((String) entry.getValue(), elementType);
+                    entries.put(entry.getKey(), element);
+                } catch (final JsonParseException e) {
+                    Logger.warn(
+                            TAG + methodName,
+                            "Skipping an element which could not be parsed."
+                    );
+                }
+            }
+        }
+
+        migrateSingleListEntry(entries);
+
+        Logger.verbose(
+                TAG + methodName,
+                "Loaded ["
+                        + entries.size()
+                        + "] cache entries."
+        );
+    }
+
+    /**
+     * Migrates the elements persisted as a single JSON list by
+     * {@link SharedPreferencesSimpleCacheImpl} to one entry per element, then removes the list.
+     *
+     * @param entries The Map into which migrated elements are put, by key.
+     */
+    private void migrateSingleListEntry(@NonNull final Map<String, Object> entries) {
+        final String methodName = ":migrateSingleListEntry";
+
+        final String jsonList = mSharedPrefs.getString(mKeySingleEntry, null);
+
+        if (null == jsonList) {
+            return;
+        }
+
+        final SharedPreferences.Editor editor = mSharedPrefs.edit();
+
+        try {
+            final List<T> legacyElements = mGson.fromJson(jsonList, getListTypeToken());
+
+            if (null != legacyElements) {
+                for (final T element : legacyElements) {
+                    final String json = mGson.toJson(element);
+                    final String key = mKeyPrefix + json;
+
+                    if (!entries.containsKey(key)) {
+                        entries.put(key, element);
+                        editor.putString(key, json);
+                    }
+                }
+
+                Logger.info(
+                        TAG + methodName,
+                        "Migrating ["
+                                + legacyElements.size()
+                                + "] elements from the single list entry."
+                );
+            }
+        } catch (final JsonParseException e) {
+            Logger.warn(
+                    TAG + methodName,
+                    "Dropping a single list entry which could not be parsed."
+            );
+        }
+
+        editor.remove(mKeySingleEntry);
+
+        // Written synchronously, so the list is never removed without its elements
+        final boolean migrated = editor.commit();
+
+        if (!migrated) {
+            Logger.warn(
+                    TAG + methodName,
+                    "Error writing the migrated cache entries."
+            );
+        }
+    }
+}
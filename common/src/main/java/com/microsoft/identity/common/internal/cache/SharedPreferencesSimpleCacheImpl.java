@@ -31,6 +31,8 @@ import com.google.gson.Gson;
 import com.microsoft.identity.common.internal.logging.Logger;
 
 import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -76,6 +78,16 @@ public abstract class SharedPreferencesSimpleCacheImpl<T> implements ISimpleCach
 
     @Override
     public boolean insert(T t) {
+        return insertAll(Collections.singletonList(t));
+    }
+
+    /**
+     * Inserts each of the supplied items into the cache, with a single write.
+     *
+     * @param items The items to insert.
+     * @return True, if inserted. False otherwise.
+     */
+    public boolean insertAll(@NonNull final Collection<T> items) {
         final String methodName = ":insert";
 
         final Set<T> allMetadata = new HashSet<>(getAll());
@@ -86,7 +98,7 @@ public abstract class SharedPreferencesSimpleCacheImpl<T> implements ISimpleCach
                         + "] elements."
         );
 
-        allMetadata.add(t);
+        allMetadata.addAll(items);
 
         Logger.verbose(
                 TAG + methodName,
@@ -121,6 +133,16 @@ public abstract class SharedPreferencesSimpleCacheImpl<T> implements ISimpleCach
 
     @Override
     public boolean remove(T t) {
+        return removeAll(Collections.singletonList(t));
+    }
+
+    /**
+     * Removes each of the supplied items from the cache, with a single write.
+     *
+     * @param items The items to remove.
+     * @return True if removed or none exist. False otherwise.
+     */
+    public boolean removeAll(@NonNull final Collection<T> items) {
         final String methodName = ":remove";
 
         final Set<T> allMetadata = new HashSet<>(getAll());
@@ -132,7 +154,7 @@ public abstract class SharedPreferencesSimpleCacheImpl<T> implements ISimpleCach
                         + "] elements."
         );
 
-        final boolean removed = allMetadata.remove(t);
+        final boolean removed = allMetadata.removeAll(items);
 
         Logger.verbose(
                 TAG + methodName,
@@ -0,0 +1,148 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common.internal.cache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The writes buffered by a batch, as begun by {@link ISharedPreferencesFileManager#beginBatch()}.
+ * A batch belongs to the thread which began it, so implementations hold one per thread in a
+ * {@link ThreadLocal}; instances are not themselves thread-safe.
+ */
+final class WriteBatch {
+
+    /**
+     * The nesting depth of the batch.
+     */
+    private int mDepth;
+
+    /**
+     * Plaintext writes buffered by the batch. A null value denotes a removal.
+     */
+    private final Map<String, String> mWrites = new HashMap<>();
+
+    /**
+     * True if the file was cleared during the batch.
+     */
+    private boolean mCleared;
+
+    /**
+     * The number of writes (including removals and clears) made during the batch.
+     */
+    private int mWriteCount;
+
+    private WriteBatch() {
+    }
+
+    /**
+     * Begins a batch on the calling thread, or nests one in the batch it has open.
+     *
+     * @param batches The batches of a file manager, by thread.
+     */
+    static void begin(@NonNull final ThreadLocal<WriteBatch> batches) {
+        WriteBatch batch = batches.get();
+
+        if (null == batch) {
+            batch = new WriteBatch();
+            batches.set(batch);
+        }
+
+        batch.mDepth++;
+    }
+
+    /**
+     * Ends the batch of the calling thread begun by the matching {@link #begin(ThreadLocal)}.
+     *
+     * @param batches The batches of a file manager, by thread.
+     * @return The batch, if it was the outermost and its writes should now be persisted, or null
+     * if it was nested.
+     * @throws IllegalStateException If the calling thread has no batch open.
+     */
+    @Nullable
+    static WriteBatch end(@NonNull final ThreadLocal<WriteBatch> batches) {
+        final WriteBatch batch = batches.get();
+
+        if (null == batch) {
+            throw new IllegalStateException("commitBatch() called without beginBatch()");
+        }
+
+        if (--batch.mDepth > 0) {
+            // Nested batch; the outermost commit persists
+            return null;
+        }
+
+        batches.remove();
+
+        return batch;
+    }
+
+    void put(@NonNull final String key, @Nullable final String value) {
+        mWrites.put(key, value);
+        mWriteCount++;
+    }
+
+    void clear() {
+        mWrites.clear();
+        mCleared = true;
+        mWriteCount++;
+    }
+
+    /**
+     * Tests if the batch determines the value of the supplied key: it wrote the key, or cleared
+     * the file.
+     *
+     * @param key The key to consult.
+     * @return True if {@link #get(String)} is the value of the key.
+     */
+    boolean determines(@NonNull final String key) {
+        return mCleared || mWrites.containsKey(key);
+    }
+
+    /**
+     * Gets the value the batch wrote for the supplied key.
+     *
+     * @param key The key to consult.
+     * @return The value, or null if it was removed (or not written).
+     */
+    @Nullable
+    String get(@NonNull final String key) {
+        return mWrites.get(key);
+    }
+
+    @NonNull
+    Map<String, String> getWrites() {
+        return mWrites;
+    }
+
+    boolean isCleared() {
+        return mCleared;
+    }
+
+    int getWriteCount() {
+        return mWriteCount;
+    }
+}
@@ -0,0 +1,484 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common.internal.cache;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.microsoft.identity.common.internal.logging.Logger;
+import com.microsoft.identity.common.internal.util.Predicate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link ISharedPreferencesFileManager} which defers writes, coalescing those which arrive
+ * within a short window into a single batch of the wrapped {@link ISharedPreferencesFileManager}
+ * (for a {@link SharedPreferencesFileManager}, a single editor commit, so a single rewrite of the
+ * file).
+ * <p>
+ * Deferred writes are held in memory and reads through this instance observe them, so callers
+ * always read their own writes. They are written to the wrapped instance once the window has
+ * elapsed, on {@link #flush()}, or when the process moves to the background (as signalled by
+ * {@link ComponentCallbacks2#onTrimMemory(int)}). A batch begun with {@link #beginBatch()} is
+ * never split: its writes are held, and seen only by the thread which began it, until the batch is
+ * committed, when they join the other deferred writes.
+ * <p>
+ * Writes made to the same file through a different {@link ISharedPreferencesFileManager} are not
+ * observed by this instance. Callers should route all access to a given file through one instance.
+ */
+public class WriteBehindSharedPreferencesFileManager implements ISharedPreferencesFileManager {
+
+    private static final String TAG = WriteBehindSharedPreferencesFileManager.class.getSimpleName();
+
+    /**
+     * The default window within which writes are coalesced: 50 ms.
+     */
+    public static final long DEFAULT_WRITE_WINDOW_MILLIS = 50;
+
+    private static final ScheduledExecutorService sFlushExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * The instances to flush when the process moves to the background.
+     */
+    private static final Set<WriteBehindSharedPreferencesFileManager> sInstances =
+            Collections.newSetFromMap(new WeakHashMap<WriteBehindSharedPreferencesFileManager, Boolean>());
+
+    private static boolean sRegisteredForTrimMemory;
+
+    private final ISharedPreferencesFileManager mDelegate;
+    private final long mWriteWindowMillis;
+
+    /**
+     * Guards the pending state below. Held while pending writes are written to the wrapped
+     * instance, so reads never fall between the two.
+     */
+    private final Object mLock = new Object();
+
+    /**
+     * Writes not yet passed to the wrapped instance. A null value denotes a removal.
+     */
+    private final Map<String, String> mPendingWrites = new HashMap<>();
+
+    /**
+     * True if {@link #clear()} was called since the last flush.
+     */
+    private boolean mPendingClear;
+
+    /**
+     * The number of write calls since the last flush.
+     */
+    private int mPendingWriteCount;
+
+    /**
+     * The batch open on each thread, if any.
+     */
+    private final ThreadLocal<WriteBatch> mBatches = new ThreadLocal<>();
+
+    private boolean mFlushScheduled;
+
+    private final AtomicLong mWriteCount = new AtomicLong();
+    private final AtomicLong mFlushCount = new AtomicLong();
+    private final AtomicLong mMergedWriteCount = new AtomicLong();
+
+    /**
+     * Constructs a new WriteBehindSharedPreferencesFileManager which coalesces writes within
+     * {@link #DEFAULT_WRITE_WINDOW_MILLIS}.
+     *
+     * @param context  Interface to global information about an application environment.
+     * @param delegate The {@link ISharedPreferencesFileManager} to which reads and writes are
+     *                 passed.
+     */
+    public WriteBehindSharedPreferencesFileManager(@NonNull final Context context,
+                                                   @NonNull final ISharedPreferencesFileManager delegate) {
+        this(context, delegate, DEFAULT_WRITE_WINDOW_MILLIS);
+    }
+
+    /**
+     * Constructs a new WriteBehindSharedPreferencesFileManager.
+     *
+     * @param context           Interface to global information about an application environment.
+     * @param delegate          The {@link ISharedPreferencesFileManager} to which reads and writes
+     *                          are passed.
+     * @param writeWindowMillis The window within which writes are coalesced.
+     */
+    public WriteBehindSharedPreferencesFileManager(@NonNull final Context context,
+                                                   @NonNull final ISharedPreferencesFileManager delegate,
+                                                   final long writeWindowMillis) {
+        if (writeWindowMillis < 0) {
+            throw new IllegalArgumentException("writeWindowMillis must not be negative.");
+        }
+
+        Logger.verbose(TAG, "Init: " + TAG);
+        mDelegate = delegate;
+        mWriteWindowMillis = writeWindowMillis;
+        register(context, this);
+    }
+
+    @Override
+    public void putString(final String key, final String value) {
+        final WriteBatch batch = mBatches.get();
+
+        if (null != batch) {
+            mWriteCount.incrementAndGet();
+            batch.put(key, value);
+            return;
+        }
+
+        synchronized (mLock) {
+            mPendingWrites.put(key, value);
+            onWrite();
+        }
+    }
+
+    @Override
+    @Nullable
+    public String getString(final String key) {
+        final WriteBatch batch = mBatches.get();
+
+        if (null != batch && batch.determines(key)) {
+            return batch.get(key);
+        }
+
+        synchronized (mLock) {
+            if (mPendingWrites.containsKey(key)) {
+                return mPendingWrites.get(key);
+            }
+
+            if (mPendingClear) {
+                return null;
+            }
+        }
+
+        return mDelegate.getString(key);
+    }
+
+    @Override
+    public void putLong(final String key, final long value) {
+        putString(key, String.valueOf(value));
+    }
+
+    @Override
+    public long getLong(final String key) {
+        final String result = getString(key);
+
+        if (!TextUtils.isEmpty(result)) {
+            return Long.parseLong(result);
+        }
+
+        return 0;
+    }
+
+    @Override
+    public String getSharedPreferencesFileName() {
+        return mDelegate.getSharedPreferencesFileName();
+    }
+
+    @Override
+    public Map<String, String> getAll() {
+        return getAllInternal(null);
+    }
+
+    @Override
+    public Map<String, String> getAll(@NonNull final Predicate<String> keyFilter) {
+        return getAllInternal(keyFilter);
+    }
+
+    @Override
+    public boolean contains(final String key) {
+        return !TextUtils.isEmpty(getString(key));
+    }
+
+    @Override
+    public void clear() {
+        final WriteBatch batch = mBatches.get();
+
+        if (null != batch) {
+            mWriteCount.incrementAndGet();
+            batch.clear();
+            return;
+        }
+
+        synchronized (mLock) {
+            mPendingWrites.clear();
+            mPendingClear = true;
+            onWrite();
+        }
+    }
+
+    @Override
+    public void remove(final String key) {
+        final WriteBatch batch = mBatches.get();
+
+        if (null != batch) {
+            mWriteCount.incrementAndGet();
+            batch.put(key, null);
+            return;
+        }
+
+        synchronized (mLock) {
+            mPendingWrites.put(key, null);
+            onWrite();
+        }
+    }
+
+    @Override
+    public void beginBatch() {
+        WriteBatch.begin(mBatches);
+    }
+
+    @Override
+    public void commitBatch() {
+        final WriteBatch batch = WriteBatch.end(mBatches);
+
+        if (null == batch || 0 == batch.getWriteCount()) {
+            return;
+        }
+
+        synchronized (mLock) {
+            if (batch.isCleared()) {
+                mPendingWrites.clear();
+                mPendingClear = true;
+            }
+
+            mPendingWrites.putAll(batch.getWrites());
+            mPendingWriteCount += batch.getWriteCount();
+
+            // Writes held by the batch join whatever else arrives within the window
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Writes all deferred writes to the wrapped {@link ISharedPreferencesFileManager}, as a
+     * single batch. Writes of a batch which has not yet been committed are held back.
+     */
+    public void flush() {
+        final String methodName = ":flush";
+
+        synchronized (mLock) {
+            mFlushScheduled = false;
+
+            if (mPendingWriteCount == 0) {
+                return;
+            }
+
+            mDelegate.beginBatch();
+
+            try {
+                if (mPendingClear) {
+                    mDelegate.clear();
+                }
+
+                for (final Map.Entry<String, String> pendingWrite : mPendingWrites.entrySet()) {
+                    if (null == pendingWrite.getValue()) {
+                        mDelegate.remove(pendingWrite.getKey());
+                    } else {
+                        mDelegate.putString(pendingWrite.getKey(), pendingWrite.getValue());
+                    }
+                }
+            } finally {
+                mDelegate.commitBatch();
+            }
+
+            Logger.verbose(
+                    TAG + methodName,
+                    "Flushed ["
+                            + mPendingWriteCount
+                            + "] writes as one."
+            );
+
+            mFlushCount.incrementAndGet();
+            mMergedWriteCount.addAndGet(mPendingWriteCount - 1);
+            mPendingWrites.clear();
+            mPendingClear = false;
+            mPendingWriteCount = 0;
+        }
+    }
+
+    /**
+     * Gets the number of writes (including removals and clears) made through this instance.
+     *
+     * @return The write count.
+     */
+    public long getWriteCount() {
+        return mWriteCount.get();
+    }
+
+    /**
+     * Gets the number of batches written to the wrapped {@link ISharedPreferencesFileManager}.
+     *
+     * @return The flush count.
+     */
+    public long getFlushCount() {
+        return mFlushCount.get();
+    }
+
+    /**
+     * Gets the number of writes which were merged into the flush of an earlier write, rather than
+     * being written on their own.
+     *
+     * @return The merged write count.
+     */
+    public long getMergedWriteCount() {
+        return mMergedWriteCount.get();
+    }
+
+    // Must be called while holding the mLock.
+    private void onWrite() {
+        mWriteCount.incrementAndGet();
+        mPendingWriteCount++;
+        scheduleFlush();
+    }
+
+    // Must be called while holding the mLock.
+    private void scheduleFlush() {
+        if (mFlushScheduled) {
+            return;
+        }
+
+        mFlushScheduled = true;
+
+        sFlushExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (final RuntimeException e) {
+                    Logger.error(
+                            TAG + ":scheduleFlush",
+                            "Failed to flush deferred writes.",
+                            e
+                    );
+                }
+            }
+        }, mWriteWindowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private Map<String, String> getAllInternal(@Nullable final Predicate<String> keyFilter) {
+        final WriteBatch batch = mBatches.get();
+
+        if (null != batch && batch.isCleared()) {
+            return applyPendingWrites(batch.getWrites(), new HashMap<String, String>(), keyFilter);
+        }
+
+        final Map<String, String> entries;
+
+        synchronized (mLock) {
+            if (mPendingClear) {
+                entries = new HashMap<>();
+            } else if (null == keyFilter) {
+                entries = new HashMap<>(mDelegate.getAll());
+            } else {
+                entries = new HashMap<>(mDelegate.getAll(keyFilter));
+            }
+
+            applyPendingWrites(mPendingWrites, entries, keyFilter);
+        }
+
+        if (null != batch) {
+            applyPendingWrites(batch.getWrites(), entries, keyFilter);
+        }
+
+        return entries;
+    }
+
+    private static Map<String, String> applyPendingWrites(@NonNull final Map<String, String> pendingWrites,
+                                                          @NonNull final Map<String, String> entries,
+                                                          @Nullable final Predicate<String> keyFilter) {
+        for (final Map.Entry<String, String> pendingWrite : pendingWrites.entrySet()) {
+            if (null == pendingWrite.getValue()) {
+                entries.remove(pendingWrite.getKey());
+            } else if (null == keyFilter || keyFilter.test(pendingWrite.getKey())) {
+                entries.put(pendingWrite.getKey(), pendingWrite.getValue());
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * Adds the supplied instance to those flushed when the process moves to the background,
+     * registering for {@link ComponentCallbacks2#onTrimMemory(int)} on first use.
+     *
+     * @param context  Interface to global information about an application environment.
+     * @param instance The instance to flush.
+     */
+    private static void register(@NonNull final Context context,
+                                 @NonNull final WriteBehindSharedPreferencesFileManager instance) {
+        synchronized (sInstances) {
+            sInstances.add(instance);
+
+            if (sRegisteredForTrimMemory || null == context.getApplicationContext()) {
+                return;
+            }
+
+            sRegisteredForTrimMemory = true;
+        }
+
+        context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(final int level) {
+                if (level >= TRIM_MEMORY_UI_HIDDEN) {
+                    flushAll();
+                }
+            }
+
+            @Override
+            public void onLowMemory() {
+                flushAll();
+            }
+
+            @Override
+            public void onConfigurationChanged(final Configuration newConfig) {
+                // Not relevant to deferred writes
+            }
+        });
+    }
+
+    private static void flushAll() {
+        final List<WriteBehindSharedPreferencesFileManager> instances;
+
+        synchronized (sInstances) {
+            instances = new ArrayList<>(sInstances);
+        }
+
+        for (final WriteBehindSharedPreferencesFileManager instance : instances) {
+            instance.flush();
+        }
+    }
+}
@@ -28,18 +28,22 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.google.gson.reflect.TypeToken;
-import com.microsoft.identity.common.internal.cache.SharedPreferencesSimpleCacheImpl;
+import com.microsoft.identity.common.internal.cache.SharedPreferencesKeyedSimpleCacheImpl;
 import com.microsoft.identity.common.internal.logging.Logger;
 
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A basic registry (key/value) style data store for tracking info about apps which bind to the
  * broker.
  */
 public class DefaultBrokerApplicationRegistry
-        extends SharedPreferencesSimpleCacheImpl<BrokerApplicationRegistryData>
+        extends SharedPreferencesKeyedSimpleCacheImpl<BrokerApplicationRegistryData>
         implements IBrokerApplicationRegistry {
 
     private static final String TAG = DefaultBrokerApplicationRegistry.class.getSimpleName();
@@ -47,6 +51,8 @@ public class DefaultBrokerApplicationRegistry
     private static final String DEFAULT_APP_REGISTRY_CACHE_NAME = "com.microsoft.identity.app-registry";
     private static final String KEY_APP_REGISTRY = "app-registry";
 
+    private static final String INDEX_CLIENT_ID_AND_UID = "client-id-and-uid";
+
     public DefaultBrokerApplicationRegistry(@NonNull final Context context) {
         super(context, DEFAULT_APP_REGISTRY_CACHE_NAME, KEY_APP_REGISTRY);
     }
@@ -63,20 +69,52 @@ public class DefaultBrokerApplicationRegistry
                                                      final int processUid) {
         final String methodName = ":getMetadata";
 
-        final List<BrokerApplicationRegistryData> allMetadata = getAll();
+        final Map<List<Object>, List<BrokerApplicationRegistryData>> registryIndex = getIndex(
+                INDEX_CLIENT_ID_AND_UID,
+                new IndexBuilder<BrokerApplicationRegistryData, Map<List<Object>, List<BrokerApplicationRegistryData>>>() {
+                    @Override
+                    public Map<List<Object>, List<BrokerApplicationRegistryData>> build(
+                            @NonNull final List<BrokerApplicationRegistryData> allMetadata) {
+                        final Map<List<Object>, List<BrokerApplicationRegistryData>> index = new HashMap<>();
+
+                        for (final BrokerApplicationRegistryData metadata : allMetadata) {
+                            final List<Object> key = getRegistryKey(
+                                    metadata.getClientId(),
+                                    metadata.getUid()
+                            );
+
+                            List<BrokerApplicationRegistryData> entries = index.get(key);
+
+                            if (null == entries) {
+                                entries = new ArrayList<>();
+                                index.put(key, entries);
+                            }
+
+                            entries.add(metadata);
+                        }
+
+                        return index;
+                    }
+                }
+        );
+
+        final List<BrokerApplicationRegistryData> candidates = registryIndex.get(
+                getRegistryKey(clientId, processUid)
+        );
         BrokerApplicationRegistryData result = null;
 
-        for (final BrokerApplicationRegistryData metadata : allMetadata) {
-            if (clientId.equals(metadata.getClientId())
-                    && processUid == metadata.getUid()
-                    && (null == environment || environment.equals(metadata.getEnvironment()))) {
-                Logger.verbose(
-                        TAG + metadata,
-                        "Metadata located."
-                );
-
-                result = metadata;
-                break;
+        if (null != candidates) {
+            // Entries differ only by environment; when none is supplied, any will do
+            for (final BrokerApplicationRegistryData metadata : candidates) {
+                if (null == environment || environment.equals(metadata.getEnvironment())) {
+                    Logger.verbose(
+                            TAG + metadata,
+                            "Metadata located."
+                    );
+
+                    result = metadata;
+                    break;
+                }
             }
         }
 
@@ -93,4 +131,16 @@ public class DefaultBrokerApplicationRegistry
 
         return result;
     }
+
+    /**
+     * Gets the key of the registry index for the supplied criteria.
+     *
+     * @param clientId   The client id.
+     * @param processUid The uid of the app.
+     * @return The key, equal to the key of any other entry with the same criteria.
+     */
+    private static List<Object> getRegistryKey(@Nullable final String clientId,
+                                               final int processUid) {
+        return Arrays.<Object>asList(clientId, processUid);
+    }
 }
@@ -25,6 +25,7 @@ package com.microsoft.identity.common.internal.dto;
 import androidx.annotation.Nullable;
 
 import com.google.gson.annotations.SerializedName;
+import com.microsoft.identity.common.adal.internal.util.StringExtensions;
 import com.microsoft.identity.common.internal.platform.IDevicePopManager;
 
 import java.util.Calendar;
@@ -123,6 +124,11 @@ public class AccessTokenRecord extends Credential {
     @SerializedName(TARGET)
     private String mTarget;
 
+    /**
+     * The {@link ScopeSet} of {@link #mTarget}, built on first use.
+     */
+    private transient volatile ScopeSet mTargetScopeSet;
+
     /**
      * Token expiry time. This value should be calculated based on the current UTC time measured
      * locally and the value expires_in returned from the service. Measured in milliseconds from
@@ -190,6 +196,17 @@ public class AccessTokenRecord extends Credential {
         mTarget = target;
     }
 
+    /**
+     * Gets the normalized set of scopes named by the target.
+     *
+     * @return The {@link ScopeSet} of the target, never null.
+     */
+    public ScopeSet getTargetScopeSet() {
+        final ScopeSet scopeSet = ScopeSet.ofCached(mTargetScopeSet, mTarget);
+        mTargetScopeSet = scopeSet;
+        return scopeSet;
+    }
+
     /**
      * Gets the access_token_type.
      *
@@ -278,4 +295,13 @@ public class AccessTokenRecord extends Credential {
     public boolean isExpired() {
         return isExpired(getExpiresOn());
     }
+
+    /**
+     * Tests whether the extended_expires_on of this token has passed.
+     *
+     * @return True if the extended_expires_on is set and has passed. False otherwise.
+     */
+    public boolean isExtendedExpired() {
+        return !StringExtensions.isNullOrBlank(getExtendedExpiresOn()) && isExpired(getExtendedExpiresOn());
+    }
 }
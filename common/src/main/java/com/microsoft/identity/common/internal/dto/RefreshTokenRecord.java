@@ -55,6 +55,11 @@ public class RefreshTokenRecord extends Credential {
     @SerializedName(TARGET)
     private String mTarget;
 
+    /**
+     * The {@link ScopeSet} of {@link #mTarget}, built on first use.
+     */
+    private transient volatile ScopeSet mTargetScopeSet;
+
     /**
      * Gets the target.
      *
@@ -73,6 +78,17 @@ public class RefreshTokenRecord extends Credential {
         mTarget = target;
     }
 
+    /**
+     * Gets the normalized set of scopes named by the target.
+     *
+     * @return The {@link ScopeSet} of the target, never null.
+     */
+    public ScopeSet getTargetScopeSet() {
+        final ScopeSet scopeSet = ScopeSet.ofCached(mTargetScopeSet, mTarget);
+        mTargetScopeSet = scopeSet;
+        return scopeSet;
+    }
+
     /**
      * Gets the family_id.
      *
@@ -0,0 +1,335 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common.internal.dto;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The normalized set of scopes named by a credential target.
+ * <p>
+ * A target is split on whitespace and each scope is lowercased ({@link Locale#ROOT}); empty
+ * tokens are dropped. Every distinct scope is assigned a process-wide integer id the first time
+ * it is seen, and a ScopeSet holds the ids of its scopes as a {@link BitSet}, so containment is a
+ * handful of word lookups rather than string hashing.
+ * <p>
+ * ScopeSets are immutable and interned by raw target: credentials which share a target share one
+ * instance. Use {@link #compile(String, Collection)} to prepare the scopes sought by a query once
+ * and test it against many ScopeSets. Only the targets of cached credentials assign ids; sought
+ * scopes which have none yet are kept by name and looked up again when tested.
+ */
+public final class ScopeSet {
+
+    /**
+     * The maximum number of raw targets for which a ScopeSet is retained.
+     */
+    private static final int MAX_CACHED_TARGETS = 1024;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * The ScopeSet of a null target.
+     */
+    public static final ScopeSet EMPTY = new ScopeSet("", new BitSet());
+
+    /**
+     * Normalized scope to id. Only {@link #of(String)}, which is given the targets of cached
+     * credentials, adds to this; the scopes sought by callers are looked up without being added.
+     */
+    private static final ConcurrentMap<String, Integer> sScopeIds = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger sNextScopeId = new AtomicInteger();
+
+    private static final Map<String, ScopeSet> sScopeSets =
+            new LinkedHashMap<String, ScopeSet>(INITIAL_CAPACITY, LOAD_FACTOR, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, ScopeSet> eldest) {
+                    return size() > MAX_CACHED_TARGETS;
+                }
+            };
+
+    private final String mTarget;
+
+    private final BitSet mScopeIds;
+
+    /**
+     * Sought scopes which had no id when this ScopeSet was compiled, or null if there were none.
+     */
+    @Nullable
+    private final List<String> mUnresolvedScopes;
+
+    private ScopeSet(@NonNull final String target, @NonNull final BitSet scopeIds) {
+        this(target, scopeIds, null);
+    }
+
+    private ScopeSet(@NonNull final String target,
+                     @NonNull final BitSet scopeIds,
+                     @Nullable final List<String> unresolvedScopes) {
+        mTarget = target;
+        mScopeIds = scopeIds;
+        mUnresolvedScopes = unresolvedScopes;
+    }
+
+    /**
+     * Gets the ScopeSet of the supplied target.
+     *
+     * @param target The target (a whitespace-delimited list of scopes). May be null.
+     * @return The ScopeSet, never null.
+     */
+    @NonNull
+    public static ScopeSet of(@Nullable final String target) {
+        if (null == target) {
+            return EMPTY;
+        }
+
+        synchronized (sScopeSets) {
+            final ScopeSet cached = sScopeSets.get(target);
+
+            if (null != cached) {
+                return cached;
+            }
+        }
+
+        final BitSet scopeIds = new BitSet();
+
+        for (final String scope : split(target)) {
+            scopeIds.set(idOf(scope));
+        }
+
+        final ScopeSet scopeSet = new ScopeSet(target, scopeIds);
+
+        synchronized (sScopeSets) {
+            sScopeSets.put(target, scopeSet);
+        }
+
+        return scopeSet;
+    }
+
+    /**
+     * Gets the ScopeSet of the supplied target, reusing the supplied ScopeSet if it was built from
+     * the same target. Records use this to memoize the ScopeSet of their target: as their fields
+     * are also populated reflectively on deserialization, the memoized ScopeSet may be stale.
+     *
+     * @param cached The ScopeSet previously returned for this record, or null.
+     * @param target The current target. May be null.
+     * @return The ScopeSet of target, never null.
+     */
+    @NonNull
+    public static ScopeSet ofCached(@Nullable final ScopeSet cached, @Nullable final String target) {
+        if (null != cached
+                && (null == target ? EMPTY == cached : target.equals(cached.getTarget()))) {
+            return cached;
+        }
+
+        return of(target);
+    }
+
+    /**
+     * Prepares the scopes sought by a query so that it may be tested against many ScopeSets.
+     * Sought scopes are not assigned ids: one which no cached target has named yet is kept by
+     * name, and is contained only by ScopeSets built after some cached target named it.
+     *
+     * @param target        The sought target (a whitespace-delimited list of scopes).
+     * @param omittedScopes Scopes which should not be considered, in lowercase. May be empty.
+     * @return The ScopeSet of the sought scopes.
+     */
+    @NonNull
+    public static ScopeSet compile(@NonNull final String target,
+                                   @NonNull final Collection<String> omittedScopes) {
+        final BitSet scopeIds = new BitSet();
+        List<String> unresolvedScopes = null;
+
+        for (final String scope : split(target)) {
+            if (omittedScopes.contains(scope)) {
+                continue;
+            }
+
+            final Integer id = sScopeIds.get(scope);
+
+            if (null != id) {
+                scopeIds.set(id);
+            } else {
+                if (null == unresolvedScopes) {
+                    unresolvedScopes = new ArrayList<>();
+                }
+
+                unresolvedScopes.add(scope);
+            }
+        }
+
+        return new ScopeSet(target, scopeIds, unresolvedScopes);
+    }
+
+    /**
+     * Gets the raw target from which this ScopeSet was built.
+     *
+     * @return The target.
+     */
+    @NonNull
+    public String getTarget() {
+        return mTarget;
+    }
+
+    /**
+     * Tests if this ScopeSet holds no scopes.
+     *
+     * @return True if empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        return mScopeIds.isEmpty() && null == mUnresolvedScopes;
+    }
+
+    /**
+     * Tests if this ScopeSet holds every scope of the supplied ScopeSet. It may hold more. Scopes
+     * which a compiled ScopeSet holds only by name count as held by no ScopeSet.
+     *
+     * @param other The ScopeSet to test.
+     * @return True if every scope of other is held by this ScopeSet, false otherwise.
+     */
+    public boolean containsAll(@NonNull final ScopeSet other) {
+        if (this == other) {
+            return true;
+        }
+
+        for (int id = other.mScopeIds.nextSetBit(0); id >= 0; id = other.mScopeIds.nextSetBit(id + 1)) {
+            if (!mScopeIds.get(id)) {
+                return false;
+            }
+        }
+
+        if (null != other.mUnresolvedScopes) {
+            for (final String scope : other.mUnresolvedScopes) {
+                final Integer id = sScopeIds.get(scope);
+
+                if (null == id || !mScopeIds.get(id)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (!(o instanceof ScopeSet)) {
+            return false;
+        }
+
+        final ScopeSet other = (ScopeSet) o;
+
+        return mScopeIds.equals(other.mScopeIds)
+                && (null == mUnresolvedScopes
+                ? null == other.mUnresolvedScopes
+                : mUnresolvedScopes.equals(other.mUnresolvedScopes));
+    }
+
+    @Override
+    public int hashCode() {
+        return mScopeIds.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "ScopeSet{" + mTarget + "}";
+    }
+
+    /**
+     * Splits a target into its normalized scopes, as {@code target.split("\\s+")} followed by
+     * lowercasing, but without empty tokens.
+     */
+    @NonNull
+    private static String[] split(@NonNull final String target) {
+        final String[] tokens = new String[countTokens(target)];
+        final int length = target.length();
+        int tokenIndex = 0;
+        int start = -1;
+
+        for (int i = 0; i <= length; i++) {
+            final boolean isSeparator = i == length || isWhitespace(target.charAt(i));
+
+            if (isSeparator && start >= 0) {
+                tokens[tokenIndex++] = target.substring(start, i).toLowerCase(Locale.ROOT);
+                start = -1;
+            } else if (!isSeparator && start < 0) {
+                start = i;
+            }
+        }
+
+        return tokens;
+    }
+
+    private static int countTokens(@NonNull final String target) {
+        int count = 0;
+        boolean inToken = false;
+
+        for (int i = 0; i < target.length(); i++) {
+            final boolean isSeparator = isWhitespace(target.charAt(i));
+
+            if (!isSeparator && !inToken) {
+                count++;
+            }
+
+            inToken = !isSeparator;
+        }
+
+        return count;
+    }
+
+    /**
+     * The characters matched by the regular expression {@code \s}.
+     */
+    private static boolean isWhitespace(final char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static int idOf(@NonNull final String scope) {
+        final Integer id = sScopeIds.get(scope);
+
+        if (null != id) {
+            return id;
+        }
+
+        final Integer newId = sNextScopeId.getAndIncrement();
+        final Integer existingId = sScopeIds.putIfAbsent(scope, newId);
+
+        return null == existingId ? newId : existingId;
+    }
+}
@@ -0,0 +1,170 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common;
+
+import android.util.Base64;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.microsoft.identity.common.internal.cache.CacheKeyValueDelegate;
+import com.microsoft.identity.common.internal.cache.ICacheKeyValueDelegate;
+import com.microsoft.identity.common.internal.dto.AccessTokenRecord;
+import com.microsoft.identity.common.internal.dto.AccountRecord;
+import com.microsoft.identity.common.internal.dto.IdTokenRecord;
+import com.microsoft.identity.common.internal.dto.RefreshTokenRecord;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.microsoft.identity.common.CacheRecordTestUtil.newAccount;
+import static com.microsoft.identity.common.CacheRecordTestUtil.newIdToken;
+import static com.microsoft.identity.common.CacheRecordTestUtil.newIssuedAccessToken;
+import static com.microsoft.identity.common.CacheRecordTestUtil.newRefreshToken;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class BinaryCacheValueCodecTest {
+
+    private static final String HOME_ACCOUNT_ID = "29f3807a-4fb0-42f2-a44a-236aa0cb3f97.0287f963-2d72-4363-9e3a-5705c5b0f031";
+    private static final String CLIENT_ID = "0287f963-2d72-4363-9e3a-5705c5b0f031";
+    private static final String TARGET = "user.read user.write https://graph.windows.net";
+    private static final String REALM = "3c62ac97-29eb-4aed-a3c8-add0298508d";
+
+    private ICacheKeyValueDelegate mJsonDelegate;
+    private ICacheKeyValueDelegate mBinaryDelegate;
+
+    @Before
+    public void setUp() {
+        mJsonDelegate = new CacheKeyValueDelegate();
+        mBinaryDelegate = new CacheKeyValueDelegate(true);
+    }
+
+    @Test
+    public void accountRoundTrips() {
+        final AccountRecord account = newAccount(HOME_ACCOUNT_ID, REALM);
+        account.setName("Jane Doe");
+        final String cacheValue = mBinaryDelegate.generateCacheValue(account);
+
+        final AccountRecord restored = mBinaryDelegate.fromCacheValue(cacheValue, AccountRecord.class);
+        assertEquals(account, restored);
+        assertTrue(restored.getAdditionalFields().isEmpty());
+    }
+
+    @Test
+    public void credentialsRoundTrip() {
+        final AccessTokenRecord accessToken = newIssuedAccessToken(HOME_ACCOUNT_ID, CLIENT_ID, REALM, TARGET);
+        final RefreshTokenRecord refreshToken = newRefreshToken(HOME_ACCOUNT_ID, CLIENT_ID, TARGET);
+        refreshToken.setFamilyId("1");
+        final IdTokenRecord idToken = newIdToken(HOME_ACCOUNT_ID, CLIENT_ID, REALM);
+
+        assertEquals(accessToken, mBinaryDelegate.fromCacheValue(mBinaryDelegate.generateCacheValue(accessToken), AccessTokenRecord.class));
+        assertEquals(refreshToken, mBinaryDelegate.fromCacheValue(mBinaryDelegate.generateCacheValue(refreshToken), RefreshTokenRecord.class));
+        assertEquals(idToken, mBinaryDelegate.fromCacheValue(mBinaryDelegate.generateCacheValue(idToken), IdTokenRecord.class));
+    }
+
+    @Test
+    public void additionalFieldsRoundTripLosslessly() {
+        final AccessTokenRecord accessToken = newIssuedAccessToken(HOME_ACCOUNT_ID, CLIENT_ID, REALM, TARGET);
+        final Map<String, JsonElement> additionalFields = new HashMap<>();
+        final JsonArray numbers = new JsonArray();
+        numbers.add(1);
+        numbers.add(2);
+        final JsonObject object = new JsonObject();
+        object.add("object_key", new JsonPrimitive("object_value"));
+        additionalFields.put("foo", new JsonPrimitive("bar"));
+        additionalFields.put("number", new JsonPrimitive(42));
+        additionalFields.put("flag", new JsonPrimitive(true));
+        additionalFields.put("numbers", numbers);
+        additionalFields.put("object", object);
+        additionalFields.put("nothing", JsonNull.INSTANCE);
+        accessToken.setAdditionalFields(additionalFields);
+
+        final AccessTokenRecord restored = mBinaryDelegate.fromCacheValue(
+                mBinaryDelegate.generateCacheValue(accessToken),
+                AccessTokenRecord.class
+        );
+
+        assertEquals(accessToken, restored);
+        assertEquals(additionalFields, restored.getAdditionalFields());
+    }
+
+    @Test
+    public void readsEitherFormat() {
+        final AccessTokenRecord accessToken = newIssuedAccessToken(HOME_ACCOUNT_ID, CLIENT_ID, REALM, TARGET);
+        final String json = mJsonDelegate.generateCacheValue(accessToken);
+        final String binary = mBinaryDelegate.generateCacheValue(accessToken);
+
+        assertTrue(json.startsWith("{"));
+        assertFalse(binary.startsWith("{"));
+        assertEquals(accessToken, mBinaryDelegate.fromCacheValue(json, AccessTokenRecord.class));
+        assertEquals(accessToken, mJsonDelegate.fromCacheValue(binary, AccessTokenRecord.class));
+    }
+
+    @Test
+    public void binaryIsSmallerThanJson() {
+        final AccessTokenRecord accessToken = newIssuedAccessToken(HOME_ACCOUNT_ID, CLIENT_ID, REALM, TARGET);
+
+        assertTrue(
+                mBinaryDelegate.generateCacheValue(accessToken).length()
+                        < mJsonDelegate.generateCacheValue(accessToken).length()
+        );
+    }
+
+    @Test
+    public void malformedValueReturnsNull() {
+        final String binary = mBinaryDelegate.generateCacheValue(
+                newIssuedAccessToken(HOME_ACCOUNT_ID, CLIENT_ID, REALM, TARGET)
+        );
+
+        assertNull(mBinaryDelegate.fromCacheValue(binary.substring(0, binary.length() / 2), AccessTokenRecord.class));
+        assertNull(mBinaryDelegate.fromCacheValue("#b!!!", AccessTokenRecord.class));
+    }
+
+    @Test
+    public void negativeLengthReturnsNull() {
+        // Version 1, then a field count of -1
+        final byte[] negativeFieldCount = {1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F};
+        // Version 1, 1 field, a named string, then a name length of -1
+        final byte[] negativeLength = {1, 1, 2, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F};
+
+        assertNull(mBinaryDelegate.fromCacheValue(
+                "#b" + Base64.encodeToString(negativeFieldCount, Base64.NO_WRAP),
+                AccessTokenRecord.class
+        ));
+        assertNull(mBinaryDelegate.fromCacheValue(
+                "#b" + Base64.encodeToString(negativeLength, Base64.NO_WRAP),
+                AccessTokenRecord.class
+        ));
+    }
+}
@@ -0,0 +1,157 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common;
+
+import com.microsoft.identity.common.internal.cache.CacheKey;
+import com.microsoft.identity.common.internal.cache.CacheKeyValueDelegate;
+import com.microsoft.identity.common.internal.dto.AccessTokenRecord;
+import com.microsoft.identity.common.internal.dto.AccountRecord;
+import com.microsoft.identity.common.internal.dto.CredentialType;
+import com.microsoft.identity.common.internal.dto.IdTokenRecord;
+import com.microsoft.identity.common.internal.dto.RefreshTokenRecord;
+
+import org.junit.Test;
+
+import static com.microsoft.identity.common.CacheRecordTestUtil.ENVIRONMENT;
+import static com.microsoft.identity.common.CacheRecordTestUtil.newAccount;
+import static com.microsoft.identity.common.CacheRecordTestUtil.newIdToken;
+import static com.microsoft.identity.common.CacheRecordTestUtil.newRefreshToken;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CacheKeyTest {
+
+    private static final String HOME_ACCOUNT_ID = "29f3807a-4fb0-42f2-a44a-236aa0cb3f97.0287f963-2d72-4363-9e3a-5705c5b0f031";
+    private static final String CLIENT_ID = "0287f963-2d72-4363-9e3a-5705c5b0f031";
+    private static final String REALM = "3c62ac97-29eb-4aed-a3c8-add0298508d";
+    private static final String TARGET = "User.Read user.write https://graph.windows.net";
+
+    @Test
+    public void parsesAccountKey() {
+        final AccountRecord account = newAccount(HOME_ACCOUNT_ID, REALM);
+
+        final CacheKey key = CacheKey.parse(new CacheKeyValueDelegate().generateCacheKey(account));
+
+        assertTrue(key.isAccount());
+        assertNull(key.getCredentialType());
+        assertTrue(key.mayMatchAccount(HOME_ACCOUNT_ID.toUpperCase(), ENVIRONMENT, REALM));
+        assertTrue(key.mayMatchAccount(null, null, null));
+        assertFalse(key.mayMatchAccount("other", null, null));
+        assertFalse(key.mayMatchAccount(null, "login.windows.net", null));
+        assertFalse(key.mayMatchAccount(null, null, "other"));
+        assertFalse(key.mayMatchCredential(null, null, null, null, null, null));
+    }
+
+    @Test
+    public void parsesAccessTokenKey() {
+        final CacheKey key = CacheKey.parse(new CacheKeyValueDelegate().generateCacheKey(newAccessToken()));
+
+        assertFalse(key.isAccount());
+        assertEquals(CredentialType.AccessToken, key.getCredentialType());
+        assertTrue(key.mayMatchCredential(HOME_ACCOUNT_ID, ENVIRONMENT, CredentialType.AccessToken, CLIENT_ID, REALM, "user.read openid"));
+        assertFalse(key.mayMatchCredential(null, null, CredentialType.RefreshToken, null, null, null));
+        assertFalse(key.mayMatchCredential("other", null, null, null, null, null));
+        assertFalse(key.mayMatchCredential(null, "login.windows.net", null, null, null, null));
+        assertFalse(key.mayMatchCredential(null, null, null, "other", null, null));
+        assertFalse(key.mayMatchCredential(null, null, null, null, "other", null));
+        assertFalse(key.mayMatchCredential(null, null, null, null, null, "mail.read"));
+        assertFalse(key.mayMatchAccount(null, null, null));
+    }
+
+    @Test
+    public void familyRefreshTokenKeyIsNotFilteredOnClientId() {
+        final RefreshTokenRecord refreshToken = newRefreshToken(HOME_ACCOUNT_ID, CLIENT_ID, TARGET);
+        refreshToken.setFamilyId("foci-1");
+
+        final CacheKey key = CacheKey.parse(new CacheKeyValueDelegate().generateCacheKey(refreshToken));
+
+        assertEquals(CredentialType.RefreshToken, key.getCredentialType());
+        assertTrue(key.mayMatchCredential(HOME_ACCOUNT_ID, ENVIRONMENT, null, CLIENT_ID, null, null));
+        // RTs carry no realm
+        assertTrue(key.mayMatchCredential(null, null, null, null, REALM, null));
+    }
+
+    @Test
+    public void idTokenKeyIsNotFilteredOnTarget() {
+        final IdTokenRecord idToken = newIdToken(HOME_ACCOUNT_ID, CLIENT_ID, REALM);
+
+        final CacheKey key = CacheKey.parse(new CacheKeyValueDelegate().generateCacheKey(idToken));
+
+        assertEquals(CredentialType.IdToken, key.getCredentialType());
+        assertTrue(key.mayMatchCredential(null, null, null, CLIENT_ID, REALM, "mail.read"));
+    }
+
+    @Test
+    public void ambiguousKeyMatchesEverything() {
+        final AccessTokenRecord accessToken = newAccessToken();
+        accessToken.setTarget("scope-idtoken-scope");
+
+        final CacheKey key = CacheKey.parse(new CacheKeyValueDelegate().generateCacheKey(accessToken));
+
+        assertTrue(key.mayMatchCredential("other", "other", CredentialType.AccessToken, "other", "other", "other"));
+    }
+
+    @Test
+    public void parsedKeysAreCached() {
+        final String rawKey = new CacheKeyValueDelegate().generateCacheKey(newAccessToken());
+
+        assertSame(CacheKey.parse(rawKey), CacheKey.parse(rawKey));
+    }
+
+    @Test
+    public void homeAccountIdPrefixIsSharedByKeysOfAnAccount() {
+        final AccountRecord account = newAccount(HOME_ACCOUNT_ID, REALM);
+
+        final CacheKeyValueDelegate delegate = new CacheKeyValueDelegate();
+        final String expected = CacheKey.getHomeAccountIdPrefixForHomeAccountId(HOME_ACCOUNT_ID.toUpperCase());
+
+        assertEquals(HOME_ACCOUNT_ID.substring(0, HOME_ACCOUNT_ID.indexOf('.')), expected);
+        assertEquals(expected, CacheKey.getHomeAccountIdPrefix(delegate.generateCacheKey(account)));
+        assertEquals(expected, CacheKey.getHomeAccountIdPrefix(delegate.generateCacheKey(newAccessToken())));
+        assertNull(CacheKey.getHomeAccountIdPrefixForHomeAccountId(" "));
+    }
+
+    @Test
+    public void homeAccountIdPrefixIsTheWholeObjectId() {
+        // Consumer (MSA) object ids share their first groups
+        assertEquals(
+                "00000000-0000-0000-1234-56789abcdef0",
+                CacheKey.getHomeAccountIdPrefixForHomeAccountId("00000000-0000-0000-1234-56789abcdef0.9188040d-6c67-4c5b-b112-36a304b66dad")
+        );
+        assertEquals(
+                "00000000-0000-0000-1234-56789abcdef0",
+                CacheKey.getHomeAccountIdPrefix("00000000-0000-0000-1234-56789abcdef0.9188040d-6c67-4c5b-b112-36a304b66dad-login.live.com-")
+        );
+
+        // Without a '.', the leading part of a key depends on more than the home_account_id
+        assertNull(CacheKey.getHomeAccountIdPrefixForHomeAccountId("29f3807a-4fb0-42f2-a44a-236aa0cb3f97"));
+        assertEquals("29f3807a", CacheKey.getHomeAccountIdPrefix("29f3807a-environment-"));
+    }
+
+    private static AccessTokenRecord newAccessToken() {
+        return CacheRecordTestUtil.newAccessToken(HOME_ACCOUNT_ID, CLIENT_ID, REALM, TARGET);
+    }
+}
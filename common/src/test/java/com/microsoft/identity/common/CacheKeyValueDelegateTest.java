@@ -22,6 +22,7 @@
 // THE SOFTWARE.
 package com.microsoft.identity.common;
 
+import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -49,6 +50,7 @@ import static com.microsoft.identity.common.internal.cache.CacheKeyValueDelegate
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class CacheKeyValueDelegateTest {
 
@@ -916,4 +918,56 @@ public class CacheKeyValueDelegateTest {
         assertEquals(numbers.toString(), deserializedValue.getAdditionalFields().get("numbers").toString());
     }
     // End IdTokens
+
+    @Test
+    public void serializationMatchesMergedGsonTree() {
+        final AccessTokenRecord accessToken = new AccessTokenRecord();
+        accessToken.setHomeAccountId(HOME_ACCOUNT_ID);
+        accessToken.setEnvironment(ENVIRONMENT);
+        accessToken.setCredentialType(CredentialType.AccessToken.name().toLowerCase(Locale.US));
+        accessToken.setClientId(CLIENT_ID);
+        accessToken.setRealm(REALM);
+        accessToken.setTarget(TARGET);
+
+        final Map<String, JsonElement> additionalFields = new HashMap<>();
+        additionalFields.put("foo", new JsonPrimitive("bar"));
+        additionalFields.put(AccessTokenRecord.SerializedNames.REALM, new JsonPrimitive("replaced"));
+        accessToken.setAdditionalFields(additionalFields);
+
+        // The value the delegate produced before streaming adapters were introduced
+        final Gson gson = new Gson();
+        final JsonObject expected = gson.toJsonTree(accessToken).getAsJsonObject();
+        for (final Map.Entry<String, JsonElement> additionalField : additionalFields.entrySet()) {
+            expected.add(additionalField.getKey(), additionalField.getValue());
+        }
+
+        assertEquals(gson.toJson(expected), mDelegate.generateCacheValue(accessToken));
+    }
+
+    @Test
+    public void deserializationCapturesUnknownFieldsInOnePass() {
+        final String json = "{\"home_account_id\":\"" + HOME_ACCOUNT_ID + "\","
+                + "\"unknown_string\":\"value\","
+                + "\"unknown_object\":{\"nested\":[1,2]},"
+                + "\"unknown_null\":null,"
+                + "\"access_token_type\":\"Bearer\"}";
+
+        final AccessTokenRecord record = mDelegate.fromCacheValue(json, AccessTokenRecord.class);
+
+        assertNotNull(record);
+        assertEquals(HOME_ACCOUNT_ID, record.getHomeAccountId());
+        assertEquals("Bearer", record.getAccessTokenType());
+        assertEquals(new JsonPrimitive("value"), record.getAdditionalFields().get("unknown_string"));
+        assertEquals("{\"nested\":[1,2]}", record.getAdditionalFields().get("unknown_object").toString());
+        assertTrue(record.getAdditionalFields().containsKey("unknown_null"));
+        // Alternate names are not 'expected', so are retained as before
+        assertTrue(record.getAdditionalFields().containsKey(AccessTokenRecord.SerializedNames.ACCESS_TOKEN_TYPE));
+        assertNull(record.getAdditionalFields().get(Credential.SerializedNames.HOME_ACCOUNT_ID));
+    }
+
+    @Test
+    public void deserializationOfMalformedValueReturnsNull() {
+        assertNull(mDelegate.fromCacheValue("{\"home_account_id\": [", AccessTokenRecord.class));
+        assertNull(mDelegate.fromCacheValue("{\"home_account_id\": {}}", AccessTokenRecord.class));
+    }
 }
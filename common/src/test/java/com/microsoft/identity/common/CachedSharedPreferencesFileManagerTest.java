@@ -0,0 +1,168 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common;
+
+import com.microsoft.identity.common.internal.cache.CachedSharedPreferencesFileManager;
+import com.microsoft.identity.common.internal.util.Predicate;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CachedSharedPreferencesFileManagerTest {
+
+    private InMemorySharedPreferencesFileManager mBackingStore;
+    private CachedSharedPreferencesFileManager mCache;
+
+    @Before
+    public void setUp() {
+        mBackingStore = new InMemorySharedPreferencesFileManager("test");
+        mCache = new CachedSharedPreferencesFileManager(mBackingStore);
+    }
+
+    @Test
+    public void testRepeatedReadsAreServedFromMemory() {
+        mBackingStore.putString("key", "value");
+
+        assertEquals("value", mCache.getString("key"));
+        assertEquals("value", mCache.getString("key"));
+        assertEquals("value", mCache.getString("key"));
+
+        assertEquals(1, mBackingStore.getReadCount());
+        assertEquals(1, mCache.getMissCount());
+        assertEquals(2, mCache.getHitCount());
+    }
+
+    @Test
+    public void testPutStringIsWrittenThrough() {
+        mCache.putString("key", "value");
+
+        assertEquals("value", mBackingStore.getString("key"));
+        assertEquals("value", mCache.getString("key"));
+        assertEquals(1, mCache.getHitCount());
+        assertEquals(0, mCache.getMissCount());
+    }
+
+    @Test
+    public void testRemoveIsWrittenThrough() {
+        mCache.putString("key", "value");
+        mCache.remove("key");
+
+        assertNull(mBackingStore.getString("key"));
+        assertNull(mCache.getString("key"));
+        assertFalse(mCache.contains("key"));
+    }
+
+    @Test
+    public void testClearIsWrittenThrough() {
+        mCache.putString("key1", "value1");
+        mCache.putString("key2", "value2");
+        mCache.clear();
+
+        assertTrue(mBackingStore.getAll().isEmpty());
+        assertTrue(mCache.getAll().isEmpty());
+        assertEquals(0, mCache.getSizeBytes());
+    }
+
+    @Test
+    public void testGetAllIsServedFromMemoryOnceLoaded() {
+        mBackingStore.putString("key1", "value1");
+        mBackingStore.putString("key2", "value2");
+
+        assertEquals(2, mCache.getAll().size());
+        mCache.putString("key3", "value3");
+        final Map<String, String> all = mCache.getAll();
+
+        assertEquals(3, all.size());
+        assertEquals("value3", all.get("key3"));
+        assertEquals(1, mBackingStore.getReadCount());
+        assertEquals(1, mCache.getHitCount());
+
+        // A fully loaded cache can also answer for absent keys
+        assertNull(mCache.getString("absent"));
+        assertEquals(1, mBackingStore.getReadCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() {
+        // Each entry is (4 + 6) chars * 2 bytes == 20 bytes; allow two of them
+        mCache = new CachedSharedPreferencesFileManager(mBackingStore, 40);
+        mCache.putString("key1", "value1");
+        mCache.putString("key2", "value2");
+        mCache.getString("key1");
+        mCache.putString("key3", "value3");
+
+        assertEquals(40, mCache.getSizeBytes());
+        assertEquals("value1", mCache.getString("key1"));
+        assertEquals(0, mBackingStore.getReadCount());
+
+        // key2 was evicted, but is still readable from the backing store
+        assertEquals("value2", mCache.getString("key2"));
+        assertEquals(1, mBackingStore.getReadCount());
+    }
+
+    @Test
+    public void testGetAllLargerThanCapIsNotTreatedAsFullyLoaded() {
+        mCache = new CachedSharedPreferencesFileManager(mBackingStore, 40);
+        mBackingStore.putString("key1", "value1");
+        mBackingStore.putString("key2", "value2");
+        mBackingStore.putString("key3", "value3");
+
+        assertEquals(3, mCache.getAll().size());
+        assertEquals(3, mCache.getAll().size());
+        assertEquals(2, mBackingStore.getReadCount());
+    }
+
+    @Test
+    public void testGetAllWithKeyFilter() {
+        final Predicate<String> isEven = new Predicate<String>() {
+            @Override
+            public boolean test(final String key) {
+                return key.endsWith("2") || key.endsWith("4");
+            }
+        };
+
+        for (int ii = 1; ii <= 4; ii++) {
+            mBackingStore.putString("key" + ii, "value" + ii);
+        }
+
+        // Not yet loaded: goes to the backing store, and only the matching entries are cached
+        assertEquals(2, mCache.getAll(isEven).size());
+        assertEquals(1, mBackingStore.getReadCount());
+        assertEquals("value2", mCache.getString("key2"));
+        assertEquals(1, mBackingStore.getReadCount());
+
+        // Once fully loaded, filtering is done in memory
+        mCache.getAll();
+        final Map<String, String> evens = mCache.getAll(isEven);
+        assertEquals(2, evens.size());
+        assertEquals("value4", evens.get("key4"));
+        assertEquals(2, mBackingStore.getReadCount());
+    }
+}
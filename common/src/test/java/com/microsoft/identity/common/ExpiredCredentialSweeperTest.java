@@ -0,0 +1,201 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common;
+
+import com.microsoft.identity.common.internal.cache.CacheKeyValueDelegate;
+import com.microsoft.identity.common.internal.cache.ExpiredCredentialSweeper;
+import com.microsoft.identity.common.internal.cache.SharedPreferencesAccountCredentialCache;
+import com.microsoft.identity.common.internal.dto.AccessTokenRecord;
+import com.microsoft.identity.common.internal.dto.Credential;
+import com.microsoft.identity.common.internal.dto.IdTokenRecord;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.microsoft.identity.common.CacheRecordTestUtil.newAccessToken;
+import static com.microsoft.identity.common.CacheRecordTestUtil.newAccount;
+import static com.microsoft.identity.common.CacheRecordTestUtil.newIdToken;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class ExpiredCredentialSweeperTest {
+
+    private static final String CLIENT_ID = "0287f963-2d72-4363-9e3a-5705c5b0f031";
+    private static final String REALM = "3c62ac97-29eb-4aed-a3c8-add0298508da";
+    private static final String HOME_ACCOUNT_ID = "29f3807a-4fb0-42f2-a44a-236aa0cb3f97." + REALM;
+    private static final String ORPHAN_HOME_ACCOUNT_ID = "8a7f3b2c-4fb0-42f2-a44a-236aa0cb3f97." + REALM;
+    private static final long ONE_HOUR_SECONDS = TimeUnit.HOURS.toSeconds(1);
+
+    private CacheKeyValueDelegate mDelegate;
+    private SharedPreferencesAccountCredentialCache mCache;
+    private ExpiredCredentialSweeper mSweeper;
+
+    @Before
+    public void setUp() {
+        mDelegate = new CacheKeyValueDelegate();
+        mCache = new SharedPreferencesAccountCredentialCache(
+                mDelegate,
+                new InMemorySharedPreferencesFileManager("test")
+        );
+        mSweeper = new ExpiredCredentialSweeper(mCache, mDelegate);
+        mCache.saveAccount(newAccount(HOME_ACCOUNT_ID, REALM));
+    }
+
+    @Test
+    public void testRemovesExpiredAccessTokens() {
+        final AccessTokenRecord expired = accessToken("scope.expired", -ONE_HOUR_SECONDS, null);
+        final AccessTokenRecord valid = accessToken("scope.valid", ONE_HOUR_SECONDS, null);
+        mCache.saveCredential(expired);
+        mCache.saveCredential(valid);
+
+        final ExpiredCredentialSweeper.Result result = mSweeper.sweep();
+
+        assertEquals(1, result.getExpiredAccessTokenCount());
+        assertEquals(0, result.getOrphanedIdTokenCount());
+        assertNull(mCache.getCredential(mDelegate.generateCacheKey(expired)));
+        assertNotNull(mCache.getCredential(mDelegate.generateCacheKey(valid)));
+    }
+
+    @Test
+    public void testKeepsAccessTokensWithinExtendedExpiry() {
+        final AccessTokenRecord extended = accessToken("scope.extended", -ONE_HOUR_SECONDS, ONE_HOUR_SECONDS);
+        final AccessTokenRecord expired = accessToken("scope.expired", -ONE_HOUR_SECONDS, -ONE_HOUR_SECONDS);
+        mCache.saveCredential(extended);
+        mCache.saveCredential(expired);
+
+        final ExpiredCredentialSweeper.Result result = mSweeper.sweep();
+
+        assertEquals(1, result.getExpiredAccessTokenCount());
+        assertNotNull(mCache.getCredential(mDelegate.generateCacheKey(extended)));
+        assertNull(mCache.getCredential(mDelegate.generateCacheKey(expired)));
+    }
+
+    @Test
+    public void testRemovesOrphanedIdTokens() {
+        final IdTokenRecord orphaned = idToken(ORPHAN_HOME_ACCOUNT_ID, -ONE_HOUR_SECONDS);
+        final IdTokenRecord owned = idToken(HOME_ACCOUNT_ID, -ONE_HOUR_SECONDS);
+        final IdTokenRecord recent = idToken(ORPHAN_HOME_ACCOUNT_ID.replace(REALM, CLIENT_ID), 0);
+        mCache.saveCredential(orphaned);
+        mCache.saveCredential(owned);
+        mCache.saveCredential(recent);
+
+        final ExpiredCredentialSweeper.Result result = mSweeper.sweep();
+
+        assertEquals(1, result.getOrphanedIdTokenCount());
+        assertNull(mCache.getCredential(mDelegate.generateCacheKey(orphaned)));
+        assertNotNull(mCache.getCredential(mDelegate.generateCacheKey(owned)));
+        assertNotNull(mCache.getCredential(mDelegate.generateCacheKey(recent)));
+    }
+
+    @Test
+    public void testReportsReclaimedEntriesAndBytes() {
+        final AccessTokenRecord expired = accessToken("scope.expired", -ONE_HOUR_SECONDS, null);
+        final IdTokenRecord orphaned = idToken(ORPHAN_HOME_ACCOUNT_ID, -ONE_HOUR_SECONDS);
+        mCache.saveCredential(expired);
+        mCache.saveCredential(orphaned);
+
+        final long expectedBytes = size(expired) + size(orphaned);
+        final ExpiredCredentialSweeper.Result result = mSweeper.sweep();
+
+        assertEquals(2, result.getReclaimedEntryCount());
+        assertEquals(expectedBytes, result.getReclaimedBytes());
+
+        // A second sweep finds nothing, and the totals are unchanged
+        assertEquals(0, mSweeper.sweep().getReclaimedEntryCount());
+        assertEquals(2, mSweeper.getReclaimedEntryCount());
+        assertEquals(expectedBytes, mSweeper.getReclaimedBytes());
+
+        final List<Credential> remaining = mCache.getCredentials();
+        assertTrue(remaining.isEmpty());
+        assertFalse(mCache.getAccounts().isEmpty());
+    }
+
+    @Test
+    public void testRequestedSweepsAreThrottled() throws InterruptedException {
+        mCache.saveCredential(accessToken("scope.0", -ONE_HOUR_SECONDS, null));
+        mSweeper.sweep();
+
+        // The interval has not elapsed, so the requested sweep does not run
+        final AccessTokenRecord expired = accessToken("scope.1", -ONE_HOUR_SECONDS, null);
+        mCache.saveCredential(expired);
+        mSweeper.requestSweep();
+        Thread.sleep(200);
+
+        assertNotNull(mCache.getCredential(mDelegate.generateCacheKey(expired)));
+        assertEquals(1, mSweeper.getReclaimedEntryCount());
+    }
+
+    @Test
+    public void testRequestedSweepRunsWhenDue() throws InterruptedException {
+        final ExpiredCredentialSweeper sweeper = new ExpiredCredentialSweeper(mCache, mDelegate, 1);
+        final AccessTokenRecord expired = accessToken("scope.0", -ONE_HOUR_SECONDS, null);
+        mCache.saveCredential(expired);
+
+        sweeper.requestSweep();
+
+        for (int ii = 0; ii < 100 && 0 == sweeper.getReclaimedEntryCount(); ii++) {
+            Thread.sleep(20);
+        }
+
+        assertEquals(1, sweeper.getReclaimedEntryCount());
+        assertNull(mCache.getCredential(mDelegate.generateCacheKey(expired)));
+    }
+
+    private long size(final Credential credential) {
+        return mDelegate.generateCacheKey(credential).length()
+                + mDelegate.generateCacheValue(credential).length();
+    }
+
+    private static String secondsFromNow(final long offsetSeconds) {
+        return String.valueOf(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + offsetSeconds);
+    }
+
+    private static AccessTokenRecord accessToken(final String target,
+                                                 final long expiresInSeconds,
+                                                 final Long extendedExpiresInSeconds) {
+        final AccessTokenRecord accessToken = newAccessToken(HOME_ACCOUNT_ID, CLIENT_ID, REALM, target);
+        accessToken.setCachedAt(secondsFromNow(0));
+        accessToken.setExpiresOn(secondsFromNow(expiresInSeconds));
+
+        if (null != extendedExpiresInSeconds) {
+            accessToken.setExtendedExpiresOn(secondsFromNow(extendedExpiresInSeconds));
+        }
+
+        return accessToken;
+    }
+
+    private static IdTokenRecord idToken(final String homeAccountId, final long cachedSecondsAgo) {
+        final IdTokenRecord idToken = newIdToken(homeAccountId, CLIENT_ID, REALM);
+        idToken.setCachedAt(secondsFromNow(cachedSecondsAgo));
+        return idToken;
+    }
+}
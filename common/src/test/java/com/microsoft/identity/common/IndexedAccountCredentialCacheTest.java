@@ -0,0 +1,337 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common;
+
+import com.microsoft.identity.common.internal.cache.CacheKeyValueDelegate;
+import com.microsoft.identity.common.internal.cache.CredentialQuery;
+import com.microsoft.identity.common.internal.cache.IndexedAccountCredentialCache;
+import com.microsoft.identity.common.internal.cache.SharedPreferencesAccountCredentialCache;
+import com.microsoft.identity.common.internal.dto.AccessTokenRecord;
+import com.microsoft.identity.common.internal.dto.AccountCredentialBase;
+import com.microsoft.identity.common.internal.dto.AccountRecord;
+import com.microsoft.identity.common.internal.dto.Credential;
+import com.microsoft.identity.common.internal.dto.CredentialType;
+import com.microsoft.identity.common.internal.dto.RefreshTokenRecord;
+import com.microsoft.identity.common.internal.util.Predicate;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.microsoft.identity.common.CacheRecordTestUtil.ENVIRONMENT;
+import static com.microsoft.identity.common.CacheRecordTestUtil.newAccessToken;
+import static com.microsoft.identity.common.CacheRecordTestUtil.newAccount;
+import static com.microsoft.identity.common.CacheRecordTestUtil.newIdToken;
+import static com.microsoft.identity.common.CacheRecordTestUtil.newRefreshToken;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IndexedAccountCredentialCacheTest {
+
+    private static final String HOME_ACCOUNT_ID_1 = "29f3807a-4fb0-42f2-a44a-236aa0cb3f97.0287f963-2d72-4363-9e3a-5705c5b0f031";
+    private static final String HOME_ACCOUNT_ID_2 = "00000000-0000-0000-40c0-3bac188d01d1.9188040d-6c67-4c5b-b112-36a304b66dad";
+    private static final String CLIENT_ID_1 = "0287f963-2d72-4363-9e3a-5705c5b0f031";
+    private static final String CLIENT_ID_2 = "b7b0ec1f-3e85-4e5c-a0b2-3ab1d4b1e5a1";
+    private static final String REALM_1 = "3c62ac97-29eb-4aed-a3c8-add0298508da";
+    private static final String REALM_2 = "9188040d-6c67-4c5b-b112-36a304b66dad";
+    private static final String TARGET = "user.read user.write";
+    private static final long BATCH_WAIT_MILLIS = 100;
+
+    private CacheKeyValueDelegate mDelegate;
+    private InMemorySharedPreferencesFileManager mFileManager;
+    private SharedPreferencesAccountCredentialCache mBackingCache;
+    private IndexedAccountCredentialCache mIndexedCache;
+
+    @Before
+    public void setUp() {
+        mDelegate = new CacheKeyValueDelegate();
+        mFileManager = new InMemorySharedPreferencesFileManager("test");
+        mBackingCache = new SharedPreferencesAccountCredentialCache(mDelegate, mFileManager);
+        mIndexedCache = new IndexedAccountCredentialCache(mDelegate, mBackingCache);
+
+        for (final String homeAccountId : new String[]{HOME_ACCOUNT_ID_1, HOME_ACCOUNT_ID_2}) {
+            for (final String realm : new String[]{REALM_1, REALM_2}) {
+                mBackingCache.saveAccount(newAccount(homeAccountId, realm));
+
+                for (final String clientId : new String[]{CLIENT_ID_1, CLIENT_ID_2}) {
+                    mBackingCache.saveCredential(newAccessToken(homeAccountId, clientId, realm, TARGET));
+                    mBackingCache.saveCredential(newIdToken(homeAccountId, clientId, realm));
+                }
+            }
+
+            for (final String clientId : new String[]{CLIENT_ID_1, CLIENT_ID_2}) {
+                mBackingCache.saveCredential(newRefreshToken(homeAccountId, clientId, TARGET));
+            }
+        }
+    }
+
+    @Test
+    public void testCredentialQueriesMatchBackingCache() {
+        final CredentialType[] types = {null, CredentialType.AccessToken, CredentialType.RefreshToken, CredentialType.IdToken};
+        final String[] homeAccountIds = {null, HOME_ACCOUNT_ID_1, HOME_ACCOUNT_ID_2.toUpperCase(), "unknown"};
+        final String[] clientIds = {null, CLIENT_ID_1, CLIENT_ID_2};
+        final String[] realms = {null, REALM_1, REALM_2};
+        final String[] targets = {null, "user.read", "mail.read"};
+
+        for (final CredentialType type : types) {
+            for (final String homeAccountId : homeAccountIds) {
+                for (final String clientId : clientIds) {
+                    for (final String realm : realms) {
+                        for (final String target : targets) {
+                            assertSameElements(
+                                    mBackingCache.getCredentialsFilteredBy(homeAccountId, ENVIRONMENT, type, clientId, realm, target, null),
+                                    mIndexedCache.getCredentialsFilteredBy(homeAccountId, ENVIRONMENT, type, clientId, realm, target, null)
+                            );
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMultiBucketQueriesMatchSingleQueries() {
+        final List<CredentialQuery> queries = new ArrayList<>();
+        queries.add(new CredentialQuery(HOME_ACCOUNT_ID_1, ENVIRONMENT, CredentialType.AccessToken, CLIENT_ID_1, REALM_1, "user.read", null));
+        queries.add(new CredentialQuery(HOME_ACCOUNT_ID_1, ENVIRONMENT, CredentialType.RefreshToken, CLIENT_ID_1, null, null, null));
+        queries.add(new CredentialQuery(HOME_ACCOUNT_ID_1, ENVIRONMENT, CredentialType.IdToken, CLIENT_ID_1, REALM_2, null, null));
+        queries.add(new CredentialQuery(null, ENVIRONMENT, CredentialType.IdToken, CLIENT_ID_2, null, null, null));
+        queries.add(new CredentialQuery(HOME_ACCOUNT_ID_2, null, null, null, null, null, null));
+        queries.add(new CredentialQuery("unknown", ENVIRONMENT, CredentialType.RefreshToken, null, null, null, null));
+
+        final List<List<Credential>> backingBuckets = mBackingCache.getCredentialsForQueries(queries);
+        final List<List<Credential>> indexedBuckets = mIndexedCache.getCredentialsForQueries(queries);
+        assertEquals(queries.size(), backingBuckets.size());
+        assertEquals(queries.size(), indexedBuckets.size());
+
+        for (int ii = 0; ii < queries.size(); ii++) {
+            final CredentialQuery query = queries.get(ii);
+            final List<Credential> expected = mBackingCache.getCredentialsFilteredBy(
+                    query.getHomeAccountId(),
+                    query.getEnvironment(),
+                    query.getCredentialType(),
+                    query.getClientId(),
+                    query.getRealm(),
+                    query.getTarget(),
+                    query.getAuthScheme()
+            );
+            assertSameElements(expected, backingBuckets.get(ii));
+            assertSameElements(expected, indexedBuckets.get(ii));
+        }
+
+        // The buckets overlap: HOME_ACCOUNT_ID_2 has 2 IdTokens of CLIENT_ID_2
+        assertEquals(4, backingBuckets.get(3).size());
+        assertEquals(10, backingBuckets.get(4).size());
+        assertTrue(backingBuckets.get(5).isEmpty());
+    }
+
+    @Test
+    public void testAccountQueriesMatchBackingCache() {
+        for (final String homeAccountId : new String[]{null, HOME_ACCOUNT_ID_1, HOME_ACCOUNT_ID_2, "unknown"}) {
+            for (final String environment : new String[]{null, ENVIRONMENT, "login.windows.net"}) {
+                for (final String realm : new String[]{null, REALM_1, REALM_2}) {
+                    assertSameElements(
+                            mBackingCache.getAccountsFilteredBy(homeAccountId, environment, realm),
+                            mIndexedCache.getAccountsFilteredBy(homeAccountId, environment, realm)
+                    );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWritesUpdateIndexes() {
+        final AccessTokenRecord accessToken = newAccessToken(HOME_ACCOUNT_ID_1, CLIENT_ID_1, REALM_1, "mail.read");
+        mIndexedCache.saveCredential(accessToken);
+
+        List<Credential> result = mIndexedCache.getCredentialsFilteredBy(
+                HOME_ACCOUNT_ID_1, ENVIRONMENT, CredentialType.AccessToken, CLIENT_ID_1, REALM_1, "mail.read", null
+        );
+        assertEquals(1, result.size());
+        assertEquals(accessToken, result.get(0));
+
+        assertTrue(mIndexedCache.removeCredential(accessToken));
+        result = mIndexedCache.getCredentialsFilteredBy(
+                HOME_ACCOUNT_ID_1, ENVIRONMENT, CredentialType.AccessToken, CLIENT_ID_1, REALM_1, "mail.read", null
+        );
+        assertTrue(result.isEmpty());
+        assertSameElements(mBackingCache.getCredentials(), mIndexedCache.getCredentials());
+
+        final AccountRecord account = newAccount(HOME_ACCOUNT_ID_1, REALM_1);
+        assertTrue(mIndexedCache.removeAccount(account));
+        assertNull(mIndexedCache.getAccount(new CacheKeyValueDelegate().generateCacheKey(account)));
+        assertSameElements(mBackingCache.getAccounts(), mIndexedCache.getAccounts());
+
+        mIndexedCache.clearAll();
+        assertTrue(mIndexedCache.getCredentials().isEmpty());
+        assertTrue(mBackingCache.getCredentials().isEmpty());
+    }
+
+    @Test
+    public void testRemoveAll() {
+        final Predicate<AccountCredentialBase> isFirstAccount = new Predicate<AccountCredentialBase>() {
+            @Override
+            public boolean test(final AccountCredentialBase record) {
+                return HOME_ACCOUNT_ID_1.equals(record instanceof AccountRecord
+                        ? ((AccountRecord) record).getHomeAccountId()
+                        : ((Credential) record).getHomeAccountId());
+            }
+        };
+
+        // Warm the indexes, so that removal is served from them
+        assertEquals(20, mIndexedCache.getCredentials().size());
+
+        // 2 Accounts, 4 ATs, 4 IdTokens and 2 RTs
+        assertEquals(12, mIndexedCache.removeAll(isFirstAccount).size());
+        assertTrue(mIndexedCache.removeAll(isFirstAccount).isEmpty());
+        assertEquals(10, mBackingCache.getCredentials().size());
+        assertSameElements(mBackingCache.getCredentials(), mIndexedCache.getCredentials());
+        assertSameElements(mBackingCache.getAccounts(), mIndexedCache.getAccounts());
+
+        final List<AccountCredentialBase> removed = mBackingCache.removeAll(new Predicate<AccountCredentialBase>() {
+            @Override
+            public boolean test(final AccountCredentialBase record) {
+                return record instanceof RefreshTokenRecord;
+            }
+        });
+        assertEquals(2, removed.size());
+        assertEquals(8, mBackingCache.getCredentials().size());
+    }
+
+    @Test
+    public void testRequestsJoinPrefetch() throws InterruptedException {
+        final BlockingAccountCredentialCache backingCache = new BlockingAccountCredentialCache();
+        final IndexedAccountCredentialCache indexedCache = new IndexedAccountCredentialCache(mDelegate, backingCache);
+
+        indexedCache.prefetch();
+        indexedCache.prefetch();
+        backingCache.mReadStarted.await();
+
+        final List<AccountRecord> accounts = new ArrayList<>();
+        final Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accounts.addAll(indexedCache.getAccounts());
+            }
+        });
+        reader.start();
+
+        backingCache.mReadReleased.countDown();
+        reader.join();
+
+        assertSameElements(mBackingCache.getAccounts(), accounts);
+        assertSameElements(mBackingCache.getCredentials(), indexedCache.getCredentials());
+        assertEquals(1, backingCache.mReadCount.get());
+    }
+
+    @Test
+    public void testRemovalDuringPrefetchIsApplied() throws InterruptedException {
+        final BlockingAccountCredentialCache backingCache = new BlockingAccountCredentialCache();
+        final IndexedAccountCredentialCache indexedCache = new IndexedAccountCredentialCache(mDelegate, backingCache);
+        final AccountRecord account = newAccount(HOME_ACCOUNT_ID_1, REALM_1);
+
+        indexedCache.prefetch();
+        backingCache.mReadStarted.await();
+
+        final Thread remover = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                indexedCache.removeAccount(account);
+            }
+        });
+        remover.start();
+
+        backingCache.mReadReleased.countDown();
+        remover.join();
+
+        assertEquals(3, indexedCache.getAccounts().size());
+        assertSameElements(mBackingCache.getAccounts(), indexedCache.getAccounts());
+    }
+
+    @Test
+    public void testOtherThreadsWaitForBatch() throws InterruptedException {
+        assertEquals(4, mIndexedCache.getAccounts().size());
+
+        mIndexedCache.beginBatch();
+        mIndexedCache.removeAccount(newAccount(HOME_ACCOUNT_ID_1, REALM_1));
+
+        final List<AccountRecord> accounts = new ArrayList<>();
+        final Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accounts.addAll(mIndexedCache.getAccounts());
+            }
+        });
+        reader.start();
+        reader.join(BATCH_WAIT_MILLIS);
+
+        // The reader must not observe the uncommitted removal
+        assertTrue(reader.isAlive());
+        assertEquals(3, mIndexedCache.getAccounts().size());
+
+        mIndexedCache.commitBatch();
+        reader.join();
+
+        assertEquals(3, accounts.size());
+        assertSameElements(mBackingCache.getAccounts(), accounts);
+    }
+
+    private static <T> void assertSameElements(final List<T> expected, final List<T> actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+    }
+
+    /**
+     * A backing cache whose reads of Accounts block until released.
+     */
+    private class BlockingAccountCredentialCache extends SharedPreferencesAccountCredentialCache {
+
+        private final CountDownLatch mReadStarted = new CountDownLatch(1);
+        private final CountDownLatch mReadReleased = new CountDownLatch(1);
+        private final AtomicInteger mReadCount = new AtomicInteger();
+
+        BlockingAccountCredentialCache() {
+            super(mDelegate, mFileManager);
+        }
+
+        @Override
+        public List<AccountRecord> getAccounts() {
+            mReadCount.incrementAndGet();
+            mReadStarted.countDown();
+
+            try {
+                mReadReleased.await();
+            } catch (final InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+
+            return super.getAccounts();
+        }
+    }
+}
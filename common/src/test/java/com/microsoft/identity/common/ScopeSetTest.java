@@ -0,0 +1,110 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common;
+
+import com.microsoft.identity.common.internal.dto.AccessTokenRecord;
+import com.microsoft.identity.common.internal.dto.RefreshTokenRecord;
+import com.microsoft.identity.common.internal.dto.ScopeSet;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ScopeSetTest {
+
+    @Test
+    public void normalizesCaseAndWhitespace() {
+        final ScopeSet scopes = ScopeSet.of("User.Read\tMail.Read  openid\n");
+
+        assertEquals(ScopeSet.of("openid mail.read user.read"), scopes);
+        assertTrue(scopes.containsAll(ScopeSet.of("USER.READ")));
+        assertFalse(scopes.containsAll(ScopeSet.of("user.write")));
+        assertTrue(ScopeSet.of("   ").isEmpty());
+        assertTrue(ScopeSet.of(null).isEmpty());
+    }
+
+    @Test
+    public void internsByTarget() {
+        assertSame(ScopeSet.of("user.read mail.read"), ScopeSet.of("user.read mail.read"));
+    }
+
+    @Test
+    public void compiledTargetOmitsScopes() {
+        final ScopeSet userRead = ScopeSet.of("user.read");
+        final ScopeSet openIdProfile = ScopeSet.of("openid profile");
+        final ScopeSet mailRead = ScopeSet.of("mail.read");
+        final ScopeSet sought = ScopeSet.compile(
+                "openid profile User.Read",
+                Arrays.asList("openid", "profile", "offline_access")
+        );
+
+        assertTrue(userRead.containsAll(sought));
+        assertFalse(openIdProfile.containsAll(sought));
+        assertTrue(mailRead.containsAll(
+                ScopeSet.compile("openid", Collections.singletonList("openid"))
+        ));
+        assertFalse(mailRead.containsAll(
+                ScopeSet.compile("openid", Collections.<String>emptyList())
+        ));
+    }
+
+    @Test
+    public void compiledTargetResolvesUncachedScopesWhenTested() {
+        final ScopeSet cached = ScopeSet.of("calendars.read");
+        final ScopeSet sought = ScopeSet.compile("calendars.read never.cached", Collections.<String>emptyList());
+
+        assertFalse(sought.isEmpty());
+        assertFalse(cached.containsAll(sought));
+        assertFalse(ScopeSet.of("calendars.read contacts.read").containsAll(sought));
+
+        // Once a cached target names the scope, the same query matches it
+        assertTrue(ScopeSet.of("calendars.read never.cached").containsAll(sought));
+    }
+
+    @Test
+    public void recordsTrackTarget() {
+        final AccessTokenRecord accessToken = new AccessTokenRecord();
+        accessToken.setTarget("user.read");
+        final ScopeSet first = accessToken.getTargetScopeSet();
+
+        assertSame(first, accessToken.getTargetScopeSet());
+
+        accessToken.setTarget("user.read mail.read");
+        assertNotSame(first, accessToken.getTargetScopeSet());
+        assertTrue(accessToken.getTargetScopeSet().containsAll(ScopeSet.of("mail.read")));
+
+        accessToken.setTarget(null);
+        assertTrue(accessToken.getTargetScopeSet().isEmpty());
+
+        final RefreshTokenRecord refreshToken = new RefreshTokenRecord();
+        refreshToken.setTarget("offline_access user.read");
+        assertTrue(refreshToken.getTargetScopeSet().containsAll(ScopeSet.of("user.read")));
+    }
+}
@@ -0,0 +1,217 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common;
+
+import com.microsoft.identity.common.internal.cache.CacheKeyValueDelegate;
+import com.microsoft.identity.common.internal.cache.SharedPreferencesAccountCredentialCache;
+import com.microsoft.identity.common.internal.dto.AccessTokenRecord;
+import com.microsoft.identity.common.internal.dto.AccountRecord;
+import com.microsoft.identity.common.internal.dto.Credential;
+import com.microsoft.identity.common.internal.dto.CredentialType;
+import com.microsoft.identity.common.internal.logging.Logger;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.microsoft.identity.common.CacheRecordTestUtil.ENVIRONMENT;
+import static com.microsoft.identity.common.CacheRecordTestUtil.newAccessToken;
+import static com.microsoft.identity.common.CacheRecordTestUtil.newAccount;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stress test of concurrent access to a {@link SharedPreferencesAccountCredentialCache}.
+ */
+public class SharedPreferencesAccountCredentialCacheConcurrencyTest {
+
+    private static final String TAG = SharedPreferencesAccountCredentialCacheConcurrencyTest.class.getSimpleName();
+
+    private static final String CLIENT_ID = "0287f963-2d72-4363-9e3a-5705c5b0f031";
+    private static final String REALM = "3c62ac97-29eb-4aed-a3c8-add0298508da";
+    private static final int ACCOUNT_COUNT = 10;
+    private static final int ACCESS_TOKENS_PER_ACCOUNT = 10;
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16};
+    private static final int READS_PER_THREAD = 200;
+    private static final double NANOS_PER_SECOND = 1000000000d;
+
+    /**
+     * The fraction of single-threaded read throughput that concurrent readers must at least
+     * achieve: concurrent reads may not be serialized, nor contend much worse than that.
+     */
+    private static final double MIN_CONCURRENT_THROUGHPUT_RATIO = 0.5d;
+
+    private SharedPreferencesAccountCredentialCache mCache;
+
+    @Before
+    public void setUp() {
+        mCache = new SharedPreferencesAccountCredentialCache(
+                new CacheKeyValueDelegate(),
+                new InMemorySharedPreferencesFileManager("test")
+        );
+
+        for (int ii = 0; ii < ACCOUNT_COUNT; ii++) {
+            mCache.saveAccount(newAccount(homeAccountId(ii), REALM));
+
+            for (int jj = 0; jj < ACCESS_TOKENS_PER_ACCOUNT; jj++) {
+                mCache.saveCredential(newAccessToken(homeAccountId(ii), CLIENT_ID, REALM, "scope." + jj));
+            }
+        }
+    }
+
+    /**
+     * Measures read throughput at each thread count. Ignored by default, as timings depend on
+     * the host; results are logged.
+     */
+    @Ignore("Benchmark; run manually.")
+    @Test
+    public void measureReadThroughput() throws Throwable {
+        final String methodName = ":measureReadThroughput";
+        double singleThreadedThroughput = 0;
+
+        for (final int threadCount : THREAD_COUNTS) {
+            final long elapsedNanos = runReaders(threadCount, null);
+            final int reads = threadCount * READS_PER_THREAD;
+            final double throughput = reads * NANOS_PER_SECOND / elapsedNanos;
+
+            Logger.info(TAG + methodName, String.format(
+                    Locale.US,
+                    "threads=%2d  reads=%5d  throughput=%9.0f reads/s",
+                    threadCount,
+                    reads,
+                    throughput
+            ));
+
+            if (1 == threadCount) {
+                singleThreadedThroughput = throughput;
+            } else {
+                assertTrue(
+                        "Concurrent reads are slower than serialized reads at " + threadCount + " threads",
+                        throughput >= singleThreadedThroughput * MIN_CONCURRENT_THROUGHPUT_RATIO
+                );
+            }
+        }
+    }
+
+    @Test
+    public void readsObserveConsistentStateWhileWriting() throws Throwable {
+        final String writerHomeAccountId = homeAccountId(ACCOUNT_COUNT);
+
+        // Readers run while another thread repeatedly saves and removes an unrelated Account
+        runReaders(THREAD_COUNTS[THREAD_COUNTS.length - 1], new Runnable() {
+            @Override
+            public void run() {
+                for (int ii = 0; ii < READS_PER_THREAD; ii++) {
+                    final AccountRecord account = newAccount(writerHomeAccountId, REALM);
+                    final AccessTokenRecord accessToken = newAccessToken(writerHomeAccountId, CLIENT_ID, REALM, "scope.0");
+                    mCache.saveAccount(account);
+                    mCache.saveCredential(accessToken);
+                    mCache.removeCredential(accessToken);
+                    mCache.removeAccount(account);
+                }
+            }
+        });
+
+        assertEquals(ACCOUNT_COUNT, mCache.getAccounts().size());
+        assertEquals(ACCOUNT_COUNT * ACCESS_TOKENS_PER_ACCOUNT, mCache.getCredentials().size());
+        assertTrue(mCache.getAccountsFilteredBy(writerHomeAccountId, ENVIRONMENT, REALM).isEmpty());
+    }
+
+    /**
+     * Runs the supplied number of reader threads, and the writer (if any), to completion. Each
+     * reader checks every result it reads.
+     *
+     * @return The time taken by the readers, in nanoseconds.
+     */
+    private long runReaders(final int threadCount, final Runnable writer) throws Throwable {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final List<Thread> readers = new ArrayList<>(threadCount);
+
+        for (int ii = 0; ii < threadCount; ii++) {
+            final String homeAccountId = homeAccountId(ii % ACCOUNT_COUNT);
+            readers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+
+                        for (int jj = 0; jj < READS_PER_THREAD; jj++) {
+                            final List<Credential> accessTokens = mCache.getCredentialsFilteredBy(
+                                    homeAccountId,
+                                    ENVIRONMENT,
+                                    CredentialType.AccessToken,
+                                    CLIENT_ID,
+                                    REALM,
+                                    null,
+                                    null
+                            );
+                            assertEquals(ACCESS_TOKENS_PER_ACCOUNT, accessTokens.size());
+                        }
+                    } catch (final Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            }));
+        }
+
+        final Thread writerThread = null == writer ? null : new Thread(writer);
+
+        for (final Thread reader : readers) {
+            reader.start();
+        }
+
+        if (null != writerThread) {
+            writerThread.start();
+        }
+
+        final long startNanos = System.nanoTime();
+        start.countDown();
+
+        for (final Thread reader : readers) {
+            reader.join();
+        }
+
+        final long elapsedNanos = System.nanoTime() - startNanos;
+
+        if (null != writerThread) {
+            writerThread.join();
+        }
+
+        if (null != failure.get()) {
+            throw failure.get();
+        }
+
+        return elapsedNanos;
+    }
+
+    private static String homeAccountId(final int index) {
+        return String.format(Locale.US, "%08d-4fb0-42f2-a44a-236aa0cb3f97.%s", index, REALM);
+    }
+}
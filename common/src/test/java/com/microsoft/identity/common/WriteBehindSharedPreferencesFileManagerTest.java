@@ -0,0 +1,165 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.microsoft.identity.common.internal.cache.WriteBehindSharedPreferencesFileManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+public class WriteBehindSharedPreferencesFileManagerTest {
+
+    /**
+     * Long enough that no scheduled flush runs during a test, unless it waits for one.
+     */
+    private static final long WRITE_WINDOW_MILLIS = 60 * 1000;
+
+    private InMemorySharedPreferencesFileManager mBackingStore;
+    private WriteBehindSharedPreferencesFileManager mFileManager;
+
+    @Before
+    public void setUp() {
+        mBackingStore = new InMemorySharedPreferencesFileManager("test");
+        mFileManager = new WriteBehindSharedPreferencesFileManager(
+                ApplicationProvider.getApplicationContext(),
+                mBackingStore,
+                WRITE_WINDOW_MILLIS
+        );
+    }
+
+    @Test
+    public void testReadsObserveDeferredWrites() {
+        mBackingStore.putString("removed", "value");
+        mFileManager.putString("key", "value");
+        mFileManager.remove("removed");
+
+        assertNull(mBackingStore.getString("key"));
+        assertEquals("value", mFileManager.getString("key"));
+        assertFalse(mFileManager.contains("removed"));
+        assertEquals(1, mFileManager.getAll().size());
+    }
+
+    @Test
+    public void testWritesAreMergedIntoOneFlush() {
+        mFileManager.putString("a", "1");
+        mFileManager.putString("b", "2");
+        mFileManager.putString("a", "3");
+        mFileManager.remove("b");
+
+        mFileManager.flush();
+
+        assertEquals("3", mBackingStore.getString("a"));
+        assertNull(mBackingStore.getString("b"));
+        assertEquals(4, mFileManager.getWriteCount());
+        assertEquals(1, mFileManager.getFlushCount());
+        assertEquals(3, mFileManager.getMergedWriteCount());
+    }
+
+    @Test
+    public void testClearIsDeferred() {
+        mBackingStore.putString("a", "1");
+        mFileManager.clear();
+        mFileManager.putString("b", "2");
+
+        assertNull(mFileManager.getString("a"));
+        assertEquals(1, mFileManager.getAll().size());
+        assertEquals("1", mBackingStore.getString("a"));
+
+        mFileManager.flush();
+
+        assertNull(mBackingStore.getString("a"));
+        assertEquals("2", mBackingStore.getString("b"));
+    }
+
+    @Test
+    public void testOpenBatchIsNotFlushed() {
+        mFileManager.beginBatch();
+        mFileManager.putString("a", "1");
+        mFileManager.flush();
+
+        assertNull(mBackingStore.getString("a"));
+
+        mFileManager.commitBatch();
+        mFileManager.flush();
+
+        assertEquals("1", mBackingStore.getString("a"));
+        assertEquals(1, mFileManager.getFlushCount());
+    }
+
+    @Test
+    public void testOpenBatchIsConfinedToItsThread() throws InterruptedException {
+        mFileManager.beginBatch();
+        mFileManager.putString("a", "1");
+
+        final String[] observedValue = new String[1];
+        final Thread otherThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                observedValue[0] = mFileManager.getString("a");
+                mFileManager.putString("b", "2");
+            }
+        });
+        otherThread.start();
+        otherThread.join();
+
+        // The other thread's write is not held back by the open batch
+        mFileManager.flush();
+
+        assertNull(observedValue[0]);
+        assertNull(mBackingStore.getString("a"));
+        assertEquals("2", mBackingStore.getString("b"));
+
+        mFileManager.commitBatch();
+        mFileManager.flush();
+
+        assertEquals("1", mBackingStore.getString("a"));
+        assertEquals(2, mFileManager.getFlushCount());
+    }
+
+    @Test
+    public void testWritesAreFlushedAfterTheWindow() throws InterruptedException {
+        final WriteBehindSharedPreferencesFileManager fileManager = new WriteBehindSharedPreferencesFileManager(
+                ApplicationProvider.getApplicationContext(),
+                mBackingStore,
+                1
+        );
+
+        fileManager.putString("a", "1");
+
+        for (int ii = 0; ii < 100 && 0 == fileManager.getFlushCount(); ii++) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(1, fileManager.getFlushCount());
+        assertEquals("1", mBackingStore.getString("a"));
+    }
+}
@@ -0,0 +1,170 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common.internal.cache;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.microsoft.identity.common.InMemorySharedPreferencesFileManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+public class BrokerTokenCachePoolTest {
+
+    private static final int MAX_SIZE = 2;
+    private static final long IDLE_TIMEOUT_MILLIS = 60 * 1000;
+
+    private Context mContext;
+    private BrokerTokenCachePool mPool;
+    private int mCreatedCount;
+
+    private final BrokerTokenCachePool.TokenCacheFactory<MsalOAuth2TokenCache> mFactory =
+            new BrokerTokenCachePool.TokenCacheFactory<MsalOAuth2TokenCache>() {
+                @Override
+                public MsalOAuth2TokenCache create() {
+                    mCreatedCount++;
+                    return new MsalOAuth2TokenCache<>(
+                            mContext,
+                            newAccountCredentialCache(),
+                            new MicrosoftStsAccountCredentialAdapter()
+                    );
+                }
+            };
+
+    private final BrokerTokenCachePool.TokenCacheFactory<MicrosoftFamilyOAuth2TokenCache> mFociFactory =
+            new BrokerTokenCachePool.TokenCacheFactory<MicrosoftFamilyOAuth2TokenCache>() {
+                @Override
+                public MicrosoftFamilyOAuth2TokenCache create() {
+                    mCreatedCount++;
+                    return new MicrosoftFamilyOAuth2TokenCache<>(
+                            mContext,
+                            newAccountCredentialCache(),
+                            new MicrosoftStsAccountCredentialAdapter()
+                    );
+                }
+            };
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mPool = new BrokerTokenCachePool(MAX_SIZE, IDLE_TIMEOUT_MILLIS);
+        mCreatedCount = 0;
+    }
+
+    @Test
+    public void testReusesPooledCaches() {
+        final MsalOAuth2TokenCache cache = mPool.getProcessUidCache(1, mFactory);
+        assertSame(cache, mPool.getProcessUidCache(1, mFactory));
+        assertNotSame(cache, mPool.getProcessUidCache(2, mFactory));
+
+        final MicrosoftFamilyOAuth2TokenCache fociCache = mPool.getFociCache(mFociFactory);
+        assertSame(fociCache, mPool.getFociCache(mFociFactory));
+        assertEquals(3, mCreatedCount);
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        final MsalOAuth2TokenCache cache1 = mPool.getProcessUidCache(1, mFactory);
+        final MsalOAuth2TokenCache cache2 = mPool.getProcessUidCache(2, mFactory);
+
+        // Use uid 1, so that uid 2 is the least-recently used
+        mPool.getProcessUidCache(1, mFactory);
+        mPool.getProcessUidCache(3, mFactory);
+
+        assertEquals(MAX_SIZE, mPool.size());
+        assertSame(cache1, mPool.getProcessUidCache(1, mFactory));
+        assertNotSame(cache2, mPool.getProcessUidCache(2, mFactory));
+        assertEquals(4, mCreatedCount);
+    }
+
+    @Test
+    public void testEvictsIdleCaches() throws InterruptedException {
+        final BrokerTokenCachePool pool = new BrokerTokenCachePool(MAX_SIZE, 1);
+
+        final MsalOAuth2TokenCache cache = pool.getProcessUidCache(1, mFactory);
+        Thread.sleep(10);
+
+        assertNotSame(cache, pool.getProcessUidCache(1, mFactory));
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void testInvalidate() {
+        final MsalOAuth2TokenCache cache1 = mPool.getProcessUidCache(1, mFactory);
+        final MicrosoftFamilyOAuth2TokenCache fociCache = mPool.getFociCache(mFociFactory);
+
+        mPool.invalidate(1);
+        assertEquals(1, mPool.size());
+        assertNotSame(cache1, mPool.getProcessUidCache(1, mFactory));
+
+        mPool.invalidateFoci();
+        assertNotSame(fociCache, mPool.getFociCache(mFociFactory));
+
+        mPool.invalidateAll();
+        assertEquals(0, mPool.size());
+    }
+
+    @Test
+    public void testRebuiltCachesShareTheIndexOfTheirFile() {
+        final InMemorySharedPreferencesFileManager file = new InMemorySharedPreferencesFileManager("indexed");
+        final BrokerTokenCachePool.TokenCacheFactory<MsalOAuth2TokenCache> indexedFactory =
+                new BrokerTokenCachePool.TokenCacheFactory<MsalOAuth2TokenCache>() {
+                    @Override
+                    public MsalOAuth2TokenCache create() {
+                        return new MsalOAuth2TokenCache<>(
+                                mContext,
+                                MsalOAuth2TokenCache.createAccountCredentialCache(new CacheKeyValueDelegate(), file, true),
+                                new MicrosoftStsAccountCredentialAdapter()
+                        );
+                    }
+                };
+
+        final MsalOAuth2TokenCache cache = mPool.getProcessUidCache(1, indexedFactory);
+        mPool.invalidate(1);
+        final MsalOAuth2TokenCache rebuiltCache = mPool.getProcessUidCache(1, indexedFactory);
+
+        // Writes through the dropped cache, still held by its callers, are seen by the rebuilt one
+        assertNotSame(cache, rebuiltCache);
+        assertSame(cache.getAccountCredentialCache(), rebuiltCache.getAccountCredentialCache());
+        assertSame(
+                cache.getAccountCredentialCache(),
+                MsalOAuth2TokenCache.createAccountCredentialCache(new CacheKeyValueDelegate(), file, false)
+        );
+    }
+
+    private static IAccountCredentialCache newAccountCredentialCache() {
+        return new SharedPreferencesAccountCredentialCache(
+                new CacheKeyValueDelegate(),
+                new InMemorySharedPreferencesFileManager("test")
+        );
+    }
+}
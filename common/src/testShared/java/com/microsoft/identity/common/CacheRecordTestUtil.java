@@ -0,0 +1,109 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common;
+
+import com.microsoft.identity.common.internal.dto.AccessTokenRecord;
+import com.microsoft.identity.common.internal.dto.AccountRecord;
+import com.microsoft.identity.common.internal.dto.Credential;
+import com.microsoft.identity.common.internal.dto.CredentialType;
+import com.microsoft.identity.common.internal.dto.IdTokenRecord;
+import com.microsoft.identity.common.internal.dto.RefreshTokenRecord;
+
+/**
+ * Builders of the Account and Credential records saved by the cache tests.
+ */
+public final class CacheRecordTestUtil {
+
+    public static final String ENVIRONMENT = "login.microsoftonline.com";
+    public static final String USERNAME = "user@contoso.com";
+    public static final String SECRET = "secret";
+
+    private CacheRecordTestUtil() {
+        // Utility class.
+    }
+
+    public static AccountRecord newAccount(final String homeAccountId, final String realm) {
+        final AccountRecord account = new AccountRecord();
+        account.setHomeAccountId(homeAccountId);
+        account.setEnvironment(ENVIRONMENT);
+        account.setRealm(realm);
+        account.setLocalAccountId(homeAccountId);
+        account.setUsername(USERNAME);
+        account.setAuthorityType("MSSTS");
+        return account;
+    }
+
+    public static AccessTokenRecord newAccessToken(final String homeAccountId,
+                                                   final String clientId,
+                                                   final String realm,
+                                                   final String target) {
+        final AccessTokenRecord accessToken = new AccessTokenRecord();
+        populate(accessToken, homeAccountId, clientId, CredentialType.AccessToken);
+        accessToken.setRealm(realm);
+        accessToken.setTarget(target);
+        return accessToken;
+    }
+
+    /**
+     * Builds an AccessToken as issued, carrying cached_at, expires_on and token_type as well.
+     */
+    public static AccessTokenRecord newIssuedAccessToken(final String homeAccountId,
+                                                         final String clientId,
+                                                         final String realm,
+                                                         final String target) {
+        final AccessTokenRecord accessToken = newAccessToken(homeAccountId, clientId, realm, target);
+        accessToken.setCachedAt("1600000000");
+        accessToken.setExpiresOn("1600003600");
+        accessToken.setAccessTokenType("Bearer");
+        return accessToken;
+    }
+
+    public static RefreshTokenRecord newRefreshToken(final String homeAccountId,
+                                                     final String clientId,
+                                                     final String target) {
+        final RefreshTokenRecord refreshToken = new RefreshTokenRecord();
+        populate(refreshToken, homeAccountId, clientId, CredentialType.RefreshToken);
+        refreshToken.setTarget(target);
+        return refreshToken;
+    }
+
+    public static IdTokenRecord newIdToken(final String homeAccountId,
+                                           final String clientId,
+                                           final String realm) {
+        final IdTokenRecord idToken = new IdTokenRecord();
+        populate(idToken, homeAccountId, clientId, CredentialType.IdToken);
+        idToken.setRealm(realm);
+        return idToken;
+    }
+
+    private static void populate(final Credential credential,
+                                 final String homeAccountId,
+                                 final String clientId,
+                                 final CredentialType type) {
+        credential.setHomeAccountId(homeAccountId);
+        credential.setEnvironment(ENVIRONMENT);
+        credential.setClientId(clientId);
+        credential.setCredentialType(type.name());
+        credential.setSecret(SECRET);
+    }
+}
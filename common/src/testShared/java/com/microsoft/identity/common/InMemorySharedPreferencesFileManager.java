@@ -0,0 +1,124 @@
+// Copyright (c) Microsoft Corporation.
+// All rights reserved.
+//
+// This code is licensed under the MIT License.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files(the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and / or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions :
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+package com.microsoft.identity.common;
+
+import com.microsoft.identity.common.internal.cache.ISharedPreferencesFileManager;
+import com.microsoft.identity.common.internal.util.Predicate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A plain in-memory {@link ISharedPreferencesFileManager} which counts reads, for use in
+ * tests.
+ */
+public class InMemorySharedPreferencesFileManager implements ISharedPreferencesFileManager {
+
+    private final String mName;
+    private final Map<String, String> mEntries = new HashMap<>();
+    private int mReadCount;
+
+    public InMemorySharedPreferencesFileManager(final String name) {
+        mName = name;
+    }
+
+    public synchronized int getReadCount() {
+        return mReadCount;
+    }
+
+    @Override
+    public synchronized void putString(final String key, final String value) {
+        if (null == value) {
+            mEntries.remove(key);
+        } else {
+            mEntries.put(key, value);
+        }
+    }
+
+    @Override
+    public synchronized String getString(final String key) {
+        mReadCount++;
+        return mEntries.get(key);
+    }
+
+    @Override
+    public void putLong(final String key, final long value) {
+        putString(key, String.valueOf(value));
+    }
+
+    @Override
+    public long getLong(final String key) {
+        final String value = getString(key);
+        return null == value ? 0 : Long.parseLong(value);
+    }
+
+    @Override
+    public String getSharedPreferencesFileName() {
+        return mName;
+    }
+
+    @Override
+    public synchronized Map<String, String> getAll() {
+        mReadCount++;
+        return new HashMap<>(mEntries);
+    }
+
+    @Override
+    public synchronized Map<String, String> getAll(final Predicate<String> keyFilter) {
+        mReadCount++;
+        final Map<String, String> result = new HashMap<>();
+
+        for (final Map.Entry<String, String> entry : mEntries.entrySet()) {
+            if (keyFilter.test(entry.getKey())) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public synchronized boolean contains(final String key) {
+        return mEntries.containsKey(key);
+    }
+
+    @Override
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    @Override
+    public synchronized void remove(final String key) {
+        mEntries.remove(key);
+    }
+
+    @Override
+    public void beginBatch() {
+        // Writes are applied immediately; nothing to buffer.
+    }
+
+    @Override
+    public void commitBatch() {
+        // Writes are applied immediately; nothing to buffer.
+    }
+}